@@ -847,6 +847,8 @@ protected void initializeUI() {
 		setZoom(Documents.DEFAULT_ZOOM); //set the default zoom level, selecting the appropriate action
 		add(getXMLTextPane(), BorderLayout.CENTER); //add the text pane to the center of our control
 		xmlTextPane.setEditable(false); //don't let the OEB text pane be edited in this implementation
+		xmlTextPane.setMappedContent(true); //because the text pane is read-only, keep the text of publications outside the heap
+		xmlTextPane.setBackgroundPagination(true); //let the reader browse pages while the rest of the publication is paginated
 		xmlTextPane.addProgressListener(this); //listen for progress events
 		xmlTextPane.addHyperlinkListener(this); //listen for hyperlink events
 		//catch all document changes in the text pane, since the document is actually changed in a separate thread
@@ -47,6 +47,7 @@
 //TODO fix import com.globalmentor.swing.text.rdf.maqro.MAQROViewFactory;
 import com.globalmentor.swing.text.xml.*;
 import com.globalmentor.swing.text.xml.xhtml.*;
+import com.globalmentor.swing.text.xml.css.XMLCSSViewPainter;
 import com.globalmentor.text.ArgumentSyntaxException;
 import com.globalmentor.text.Text;
 import com.globalmentor.util.zip.*;
@@ -211,6 +212,79 @@ public void setPaged(final boolean newPaged) {
 		}
 	}
 
+	/** Whether documents loaded while this pane is not editable store their text outside the heap in memory-mapped temporary files. */
+	private boolean mappedContent = false;
+
+	/** @return Whether documents loaded while this pane is not editable store their text outside the heap in memory-mapped temporary files. */
+	public boolean isMappedContent() {
+		return mappedContent;
+	}
+
+	/**
+	 * Sets whether documents loaded while this pane is not editable should store their text outside the heap in memory-mapped temporary files, for very large
+	 * publications that are only read. The temporary file of a document is closed when the document is replaced in this pane.
+	 * @param mappedContent <code>true</code> if read-only documents should use memory-mapped content.
+	 * @see XMLEditorKit#setMappedContent(boolean)
+	 */
+	public void setMappedContent(final boolean mappedContent) {
+		this.mappedContent = mappedContent;
+	}
+
+	/**
+	 * Updates an editor kit about to create a document so that the document will use memory-mapped content if this pane uses memory-mapped content and is not
+	 * editable.
+	 * @param editorKit The editor kit that will create a document.
+	 * @see #isMappedContent()
+	 */
+	protected void updateMappedContent(final EditorKit editorKit) {
+		if(editorKit instanceof XMLEditorKit) {
+			((XMLEditorKit)editorKit).setMappedContent(isMappedContent() && !isEditable());
+		}
+	}
+
+	/** Whether pages are laid out in the background, so that pages already laid out can be browsed while the rest are paginated. */
+	private boolean backgroundPagination = false;
+
+	/** @return Whether pages are laid out in the background, so that pages already laid out can be browsed while the rest are paginated. */
+	public boolean isBackgroundPagination() {
+		return backgroundPagination;
+	}
+
+	/**
+	 * Sets whether pages should be laid out in the background, so that pages already laid out can be browsed while the rest are paginated.
+	 * @param backgroundPagination <code>true</code> if pagination should occur in the background.
+	 * @see XMLPagedView#setBackgroundPagination(boolean)
+	 */
+	public void setBackgroundPagination(final boolean backgroundPagination) {
+		this.backgroundPagination = backgroundPagination;
+		final XMLPagedView pagedView = getPagedView();
+		if(pagedView != null) { //if we already have a paged view, update it
+			pagedView.setBackgroundPagination(backgroundPagination);
+		}
+	}
+
+	/** The on-disk cache of page break offsets, or <code>null</code> if paginations should not be cached. */
+	private XMLPaginationCache paginationCache = null;
+
+	/** @return The on-disk cache of page break offsets, or <code>null</code> if paginations are not cached. */
+	public XMLPaginationCache getPaginationCache() {
+		return paginationCache;
+	}
+
+	/**
+	 * Sets the on-disk cache of page break offsets, so that the pages of a document that was paginated before in the same way can be restored without laying out
+	 * every page.
+	 * @param paginationCache The cache of page break offsets, or <code>null</code> if paginations should not be cached.
+	 * @see XMLPagedView#setPaginationCache(XMLPaginationCache)
+	 */
+	public void setPaginationCache(final XMLPaginationCache paginationCache) {
+		this.paginationCache = paginationCache;
+		final XMLPagedView pagedView = getPagedView();
+		if(pagedView != null) { //if we already have a paged view, update it
+			pagedView.setPaginationCache(paginationCache);
+		}
+	}
+
 	/** The name of the key map for normal key functions. */
 	protected static final String BASIC_KEYMAP_NAME = "basicKeymap";
 	/** The name of the key map for paged key functions. */
@@ -263,6 +337,8 @@ public void setPagedView(final XMLPagedView pagedView) { //TODO make this protec
 		pagedView.addPageListener(this); //show that we want to be notified of page changes the paged view makes, so that we can forward those events
 		pagedView.addProgressListener(this); //show that we want to be notified of any progress the paged view makes, so that we can forward those events
 		pagedView.setDisplayPageCount(DisplayPageCount); //in case our display page count has previously been set, tell our page view about it now that we have one
+		pagedView.setBackgroundPagination(isBackgroundPagination()); //tell the paged view how to paginate
+		pagedView.setPaginationCache(getPaginationCache()); //tell the paged view where to cache its pages
 		//TODO del		  setAntialias(antialias);  //set the antialias value to the value we saved, so it will be reflected in the new document
 		//TODO del Log.trace(this, "Getting paged view's attributes, attribute set is mutable: "+(pagedViewAttributeSet instanceof MutableAttributeSet));  //TODO del; testing
 	}
@@ -288,15 +364,14 @@ public void setZoom(final float newZoom) {
 			//TODO del Log.trace("changing view factor from "+oldZoomFactor+" to "+newZoomFactor); //TODO del
 			zoom = newZoom; //set the new zoom factor
 			Documents.setZoom(getDocument(), zoom); //store the new zoom factor in the document
+			if(getDocument() instanceof BasicStyledDocument) { //fonts resolved for the old zoom factor are no longer needed
+				((BasicStyledDocument)getDocument()).invalidateResolvedFonts();
+			}
 			//TODO del				document.putProperty(XMLDocument.ZOOM_FACTOR_PROPERTY, new Float(zoomFactor)); //store the new zoom factor in the document
+			XMLCSSViewPainter.invalidatePaintStyles(); //list item markers were resolved using fonts for the old zoom factor
 			final XMLPagedView pagedView = getPagedView(); //get a reference to our paged view
 			if(pagedView != null) { //if we have a paged view
-				try {
-					reload(); //TODO testing; repagination seems to work with 95% but not all view structures
-					//TODO fix					pagedView.repaginate();  //relayout the paged view TODO use something more generic for when we don't have a paged view
-				} catch(final Exception exception) {
-					AbstractSwingApplication.displayApplicationError(XMLTextPane.this, "Error opening document", exception); //TODO do we need to clean up anything? TODO i18n
-				}
+				pagedView.invalidateFonts(); //update the fonts of the existing views and repaginate, leaving the document itself alone TODO use something more generic for when we don't have a paged view
 			}
 		}
 	}
@@ -332,6 +407,7 @@ public void setAntialias(final boolean newAntialias) {
 			//TODO del				if(pagedViewAttributeSet instanceof MutableAttributeSet)  //if we can change the paged view's attributes
 			antialias = newAntialias; //set the new antialias status variable so that we can set whatever new document is installed
 			Documents.setAntialias(getDocument(), newAntialias); //store the new antialias setting in the document
+			XMLCSSViewPainter.invalidatePaintStyles(); //make sure views paint using the new antialias setting
 			final XMLPagedView pagedView = getPagedView(); //get a reference to our paged view
 			if(pagedView != null) { //if we have a paged view
 				//TODO del					XMLStyleUtilities.setAntialias((MutableAttributeSet)pagedView.getAttributes(), newAntialias);  //set the view's antialias property
@@ -603,7 +679,15 @@ public void setDocument(final Document document) {
 		Documents.setPaged(document, isPaged()); //store the new paged value in the document
 		Documents.setZoom(document, getZoom()); //store the zoom factor in the document
 		Documents.setAntialias(document, isAntialias()); //store the antialias setting in the document
+		final Document oldDocument = getDocument(); //get the document being replaced
 		super.setDocument(document); //set the document normally
+		if(oldDocument != document && oldDocument instanceof BasicStyledDocument) { //release any temporary file of the old document
+			try {
+				((BasicStyledDocument)oldDocument).closeContent();
+			} catch(final IOException ioException) {
+				Log.warn("Unable to close document content.", ioException);
+			}
+		}
 	}
 
 	/**
@@ -878,6 +962,7 @@ public void setPage(URI uri, final URIInputStreamable uriInputStreamable) throws
 	 */
 	protected void load(final URI baseURI, final InputStream inputStream) throws IOException {
 		final EditorKit editorKit = getEditorKit(); //get the current editor kit, and assume it's an XML editor kit TODO we might want to check just to make sure
+		updateMappedContent(editorKit); //let the editor kit know whether a read-only document should use memory-mapped content
 		final Document document = editorKit.createDefaultDocument(); //create a default document
 		document.putProperty(Document.StreamDescriptionProperty, URIs.toValidURL(baseURI)); //store a URL version of the URI in the document, as getPage() expects this to be a URL
 		Documents.setBaseURI(document, baseURI); //store the base URI in the document
@@ -941,36 +1026,65 @@ public void run() {
 			}
 		}
 
+		/** Whether the document has been installed in the text pane. */
+		private volatile boolean documentSet = false;
+
 		/**
-		 * Reads the document from the input stream and then closes the stream.
+		 * Reads the document from the input stream and then closes the stream. If the document is populated progressively, the document is installed in the text
+		 * pane as soon as its first batch has been created, so that the beginning of the document may be displayed while the rest is loading.
 		 * @throws IOException Thrown if there is an error loading the document.
+		 * @see XMLEditorKit#setProgressiveBatchSize(int)
 		 */
 		public void load() throws IOException {
 			//show the wait cursor TODO do we want to make sure the cursor is set from the AWT thread?
 			final Cursor originalCursor = Components.setCursor(XMLTextPane.this, Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+			//listen for the first batch of a progressively created document
+			final ProgressListener createProgressListener = new ProgressListener() {
+
+				public void madeProgress(final ProgressEvent progressEvent) {
+					//if the first batch of an incremental load has been created; the finished event comes before the editor kit has styled a document created all at once
+					if(!documentSet && XMLDocument.CREATE_TASK.equals(progressEvent.getTask()) && !progressEvent.isFinished()) {
+						installDocument(); //show the document so far
+					}
+				}
+			};
+			if(document instanceof BasicStyledDocument) { //if this is a basic document
+				((BasicStyledDocument)document).addProgressListener(createProgressListener);
+			}
 			try {
 				//TODO when does this get closed?
 				read(inputStream, document); //read the document from the input stream
 				fireMadeProgress(new ProgressEvent(this, CONSTRUCT_TASK, "Constructing the document...")); //TODO testing i18n
-				try {
-					//make sure the actual document change occurs in the event queue to prevent exceptions from occurring 
-					EventQueues.invokeInEventQueueAndWait(new Runnable() {
-
-						public void run() {
-							setDocument(document); //show that the text pane is using this document (this actually creates the views)
-						}
-					});
-				} catch(InterruptedException interruptedException) {
-					Log.error(interruptedException); //TODO fix
-				} catch(InvocationTargetException invocationTargetException) {
-					Log.error(invocationTargetException); //TODO fix
+				if(!documentSet) { //if the document wasn't already installed while it was being created
+					installDocument(); //install the document
 				}
 				fireMadeProgress(new ProgressEvent(this, CONSTRUCT_TASK, "Finished constructing the document...", true)); //TODO testing i18n
 			} finally {
+				if(document instanceof BasicStyledDocument) { //if this is a basic document
+					((BasicStyledDocument)document).removeProgressListener(createProgressListener);
+				}
 				setCursor(originalCursor); //after the event thread is finished setting the document, always set the cursor back to its original form
 				inputStream.close(); //always close the input stream
 			}
 		}
+
+		/** Sets the document in the text pane from the event queue, waiting for the change to occur. */
+		protected void installDocument() {
+			documentSet = true; //show that we've installed the document
+			try {
+				//make sure the actual document change occurs in the event queue to prevent exceptions from occurring 
+				EventQueues.invokeInEventQueueAndWait(new Runnable() {
+
+					public void run() {
+						setDocument(document); //show that the text pane is using this document (this actually creates the views)
+					}
+				});
+			} catch(InterruptedException interruptedException) {
+				Log.error(interruptedException); //TODO fix
+			} catch(InvocationTargetException invocationTargetException) {
+				Log.error(invocationTargetException); //TODO fix
+			}
+		}
 	}
 
 	/**
@@ -1115,6 +1229,7 @@ public void setXML(final org.w3c.dom.Document xmlDocument, final URI baseURI, fi
 		final EditorKit editorKit = getEditorKit(); //get our current editor kit
 		if(editorKit instanceof XMLEditorKit) { //if an XML editor kit is installed
 			final XMLEditorKit xmlEditorKit = (XMLEditorKit)getEditorKit(); //cast the editor kit to an XML editor kit
+			updateMappedContent(xmlEditorKit); //let the editor kit know whether a read-only document should use memory-mapped content
 			final XMLDocument swingXMLDocument = xmlEditorKit.createDefaultDocument(); //create a default document
 			final Cursor originalCursor = Components.setCursor(XMLTextPane.this, Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 			try {
@@ -1469,7 +1584,7 @@ public void go(final URI uri) {
 		if(document instanceof XMLDocument) { //if this is an XML document
 			final XMLDocument xmlDocument = (XMLDocument)document; //case the document to an XML document
 			//cast the document to an XML document and get the element that the URI represents, if possible
-			final Element element = xmlDocument.getElement(XMLStyles.TARGET_URI_ATTRIBUTE_NAME, uri);
+			final Element element = xmlDocument.getElementByTargetURI(uri);
 			if(element != null) { //if we found a matching element in the document
 				final int offset = element.getStartOffset(); //get the starting position of the element
 				go(offset); //go to the beginning of the element
@@ -109,6 +109,29 @@ public BasicStyledDocument(final Content content, final StyleContext styles, fin
 		Log.trace("Document i18n property: ", getProperty("i18n")); //TODO testing i18n		
 	}
 
+	/**
+	 * Discards any fonts the style context has cached for the attribute sets of this document, such as after the zoom factor or the styles change.
+	 * @see XMLCSSStyleContext#invalidateResolvedFonts()
+	 */
+	public void invalidateResolvedFonts() {
+		final AttributeContext attributeContext = getAttributeContext(); //get the style context
+		if(attributeContext instanceof XMLCSSStyleContext) {
+			((XMLCSSStyleContext)attributeContext).invalidateResolvedFonts();
+		}
+	}
+
+	/**
+	 * Closes the content of the document if it holds resources outside the heap, such as the temporary file of {@link MappedContent}. Text already in the
+	 * document remains readable, but no more text may be added.
+	 * @throws IOException if there is an error closing the content.
+	 */
+	public void closeContent() throws IOException {
+		final Content content = getContent(); //get the content storage
+		if(content instanceof Closeable) {
+			((Closeable)content).close();
+		}
+	}
+
 	/**
 	 * Gets the font from an attribute set The actual font is obtained from the document's attribute context, similar to
 	 * <code>DefaultStyledDocument.getFont()</code> (which this function overrides), except that this function may decide to change the font size before actually
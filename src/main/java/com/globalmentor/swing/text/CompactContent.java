@@ -0,0 +1,553 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text;
+
+import java.io.*;
+
+import javax.swing.text.*;
+import javax.swing.undo.*;
+
+/**
+ * Document content that stores its text compactly for large documents that are mostly read rather than edited.
+ * <p>
+ * The text is divided into runs of limited length. A run in which every character is in the Latin-1 range is stored using a single byte per character; a run
+ * is stored as UTF-16 characters only if it contains a character outside that range. Positions are kept as offsets in a sorted array of primitive integers
+ * rather than as separate mark objects, and are updated in a single pass over the affected part of the array when the text changes.
+ * </p>
+ * <p>
+ * Positions follow the semantics of {@link StringContent}: inserting text at the offset of a position moves the position, except for a position at the
+ * beginning of the content, which never moves. Undoing an edit restores the text but not any positions collapsed by a removal.
+ * </p>
+ * <p>
+ * This class is synchronized on itself, and is selected by passing an instance to
+ * {@link BasicStyledDocument#BasicStyledDocument(javax.swing.text.AbstractDocument.Content, StyleContext, com.globalmentor.io.URIInputStreamable)}.
+ * </p>
+ * @author Garret Wilson
+ */
+public class CompactContent implements AbstractDocument.Content, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The maximum number of characters in a run of text. */
+	protected static final int MAX_RUN_LENGTH = 8192;
+
+	/** The highest character value that may be stored in a Latin-1 run. */
+	private static final char MAX_LATIN1_CHAR = (char)0xFF;
+
+	/** The runs of text, the first {@link #runCount} of which are used. */
+	private Run[] runs = new Run[8];
+
+	/** The number of runs of text; there is always at least one run, and no run is empty. */
+	private int runCount = 0;
+
+	/** The starting offsets of each run of text. */
+	private int[] runStarts = new int[8];
+
+	/** The length of the content. */
+	private int length = 0;
+
+	/** The positions within the content. */
+	private transient ContentPositions positions = new ContentPositions(this);
+
+	/** Default constructor that creates content containing only the implied break. */
+	public CompactContent() {
+		runs[runCount++] = new Run("\n", 0, 1); //add the implied break required of all document content
+		length = 1;
+	}
+
+	/** @return The number of characters in the content. */
+	public synchronized int length() {
+		return length;
+	}
+
+	/**
+	 * Finds the run containing the given offset.
+	 * @param offset The offset in the content, which may be equal to the length of the content.
+	 * @return The index of the last run starting at or before the given offset.
+	 */
+	private int getRunIndex(final int offset) {
+		int low = 0;
+		int high = runCount - 1;
+		while(low < high) { //binary search for the last run starting at or before the offset
+			final int middle = (low + high + 1) >>> 1;
+			if(runStarts[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/** Recalculates the starting offset of each run. */
+	private void updateRunStarts() {
+		if(runStarts.length < runCount) { //if there are more runs than run starts
+			runStarts = new int[runs.length];
+		}
+		int start = 0;
+		for(int i = 0; i < runCount; ++i) {
+			runStarts[i] = start;
+			start += runs[i].length;
+		}
+	}
+
+	/**
+	 * Adds a run at the given index.
+	 * @param runIndex The index at which to add the run.
+	 * @param run The run to add.
+	 */
+	private void addRun(final int runIndex, final Run run) {
+		if(runCount == runs.length) { //if there is no more room for runs
+			final Run[] newRuns = new Run[runs.length * 2];
+			System.arraycopy(runs, 0, newRuns, 0, runCount);
+			runs = newRuns;
+		}
+		System.arraycopy(runs, runIndex, runs, runIndex + 1, runCount - runIndex);
+		runs[runIndex] = run;
+		++runCount;
+	}
+
+	/**
+	 * Removes the run at the given index.
+	 * @param runIndex The index of the run to remove.
+	 */
+	private void removeRun(final int runIndex) {
+		System.arraycopy(runs, runIndex + 1, runs, runIndex, runCount - runIndex - 1);
+		runs[--runCount] = null;
+	}
+
+	/**
+	 * Inserts a string into the content.
+	 * @param where The starting offset, at least zero and less than the length of the content, so that the implied break always remains last.
+	 * @param string The non-<code>null</code> string to insert.
+	 * @return An undoable edit that may be used to undo the insertion.
+	 * @throws BadLocationException if the given offset is not a valid position within the content.
+	 */
+	public synchronized UndoableEdit insertString(final int where, final String string) throws BadLocationException {
+		if(where < 0 || where >= length) { //as with StringContent, nothing may be inserted after the implied break
+			throw new BadLocationException("Invalid insert", length);
+		}
+		final int stringLength = string.length();
+		final int runIndex = getRunIndex(where);
+		final Run run = runs[runIndex];
+		final int runOffset = where - runStarts[runIndex];
+		if(run.length + stringLength <= MAX_RUN_LENGTH) { //if the string fits in the run
+			run.insert(runOffset, string, 0, stringLength);
+		} else { //if the string doesn't fit, move the rest of the run after the string and divide everything among new runs
+			final String tail = run.substring(runOffset, run.length);
+			run.remove(runOffset, run.length - runOffset);
+			final int nextRunIndex = append(runIndex, string);
+			append(nextRunIndex, tail);
+		}
+		length += stringLength;
+		updateRunStarts();
+		positions.updateForInsert(where, stringLength);
+		return new InsertUndo(where, stringLength);
+	}
+
+	/**
+	 * Appends text to the given run, adding as many runs after it as are needed to hold the text.
+	 * @param runIndex The index of the run to which text should be appended.
+	 * @param text The text to append.
+	 * @return The index of the last run to which text was appended.
+	 */
+	private int append(int runIndex, final String text) {
+		final int textLength = text.length();
+		int textIndex = 0;
+		while(textIndex < textLength) {
+			Run run = runs[runIndex];
+			if(run.length == MAX_RUN_LENGTH) { //if this run is full, start a new run
+				run = new Run(text, textIndex, Math.min(textIndex + MAX_RUN_LENGTH, textLength));
+				addRun(++runIndex, run);
+				textIndex += run.length;
+			} else { //if there is room in this run, fill it
+				final int count = Math.min(MAX_RUN_LENGTH - run.length, textLength - textIndex);
+				run.insert(run.length, text, textIndex, textIndex + count);
+				textIndex += count;
+			}
+		}
+		return runIndex;
+	}
+
+	/**
+	 * Removes part of the content.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to remove, at least zero.
+	 * @return An undoable edit that may be used to undo the removal.
+	 * @throws BadLocationException if the given range is not within the content, or would remove the implied break at the end of the content.
+	 */
+	public synchronized UndoableEdit remove(final int where, final int count) throws BadLocationException {
+		if(where < 0 || count < 0 || where + count >= length) {
+			throw new BadLocationException("Invalid remove", length + 1);
+		}
+		final String removedString = getString(where, count);
+		int runIndex = getRunIndex(where);
+		int runOffset = where - runStarts[runIndex];
+		int remaining = count;
+		while(remaining > 0) {
+			final Run run = runs[runIndex];
+			final int runRemoveCount = Math.min(remaining, run.length - runOffset);
+			run.remove(runOffset, runRemoveCount);
+			remaining -= runRemoveCount;
+			if(run.length == 0) { //never keep empty runs; the implied break guarantees that at least one run remains
+				removeRun(runIndex);
+			} else {
+				++runIndex;
+			}
+			runOffset = 0; //any further removal starts at the beginning of the next run
+		}
+		length -= count;
+		updateRunStarts();
+		positions.updateForRemove(where, count);
+		return new RemoveUndo(where, removedString);
+	}
+
+	/**
+	 * Retrieves a portion of the content as a string.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to retrieve, at least zero.
+	 * @return A string containing the requested characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	public synchronized String getString(final int where, final int count) throws BadLocationException {
+		checkRange(where, count);
+		final char[] chars = new char[count];
+		copyChars(where, count, chars);
+		return new String(chars);
+	}
+
+	/**
+	 * Retrieves a portion of the content. If the requested characters are all in a UTF-16 run, the segment refers to the characters of the run, which must not
+	 * be modified. If the segment allows a partial return, only the characters in the run containing the starting offset are retrieved.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to retrieve, at least zero.
+	 * @param text The segment to receive the characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	public synchronized void getChars(final int where, final int count, final Segment text) throws BadLocationException {
+		checkRange(where, count);
+		if(count > 0) { //if there are characters to retrieve
+			final int runIndex = getRunIndex(where);
+			final Run run = runs[runIndex];
+			final int runOffset = where - runStarts[runIndex];
+			final int runCharCount = Math.min(count, run.length - runOffset); //the number of requested characters in this run
+			if(runCharCount == count || text.isPartialReturn()) { //if we only need characters from this run
+				if(run.utf16Chars != null) { //if the run is stored as UTF-16, refer to the run directly
+					text.array = run.utf16Chars;
+					text.offset = runOffset;
+				} else { //if the run is stored as Latin-1, widen the characters
+					text.array = new char[runCharCount];
+					text.offset = 0;
+					run.getChars(runOffset, runOffset + runCharCount, text.array, 0);
+				}
+				text.count = runCharCount;
+				return;
+			}
+		}
+		text.array = new char[count]; //the characters span runs, so they must be copied
+		text.offset = 0;
+		text.count = count;
+		copyChars(where, count, text.array);
+	}
+
+	/**
+	 * Ensures that the given range lies within the content.
+	 * @param where The starting offset.
+	 * @param count The number of characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	private void checkRange(final int where, final int count) throws BadLocationException {
+		if(where < 0 || count < 0 || where + count > length) {
+			throw new BadLocationException("Invalid location", length);
+		}
+	}
+
+	/**
+	 * Copies characters from the content.
+	 * @param where The starting offset, known to be valid.
+	 * @param count The number of characters to copy, known to be valid.
+	 * @param chars The array into which the characters should be copied, starting at the beginning of the array.
+	 */
+	private void copyChars(final int where, final int count, final char[] chars) {
+		int runIndex = getRunIndex(where);
+		int runOffset = where - runStarts[runIndex];
+		int charIndex = 0;
+		while(charIndex < count) {
+			final Run run = runs[runIndex++];
+			final int runCharCount = Math.min(count - charIndex, run.length - runOffset);
+			run.getChars(runOffset, runOffset + runCharCount, chars, charIndex);
+			charIndex += runCharCount;
+			runOffset = 0; //further characters come from the beginning of the next run
+		}
+	}
+
+	/**
+	 * Creates a position within the content that will track change as the content is modified. Positions at the same offset are shared.
+	 * @param offset The offset to track.
+	 * @return The position.
+	 * @throws BadLocationException if the given offset is not within the content.
+	 */
+	public synchronized Position createPosition(final int offset) throws BadLocationException {
+		if(offset < 0 || offset > length) {
+			throw new BadLocationException("Invalid position", offset);
+		}
+		return positions.createPosition(offset);
+	}
+
+	/**
+	 * Reads the content from a serialized form, creating new arrays for tracking positions.
+	 * @param objectInputStream The stream from which to read the object.
+	 * @throws IOException if there is an error reading the object.
+	 * @throws ClassNotFoundException if the class represented by the given object input stream could not be found.
+	 */
+	private void readObject(final ObjectInputStream objectInputStream) throws ClassNotFoundException, IOException {
+		objectInputStream.defaultReadObject(); //read the default object information
+		positions = new ContentPositions(this); //positions are not serialized; the document recreates any it needs
+	}
+
+	/**
+	 * A run of text, stored either as Latin-1 bytes or as UTF-16 characters.
+	 * @author Garret Wilson
+	 */
+	private static class Run implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The characters stored as Latin-1 bytes, or <code>null</code> if the run is stored as UTF-16. */
+		byte[] latin1Chars;
+
+		/** The characters stored as UTF-16, or <code>null</code> if the run is stored as Latin-1. */
+		char[] utf16Chars;
+
+		/** The number of characters in the run. */
+		int length;
+
+		/**
+		 * Text constructor. The run is stored as Latin-1 if all the characters allow it.
+		 * @param text The text containing the characters of the run.
+		 * @param start The index of the first character of the run.
+		 * @param end The index after the last character of the run.
+		 */
+		public Run(final String text, final int start, final int end) {
+			length = end - start;
+			if(isLatin1(text, start, end)) {
+				latin1Chars = new byte[length];
+				for(int i = 0; i < length; ++i) {
+					latin1Chars[i] = (byte)text.charAt(start + i);
+				}
+			} else {
+				utf16Chars = new char[length];
+				text.getChars(start, end, utf16Chars, 0);
+			}
+		}
+
+		/**
+		 * Determines whether the given characters may be stored as Latin-1.
+		 * @param text The text to check.
+		 * @param start The index of the first character to check.
+		 * @param end The index after the last character to check.
+		 * @return <code>true</code> if none of the characters is outside the Latin-1 range.
+		 */
+		private static boolean isLatin1(final String text, final int start, final int end) {
+			for(int i = start; i < end; ++i) {
+				if(text.charAt(i) > MAX_LATIN1_CHAR) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Copies characters from the run.
+		 * @param start The index of the first character to copy.
+		 * @param end The index after the last character to copy.
+		 * @param chars The destination array.
+		 * @param charIndex The index in the destination array at which to start copying.
+		 */
+		public void getChars(final int start, final int end, final char[] chars, final int charIndex) {
+			if(utf16Chars != null) {
+				System.arraycopy(utf16Chars, start, chars, charIndex, end - start);
+			} else {
+				for(int i = start, j = charIndex; i < end; ++i, ++j) {
+					chars[j] = (char)(latin1Chars[i] & 0xFF);
+				}
+			}
+		}
+
+		/**
+		 * Returns characters from the run as a string.
+		 * @param start The index of the first character.
+		 * @param end The index after the last character.
+		 * @return A string containing the characters.
+		 */
+		public String substring(final int start, final int end) {
+			final char[] chars = new char[end - start];
+			getChars(start, end, chars, 0);
+			return new String(chars);
+		}
+
+		/**
+		 * Inserts characters into the run, converting the run to UTF-16 if any of the characters are outside the Latin-1 range.
+		 * @param index The index in the run at which to insert the characters.
+		 * @param text The text containing the characters to insert.
+		 * @param start The index of the first character to insert.
+		 * @param end The index after the last character to insert.
+		 */
+		public void insert(final int index, final String text, final int start, final int end) {
+			final int count = end - start;
+			final int newLength = length + count;
+			if(latin1Chars != null && !isLatin1(text, start, end)) { //if the new characters require UTF-16
+				final char[] newUTF16Chars = new char[Math.max(newLength, length * 2)];
+				getChars(0, length, newUTF16Chars, 0);
+				utf16Chars = newUTF16Chars;
+				latin1Chars = null;
+			}
+			if(utf16Chars != null) {
+				if(newLength > utf16Chars.length) { //if we need more room
+					final char[] newUTF16Chars = new char[Math.max(newLength, Math.min(utf16Chars.length * 2, MAX_RUN_LENGTH))];
+					System.arraycopy(utf16Chars, 0, newUTF16Chars, 0, length);
+					utf16Chars = newUTF16Chars;
+				}
+				System.arraycopy(utf16Chars, index, utf16Chars, index + count, length - index);
+				text.getChars(start, end, utf16Chars, index);
+			} else {
+				if(newLength > latin1Chars.length) { //if we need more room
+					final byte[] newLatin1Chars = new byte[Math.max(newLength, Math.min(latin1Chars.length * 2, MAX_RUN_LENGTH))];
+					System.arraycopy(latin1Chars, 0, newLatin1Chars, 0, length);
+					latin1Chars = newLatin1Chars;
+				}
+				System.arraycopy(latin1Chars, index, latin1Chars, index + count, length - index);
+				for(int i = start, j = index; i < end; ++i, ++j) {
+					latin1Chars[j] = (byte)text.charAt(i);
+				}
+			}
+			length = newLength;
+		}
+
+		/**
+		 * Removes characters from the run. The run keeps its storage form even if the remaining characters could be stored as Latin-1.
+		 * @param index The index of the first character to remove.
+		 * @param count The number of characters to remove.
+		 */
+		public void remove(final int index, final int count) {
+			if(utf16Chars != null) {
+				System.arraycopy(utf16Chars, index + count, utf16Chars, index, length - index - count);
+			} else {
+				System.arraycopy(latin1Chars, index + count, latin1Chars, index, length - index - count);
+			}
+			length -= count;
+		}
+	}
+
+	/**
+	 * An undoable insertion.
+	 * @author Garret Wilson
+	 */
+	protected class InsertUndo extends AbstractUndoableEdit {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The offset at which text was inserted. */
+		private final int offset;
+
+		/** The number of characters inserted. */
+		private final int length;
+
+		/** The text that was removed by undoing the insertion, or <code>null</code> if the insertion has not been undone. */
+		private String string = null;
+
+		/**
+		 * Constructor.
+		 * @param offset The offset at which text was inserted.
+		 * @param length The number of characters inserted.
+		 */
+		protected InsertUndo(final int offset, final int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			try {
+				synchronized(CompactContent.this) {
+					string = getString(offset, length);
+					remove(offset, length);
+				}
+			} catch(final BadLocationException badLocationException) {
+				throw new CannotUndoException();
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			try {
+				insertString(offset, string);
+				string = null;
+			} catch(final BadLocationException badLocationException) {
+				throw new CannotRedoException();
+			}
+		}
+	}
+
+	/**
+	 * An undoable removal.
+	 * @author Garret Wilson
+	 */
+	protected class RemoveUndo extends AbstractUndoableEdit {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The offset at which text was removed. */
+		private final int offset;
+
+		/** The text that was removed. */
+		private final String string;
+
+		/**
+		 * Constructor.
+		 * @param offset The offset at which text was removed.
+		 * @param string The text that was removed.
+		 */
+		protected RemoveUndo(final int offset, final String string) {
+			this.offset = offset;
+			this.string = string;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			try {
+				insertString(offset, string);
+			} catch(final BadLocationException badLocationException) {
+				throw new CannotUndoException();
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			try {
+				remove(offset, string.length());
+			} catch(final BadLocationException badLocationException) {
+				throw new CannotRedoException();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text;
+
+import java.lang.ref.WeakReference;
+
+import javax.swing.text.Position;
+
+/**
+ * The positions within document content, kept as offsets in a sorted array of primitive integers rather than as separate mark objects. The offsets are updated
+ * in a single pass over the affected part of the array when the content changes.
+ * <p>
+ * Positions follow the semantics of {@link javax.swing.text.StringContent}: inserting text at the offset of a position moves the position, except for a
+ * position at the beginning of the content, which never moves.
+ * </p>
+ * <p>
+ * This class is not synchronized; the content must hold the lock given to the constructor when calling any of its methods.
+ * </p>
+ * @author Garret Wilson
+ */
+class ContentPositions {
+
+	/** The object on which the content synchronizes, used by positions when retrieving their offsets. */
+	private final Object lock;
+
+	/** The offsets of positions, in ascending order, the first {@link #markCount} of which are used. */
+	private int[] markOffsets = new int[16];
+
+	/** The weak references to the positions corresponding to each offset in {@link #markOffsets}. */
+	private MarkReference[] markReferences = new MarkReference[16];
+
+	/** The number of positions being tracked, some of which may have been garbage collected. */
+	private int markCount = 0;
+
+	/**
+	 * Lock constructor.
+	 * @param lock The object on which the content synchronizes.
+	 */
+	public ContentPositions(final Object lock) {
+		this.lock = lock;
+	}
+
+	/**
+	 * Creates a position that will track change as the content is modified. Positions at the same offset are shared. The caller must hold the lock.
+	 * @param offset The offset to track, known to be within the content.
+	 * @return The position.
+	 */
+	public Position createPosition(final int offset) {
+		int index = getMarkIndex(offset); //find the first position at or after the offset
+		while(index < markCount && markOffsets[index] == offset) { //look for an existing position at this offset
+			final Mark mark = markReferences[index].get();
+			if(mark != null) {
+				return mark;
+			}
+			++index;
+		}
+		if(markCount == markOffsets.length) { //if there is no more room for positions
+			purge(); //first get rid of positions that are no longer used
+			if(markCount > markOffsets.length * 3 / 4) { //if there still isn't much room, grow the arrays
+				final int newCapacity = markOffsets.length * 2;
+				final int[] newMarkOffsets = new int[newCapacity];
+				System.arraycopy(markOffsets, 0, newMarkOffsets, 0, markCount);
+				markOffsets = newMarkOffsets;
+				final MarkReference[] newMarkReferences = new MarkReference[newCapacity];
+				System.arraycopy(markReferences, 0, newMarkReferences, 0, markCount);
+				markReferences = newMarkReferences;
+			}
+			index = getMarkIndex(offset + 1); //the indexes have changed; add the position after any others at the same offset
+		}
+		System.arraycopy(markOffsets, index, markOffsets, index + 1, markCount - index);
+		System.arraycopy(markReferences, index, markReferences, index + 1, markCount - index);
+		++markCount;
+		for(int i = index + 1; i < markCount; ++i) { //the positions after the new one have moved up in the arrays
+			final Mark mark = markReferences[i].get();
+			if(mark != null) {
+				mark.index = i;
+			}
+		}
+		final Mark mark = new Mark(index);
+		markOffsets[index] = offset;
+		markReferences[index] = new MarkReference(mark);
+		return mark;
+	}
+
+	/**
+	 * Finds the first position at or after the given offset.
+	 * @param offset The content offset.
+	 * @return The index of the first position with an offset equal to or greater than the given offset, or the number of positions if there is no such
+	 *         position.
+	 */
+	private int getMarkIndex(final int offset) {
+		int low = 0;
+		int high = markCount;
+		while(low < high) { //binary search for the lower bound of the offset
+			final int middle = (low + high) >>> 1;
+			if(markOffsets[middle] < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/** Removes the offsets of positions that have been garbage collected, and updates the indexes of the remaining positions. */
+	private void purge() {
+		int newMarkCount = 0;
+		for(int i = 0; i < markCount; ++i) {
+			final Mark mark = markReferences[i].get();
+			if(mark != null) { //if this position is still in use, keep it
+				mark.index = newMarkCount;
+				markOffsets[newMarkCount] = markOffsets[i];
+				markReferences[newMarkCount] = markReferences[i];
+				++newMarkCount;
+			}
+		}
+		for(int i = newMarkCount; i < markCount; ++i) { //release the unused references
+			markReferences[i] = null;
+		}
+		markCount = newMarkCount;
+	}
+
+	/**
+	 * Updates positions to reflect an insertion. The caller must hold the lock. Positions at or after the insertion offset are moved, except for positions at the beginning of the content.
+	 * @param where The offset at which text was inserted.
+	 * @param count The number of characters inserted.
+	 */
+	public void updateForInsert(final int where, final int count) {
+		for(int i = getMarkIndex(where == 0 ? 1 : where); i < markCount; ++i) {
+			markOffsets[i] += count;
+		}
+	}
+
+	/**
+	 * Updates positions to reflect a removal. The caller must hold the lock. Positions within the removed range are collapsed to the removal offset; positions after it are moved back.
+	 * @param where The offset at which text was removed.
+	 * @param count The number of characters removed.
+	 */
+	public void updateForRemove(final int where, final int count) {
+		final int end = where + count;
+		for(int i = getMarkIndex(where); i < markCount; ++i) {
+			final int markOffset = markOffsets[i];
+			markOffsets[i] = markOffset >= end ? markOffset - count : where;
+		}
+	}
+
+	/**
+	 * A position, the offset of which is stored in the array of position offsets.
+	 * @author Garret Wilson
+	 */
+	private class Mark implements Position {
+
+		/** The index of the offset of this position in the array of position offsets. */
+		int index;
+
+		/**
+		 * Index constructor.
+		 * @param index The index of the offset of this position in the array of position offsets.
+		 */
+		public Mark(final int index) {
+			this.index = index;
+		}
+
+		/** @return The current offset of the position within the content. */
+		public int getOffset() {
+			synchronized(lock) {
+				return markOffsets[index];
+			}
+		}
+
+		/** @return A string representation of the position. */
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+	}
+
+	/**
+	 * A weak reference to a position, allowing an array of references without generic array creation.
+	 * @author Garret Wilson
+	 */
+	private static class MarkReference extends WeakReference<Mark> {
+
+		/**
+		 * Position constructor.
+		 * @param mark The position to reference.
+		 */
+		public MarkReference(final Mark mark) {
+			super(mark);
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.text.*;
+import javax.swing.undo.*;
+
+/**
+ * Read-only document content stored outside the Java heap in a memory-mapped temporary file, for documents so large that even compact content would burden
+ * the garbage collector.
+ * <p>
+ * The content may only be built by appending text before the implied break at the end of the content and by removing text from the end, which is how a
+ * document is created from element specs; any other modification results in an {@link UnsupportedOperationException}. Edits cannot be undone.
+ * </p>
+ * <p>
+ * The text is stored as UTF-16 characters in regions of the file, each mapped separately. Because a {@link Segment} can only refer to a heap array, retrieved
+ * characters are copied from the mapped region; if the segment allows a partial return, only the characters up to the end of the region are copied.
+ * </p>
+ * <p>
+ * This class is synchronized on itself. The temporary file is deleted when the content is closed or when the virtual machine exits.
+ * </p>
+ * @author Garret Wilson
+ * @see CompactContent
+ */
+public class MappedContent implements AbstractDocument.Content, Closeable {
+
+	/** The number of characters in each mapped region of the file. */
+	protected static final int REGION_LENGTH = 1 << 24;
+
+	/** The temporary file in which the text is stored. */
+	private final File file;
+
+	/** The random access to the temporary file. */
+	private final RandomAccessFile randomAccessFile;
+
+	/** The mapped regions of the file, the first {@link #regionCount} of which have been mapped. */
+	private CharBuffer[] regions = new CharBuffer[4];
+
+	/** The number of regions that have been mapped. */
+	private int regionCount = 0;
+
+	/** The length of the content, including the implied break. */
+	private int length = 0;
+
+	/** The positions within the content. */
+	private final ContentPositions positions = new ContentPositions(this);
+
+	/**
+	 * The arrays this content has given to segments, so that they may be filled again by later retrievals into the same segment. An array from elsewhere, such
+	 * as the storage of some other content, is never written to. Arrays compare by identity, and are weakly held so that they are released with their segments.
+	 */
+	private final Map<char[], Boolean> segmentArrays = new WeakHashMap<char[], Boolean>();
+
+	/**
+	 * Default constructor that creates a temporary file containing only the implied break.
+	 * @throws IOException if there is an error creating or mapping the temporary file.
+	 */
+	public MappedContent() throws IOException {
+		file = File.createTempFile("content", ".utf16");
+		file.deleteOnExit(); //don't leave the temporary file around even if we aren't closed
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			write(0, "\n"); //add the implied break required of all document content
+		} catch(final IOException ioException) {
+			close();
+			throw ioException;
+		}
+		length = 1;
+	}
+
+	/** @return The number of characters in the content. */
+	public synchronized int length() {
+		return length;
+	}
+
+	/**
+	 * Retrieves the mapped region with the given index, mapping it and any regions before it if needed.
+	 * @param regionIndex The index of the region.
+	 * @return The mapped region.
+	 * @throws IOException if there is an error mapping the region.
+	 */
+	private CharBuffer getRegion(final int regionIndex) throws IOException {
+		while(regionCount <= regionIndex) { //map regions until we reach the requested one
+			if(regionCount == regions.length) { //if there is no more room for regions
+				final CharBuffer[] newRegions = new CharBuffer[regions.length * 2];
+				System.arraycopy(regions, 0, newRegions, 0, regionCount);
+				regions = newRegions;
+			}
+			final long regionPosition = (long)regionCount * REGION_LENGTH * 2; //each UTF-16 character occupies two bytes
+			regions[regionCount] = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, regionPosition, (long)REGION_LENGTH * 2).asCharBuffer();
+			++regionCount;
+		}
+		return regions[regionIndex];
+	}
+
+	/**
+	 * Writes characters to the file, mapping new regions as needed.
+	 * @param offset The content offset at which to write.
+	 * @param text The characters to write.
+	 * @throws IOException if there is an error mapping a region of the file.
+	 */
+	private void write(final int offset, final String text) throws IOException {
+		final int textLength = text.length();
+		int textIndex = 0;
+		while(textIndex < textLength) {
+			final int contentOffset = offset + textIndex;
+			final int regionOffset = contentOffset % REGION_LENGTH;
+			final int count = Math.min(textLength - textIndex, REGION_LENGTH - regionOffset); //write up to the end of the region
+			final CharBuffer region = getRegion(contentOffset / REGION_LENGTH).duplicate(); //don't disturb the position of the shared buffer
+			region.position(regionOffset);
+			region.put(text, textIndex, textIndex + count);
+			textIndex += count;
+		}
+	}
+
+	/**
+	 * Reads characters from the file.
+	 * @param where The starting offset, known to be valid.
+	 * @param count The number of characters to read, known to be valid.
+	 * @param chars The array into which the characters should be read, starting at the beginning of the array.
+	 */
+	private void read(final int where, final int count, final char[] chars) {
+		int charIndex = 0;
+		while(charIndex < count) {
+			final int contentOffset = where + charIndex;
+			final int regionOffset = contentOffset % REGION_LENGTH;
+			final int regionCharCount = Math.min(count - charIndex, REGION_LENGTH - regionOffset); //read up to the end of the region
+			final CharBuffer region = regions[contentOffset / REGION_LENGTH].duplicate(); //all regions within the content have already been mapped
+			region.position(regionOffset);
+			region.get(chars, charIndex, regionCharCount);
+			charIndex += regionCharCount;
+		}
+	}
+
+	/**
+	 * Inserts a string into the content. Text may only be inserted immediately before the implied break at the end of the content.
+	 * @param where The starting offset, which must be the offset of the implied break.
+	 * @param string The non-<code>null</code> string to insert.
+	 * @return An edit that cannot be undone.
+	 * @throws BadLocationException if the given offset is not a valid position within the content.
+	 * @throws UnsupportedOperationException if the given offset is not the offset of the implied break.
+	 * @throws IllegalStateException if there is an error writing to the temporary file or the content would be too long.
+	 */
+	public synchronized UndoableEdit insertString(final int where, final String string) throws BadLocationException {
+		if(where < 0 || where > length) {
+			throw new BadLocationException("Invalid insert", length);
+		}
+		if(where != length - 1) {
+			throw new UnsupportedOperationException("Read-only content only allows appending text.");
+		}
+		final int stringLength = string.length();
+		if(length + stringLength < 0) { //if the content would overflow
+			throw new IllegalStateException("Content too long.");
+		}
+		try {
+			write(where, string); //overwrite the implied break with the new text
+			write(where + stringLength, "\n"); //and add the implied break again at the end
+		} catch(final IOException ioException) {
+			throw new IllegalStateException(ioException.getMessage(), ioException);
+		}
+		length += stringLength;
+		positions.updateForInsert(where, stringLength);
+		return new IrreversibleEdit();
+	}
+
+	/**
+	 * Removes part of the content. Only text immediately before the implied break at the end of the content may be removed.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to remove, extending up to the implied break.
+	 * @return An edit that cannot be undone.
+	 * @throws BadLocationException if the given range is not within the content, or would remove the implied break at the end of the content.
+	 * @throws UnsupportedOperationException if the given range does not end at the implied break.
+	 */
+	public synchronized UndoableEdit remove(final int where, final int count) throws BadLocationException {
+		if(where < 0 || count < 0 || where + count >= length) {
+			throw new BadLocationException("Invalid remove", length + 1);
+		}
+		if(count == 0) { //if there is nothing to remove
+			return new IrreversibleEdit();
+		}
+		if(where + count != length - 1) {
+			throw new UnsupportedOperationException("Read-only content only allows removing text at the end.");
+		}
+		try {
+			write(where, "\n"); //move the implied break to the new end of the content
+		} catch(final IOException ioException) { //the region has already been mapped
+			throw new AssertionError(ioException);
+		}
+		length -= count;
+		positions.updateForRemove(where, count);
+		return new IrreversibleEdit();
+	}
+
+	/**
+	 * Retrieves a portion of the content as a string.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to retrieve, at least zero.
+	 * @return A string containing the requested characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	public synchronized String getString(final int where, final int count) throws BadLocationException {
+		checkRange(where, count);
+		final char[] chars = new char[count];
+		read(where, count, chars);
+		return new String(chars);
+	}
+
+	/**
+	 * Retrieves a portion of the content. If the segment allows a partial return, only the characters in the mapped region containing the starting offset are
+	 * retrieved. If the segment already holds an array previously given to it by this content that is large enough, the characters are copied into that array
+	 * rather than into a new one.
+	 * @param where The starting offset, at least zero.
+	 * @param count The number of characters to retrieve, at least zero.
+	 * @param text The segment to receive the characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	public synchronized void getChars(final int where, int count, final Segment text) throws BadLocationException {
+		checkRange(where, count);
+		if(text.isPartialReturn()) { //if we can return only part of the characters, don't cross a region boundary
+			count = Math.min(count, REGION_LENGTH - where % REGION_LENGTH);
+		}
+		if(text.array == null || text.array.length < count || !segmentArrays.containsKey(text.array)) { //if we can't reuse the segment's array
+			text.array = new char[count];
+			segmentArrays.put(text.array, Boolean.TRUE); //allow this array to be reused for this segment
+		}
+		text.offset = 0;
+		text.count = count;
+		read(where, count, text.array);
+	}
+
+	/**
+	 * Ensures that the given range lies within the content.
+	 * @param where The starting offset.
+	 * @param count The number of characters.
+	 * @throws BadLocationException if the given range is not within the content.
+	 */
+	private void checkRange(final int where, final int count) throws BadLocationException {
+		if(where < 0 || count < 0 || where + count > length) {
+			throw new BadLocationException("Invalid location", length);
+		}
+	}
+
+	/**
+	 * Creates a position within the content that will track change as the content is modified. Positions at the same offset are shared.
+	 * @param offset The offset to track.
+	 * @return The position.
+	 * @throws BadLocationException if the given offset is not within the content.
+	 */
+	public synchronized Position createPosition(final int offset) throws BadLocationException {
+		if(offset < 0 || offset > length) {
+			throw new BadLocationException("Invalid position", offset);
+		}
+		return positions.createPosition(offset);
+	}
+
+	/**
+	 * An edit to the content that cannot be undone or redone.
+	 * @author Garret Wilson
+	 */
+	protected static class IrreversibleEdit extends AbstractUndoableEdit {
+
+		private static final long serialVersionUID = 1L;
+
+		/** @return <code>false</code>, as the edit cannot be undone. */
+		@Override
+		public boolean canUndo() {
+			return false;
+		}
+
+		/** @return <code>false</code>, as the edit cannot be redone. */
+		@Override
+		public boolean canRedo() {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the temporary file and deletes it. Regions already mapped remain readable until they are garbage collected, but the content should no longer be
+	 * used.
+	 * @throws IOException if there is an error closing the file.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			randomAccessFile.close();
+		} finally {
+			file.delete(); //on some platforms the file cannot be deleted while mapped; it will then be deleted when the virtual machine exits
+		}
+	}
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.globalmentor.swing.text.xml;
+
+import java.awt.Image;
+import java.awt.image.*;
+import java.net.URI;
+import java.util.*;
+
+import javax.sound.sampled.*;
+
+import static java.util.Objects.*;
+
+import com.globalmentor.log.Log;
+
+/**
+ * A resource cache bounded by the approximate number of bytes its resources occupy in memory. When storing a resource would exceed the byte budget, the least
+ * recently used resources are discarded until the budget is once again respected.
+ * <p>
+ * Several caches may share a single {@link Budget}, in which case the least recently used resources of all the caches sharing the budget are discarded first,
+ * while each cache keeps its own resources apart from those of the other caches. By default all caches share the {@link #getDefaultBudget() default budget},
+ * so that the memory used by resources remains bounded however many documents are open.
+ * </p>
+ * <p>
+ * Images are weighed by the size of their decoded pixel data, and audio clips by the size of their frames. Resources the weight of which cannot be determined
+ * are assigned {@link #UNKNOWN_WEIGHT}. A resource weighing more than the entire budget is not cached at all.
+ * </p>
+ * <p>
+ * Resources discarded by the cache itself, whether evicted, replaced, or cleared, are released using {@link #release(Object)}, which closes audio lines so that
+ * their system resources are freed. Audio lines that are still running are never evicted to make room for other resources, and a running line that is replaced
+ * or cleared is not closed until it stops. A resource removed using {@link #remove(URI)} is returned to the caller and is not released.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class LRUResourceCache implements ResourceCache {
+
+	/** The default maximum number of bytes to cache among all caches sharing the default budget. */
+	public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+	/** The weight assigned to a resource, such as an image that has not yet been loaded, the size of which cannot be determined. */
+	public static final long UNKNOWN_WEIGHT = 64L * 1024;
+
+	/** The number of bytes assumed for each pixel of an image that is not a buffered image. */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/** The budget shared by default among all caches. */
+	private static final Budget DEFAULT_BUDGET = new Budget(DEFAULT_MAX_WEIGHT);
+
+	/** @return The budget shared by default among all caches, the maximum weight of which may be changed using {@link Budget#setMaxWeight(long)}. */
+	public static Budget getDefaultBudget() {
+		return DEFAULT_BUDGET;
+	}
+
+	/** The budget from which this cache draws, which also serves as the lock for all caches sharing it. */
+	private final Budget budget;
+
+	/** @return The budget from which this cache draws. */
+	public Budget getBudget() {
+		return budget;
+	}
+
+	/** @return The maximum total weight, in bytes, of all resources cached by the caches sharing this cache's budget. */
+	public long getMaxWeight() {
+		return budget.getMaxWeight();
+	}
+
+	/** The current total weight, in bytes, of the resources cached by this cache. */
+	private long weight = 0;
+
+	/** @return The current total weight, in bytes, of the resources cached by this cache. */
+	public long getWeight() {
+		synchronized(budget) {
+			return weight;
+		}
+	}
+
+	/** The number of times a requested resource was found in the cache. */
+	private long hitCount = 0;
+
+	/** {@inheritDoc} */
+	public long getHitCount() {
+		synchronized(budget) {
+			return hitCount;
+		}
+	}
+
+	/** The number of times a requested resource was not found in the cache. */
+	private long missCount = 0;
+
+	/** {@inheritDoc} */
+	public long getMissCount() {
+		synchronized(budget) {
+			return missCount;
+		}
+	}
+
+	/** The number of resources of this cache that have been discarded to keep the budget within its bounds. */
+	private long evictionCount = 0;
+
+	/** {@inheritDoc} */
+	public long getEvictionCount() {
+		synchronized(budget) {
+			return evictionCount;
+		}
+	}
+
+	/** Default constructor that draws from the {@link #getDefaultBudget() default budget}. */
+	public LRUResourceCache() {
+		this(getDefaultBudget());
+	}
+
+	/**
+	 * Max weight constructor with a budget of its own.
+	 * @param maxWeight The maximum total weight, in bytes, of all cached resources.
+	 * @throws IllegalArgumentException if the given maximum weight is negative.
+	 */
+	public LRUResourceCache(final long maxWeight) {
+		this(new Budget(maxWeight));
+	}
+
+	/**
+	 * Budget constructor.
+	 * @param budget The budget from which this cache draws, which may be shared with other caches.
+	 * @throws NullPointerException if the given budget is <code>null</code>.
+	 */
+	public LRUResourceCache(final Budget budget) {
+		this.budget = requireNonNull(budget, "Budget cannot be null.");
+	}
+
+	/** {@inheritDoc} */
+	public Object get(final URI resourceURI) {
+		synchronized(budget) {
+			final CachedResource cachedResource = budget.cachedResourceMap.get(new CacheKey(this, resourceURI)); //get the cached resource, marking it as recently used
+			if(cachedResource != null) {
+				++hitCount;
+				return cachedResource.getResource();
+			} else {
+				++missCount;
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This implementation evicts the least recently used resources of all caches sharing the budget as needed to stay within the maximum weight.
+	 * Audio lines that are still running are not evicted, so the budget may be exceeded until they stop.
+	 */
+	public void put(final URI resourceURI, final Object resource) {
+		final long resourceWeight = getWeight(requireNonNull(resource, "Resource cannot be null."));
+		synchronized(budget) {
+			final Object replacedResource = remove(resourceURI); //remove any resource already cached for this URI
+			if(replacedResource != null && replacedResource != resource) { //if we are replacing a different resource, it is no longer needed
+				release(replacedResource);
+			}
+			final long maxWeight = budget.getMaxWeight();
+			if(resourceWeight > maxWeight) { //if this resource would never fit
+				Log.debug("Resource", resourceURI, "weighing", resourceWeight, "bytes exceeds the resource cache budget and will not be cached.");
+				return;
+			}
+			final Iterator<Map.Entry<CacheKey, CachedResource>> entryIterator = budget.cachedResourceMap.entrySet().iterator(); //least recently used resources come first
+			while(budget.weight + resourceWeight > maxWeight && entryIterator.hasNext()) { //evict resources until the new resource fits
+				final Map.Entry<CacheKey, CachedResource> entry = entryIterator.next();
+				final CachedResource evictedResource = entry.getValue();
+				if(isRunning(evictedResource.getResource())) { //don't stop a line that is still playing
+					continue;
+				}
+				entryIterator.remove();
+				final LRUResourceCache owner = entry.getKey().owner;
+				owner.weight -= evictedResource.getWeight();
+				budget.weight -= evictedResource.getWeight();
+				++owner.evictionCount;
+				owner.release(evictedResource.getResource());
+			}
+			budget.cachedResourceMap.put(new CacheKey(this, resourceURI), new CachedResource(resource, resourceWeight));
+			weight += resourceWeight;
+			budget.weight += resourceWeight;
+		}
+	}
+
+	/** {@inheritDoc} */
+	public Object remove(final URI resourceURI) {
+		synchronized(budget) {
+			final CachedResource cachedResource = budget.cachedResourceMap.remove(new CacheKey(this, resourceURI));
+			if(cachedResource != null) {
+				weight -= cachedResource.getWeight();
+				budget.weight -= cachedResource.getWeight();
+				return cachedResource.getResource();
+			}
+			return null;
+		}
+	}
+
+	/** {@inheritDoc} Only the resources of this cache are removed, even if its budget is shared with other caches. */
+	public void clear() {
+		synchronized(budget) {
+			for(final Iterator<Map.Entry<CacheKey, CachedResource>> entryIterator = budget.cachedResourceMap.entrySet().iterator(); entryIterator.hasNext();) {
+				final Map.Entry<CacheKey, CachedResource> entry = entryIterator.next();
+				if(entry.getKey().owner == this) { //if this resource belongs to this cache
+					entryIterator.remove();
+					budget.weight -= entry.getValue().getWeight();
+					release(entry.getValue().getResource());
+				}
+			}
+			weight = 0;
+		}
+	}
+
+	/**
+	 * Determines whether a resource is in active use and should therefore not be evicted. This version considers audio lines that are running to be in use.
+	 * @param resource The resource to check.
+	 * @return <code>true</code> if the resource is an audio line that is running.
+	 */
+	protected boolean isRunning(final Object resource) {
+		return resource instanceof DataLine && ((DataLine)resource).isRunning();
+	}
+
+	/**
+	 * Releases any system resources held by a resource the cache has discarded. This version closes audio lines such as clips, which hold an open audio device
+	 * line until closed. A line that is still running is closed once it stops.
+	 * @param resource The resource that was discarded.
+	 */
+	protected void release(final Object resource) {
+		if(resource instanceof Line) { //if this is an audio line, close it
+			final Line line = (Line)resource;
+			if(isRunning(line)) { //if the line is still playing, wait until it stops
+				final LineListener lineListener = new LineListener() {
+
+					public void update(final LineEvent lineEvent) {
+						if(lineEvent.getType() == LineEvent.Type.STOP) { //once the line stops, close it
+							line.removeLineListener(this);
+							line.close();
+						}
+					}
+				};
+				line.addLineListener(lineListener);
+				if(isRunning(line)) { //if the line is still running, the listener will close it
+					return;
+				}
+				line.removeLineListener(lineListener); //the line stopped before the listener was added
+			}
+			line.close();
+		}
+	}
+
+	/**
+	 * Determines the approximate number of bytes the given resource occupies in memory.
+	 * @param resource The resource to weigh.
+	 * @return The approximate size of the resource in bytes.
+	 */
+	protected long getWeight(final Object resource) {
+		if(resource instanceof BufferedImage) { //if this is a buffered image, use the size of its pixel data
+			final DataBuffer dataBuffer = ((BufferedImage)resource).getRaster().getDataBuffer();
+			return (long)dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+		} else if(resource instanceof Image) { //if this is some other image, estimate its size if its dimensions are known
+			final Image image = (Image)resource;
+			final int width = image.getWidth(null);
+			final int height = image.getHeight(null);
+			if(width >= 0 && height >= 0) { //if the image has been loaded enough to know its dimensions
+				return (long)width * height * BYTES_PER_PIXEL;
+			}
+		} else if(resource instanceof Clip) { //if this is an audio clip, use the size of its frames
+			final Clip clip = (Clip)resource;
+			final int frameLength = clip.getFrameLength();
+			final int frameSize = clip.getFormat().getFrameSize();
+			if(frameLength != AudioSystem.NOT_SPECIFIED && frameSize != AudioSystem.NOT_SPECIFIED) {
+				return (long)frameLength * frameSize;
+			}
+		}
+		return UNKNOWN_WEIGHT;
+	}
+
+	/** {@inheritDoc} This implementation returns the cache statistics. */
+	public String toString() {
+		synchronized(budget) {
+			return getClass().getSimpleName() + " [" + weight + " bytes, " + hitCount + " hits, " + missCount + " misses, " + evictionCount + " evictions; "
+					+ budget + "]";
+		}
+	}
+
+	/**
+	 * The maximum number of bytes that may be occupied by the resources of one or more caches, along with the resources of those caches in order of access. All
+	 * access to the budget and to the caches sharing it is synchronized on the budget.
+	 * @author Garret Wilson
+	 */
+	public static class Budget {
+
+		/** The maximum total weight, in bytes, of all cached resources. */
+		private long maxWeight;
+
+		/** @return The maximum total weight, in bytes, of all cached resources. */
+		public synchronized long getMaxWeight() {
+			return maxWeight;
+		}
+
+		/**
+		 * Sets the maximum total weight of all cached resources. Resources are not discarded until another resource is cached.
+		 * @param maxWeight The maximum total weight, in bytes, of all cached resources.
+		 * @throws IllegalArgumentException if the given maximum weight is negative.
+		 */
+		public synchronized void setMaxWeight(final long maxWeight) {
+			if(maxWeight < 0) {
+				throw new IllegalArgumentException("Invalid maximum cache weight " + maxWeight);
+			}
+			this.maxWeight = maxWeight;
+		}
+
+		/** The current total weight, in bytes, of all cached resources. */
+		private long weight = 0;
+
+		/** @return The current total weight, in bytes, of all cached resources. */
+		public synchronized long getWeight() {
+			return weight;
+		}
+
+		/** The map of resources cached by all caches sharing the budget, in order of access from least recently used to most recently used. */
+		private final LinkedHashMap<CacheKey, CachedResource> cachedResourceMap = new LinkedHashMap<CacheKey, CachedResource>(16, 0.75f, true);
+
+		/**
+		 * Max weight constructor.
+		 * @param maxWeight The maximum total weight, in bytes, of all cached resources.
+		 * @throws IllegalArgumentException if the given maximum weight is negative.
+		 */
+		public Budget(final long maxWeight) {
+			setMaxWeight(maxWeight);
+		}
+
+		/** {@inheritDoc} This implementation returns the budget statistics. */
+		public synchronized String toString() {
+			return getClass().getSimpleName() + " [" + cachedResourceMap.size() + " resources, " + weight + "/" + maxWeight + " bytes]";
+		}
+	}
+
+	/**
+	 * The key to a resource in a budget, identifying the cache to which the resource belongs along with the URI of the resource.
+	 * @author Garret Wilson
+	 */
+	private static final class CacheKey {
+
+		/** The cache to which the resource belongs. */
+		final LRUResourceCache owner;
+
+		/** The URI of the resource. */
+		final URI resourceURI;
+
+		/**
+		 * Constructor.
+		 * @param owner The cache to which the resource belongs.
+		 * @param resourceURI The URI of the resource.
+		 */
+		CacheKey(final LRUResourceCache owner, final URI resourceURI) {
+			this.owner = owner;
+			this.resourceURI = resourceURI;
+		}
+
+		/** {@inheritDoc} This implementation compares the caches by identity and the URIs by value. */
+		public boolean equals(final Object object) {
+			if(!(object instanceof CacheKey)) {
+				return false;
+			}
+			final CacheKey cacheKey = (CacheKey)object;
+			return owner == cacheKey.owner && Objects.equals(resourceURI, cacheKey.resourceURI);
+		}
+
+		/** {@inheritDoc} */
+		public int hashCode() {
+			return System.identityHashCode(owner) * 31 + Objects.hashCode(resourceURI);
+		}
+	}
+
+	/**
+	 * A resource stored in the cache along with its weight.
+	 * @author Garret Wilson
+	 */
+	protected static class CachedResource {
+
+		/** The cached resource. */
+		private final Object resource;
+
+		/** @return The cached resource. */
+		public Object getResource() {
+			return resource;
+		}
+
+		/** The weight of the resource, in bytes. */
+		private final long weight;
+
+		/** @return The weight of the resource, in bytes. */
+		public long getWeight() {
+			return weight;
+		}
+
+		/**
+		 * Constructor.
+		 * @param resource The cached resource.
+		 * @param weight The weight of the resource, in bytes.
+		 */
+		public CachedResource(final Object resource, final long weight) {
+			this.resource = resource;
+			this.weight = weight;
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml;
+
+import java.net.URI;
+
+/**
+ * A cache of loaded resources such as images and audio clips, keyed to the URIs from which they were loaded.
+ * <p>
+ * Implementations must be safe for access from multiple threads.
+ * </p>
+ * @author Garret Wilson
+ * @see XMLDocument#setResourceCache(ResourceCache)
+ */
+public interface ResourceCache {
+
+	/**
+	 * Retrieves a cached resource.
+	 * @param resourceURI The URI of the requested resource.
+	 * @return The cached resource, or <code>null</code> if the resource is not cached.
+	 */
+	public Object get(final URI resourceURI);
+
+	/**
+	 * Stores a resource in the cache, replacing any resource already cached for the same URI. The cache may discard this or other resources at any time, and
+	 * may release resources it discards, such as by closing audio lines.
+	 * @param resourceURI The URI of the resource being cached.
+	 * @param resource The resource to cache.
+	 */
+	public void put(final URI resourceURI, final Object resource);
+
+	/**
+	 * Removes a resource from the cache.
+	 * @param resourceURI The URI of the resource to remove.
+	 * @return The resource that was cached, or <code>null</code> if no resource was cached for the given URI.
+	 */
+	public Object remove(final URI resourceURI);
+
+	/** Removes all resources from the cache. */
+	public void clear();
+
+	/** @return The number of times a requested resource was found in the cache. */
+	public long getHitCount();
+
+	/** @return The number of times a requested resource was not found in the cache. */
+	public long getMissCount();
+
+	/** @return The number of resources that have been discarded to keep the cache within its bounds. */
+	public long getEvictionCount();
+
+}
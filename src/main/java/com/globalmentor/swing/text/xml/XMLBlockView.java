@@ -20,6 +20,7 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import javax.swing.event.DocumentEvent;
 import javax.swing.text.*;
 
 import static com.globalmentor.swing.text.SwingText.*;
@@ -223,11 +224,10 @@ protected static Element createAnonymousBlockElement(final Element parentElement
 	 * <code>Graphics</code> will be rendered. This version correctly paints XML CSS style.
 	 * @param graphics The rendering surface to use.
 	 * @param allocation The allocated region to render into.
-	 * @see XMLCSSViewPainter#paint
+	 * @see XMLCSSViewPainter#paint(Graphics, Shape, View, XMLCSSPaintStyle)
 	 */
 	public void paint(final Graphics graphics, Shape allocation) {
-		synchronize(); //make sure we have the correct cached property values
-		XMLCSSViewPainter.paint(graphics, allocation, this, getAttributes()); //paint our CSS-specific parts (newswing) TODO decide whether we want to pass the attributes or not
+		XMLCSSViewPainter.paint(graphics, allocation, this, getPaintStyle()); //paint our CSS-specific parts (newswing)
 		super.paint(graphics, allocation); //do the default painting
 	}
 
@@ -311,8 +311,37 @@ protected void synchronize() {
 			setPropertiesFromAttributes(); //calculate our properties from our attributes
 	}
 
+	/** The resolved paint style, or <code>null</code> if the paint style has not been resolved since the attributes were last examined. */
+	private XMLCSSPaintStyle paintStyle = null;
+
+	/**
+	 * Retrieves the paint style of the view, resolving it from the attributes if needed.
+	 * @return The current paint style of the view.
+	 */
+	protected XMLCSSPaintStyle getPaintStyle() {
+		synchronize(); //make sure we have the correct cached property values
+		if(paintStyle == null || !paintStyle.isCurrent(this)) { //if the paint style hasn't been resolved or is stale
+			paintStyle = new XMLCSSPaintStyle(this, getAttributes());
+		}
+		return paintStyle;
+	}
+
+	/**
+	 * Gives notification from the document that attributes were changed in a location that this view is responsible for. This version makes sure the cached
+	 * properties will be set again from the attributes.
+	 * @param changes The change information from the associated document.
+	 * @param allocation The current allocation of the view.
+	 * @param viewFactory The factory to use to rebuild if the view has children.
+	 * @see View#changedUpdate
+	 */
+	public void changedUpdate(final DocumentEvent changes, final Shape allocation, final ViewFactory viewFactory) {
+		cacheSynchronized = false; //the cached properties may no longer reflect the attributes
+		super.changedUpdate(changes, allocation, viewFactory);
+	}
+
 	/** Sets the cached properties from the attributes. */
 	protected void setPropertiesFromAttributes() {
+		paintStyle = null; //the paint style will be resolved again when needed
 		final AttributeSet attributeSet = getAttributes(); //get our attributes
 		if(attributeSet != null) { //if we have attributes
 		//TODO del Log.trace("*****Inside XMLBlockView.setPropertiesFromAttributes() for element: "+XMLStyleConstants.getXMLElementName(attributeSet));  //TODO del
@@ -16,18 +16,26 @@
 
 package com.globalmentor.swing.text.xml;
 
-import java.awt.Image; //TODO del when loading routines are placed elsewhere
+import java.awt.Dimension;
+import java.awt.Image;
 import java.awt.Toolkit; //TODO del when loading routines are placed elsewhere
-import java.lang.ref.*;
+import java.awt.image.BufferedImage;
 import static java.text.MessageFormat.*;
+import static java.util.Objects.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.*;
 import java.io.*;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.sound.sampled.*;
 import javax.swing.event.*;
 import javax.swing.text.*;
 
 import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSStyleRule;
 import org.w3c.dom.css.CSSStyleSheet;
 
 import com.globalmentor.io.*;
@@ -55,6 +63,9 @@ public class XMLDocument extends BasicStyledDocument {
 	/** The task of applying a stylesheet. */
 	public static final String APPLY_STYLESHEET_TASK = "applyStylesheet";
 
+	/** The task of creating the document structure. */
+	public static final String CREATE_TASK = "create";
+
 	/**
 	 * The character used to mark the end of an element so that caret positioning will work correctly at the end of block views.
 	 */
@@ -69,35 +80,56 @@ public class XMLDocument extends BasicStyledDocument {
 	//TODO fix static final char ELEMENT_END_CHAR=CharacterConstants.ZERO_WIDTH_NO_BREAK_SPACE_CHAR;	
 	//TODO fix	final static char ELEMENT_END_CHAR=CharacterConstants.PARAGRAPH_SIGN_CHAR;	
 
-	/** A map of soft references to resources that have been loaded. */
-	private final Map<URI, Reference<Object>> resourceReferenceMap = new HashMap<URI, Reference<Object>>();
+	/** Whether the document is being created from an element structure. */
+	private volatile boolean loading = false;
 
 	/**
-	 * Returns a cached resource identified by the URI, if the object's memory has not been reclaimed.
+	 * Returns whether the document is being created from an element structure, as by {@link #create(ElementSpec[])} or
+	 * {@link #createIncrementally(ElementSpec[], int)}. A finished progress event for the {@link #CREATE_TASK} is fired once the document has been created.
+	 * @return Whether the document is being created, in which case its content is not yet complete.
+	 */
+	public boolean isLoading() {
+		return loading;
+	}
+
+	/** The cache of resources that have been loaded, which by default belongs to this document alone but draws from the budget shared by all documents. */
+	private volatile ResourceCache resourceCache = new LRUResourceCache();
+
+	/** @return The cache of resources that have been loaded. */
+	public ResourceCache getResourceCache() {
+		return resourceCache;
+	}
+
+	/**
+	 * Sets the cache of resources that have been loaded. By default each document has its own cache, as cached resources such as audio clips have state that
+	 * should not be shared with other documents, while the memory used by the caches of all documents is bounded by the
+	 * {@link LRUResourceCache#getDefaultBudget() default budget}. A cache should only be shared among documents that do not use such resources.
+	 * @param resourceCache The cache to use for loaded resources.
+	 * @throws NullPointerException if the given resource cache is <code>null</code>.
+	 */
+	public void setResourceCache(final ResourceCache resourceCache) {
+		this.resourceCache = requireNonNull(resourceCache, "Resource cache cannot be null.");
+	}
+
+	/**
+	 * Returns a cached resource identified by the URI, if the resource is still cached.
 	 * @param resourceURI The URI of the requested resource.
-	 * @return The resource, if it has been cached and is still referenced in the JVM, or <code>null</code> if the resource's memory has been reclaimed or the
-	 *         object has never been cached.
+	 * @return The resource, if it has been cached and has not been evicted, or <code>null</code> if the resource has been evicted from the cache or the object
+	 *         has never been cached.
+	 * @see #getResourceCache()
 	 */
 	protected Object getCachedResource(final URI resourceURI) {
-		final Reference<Object> resourceReference = resourceReferenceMap.get(resourceURI); //return a reference to the cached resource, if available
-		if(resourceReference != null) { //if we found a reference to the resource
-			final Object resource = resourceReference.get(); //get the resource itself
-			if(resource != null) //if we still have the resource cached
-				return resource; //return the resource
-			else
-				resourceReferenceMap.remove(resourceURI); //remove the reference from the cache, since it is no longer useful
-		}
-		return null; //show that either the object wasn't cached, or its memory has been reclaimed
+		return getResourceCache().get(resourceURI);
 	}
 
 	/**
-	 * Stores a resource as a reference in the cache. The resource will only stay in the cache until the JVM decides its needs to reclaim its memory.
+	 * Stores a resource in the cache. The resource will only stay in the cache until the cache decides it needs room for other resources.
 	 * @param resourceURI The URI of the resource being cached.
 	 * @param resource The resource to cache.
+	 * @see #getResourceCache()
 	 */
 	protected void putCachedResource(final URI resourceURI, final Object resource) {
-		//store the resource in the map as a soft reference
-		resourceReferenceMap.put(resourceURI, new SoftReference<Object>(resource));
+		getResourceCache().put(resourceURI, resource);
 	}
 
 	/** The object that applies stylesheets to the document. */
@@ -119,6 +151,17 @@ public XMLDocument(final URIInputStreamable uriInputStreamable) {
 		swingStylesheetApplier = new SwingXMLCSSStylesheetApplier(); //create a new Swing stylesheet applier
 	}
 
+	/**
+	 * Content constructor.
+	 * @param content The container for the content, such as {@link com.globalmentor.swing.text.CompactContent} for large documents that are mostly read.
+	 * @param uriInputStreamable The source of input streams for resources.
+	 * @throws NullPointerException if the new source of input streams is <code>null</code>.
+	 */
+	public XMLDocument(final Content content, final URIInputStreamable uriInputStreamable) {
+		super(content, new XMLCSSStyleContext(), uriInputStreamable); //construct the parent class, specifying our own type of style context that knows how to deal with CSS attributes
+		swingStylesheetApplier = new SwingXMLCSSStylesheetApplier(); //create a new Swing stylesheet applier
+	}
+
 	/**
 	 * Constructs an html document with the default content storage implementation and the given style/attribute storage mechanism.
 	 *
@@ -247,9 +290,9 @@ public Object getResource(final String href)
 
 	/**
 	 * Gets a particular resource from the given location. If the resource is cached, the cached copy will be returned. If the document is loaded, it will be
-	 * stored in the local weak cache. The return types for particular media types are as follows:
+	 * stored in the resource cache. The return types for particular media types are as follows:
 	 * <ul>
-	 * <li>image/* - <code>java.awt.Image</code> The image may not be loaded.</li>
+	 * <li>image/* - <code>java.awt.image.BufferedImage</code> The image will have been completely decoded.</li>
 	 * <li>audio/* - <code>javax.sound.sampled.Line</code> Usually this will be of type <code>javax.sound.sampled.Clip</code> and will have been opened.</li>
 	 * </ul>
 	 * @param href The specified location of the resource.
@@ -268,9 +311,9 @@ public Object getResource(final String href) throws URISyntaxException, IOExcept
 
 	/**
 	 * Gets a particular resource from the given location. If the resource is cached, the cached copy will be returned. If the document is loaded, it will be
-	 * stored in the local weak cache. The return types for particular media types are as follows:
+	 * stored in the resource cache. The return types for particular media types are as follows:
 	 * <ul>
-	 * <li>image/* - <code>java.awt.Image</code> The image may not be loaded.</li>
+	 * <li>image/* - <code>java.awt.image.BufferedImage</code> The image will have been completely decoded.</li>
 	 * <li>audio/* - <code>javax.sound.sampled.Line</code> Usually this will be of type <code>javax.sound.sampled.Clip</code> and will have been opened.</li>
 	 * </ul>
 	 * @param uri The URI location of the resource.
@@ -279,8 +322,22 @@ public Object getResource(final String href) throws URISyntaxException, IOExcept
 	 * @throws IOException Thrown if the specified resource cannot be retrieved.
 	 */
 	protected Object getResource(final URI uri, final ContentType mediaType) throws IOException {
+		return getResource(uri, mediaType, null); //get the resource at full size
+	}
+
+	/**
+	 * Gets a particular resource from the given location, decoding an image only at the resolution needed to display it at the given size. If the resource is
+	 * cached at a sufficient resolution, the cached copy will be returned.
+	 * @param uri The URI location of the resource.
+	 * @param mediaType The media type of the resource.
+	 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image should be decoded at full size.
+	 * @return The specified resource.
+	 * @throws IOException Thrown if the specified resource cannot be retrieved.
+	 * @see #getResource(URI, ContentType)
+	 */
+	protected Object getResource(final URI uri, final ContentType mediaType, final Dimension targetSize) throws IOException {
 		Object resource = getCachedResource(uri); //see if the resource is cached
-		if(resource != null) { //if the resource was cached
+		if(resource != null && isImageSizeSufficient(resource, targetSize)) { //if the resource was cached with enough detail
 			if(resource instanceof Clip) { //if this resource is a clip TODO hack; fix to have a special getClip() method
 				final Clip clip = (Clip)resource; //cast the resource to a clip
 				if(clip.isRunning()) //if the clip is already running
@@ -290,7 +347,248 @@ protected Object getResource(final URI uri, final ContentType mediaType) throws
 			return resource; //return the resource
 		} else
 			//if the resource wasn't cached
-			return loadResource(uri, mediaType); //load and return the resource
+			return loadResourceOnce(uri, mediaType, targetSize); //load and return the resource, sharing any load already in progress
+	}
+
+	/** The identities of decoded images that were subsampled, mapped to the subsampling factor used. */
+	private static final Map<Image, Integer> imageSubsamplingMap = Collections.synchronizedMap(new WeakHashMap<Image, Integer>());
+
+	/**
+	 * Determines whether the given resource has enough detail to be displayed at the given size. Resources other than images, and images that have not been
+	 * subsampled, are always sufficient.
+	 * @param resource The resource to check.
+	 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image should be at full size.
+	 * @return <code>true</code> if the resource may be used for the given size.
+	 */
+	public static boolean isImageSizeSufficient(final Object resource, final Dimension targetSize) {
+		if(!imageSubsamplingMap.containsKey(resource)) { //if this isn't a subsampled image
+			return true;
+		}
+		if(targetSize == null) { //a subsampled image is never enough if the full image is needed
+			return false;
+		}
+		final Image image = (Image)resource;
+		return image.getWidth(null) >= targetSize.width && image.getHeight(null) >= targetSize.height;
+	}
+
+	/**
+	 * Determines the factor by which an image should be subsampled so that it is at least as large as the given target size, but less than twice as large along
+	 * either axis.
+	 * @param width The width of the source image.
+	 * @param height The height of the source image.
+	 * @param targetSize The size at which the image will be displayed, or <code>null</code> if the image should not be subsampled.
+	 * @return The number of source pixels to skip in each direction for each decoded pixel; <code>1</code> for no subsampling.
+	 */
+	protected static int getImageSubsampling(final int width, final int height, final Dimension targetSize) {
+		if(targetSize == null || targetSize.width <= 0 || targetSize.height <= 0) { //if there's no usable target size
+			return 1;
+		}
+		return Math.max(Math.min(width / targetSize.width, height / targetSize.height), 1); //round down so that the image remains at least as large as the target
+	}
+
+	/**
+	 * Determines the dimensions of an image without decoding the image data. If the image is cached at full size, its dimensions are returned directly.
+	 * @param href The specified location of the image.
+	 * @return The width and height of the image.
+	 * @throws URISyntaxException Thrown if the given location results in a syntactically incorrect URI.
+	 * @throws IOException Thrown if the image cannot be read or is in an unrecognized format.
+	 */
+	public Dimension getImageSize(final String href) throws URISyntaxException, IOException {
+		final URI resourceURI = getResourceURI(href); //create a URI based upon the base URI and the given file location
+		final Object cachedResource = getCachedResource(resourceURI); //see if the image is cached
+		if(cachedResource instanceof Image && !imageSubsamplingMap.containsKey(cachedResource)) { //if we have the full image already
+			final Image image = (Image)cachedResource;
+			return new Dimension(image.getWidth(null), image.getHeight(null));
+		}
+		final InputStream resourceInputStream = getResourceAsInputStream(resourceURI); //get an input stream to the resource
+		try {
+			final ImageReader imageReader = getImageReader(new MemoryCacheImageInputStream(resourceInputStream), resourceURI); //don't let ImageIO cache the stream on disk
+			try {
+				return new Dimension(imageReader.getWidth(0), imageReader.getHeight(0)); //only the image header will be read
+			} finally {
+				imageReader.dispose();
+			}
+		} finally {
+			resourceInputStream.close(); //always close the input stream after we're finished with it
+		}
+	}
+
+	/**
+	 * Retrieves a reader for the given image input stream and sets its input.
+	 * @param imageInputStream The stream containing the image.
+	 * @param resourceURI The URI of the image, for error reporting.
+	 * @return A reader for the image, which should be disposed of when no longer needed.
+	 * @throws IOException if no reader recognizes the image format.
+	 */
+	protected static ImageReader getImageReader(final ImageInputStream imageInputStream, final URI resourceURI) throws IOException {
+		final Iterator<ImageReader> imageReaderIterator = ImageIO.getImageReaders(imageInputStream);
+		if(!imageReaderIterator.hasNext()) { //if no image reader recognizes the data
+			throw new IOException("Unable to decode image " + resourceURI + "."); //TODO i18n
+		}
+		final ImageReader imageReader = imageReaderIterator.next();
+		imageReader.setInput(imageInputStream, true, true); //we'll only read the first image, and we don't need metadata
+		return imageReader;
+	}
+
+	/** The map of resource loads currently in progress, keyed to the URIs and target sizes of the resources being loaded. */
+	private final ConcurrentMap<ResourceLoadKey, FutureTask<Object>> resourceLoadMap = new ConcurrentHashMap<ResourceLoadKey, FutureTask<Object>>();
+
+	/**
+	 * The key of a resource load in progress. Because the subsampling factor of an image is determined by its target size, loads of the same resource for
+	 * different target sizes are kept separate, so that a request for a full-size image never receives an image subsampled for some other request.
+	 * @author Garret Wilson
+	 */
+	private static final class ResourceLoadKey {
+
+		/** The URI of the resource. */
+		final URI resourceURI;
+
+		/** The size at which an image will be displayed, or <code>null</code> if an image will be decoded at full size. */
+		final Dimension targetSize;
+
+		/**
+		 * Constructor.
+		 * @param resourceURI The URI of the resource.
+		 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image will be decoded at full size.
+		 */
+		ResourceLoadKey(final URI resourceURI, final Dimension targetSize) {
+			this.resourceURI = resourceURI;
+			this.targetSize = targetSize != null ? new Dimension(targetSize) : null; //copy the size, as dimensions are mutable
+		}
+
+		/** {@inheritDoc} This implementation compares the URIs and target sizes by value. */
+		public boolean equals(final Object object) {
+			if(!(object instanceof ResourceLoadKey)) {
+				return false;
+			}
+			final ResourceLoadKey resourceLoadKey = (ResourceLoadKey)object;
+			return java.util.Objects.equals(resourceURI, resourceLoadKey.resourceURI) && java.util.Objects.equals(targetSize, resourceLoadKey.targetSize);
+		}
+
+		/** {@inheritDoc} */
+		public int hashCode() {
+			return java.util.Objects.hashCode(resourceURI) * 31 + java.util.Objects.hashCode(targetSize);
+		}
+	}
+
+	/** The shared executor for loading and decoding resources in the background, or <code>null</code> if it has not yet been created. */
+	private static ExecutorService resourceLoadExecutor = null;
+
+	/**
+	 * Returns the shared executor for loading and decoding resources in the background. The executor uses a bounded number of daemon threads, leaving one
+	 * available processor for the event dispatch thread, and is created the first time it is needed.
+	 * @return The executor for loading resources.
+	 */
+	protected static synchronized ExecutorService getResourceLoadExecutor() {
+		if(resourceLoadExecutor == null) { //if we haven't yet created the executor
+			final AtomicInteger threadCount = new AtomicInteger(0); //keep track of the threads we create so that we can name them
+			resourceLoadExecutor = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, XMLDocument.class.getSimpleName() + "-resourceLoad-" + threadCount.incrementAndGet());
+					thread.setDaemon(true); //don't keep the application from exiting
+					thread.setPriority(Thread.NORM_PRIORITY - 1); //let painting and input take precedence over decoding
+					return thread;
+				}
+			});
+		}
+		return resourceLoadExecutor;
+	}
+
+	/**
+	 * Gets a particular resource from the given location in the background. If the resource is cached, the returned future will already be done. Otherwise the
+	 * resource will be loaded and decoded on a background thread, sharing any load of the same resource already in progress.
+	 * <p>
+	 * The given task, if any, is executed on the background thread once the resource has been loaded or loading has failed, allowing the caller to schedule a
+	 * repaint, for example.
+	 * </p>
+	 * @param href The specified location of the resource.
+	 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image should be decoded at full size.
+	 * @param completionTask The task to run after the resource is loaded or loading fails, or <code>null</code> if no task should be run.
+	 * @return A future for retrieving the resource.
+	 * @throws URISyntaxException Thrown if the given location results in a syntactically incorrect URI.
+	 * @throws IOException Thrown if the media type of the resource is not recognized.
+	 * @see #getResource(String)
+	 */
+	public Future<Object> getResourceLater(final String href, final Dimension targetSize, final Runnable completionTask) throws URISyntaxException, IOException {
+		final ContentType mediaType = getResourceMediaType(href); //get the media type of the resource
+		if(mediaType == null) { //if we don't know the media type of the resource
+			throw new IOException(href + " has an unrecognized media type."); //TODO i18n
+		}
+		final URI resourceURI = getResourceURI(href); //create a URI based upon the base URI and the given file location
+		final Object cachedResource = getCachedResource(resourceURI); //see if the resource is already cached
+		if(cachedResource != null && isImageSizeSufficient(cachedResource, targetSize)) { //if we already have the resource, there's no need to go to the background
+			final FutureTask<Object> cachedResourceTask = new FutureTask<Object>(new Callable<Object>() {
+
+				public Object call() {
+					return cachedResource;
+				}
+			});
+			cachedResourceTask.run(); //complete the future immediately
+			return cachedResourceTask;
+		}
+		final FutureTask<Object> resourceLoadTask = new FutureTask<Object>(new Callable<Object>() {
+
+			public Object call() throws IOException {
+				return getResource(resourceURI, mediaType, targetSize); //get the resource in the background
+			}
+		}) {
+
+			@Override
+			protected void done() {
+				if(completionTask != null) { //let the caller know we're finished
+					completionTask.run();
+				}
+			}
+		};
+		getResourceLoadExecutor().execute(resourceLoadTask);
+		return resourceLoadTask;
+	}
+
+	/**
+	 * Loads a particular resource, making sure that only one thread loads the resource for a given target size at a time. If another thread is already loading
+	 * the resource for the same target size, this method waits for that thread to finish and returns the resource it loaded.
+	 * @param resourceURI The specified location of the resource.
+	 * @param mediaType The media type of the resource.
+	 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image should be decoded at full size.
+	 * @return The specified resource.
+	 * @throws IOException Thrown if the specified resource cannot be retrieved, or if the thread is interrupted while waiting for the resource.
+	 * @see #loadResource(URI, ContentType, Dimension)
+	 */
+	protected Object loadResourceOnce(final URI resourceURI, final ContentType mediaType, final Dimension targetSize) throws IOException {
+		final FutureTask<Object> resourceLoadTask = new FutureTask<Object>(new Callable<Object>() {
+
+			public Object call() throws IOException {
+				return loadResource(resourceURI, mediaType, targetSize); //load the resource, which caches it as well
+			}
+		});
+		final ResourceLoadKey resourceLoadKey = new ResourceLoadKey(resourceURI, targetSize); //only share loads that decode images with the same subsampling
+		FutureTask<Object> resourceLoad = resourceLoadMap.putIfAbsent(resourceLoadKey, resourceLoadTask); //see if someone else is already loading this resource at this size
+		if(resourceLoad == null) { //if we're the first to request this resource
+			resourceLoad = resourceLoadTask;
+			try {
+				resourceLoadTask.run(); //load the resource in this thread
+			} finally {
+				resourceLoadMap.remove(resourceLoadKey, resourceLoadTask); //later requests will find the resource in the cache
+			}
+		}
+		try {
+			return resourceLoad.get(); //get the loaded resource, waiting for another thread to load it if needed
+		} catch(final InterruptedException interruptedException) {
+			Thread.currentThread().interrupt(); //restore the interrupted status
+			throw (IOException)new InterruptedIOException("Interrupted while waiting for " + resourceURI + " to load.").initCause(interruptedException); //TODO i18n
+		} catch(final ExecutionException executionException) {
+			final Throwable cause = executionException.getCause();
+			if(cause instanceof IOException) { //pass along errors loading the resource
+				throw (IOException)cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw (IOException)new IOException(cause.getMessage()).initCause(cause);
+		}
 	}
 
 	/**
@@ -354,10 +652,10 @@ public InputStream getResourceAsInputStream(final URI uri) throws IOException {
 	}
 
 	/**
-	 * Loads a particular resource from the given location. The loaded resource will be stored in the local weak cache. The return types for particular media
+	 * Loads a particular resource from the given location. The loaded resource will be stored in the resource cache. The return types for particular media
 	 * types are as follows:
 	 * <ul>
-	 * <li>image/* - <code>java.awt.Image</code> The image may not be loaded.</li>
+	 * <li>image/* - <code>java.awt.image.BufferedImage</code> The image will have been completely decoded.</li>
 	 * <li>audio/* - <code>javax.sound.sampled.Line</code> Usually this will be of type <code>javax.sound.sampled.Clip</code> and will have been opened.</li>
 	 * </ul>
 	 * @param resourceURI The specified location of the resource.
@@ -365,7 +663,22 @@ public InputStream getResourceAsInputStream(final URI uri) throws IOException {
 	 * @return The specified resource.
 	 * @throws IOException Thrown if the specified resource cannot be retrieved.
 	 */
-	protected Object loadResource(final URI resourceURI, final ContentType mediaType) throws IOException { //TODO change this to loadImage, loadClip, etc.
+	protected Object loadResource(final URI resourceURI, final ContentType mediaType) throws IOException {
+		return loadResource(resourceURI, mediaType, null); //load the resource at full size
+	}
+
+	/**
+	 * Loads a particular resource from the given location, decoding an image only at the resolution needed to display it at the given size. An image much larger
+	 * than the target size is decoded using source subsampling, so that the decoded image is at least as large as the target size but less than twice as large
+	 * along either axis. The loaded resource will be stored in the resource cache.
+	 * @param resourceURI The specified location of the resource.
+	 * @param mediaType The media type of the resource.
+	 * @param targetSize The size at which an image will be displayed, or <code>null</code> if an image should be decoded at full size.
+	 * @return The specified resource.
+	 * @throws IOException Thrown if the specified resource cannot be retrieved.
+	 * @see #loadResource(URI, ContentType)
+	 */
+	protected Object loadResource(final URI resourceURI, final ContentType mediaType, final Dimension targetSize) throws IOException { //TODO change this to loadImage, loadClip, etc.
 		Object resource; //this will be assigned if we run into no errors
 		if(mediaType.getPrimaryType().equals(ContentType.IMAGE_PRIMARY_TYPE)) { //if this is an image
 			final String mediaSubType = mediaType.getSubType(); //get the media sub-type
@@ -383,10 +696,22 @@ protected Object loadResource(final URI resourceURI, final ContentType mediaType
 				*/
 				final InputStream resourceInputStream = getResourceAsInputStream(resourceURI); //get an input stream to the resource
 				try {
-					final byte[] imageBytes = InputStreams.getBytes(resourceInputStream); //read the bytes from the input stream
-					final Toolkit toolkit = Toolkit.getDefaultToolkit(); //get the default toolkit
-					final Image image = toolkit.createImage(imageBytes); //create an image from the bytes
-					resource = image; //TODO testing
+					final ImageReader imageReader = getImageReader(new MemoryCacheImageInputStream(resourceInputStream), resourceURI); //don't let ImageIO cache the stream on disk
+					try {
+						final ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+						final int subsampling = getImageSubsampling(imageReader.getWidth(0), imageReader.getHeight(0), targetSize); //see how much detail we need
+						if(subsampling > 1) { //if the image is much larger than it will be displayed, only decode some of its pixels
+							imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+						}
+						//decode the image completely now, so that painting never has to wait for the image to load
+						final BufferedImage image = imageReader.read(0, imageReadParam);
+						if(subsampling > 1) { //remember that this image doesn't have full detail
+							imageSubsamplingMap.put(image, Integer.valueOf(subsampling));
+						}
+						resource = image;
+					} finally {
+						imageReader.dispose();
+					}
 				} finally {
 					resourceInputStream.close(); //always close the input stream after we're finished with it
 				}
@@ -430,6 +755,121 @@ protected void insert(int offset, ElementSpec[] data) throws BadLocationExceptio
 		super.insert(offset, data);
 	}
 
+	/**
+	 * The map of elements with target URIs, keyed to their target URIs. This map is only accessed while holding a lock on the document.
+	 * @see XMLStyles#TARGET_URI_ATTRIBUTE_NAME
+	 */
+	private final Map<URI, Element> targetURIElementMap = new HashMap<URI, Element>();
+
+	/**
+	 * Updates the target URI index from the elements added and removed by a change to the document. Only the elements overlapping the changed content are
+	 * examined for element changes; the target URIs of each removed element and its descendants are removed from the index, and those of each added element and
+	 * its descendants are indexed. The caller must hold the document write lock.
+	 * @param event The event describing the change, including its element changes.
+	 * @see XMLStyles#getTargetURI(AttributeSet)
+	 */
+	protected void updateTargetURIs(final DocumentEvent event) {
+		final int startOffset = event.getOffset();
+		final int endOffset = event.getType() == DocumentEvent.EventType.INSERT ? startOffset + event.getLength() : startOffset; //removed content no longer has a range
+		updateTargetURIs(event, getDefaultRootElement(), startOffset, endOffset);
+	}
+
+	/**
+	 * Updates the target URI index from the element changes of the given element and of its descendants overlapping the given range.
+	 * @param event The event describing the change, including its element changes.
+	 * @param element The element the changes of which should be examined.
+	 * @param startOffset The start of the changed content.
+	 * @param endOffset The end of the changed content.
+	 */
+	private void updateTargetURIs(final DocumentEvent event, final Element element, final int startOffset, final int endOffset) {
+		final DocumentEvent.ElementChange elementChange = event.getChange(element); //see if the children of this element changed
+		if(elementChange != null) {
+			for(final Element removedElement : elementChange.getChildrenRemoved()) {
+				unindexTargetURIs(removedElement);
+			}
+			for(final Element addedElement : elementChange.getChildrenAdded()) {
+				indexTargetURIs(addedElement);
+			}
+		}
+		final int childElementCount = element.getElementCount();
+		if(!element.isLeaf() && childElementCount > 0) { //look for changes in the children that overlap the change, including any child that ends where the change begins
+			final int firstChildElementIndex = Math.max(element.getElementIndex(Math.max(startOffset - 1, 0)), 0);
+			final int lastChildElementIndex = Math.min(element.getElementIndex(endOffset), childElementCount - 1);
+			for(int childElementIndex = firstChildElementIndex; childElementIndex <= lastChildElementIndex; ++childElementIndex) {
+				updateTargetURIs(event, element.getElement(childElementIndex), startOffset, endOffset);
+			}
+		}
+	}
+
+	/**
+	 * Indexes the target URIs of the given element and its descendants. If more than one element has the same target URI, the first element in the document is
+	 * indexed.
+	 * @param element The element to index.
+	 */
+	private void indexTargetURIs(final Element element) {
+		final URI targetURI = XMLStyles.getTargetURI(element.getAttributes()); //see if this element has a target URI
+		if(targetURI != null) {
+			final Element indexedElement = targetURIElementMap.get(targetURI);
+			if(indexedElement == null || element.getStartOffset() < indexedElement.getStartOffset()) { //keep the first element with this target URI
+				targetURIElementMap.put(targetURI, element);
+			}
+		}
+		for(int childElementIndex = 0, childElementCount = element.getElementCount(); childElementIndex < childElementCount; ++childElementIndex) {
+			indexTargetURIs(element.getElement(childElementIndex));
+		}
+	}
+
+	/**
+	 * Removes the given element and its descendants from the target URI index.
+	 * @param element The element that was removed from the document.
+	 */
+	private void unindexTargetURIs(final Element element) {
+		final URI targetURI = XMLStyles.getTargetURI(element.getAttributes()); //see if this element has a target URI
+		if(targetURI != null && targetURIElementMap.get(targetURI) == element) { //if this element was indexed
+			targetURIElementMap.remove(targetURI);
+		}
+		for(int childElementIndex = 0, childElementCount = element.getElementCount(); childElementIndex < childElementCount; ++childElementIndex) {
+			unindexTargetURIs(element.getElement(childElementIndex));
+		}
+	}
+
+	/** Removes all elements from the target URI index, as before the document is created again. */
+	protected void clearTargetURIs() {
+		writeLock(); //get a lock on the document
+		try {
+			targetURIElementMap.clear();
+		} finally {
+			writeUnlock(); //always release the lock on the document
+		}
+	}
+
+	/**
+	 * Updates the document structure as a result of text removal. This version updates the target URI index from the elements added and removed once the
+	 * structure has been updated.
+	 * @param chng A description of the change.
+	 */
+	protected void removeUpdate(final DefaultDocumentEvent chng) {
+		super.removeUpdate(chng);
+		updateTargetURIs(chng);
+	}
+
+	/**
+	 * Finds the element with the given target URI using the target URI index. If the target URI is not indexed, the element tree is searched, so that an element
+	 * is still found if it is missing from the index.
+	 * @param targetURI The target URI of the element.
+	 * @return The first element with the given target URI, or <code>null</code> if no element has the given target URI.
+	 * @see XMLStyles#TARGET_URI_ATTRIBUTE_NAME
+	 */
+	public Element getElementByTargetURI(final URI targetURI) {
+		readLock(); //get a lock on the document
+		try {
+			final Element element = targetURIElementMap.get(targetURI);
+			return element != null ? element : getElement(getDefaultRootElement(), XMLStyles.TARGET_URI_ATTRIBUTE_NAME, targetURI); //fall back to searching the elements
+		} finally {
+			readUnlock(); //always release the lock on the document
+		}
+	}
+
 	/**
 	 * Updates document structure as a result of text insertion. This will happen within a write lock. This implementation simply parses the inserted content for
 	 * line breaks and builds up a set of instructions for the element buffer.
@@ -476,7 +916,166 @@ else if (attr.isDefined(StyleConstants.ComposedTextAttribute)) {
 	 * @see XMLEditorKit#setXML(org.w3c.dom.Document, URI, ContentType, XMLDocument)
 	 */
 	public void create(ElementSpec[] elementSpecs) {
-		super.create(elementSpecs); //create the document normally
+		loading = true; //show that the document is being created
+		try {
+			clearTargetURIs(); //none of the old elements will remain; the new elements are indexed as they are inserted
+			super.create(elementSpecs); //create the document normally
+			removeEndingEOL(); //remove the ending end-of-line character
+		} finally {
+			loading = false; //the document is no longer being created
+		}
+		fireMadeProgress(new ProgressEvent(this, CREATE_TASK, "Constructed the document.", true)); //TODO i18n
+
+		//	TODO fix		applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
+
+		/*TODO fix
+				writeLock();	//lock the document for writing TODO do we really need to do this, as applying styles doesn't modify the document?
+				final Element rootSwingElement=getRootElements()[0]; //get the first root element of the document -- this contains an element tree for each document loaded
+				final int swingDocumentElementCount=rootSwingElement.getElementCount(); //find out how many root elements there are
+				for(int swingDocumentElementIndex=0; swingDocumentElementIndex<swingDocumentElementCount; ++swingDocumentElementIndex) {	//look at each root element, each of which represents an XML document
+					final Element swingDocumentElement=rootSwingElement.getElement(swingDocumentElementIndex);  //get the first element, which is the root of the document tree
+					insertBlockElementEnds(swingDocumentElement);	//TODO testing
+				}
+				writeUnlock();	//release the document writing lock
+		*/
+	}
+
+	/**
+	 * Initializes the document to reflect the given element structure in batches, so that the document may be displayed before its entire structure has been
+	 * created. If the document contained any data it will first be removed.
+	 * <p>
+	 * The first batch is created as if it were the entire document, with any elements still open at the end of the batch closed. Each following batch is then
+	 * appended to the end of the document within its own short write lock, continuing the elements left open by the previous batch. A batch ends only after the
+	 * end of an element within an XML document and never immediately before content, so that the resulting element structure is identical to that produced by
+	 * {@link #create(ElementSpec[])}.
+	 * </p>
+	 * <p>
+	 * Styles are applied to each batch as it is added, before listeners are notified of the insertion, and a progress event for the {@link #CREATE_TASK} is fired after each batch while no lock is held on the
+	 * document, so that a listener may install the document in a text component after the first batch. The event fired after the last batch is finished, and is
+	 * not fired until the document is no longer {@link #isLoading() loading}.
+	 * </p>
+	 * @param elementSpecs The array of element specifications that define the document, in the same form as for {@link #create(ElementSpec[])}.
+	 * @param batchSize The minimum number of element specs in each batch.
+	 * @throws IllegalArgumentException if the batch size is not positive.
+	 * @see XMLEditorKit#setProgressiveBatchSize(int)
+	 */
+	public void createIncrementally(final ElementSpec[] elementSpecs, final int batchSize) {
+		if(batchSize <= 0) {
+			throw new IllegalArgumentException("Invalid batch size " + batchSize);
+		}
+		loading = true; //show that the document is being created
+		try {
+			clearTargetURIs(); //none of the old elements will remain; the new elements are indexed as they are inserted
+			createBatches(elementSpecs, batchSize);
+			removeEndingEOL(); //remove the ending end-of-line character, as create() does
+		} finally {
+			loading = false; //the document is no longer being created
+		}
+		fireMadeProgress(new ProgressEvent(this, CREATE_TASK, "Constructed the document.", elementSpecs.length, elementSpecs.length)); //TODO i18n
+	}
+
+	/**
+	 * Creates the document from the given element structure in batches, firing a progress event for the {@link #CREATE_TASK} after each batch but the last.
+	 * @param elementSpecs The array of element specifications that define the document.
+	 * @param batchSize The minimum number of element specs in each batch.
+	 * @see #createIncrementally(ElementSpec[], int)
+	 */
+	private void createBatches(final ElementSpec[] elementSpecs, final int batchSize) {
+		final Map<Element, CSSStyleSheet[]> documentStyleSheetsMap = new IdentityHashMap<Element, CSSStyleSheet[]>(); //cache the stylesheets of each document while we add batches
+		final List<AttributeSet> openAttributeSets = new ArrayList<AttributeSet>(); //the attributes of the elements currently open; the root element has no attributes
+		int batchStart = 0; //the index of the first element spec in the current batch
+		int batchStartDepth = 0; //the number of elements open at the start of the current batch
+		for(int i = 0; i < elementSpecs.length; ++i) { //look at each element spec
+			final ElementSpec elementSpec = elementSpecs[i];
+			if(elementSpec.getType() == ElementSpec.StartTagType) { //keep track of which elements are open
+				openAttributeSets.add(elementSpec.getAttributes());
+			} else if(elementSpec.getType() == ElementSpec.EndTagType) {
+				openAttributeSets.remove(openAttributeSets.size() - 1);
+			}
+			final boolean isLast = i == elementSpecs.length - 1; //see if this is the last element spec
+			//end the batch if it's large enough and we're at the end of an element inside a document, not followed by content 
+			if(isLast || (i + 1 - batchStart >= batchSize && elementSpec.getType() == ElementSpec.EndTagType && openAttributeSets.size() > 1
+					&& elementSpecs[i + 1].getType() != ElementSpec.ContentType)) {
+				final List<ElementSpec> batchElementSpecs = new ArrayList<ElementSpec>(i + 1 - batchStart + openAttributeSets.size()); //the element specs to add in this batch
+				final int batchStartOffset; //find out where this batch will start in the document
+				if(batchStart == 0) { //if this is the first batch, create the document
+					batchStartOffset = 0;
+					batchElementSpecs.addAll(java.util.Arrays.asList(elementSpecs).subList(0, i + 1));
+					for(int openIndex = openAttributeSets.size() - 1; openIndex >= 0; --openIndex) { //close all open elements, including the root
+						batchElementSpecs.add(new ElementSpec(openAttributeSets.get(openIndex), ElementSpec.EndTagType));
+					}
+					writeLock(); //keep the lock while the document is created so that the batch can be styled before the views are notified
+					try {
+						batchStyleSheetsMap = documentStyleSheetsMap;
+						super.create(batchElementSpecs.toArray(new ElementSpec[batchElementSpecs.size()])); //create the document from the first batch
+					} finally {
+						batchStyleSheetsMap = null;
+						writeUnlock();
+					}
+				} else { //if this is a later batch, insert it at the end of the document
+					batchStartOffset = getLength();
+					//close the elements at the end of the document until we are back inside the last element left open by the previous batch
+					final int endTagCount = getBranchDepth(batchStartOffset - 1) - (batchStartDepth - 1);
+					for(int endTagIndex = 0; endTagIndex < endTagCount; ++endTagIndex) {
+						batchElementSpecs.add(new ElementSpec(null, ElementSpec.EndTagType));
+					}
+					int depth = batchStartDepth; //keep track of how many elements are open
+					for(int batchIndex = batchStart; batchIndex <= i; ++batchIndex) { //look at each element spec in the batch
+						final ElementSpec batchElementSpec = elementSpecs[batchIndex];
+						if(batchElementSpec.getType() == ElementSpec.EndTagType) {
+							if(depth == 1) { //the root element remains open when inserting
+								continue;
+							}
+							--depth;
+						} else if(batchElementSpec.getType() == ElementSpec.StartTagType) {
+							++depth;
+						}
+						batchElementSpecs.add(batchElementSpec);
+					}
+					writeLock(); //keep the lock while the batch is inserted so that it can be styled before the views are notified
+					try {
+						batchStyleSheetsMap = documentStyleSheetsMap;
+						insert(batchStartOffset, batchElementSpecs.toArray(new ElementSpec[batchElementSpecs.size()])); //insert the batch
+					} catch(final BadLocationException badLocationException) {
+						throw (AssertionError)new AssertionError(badLocationException.getMessage()).initCause(badLocationException);
+					} finally {
+						batchStyleSheetsMap = null;
+						writeUnlock();
+					}
+				}
+				batchStart = i + 1; //the next batch starts after this element spec
+				batchStartDepth = openAttributeSets.size();
+				if(!isLast) { //the event for the last batch is fired once the document is complete
+					fireMadeProgress(new ProgressEvent(this, CREATE_TASK, "Constructing the document...", batchStart, elementSpecs.length)); //TODO i18n
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines the number of branch elements below the root element along the path to the leaf element at the given offset.
+	 * @param offset The offset into the document.
+	 * @return The number of branch elements, not including the root, containing the given offset.
+	 */
+	protected int getBranchDepth(final int offset) {
+		readLock(); //get a lock on the document
+		try {
+			int depth = 0;
+			Element element = getDefaultRootElement(); //start at the root
+			while(!element.isLeaf()) { //while we haven't reached a leaf
+				element = element.getElement(element.getElementIndex(offset)); //go down to the child containing the offset
+				if(!element.isLeaf()) { //only count branch elements
+					++depth;
+				}
+			}
+			return depth;
+		} finally {
+			readUnlock(); //always release the lock on the document
+		}
+	}
+
+	/** Removes the ending end-of-line character, if any, from the content. */
+	protected void removeEndingEOL() {
 		try { //remove the ending dumming '\n' added by Swing
 			if(getLength() > 0) { //if we have any characters
 				//TODO del; this doesn't even work, as getLength() and remove() ignore the ending '\n'---this only removed the '\n' already present in the content
@@ -496,19 +1095,6 @@ public void create(ElementSpec[] elementSpecs) {
 		} catch(BadLocationException badLocationException) {
 			throw (AssertionError)new AssertionError(badLocationException.getMessage()).initCause(badLocationException);
 		}
-
-		//	TODO fix		applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
-
-		/*TODO fix
-				writeLock();	//lock the document for writing TODO do we really need to do this, as applying styles doesn't modify the document?
-				final Element rootSwingElement=getRootElements()[0]; //get the first root element of the document -- this contains an element tree for each document loaded
-				final int swingDocumentElementCount=rootSwingElement.getElementCount(); //find out how many root elements there are
-				for(int swingDocumentElementIndex=0; swingDocumentElementIndex<swingDocumentElementCount; ++swingDocumentElementIndex) {	//look at each root element, each of which represents an XML document
-					final Element swingDocumentElement=rootSwingElement.getElement(swingDocumentElementIndex);  //get the first element, which is the root of the document tree
-					insertBlockElementEnds(swingDocumentElement);	//TODO testing
-				}
-				writeUnlock();	//release the document writing lock
-		*/
 	}
 
 	/**
@@ -844,18 +1430,70 @@ protected void insertBlockElementEnds(final Element element) { //TODO testing
 		}
 	}
 
+	/**
+	 * The map of stylesheets gathered for each document element while a batch is being added by {@link #createIncrementally(ElementSpec[], int)}, or
+	 * <code>null</code> if no batch is being added. This is only set by a thread holding the write lock.
+	 */
+	private Map<Element, CSSStyleSheet[]> batchStyleSheetsMap = null;
+
 	/**
 	 * Notifies all listeners that have registered interest for notification on this event type. The event instance is lazily created using the parameters passed
-	 * into the fire method.
+	 * into the fire method. This version first indexes the target URIs of the inserted elements, as elements inserted from element specs are not reported to
+	 * {@link #insertUpdate(DefaultDocumentEvent, AttributeSet)}.
 	 *
 	 * @param e the event
 	 * @see EventListenerList
+	 * @see #updateTargetURIs(DocumentEvent)
 	 */
 	protected void fireInsertUpdate(DocumentEvent e) {
+		updateTargetURIs(e); //update the target URI index before any listener looks for an element
 		//TODO fix; right now this is only done when the text is first placed in the document		applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
+		final Map<Element, CSSStyleSheet[]> batchStyleSheetsMap = this.batchStyleSheetsMap;
+		if(batchStyleSheetsMap != null) { //if a batch is being added by createIncrementally(), style it before any views are created for it
+			applyStyles(e.getOffset(), batchStyleSheetsMap);
+		}
 		super.fireInsertUpdate(e);
 	}
 
+	/**
+	 * Notifies all listeners that attributes have changed. This version first invalidates the computed styles of the leaf elements within the changed range and
+	 * of their parents, as changed character or paragraph attributes may change the styles of those elements; the styles of their descendants are recognized as
+	 * stale in turn.
+	 * @param e The event.
+	 * @see XMLCSSStyles#invalidateComputedStyle(AttributeSet)
+	 */
+	protected void fireChangedUpdate(final DocumentEvent e) {
+		invalidateComputedStyles(getDefaultRootElement(), e.getOffset(), e.getOffset() + e.getLength()); //the styles of the changed elements, and of any elements that inherit from them, may have changed
+		super.fireChangedUpdate(e);
+	}
+
+	/**
+	 * Invalidates the computed styles of the leaf elements below the given element that overlap the given range, along with those of the leaves' parents.
+	 * @param element The element the descendants of which should be examined.
+	 * @param startOffset The start of the changed range.
+	 * @param endOffset The end of the changed range.
+	 */
+	private void invalidateComputedStyles(final Element element, final int startOffset, final int endOffset) {
+		final int childElementCount = element.getElementCount();
+		if(childElementCount == 0) {
+			return;
+		}
+		boolean hasLeaf = false; //see if this element is the parent of any leaf in the range
+		for(int childElementIndex = Math.max(element.getElementIndex(startOffset), 0), lastChildElementIndex = Math.min(element.getElementIndex(endOffset),
+				childElementCount - 1); childElementIndex <= lastChildElementIndex; ++childElementIndex) {
+			final Element childElement = element.getElement(childElementIndex);
+			if(childElement.isLeaf()) {
+				XMLCSSStyles.invalidateComputedStyle(childElement.getAttributes());
+				hasLeaf = true;
+			} else {
+				invalidateComputedStyles(childElement, startOffset, endOffset);
+			}
+		}
+		if(hasLeaf) { //paragraph attributes are stored in the parents of the leaves
+			XMLCSSStyles.invalidateComputedStyle(element.getAttributes());
+		}
+	}
+
 	/**
 	 * Calculate the levels array for a range of paragraphs.
 	 */
@@ -978,7 +1616,15 @@ protected void create(ElementSpec[] data) {
 	 */
 	//TODO maybe make this protected and add a function that only looks for the target ID
 	public Element getElement(Object attribute, Object value) {
-		return getElement(getDefaultRootElement(), attribute, value); //start searching from the root element
+		if(XMLStyles.TARGET_URI_ATTRIBUTE_NAME.equals(attribute) && value instanceof URI) { //if we're looking for a target URI, use the index
+			return getElementByTargetURI((URI)value);
+		}
+		readLock(); //get a lock on the document
+		try {
+			return getElement(getDefaultRootElement(), attribute, value); //start searching from the root element
+		} finally {
+			readUnlock(); //always release the lock on the document
+		}
 	}
 
 	/**
@@ -992,10 +1638,8 @@ public Element getElement(Object attribute, Object value) {
 	 * @return The element with the matching attribute, or <code>null</code> if none could be found.
 	 */
 	protected Element getElement(Element element, Object attribute, Object value/*TODO del if not needed, boolean searchLeafAttributes*/) {
-		Log.trace("XMLDocument.getElement() comparing value: ", value);
 		final AttributeSet attributeSet = element.getAttributes(); //get the attributes of this element
 		if(attributeSet != null && attributeSet.isDefined(attribute)) { //if there are attributes and this attribute is defined
-			Log.trace("comparing to: ", attributeSet.getAttribute(attribute)); //TODO del
 			if(value.equals(attributeSet.getAttribute(attribute))) //if the value matches
 				return element; //return this element
 			/*TODO del when works; recheck exactly what this kludge was doing
@@ -1122,14 +1766,66 @@ public boolean isLeftToRight(int p0, int p1) {
 		return true;
 	}
 
-	/** Discovers any referenced styles to this document, loads the stylesheets, and applies the styles to the Swing element attributes. */
+	/** Whether the stylesheet selectors of separate XML documents are matched concurrently. */
+	private volatile boolean parallelStyles = false;
+
+	/** @return Whether the stylesheet selectors of separate XML documents are matched concurrently. */
+	public boolean isParallelStyles() {
+		return parallelStyles;
+	}
+
+	/**
+	 * Sets whether the stylesheet selectors of separate XML documents should be matched concurrently. When styles are applied to several XML documents at once,
+	 * each document's stylesheets are gathered on the calling thread and its selectors matched on a separate thread; the matched styles are then written to the
+	 * element attributes one document at a time on the calling thread. Stylesheets that cannot be indexed are applied on the calling thread.
+	 * @param parallelStyles <code>true</code> if the stylesheet selectors of separate XML documents should be matched concurrently.
+	 * @see #getStyleExecutor()
+	 * @see SwingXMLCSSStylesheetApplier#getRuleIndex(CSSStyleSheet)
+	 */
+	public void setParallelStyles(final boolean parallelStyles) {
+		this.parallelStyles = parallelStyles;
+	}
+
+	/** The shared executor for matching the styles of separate XML documents concurrently, or <code>null</code> if it has not yet been created. */
+	private static ExecutorService styleExecutor = null;
+
+	/**
+	 * Returns the shared executor for matching the styles of separate XML documents concurrently. The executor uses a bounded number of daemon threads, one for
+	 * each available processor, and is created the first time it is needed.
+	 * @return The executor for matching styles.
+	 */
+	protected static synchronized ExecutorService getStyleExecutor() {
+		if(styleExecutor == null) { //if we haven't yet created the executor
+			final AtomicInteger threadCount = new AtomicInteger(0); //keep track of the threads we create so that we can name them
+			styleExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, XMLDocument.class.getSimpleName() + "-styles-" + threadCount.incrementAndGet());
+					thread.setDaemon(true); //don't keep the application from exiting
+					return thread;
+				}
+			});
+		}
+		return styleExecutor;
+	}
+
+	/**
+	 * Discovers any referenced styles to this document, loads the stylesheets, and applies the styles to the Swing element attributes.
+	 * @see #isParallelStyles()
+	 */
 	public void applyStyles() {
 		Log.trace("Ready to applystyles"); //TODO fix
 		writeLock(); //get a lock on the document
 		try {
+			invalidateResolvedFonts(); //fonts resolved from the old styles are no longer needed
 			Log.trace("looking at first root element"); //TODO fix
 			final Element rootSwingElement = getRootElements()[0]; //get the first root element of the document -- this contains an element tree for each document loaded
 			final int swingDocumentElementCount = rootSwingElement.getElementCount(); //find out how many root elements there are
+			if(isParallelStyles() && swingDocumentElementCount > 1) { //if we should match the styles of several documents concurrently
+				applyStylesConcurrently(rootSwingElement);
+				return;
+			}
 			for(int swingDocumentElementIndex = 0; swingDocumentElementIndex < swingDocumentElementCount; ++swingDocumentElementIndex) { //look at each root element, each of which represents an XML document
 				final Element swingDocumentElement = rootSwingElement.getElement(swingDocumentElementIndex); //get the child element, which is the root of the document tree
 				final AttributeSet documentAttributeSet = swingDocumentElement.getAttributes(); //get the attribute set of the document element
@@ -1152,6 +1848,9 @@ public void applyStyles() {
 					//TODO del System.out.println("applying stylesheet: "+i+" of "+styleSheetList.getLength());  //TODO del
 					final CSSStyleSheet cssStyleSheet = styleSheets[i]; //get a reference to this stylesheet, assuming that it's a CSS stylesheet (that's all that's currently supported)
 					stylesheetApplier.applyStyleSheet(cssStyleSheet, swingDocumentElement); //apply the stylesheet to the document
+					if(stylesheetApplier.isRuleIndexEnabled()) { //report how much time was spent in each rule index bucket
+						Log.debug("Applied stylesheet", cssStyleSheet.getHref(), "with", stylesheetApplier.getRuleIndex(cssStyleSheet));
+					}
 				}
 				Log.trace("applying local styles"); //TODO del
 				fireMadeProgress(new ProgressEvent(this, APPLY_STYLESHEET_TASK, "Applying local styles", swingDocumentElementIndex, swingDocumentElementCount)); //fire a progress message saying that we're applying local styles TODO i18n
@@ -1162,6 +1861,167 @@ public void applyStyles() {
 		}
 	}
 
+	/**
+	 * Applies styles to each XML document, matching the selectors of separate documents concurrently using the shared style executor. The stylesheets of each
+	 * document are gathered and indexed on the calling thread; the worker threads only match the indexed rules and combine the declarations matching each
+	 * element into new declarations, without modifying the document. The combined declarations are then written to the element attributes on the calling thread,
+	 * one document at a time in document order, followed by each document's local styles. The write lock must already be held; the worker threads read the
+	 * element hierarchy without acquiring a lock, which is safe because the hierarchy cannot change while the calling thread holds the write lock and waits for
+	 * them.
+	 * @param rootSwingElement The root element containing an element tree for each XML document.
+	 * @throws IllegalStateException if the current thread was interrupted while waiting for styles to be matched.
+	 * @see #getStyleExecutor()
+	 */
+	protected void applyStylesConcurrently(final Element rootSwingElement) {
+		final SwingXMLCSSStylesheetApplier stylesheetApplier = getSwingStylesheetApplier(); //get the stylesheet applier
+		final ExecutorService executor = getStyleExecutor(); //get the executor for matching styles
+		final int swingDocumentElementCount = rootSwingElement.getElementCount(); //find out how many root elements there are
+		final List<Future<DocumentStyleMatches>> futures = new ArrayList<Future<DocumentStyleMatches>>(swingDocumentElementCount);
+		for(int swingDocumentElementIndex = 0; swingDocumentElementIndex < swingDocumentElementCount; ++swingDocumentElementIndex) { //start matching styles for each document
+			final Element swingDocumentElement = rootSwingElement.getElement(swingDocumentElementIndex);
+			final AttributeSet documentAttributeSet = swingDocumentElement.getAttributes(); //get the attribute set of the document element
+			final CSSStyleSheet[] styleSheets = stylesheetApplier.getStylesheets(swingDocumentElement, XMLStyles.getBaseURI(documentAttributeSet),
+					XMLStyles.getMediaType(documentAttributeSet)); //get all stylesheets for this document
+			final XMLCSSRuleIndex[] ruleIndexes = new XMLCSSRuleIndex[styleSheets.length]; //index each stylesheet that can be indexed
+			for(int i = 0; i < styleSheets.length; ++i) {
+				ruleIndexes[i] = stylesheetApplier.isRuleIndexEnabled() ? stylesheetApplier.getRuleIndex(styleSheets[i]) : null;
+			}
+			futures.add(executor.submit(new Callable<DocumentStyleMatches>() {
+
+				@Override
+				public DocumentStyleMatches call() {
+					final List<Map<Element, CSSStyleDeclaration>> matchingStyleMaps = new ArrayList<Map<Element, CSSStyleDeclaration>>(ruleIndexes.length);
+					for(final XMLCSSRuleIndex ruleIndex : ruleIndexes) { //match the selectors of each stylesheet that was indexed
+						matchingStyleMaps.add(ruleIndex != null ? stylesheetApplier.getMatchingStyles(ruleIndex, swingDocumentElement) : null);
+					}
+					return new DocumentStyleMatches(styleSheets, matchingStyleMaps);
+				}
+			}));
+		}
+		try {
+			for(int swingDocumentElementIndex = 0; swingDocumentElementIndex < swingDocumentElementCount; ++swingDocumentElementIndex) { //write the styles of each document in order
+				final Element swingDocumentElement = rootSwingElement.getElement(swingDocumentElementIndex);
+				final DocumentStyleMatches documentStyleMatches = futures.get(swingDocumentElementIndex).get(); //wait for this document's styles to be matched
+				fireMadeProgress(new ProgressEvent(this, APPLY_STYLESHEET_TASK, "Applying styles", swingDocumentElementIndex, swingDocumentElementCount)); //TODO i18n
+				for(int i = 0; i < documentStyleMatches.styleSheets.length; ++i) {
+					final Map<Element, CSSStyleDeclaration> matchingStyleMap = documentStyleMatches.matchingStyleMaps.get(i);
+					if(matchingStyleMap != null) { //if the selectors were matched, just import the styles
+						stylesheetApplier.importMatchingStyles(matchingStyleMap);
+					} else { //if the stylesheet couldn't be indexed, apply it here
+						stylesheetApplier.applyStyleSheet(documentStyleMatches.styleSheets[i], swingDocumentElement);
+					}
+				}
+				stylesheetApplier.applyLocalStyles(swingDocumentElement); //apply local styles to the document
+			}
+		} catch(final InterruptedException interruptedException) {
+			Thread.currentThread().interrupt(); //restore the interrupted status
+			throw new IllegalStateException("Interrupted while matching styles.", interruptedException);
+		} catch(final ExecutionException executionException) { //if there was an error matching styles, rethrow it in this thread
+			final Throwable cause = executionException.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		} finally {
+			for(final Future<DocumentStyleMatches> future : futures) { //if we stopped early, don't waste time on the remaining documents
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * The stylesheets gathered for an XML document, along with the declarations of each stylesheet matched to the document's elements.
+	 * @author Garret Wilson
+	 */
+	private static class DocumentStyleMatches {
+
+		/** The stylesheets of the document. */
+		final CSSStyleSheet[] styleSheets;
+
+		/** The combined matching declarations of each stylesheet keyed to elements, or <code>null</code> for a stylesheet that could not be indexed. */
+		final List<Map<Element, CSSStyleDeclaration>> matchingStyleMaps;
+
+		/**
+		 * Constructor.
+		 * @param styleSheets The stylesheets of the document.
+		 * @param matchingStyleMaps The combined matching declarations of each stylesheet keyed to elements, or <code>null</code> for a stylesheet that could not
+		 *          be indexed.
+		 */
+		DocumentStyleMatches(final CSSStyleSheet[] styleSheets, final List<Map<Element, CSSStyleDeclaration>> matchingStyleMaps) {
+			this.styleSheets = styleSheets;
+			this.matchingStyleMaps = matchingStyleMaps;
+		}
+	}
+
+	/**
+	 * Applies styles to the elements that begin at or after the given offset, such as those just added by {@link #createIncrementally(ElementSpec[], int)}.
+	 * Elements that begin before the offset, having already been styled, are not styled again.
+	 * @param startOffset The offset at which the unstyled elements begin.
+	 * @param documentStyleSheetsMap The map of stylesheets already gathered for each document element, which will be updated with any newly gathered stylesheets.
+	 */
+	protected void applyStyles(final int startOffset, final Map<Element, CSSStyleSheet[]> documentStyleSheetsMap) {
+		writeLock(); //get a lock on the document
+		try {
+			final SwingXMLCSSStylesheetApplier stylesheetApplier = getSwingStylesheetApplier(); //get the stylesheet applier
+			final Element rootSwingElement = getRootElements()[0]; //get the first root element of the document -- this contains an element tree for each document loaded
+			final int swingDocumentElementCount = rootSwingElement.getElementCount(); //find out how many root elements there are
+			for(int swingDocumentElementIndex = 0; swingDocumentElementIndex < swingDocumentElementCount; ++swingDocumentElementIndex) { //look at each root element, each of which represents an XML document
+				final Element swingDocumentElement = rootSwingElement.getElement(swingDocumentElementIndex); //get the child element, which is the root of the document tree
+				if(swingDocumentElement.getEndOffset() <= startOffset) { //if this document lies entirely before the new elements, it's already styled
+					continue;
+				}
+				CSSStyleSheet[] styleSheets = documentStyleSheetsMap.get(swingDocumentElement); //see if we already have the stylesheets for this document
+				if(styleSheets == null) { //if we haven't gathered the stylesheets for this document yet
+					final AttributeSet documentAttributeSet = swingDocumentElement.getAttributes(); //get the attribute set of the document element
+					styleSheets = stylesheetApplier.getStylesheets(swingDocumentElement, XMLStyles.getBaseURI(documentAttributeSet), XMLStyles.getMediaType(documentAttributeSet)); //get all stylesheets for this document
+					documentStyleSheetsMap.put(swingDocumentElement, styleSheets); //cache the stylesheets for the next batch
+				}
+				if(swingDocumentElement.getStartOffset() >= startOffset) { //if the entire document is new
+					applyStyles(swingDocumentElement, styleSheets);
+				} else { //if only part of the document is new
+					applyStyles(swingDocumentElement, styleSheets, startOffset);
+				}
+			}
+		} finally {
+			writeUnlock(); //always release the lock on the document
+		}
+	}
+
+	/**
+	 * Applies styles to the child elements of the given element that begin at or after the given offset. Children that contain the offset are examined
+	 * recursively.
+	 * @param element The element the children of which should be styled.
+	 * @param styleSheets The stylesheets to apply.
+	 * @param startOffset The offset at which the unstyled elements begin.
+	 */
+	private void applyStyles(final Element element, final CSSStyleSheet[] styleSheets, final int startOffset) {
+		final int childElementCount = element.getElementCount();
+		for(int childElementIndex = element.getElementIndex(startOffset); childElementIndex < childElementCount; ++childElementIndex) { //look at each child that could contain new content
+			final Element childElement = element.getElement(childElementIndex);
+			if(childElement.getStartOffset() >= startOffset) { //if the child is entirely new
+				applyStyles(childElement, styleSheets);
+			} else if(childElement.getEndOffset() > startOffset && !childElement.isLeaf()) { //if the child was continued in the new content
+				applyStyles(childElement, styleSheets, startOffset);
+			}
+		}
+	}
+
+	/**
+	 * Applies the given stylesheets and local styles to the given element and its descendants.
+	 * @param element The element to style.
+	 * @param styleSheets The stylesheets to apply.
+	 */
+	private void applyStyles(final Element element, final CSSStyleSheet[] styleSheets) {
+		final SwingXMLCSSStylesheetApplier stylesheetApplier = getSwingStylesheetApplier(); //get the stylesheet applier
+		for(final CSSStyleSheet cssStyleSheet : styleSheets) { //apply each stylesheet
+			stylesheetApplier.applyStyleSheet(cssStyleSheet, element);
+		}
+		stylesheetApplier.applyLocalStyles(element); //apply local styles
+	}
+
 	/*TODO fix
 		public void emphasis() {	//TODO testing
 			writeLock();  //TODO testing
@@ -1300,6 +2160,159 @@ public void insertXMLElement(final int offset, final int length, final URI eleme
 	 */
 	protected class SwingXMLCSSStylesheetApplier extends AbstractXMLCSSStylesheetApplier<Element, Element> {
 
+		/** Whether stylesheets should be applied using an index of their rules, if they can be indexed. */
+		private volatile boolean ruleIndexEnabled = true;
+
+		/** @return Whether stylesheets should be applied using an index of their rules, if they can be indexed. */
+		public boolean isRuleIndexEnabled() {
+			return ruleIndexEnabled;
+		}
+
+		/**
+		 * Sets whether stylesheets should be applied using an index of their rules. Stylesheets that cannot be indexed are always applied by testing every rule
+		 * against every element.
+		 * @param ruleIndexEnabled Whether stylesheets should be applied using an index of their rules, if they can be indexed.
+		 */
+		public void setRuleIndexEnabled(final boolean ruleIndexEnabled) {
+			this.ruleIndexEnabled = ruleIndexEnabled;
+		}
+
+		/** The map of rule indexes, keyed to stylesheets; stylesheets that cannot be indexed are mapped to <code>null</code>. */
+		private final Map<CSSStyleSheet, XMLCSSRuleIndex> ruleIndexMap = Collections.synchronizedMap(new WeakHashMap<CSSStyleSheet, XMLCSSRuleIndex>());
+
+		/**
+		 * Retrieves an index of the rules of the given stylesheet, indexing the stylesheet if it has not yet been indexed.
+		 * @param cssStyleSheet The stylesheet the rule index of which should be returned.
+		 * @return The index of the stylesheet rules, or <code>null</code> if the stylesheet cannot be indexed.
+		 */
+		public XMLCSSRuleIndex getRuleIndex(final CSSStyleSheet cssStyleSheet) {
+			synchronized(ruleIndexMap) {
+				if(ruleIndexMap.containsKey(cssStyleSheet)) {
+					return ruleIndexMap.get(cssStyleSheet);
+				}
+				final XMLCSSRuleIndex ruleIndex = XMLCSSRuleIndex.create(cssStyleSheet);
+				if(ruleIndex == null) {
+					Log.debug("Stylesheet", cssStyleSheet.getHref(), "cannot be indexed; every rule will be tested against every element.");
+				}
+				ruleIndexMap.put(cssStyleSheet, ruleIndex);
+				return ruleIndex;
+			}
+		}
+
+		/** The object providing element information to rule indexes. */
+		private final XMLCSSRuleIndex.ElementAccessor<Element> ruleIndexElementAccessor = new XMLCSSRuleIndex.ElementAccessor<Element>() {
+
+			public String getElementLocalName(final Element element) {
+				return SwingXMLCSSStylesheetApplier.this.getElementLocalName(element);
+			}
+
+			public String getElementAttributeValue(final Element element, final String attributeLocalName) {
+				return SwingXMLCSSStylesheetApplier.this.getElementAttributeValue(element, null, attributeLocalName);
+			}
+
+			public Element getParentElement(final Element element) {
+				return SwingXMLCSSStylesheetApplier.this.getParentElement(element);
+			}
+		};
+
+		/**
+		 * Applies a stylesheet to the given element and its descendants. If rule indexing is enabled and the stylesheet can be indexed, each element is only tested
+		 * against the rules indexed under its ID, classes, and local name, along with the universal rules; otherwise every rule is tested against every element.
+		 * @param cssStyleSheet The stylesheet to apply.
+		 * @param element The element to which the stylesheet should be applied.
+		 * @see #getRuleIndex(CSSStyleSheet)
+		 */
+		public void applyStyleSheet(final CSSStyleSheet cssStyleSheet, final Element element) {
+			final XMLCSSRuleIndex ruleIndex = isRuleIndexEnabled() ? getRuleIndex(cssStyleSheet) : null;
+			if(ruleIndex != null) {
+				applyRuleIndex(ruleIndex, element);
+			} else {
+				super.applyStyleSheet(cssStyleSheet, element);
+			}
+		}
+
+		/**
+		 * Determines the rules of an indexed stylesheet that match the given element and its descendants, without importing their styles. This method does not
+		 * modify the document and may be called concurrently for separate elements.
+		 * @param ruleIndex The index of the stylesheet rules.
+		 * @param element The element for which matching rules should be determined.
+		 * @return The matching rules, in stylesheet order, of each element having matching rules.
+		 * @see #getMatchingStyles(XMLCSSRuleIndex, Element)
+		 */
+		public Map<Element, List<CSSStyleRule>> getMatchingRules(final XMLCSSRuleIndex ruleIndex, final Element element) {
+			final Map<Element, List<CSSStyleRule>> matchingRuleMap = new LinkedHashMap<Element, List<CSSStyleRule>>();
+			addMatchingRules(ruleIndex, element, matchingRuleMap);
+			return matchingRuleMap;
+		}
+
+		/**
+		 * Adds the rules of an indexed stylesheet that match the given element and its descendants to a map.
+		 * @param ruleIndex The index of the stylesheet rules.
+		 * @param element The element for which matching rules should be determined.
+		 * @param matchingRuleMap The map to which the matching rules of each element will be added.
+		 */
+		private void addMatchingRules(final XMLCSSRuleIndex ruleIndex, final Element element, final Map<Element, List<CSSStyleRule>> matchingRuleMap) {
+			final List<CSSStyleRule> matchingRules = ruleIndex.getMatchingRules(element, ruleIndexElementAccessor);
+			if(!matchingRules.isEmpty()) {
+				matchingRuleMap.put(element, matchingRules);
+			}
+			final int childCount = getChildCount(element);
+			for(int i = 0; i < childCount; ++i) {
+				if(isChildElement(element, i)) {
+					addMatchingRules(ruleIndex, getChildElement(element, i), matchingRuleMap);
+				}
+			}
+		}
+
+		/**
+		 * Determines the rules of an indexed stylesheet that match the given element and its descendants, combining the declarations of the rules matching each
+		 * element, in stylesheet order, into a new declaration. This method does not modify the document and may be called concurrently for separate elements.
+		 * @param ruleIndex The index of the stylesheet rules.
+		 * @param element The element for which matching styles should be determined.
+		 * @return The combined matching declarations of each element having matching rules.
+		 * @see #importMatchingStyles(Map)
+		 */
+		public Map<Element, CSSStyleDeclaration> getMatchingStyles(final XMLCSSRuleIndex ruleIndex, final Element element) {
+			final Map<Element, List<CSSStyleRule>> matchingRuleMap = getMatchingRules(ruleIndex, element);
+			final Map<Element, CSSStyleDeclaration> matchingStyleMap = new LinkedHashMap<Element, CSSStyleDeclaration>(matchingRuleMap.size());
+			for(final Map.Entry<Element, List<CSSStyleRule>> matchingRuleEntry : matchingRuleMap.entrySet()) {
+				final CSSStyleDeclaration matchingStyle = new XMLCSSStyleDeclaration(); //combine the matching declarations into a declaration no element uses yet
+				for(final CSSStyleRule cssStyleRule : matchingRuleEntry.getValue()) {
+					importStyle(matchingStyle, cssStyleRule.getStyle());
+				}
+				matchingStyleMap.put(matchingRuleEntry.getKey(), matchingStyle);
+			}
+			return matchingStyleMap;
+		}
+
+		/**
+		 * Imports previously combined matching declarations into the elements they match. The caller must hold the document write lock.
+		 * @param matchingStyleMap The combined matching declarations of each element.
+		 * @see #getMatchingStyles(XMLCSSRuleIndex, Element)
+		 */
+		public void importMatchingStyles(final Map<Element, CSSStyleDeclaration> matchingStyleMap) {
+			for(final Map.Entry<Element, CSSStyleDeclaration> matchingStyleEntry : matchingStyleMap.entrySet()) {
+				importCSSStyle(matchingStyleEntry.getKey(), matchingStyleEntry.getValue());
+			}
+		}
+
+		/**
+		 * Applies the rules of an indexed stylesheet to the given element and its descendants.
+		 * @param ruleIndex The index of the stylesheet rules.
+		 * @param element The element to which the rules should be applied.
+		 */
+		protected void applyRuleIndex(final XMLCSSRuleIndex ruleIndex, final Element element) {
+			for(final CSSStyleRule cssStyleRule : ruleIndex.getMatchingRules(element, ruleIndexElementAccessor)) { //apply the matching rules in stylesheet order
+				importCSSStyle(element, cssStyleRule.getStyle());
+			}
+			final int childCount = getChildCount(element);
+			for(int i = 0; i < childCount; ++i) {
+				if(isChildElement(element, i)) {
+					applyRuleIndex(ruleIndex, getChildElement(element, i));
+				}
+			}
+		}
+
 		/**
 		 * Returns an input stream for the given URI.
 		 * <p>
@@ -1428,6 +2441,7 @@ protected void importCSSStyle(final Element element, final CSSStyleDeclaration c
 			}
 			//TODO del					Log.trace("style rule is of type: ", cssStyleRule.getClass().getName());  //TODO del
 			importStyle(elementStyle, cssStyle); //import the style
+			XMLCSSStyles.invalidateComputedStyle(attributeSet); //the computed styles of this element and its descendants are now stale
 		}
 	}
 
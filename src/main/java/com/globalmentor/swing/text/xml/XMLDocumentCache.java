@@ -0,0 +1,453 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml;
+
+import java.io.*;
+import java.net.URI;
+import java.security.*;
+import java.util.*;
+
+import javax.swing.text.*;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+import com.globalmentor.java.Bytes;
+import com.globalmentor.log.Log;
+import com.globalmentor.model.NameValuePair;
+import com.globalmentor.net.ContentType;
+import com.globalmentor.swing.text.xml.css.XMLCSSStyles;
+import com.globalmentor.w3c.spec.XML;
+
+/**
+ * An on-disk cache of Swing XML documents, allowing an unchanged document to be recreated without parsing its XML or creating its element specs.
+ * <p>
+ * A document is cached as the element specs that recreate its element structure, beginning with the root element, with the attributes of each element that do
+ * not depend on styles. Each cached document is keyed to a hash of the bytes of its source along with its base URI and media type.
+ * </p>
+ * <p>
+ * Because the key does not identify the stylesheets referenced by a document, the CSS style of each element is not cached; styles must be applied to a
+ * document after it is created from the cache, so that changed stylesheets are always honored. Documents with attribute values of types the cache does not know
+ * how to store are not cached.
+ * </p>
+ * @author Garret Wilson
+ * @see XMLEditorKit#setDocumentCache(XMLDocumentCache)
+ */
+public class XMLDocumentCache {
+
+	/** The number identifying a cached document file. */
+	private static final int MAGIC_NUMBER = 0x584D4C44; //"XMLD"
+
+	/** The version of the cache format; changing this value invalidates all cached documents. */
+	private static final int FORMAT_VERSION = 2;
+
+	/** The extension of cached document files. */
+	public static final String FILENAME_EXTENSION = "xmldoc";
+
+	/** The algorithm used to create cache keys. */
+	private static final String KEY_DIGEST_ALGORITHM = "SHA-256";
+
+	//record types
+	private static final byte START_RECORD = 1;
+	private static final byte CONTENT_RECORD = 2;
+	private static final byte END_RECORD = 3;
+	private static final byte END_OF_DOCUMENT_RECORD = 0;
+
+	//value types
+	private static final byte STRING_VALUE = 1;
+	private static final byte STATIC_VALUE = 2;
+	private static final byte BOOLEAN_VALUE = 3;
+	private static final byte INTEGER_VALUE = 4;
+	private static final byte FLOAT_VALUE = 5;
+	private static final byte URI_VALUE = 6;
+	private static final byte CONTENT_TYPE_VALUE = 7;
+	private static final byte XML_ATTRIBUTE_VALUE = 8;
+	private static final byte NAME_VALUE_PAIRS_VALUE = 9;
+
+	/** The directory in which cached documents are stored. */
+	private final File directory;
+
+	/** @return The directory in which cached documents are stored. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Directory constructor.
+	 * @param directory The directory in which cached documents are stored; it will be created if needed when a document is first cached.
+	 * @throws NullPointerException if the given directory is <code>null</code>.
+	 */
+	public XMLDocumentCache(final File directory) {
+		this.directory = requireNonNull(directory, "Cache directory cannot be null.");
+	}
+
+	/**
+	 * Determines the key of a document from its source.
+	 * @param bytes The bytes of the document source.
+	 * @param baseURI The base URI of the document, or <code>null</code> if the document has no base URI.
+	 * @param mediaType The media type of the document, or <code>null</code> if the media type is not known.
+	 * @return A key identifying the document and its content.
+	 */
+	public String getKey(final byte[] bytes, final URI baseURI, final ContentType mediaType) {
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+		} catch(final NoSuchAlgorithmException noSuchAlgorithmException) { //all Java platforms are required to support SHA-256
+			throw new AssertionError(noSuchAlgorithmException);
+		}
+		messageDigest.update((FORMAT_VERSION + "\n" + baseURI + "\n" + mediaType + "\n").getBytes(UTF_8)); //identify the document, not just its content
+		messageDigest.update(bytes);
+		return Bytes.toHexString(messageDigest.digest());
+	}
+
+	/**
+	 * Determines the file in which a document is cached.
+	 * @param key The key of the document.
+	 * @return The file for the cached document.
+	 */
+	protected File getFile(final String key) {
+		return new File(getDirectory(), key + '.' + FILENAME_EXTENSION);
+	}
+
+	/**
+	 * Retrieves the element specs of a cached document. The element specs do not include styles, which must be applied after the document is created.
+	 * @param key The key of the document.
+	 * @return The element specs for recreating the document, including the root element, or <code>null</code> if the document is not cached.
+	 * @throws IOException if there is an error reading the cached document, or if the cached document is corrupt.
+	 * @see XMLDocument#create(ElementSpec[])
+	 */
+	public ElementSpec[] read(final String key) throws IOException {
+		final File file = getFile(key);
+		if(!file.isFile()) { //if this document isn't cached
+			return null;
+		}
+		final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(dataInputStream.readInt() != MAGIC_NUMBER || dataInputStream.readInt() != FORMAT_VERSION) { //if this isn't a cached document we know how to read
+				Log.debug("Ignoring cached document", file, "with unrecognized format.");
+				return null;
+			}
+			final List<ElementSpec> elementSpecList = new ArrayList<ElementSpec>();
+			byte recordType;
+			while((recordType = dataInputStream.readByte()) != END_OF_DOCUMENT_RECORD) { //read each record
+				switch(recordType) {
+					case START_RECORD:
+						elementSpecList.add(new ElementSpec(readAttributeSet(dataInputStream), ElementSpec.StartTagType));
+						break;
+					case CONTENT_RECORD:
+						final AttributeSet attributeSet = readAttributeSet(dataInputStream);
+						final char[] text = readString(dataInputStream).toCharArray();
+						elementSpecList.add(new ElementSpec(attributeSet, ElementSpec.ContentType, text, 0, text.length));
+						break;
+					case END_RECORD:
+						elementSpecList.add(new ElementSpec(null, ElementSpec.EndTagType));
+						break;
+					default:
+						throw new IOException("Unknown record type " + recordType + " in cached document " + file + ".");
+				}
+			}
+			return elementSpecList.toArray(new ElementSpec[elementSpecList.size()]);
+		} catch(final EOFException eofException) {
+			throw (IOException)new IOException("Cached document " + file + " is incomplete.").initCause(eofException);
+		} finally {
+			dataInputStream.close();
+		}
+	}
+
+	/**
+	 * Stores a document in the cache, not including the styles of its elements. The document is first written to a temporary file, which then replaces any existing cached document, so that a
+	 * partially written document is never read.
+	 * @param key The key of the document.
+	 * @param document The document to store.
+	 * @throws IOException if there is an error writing the document, or if the document contains attribute values that cannot be cached.
+	 */
+	public void write(final String key, final XMLDocument document) throws IOException {
+		final File directory = getDirectory();
+		if(!directory.isDirectory() && !directory.mkdirs()) { //make sure the cache directory exists
+			throw new IOException("Unable to create document cache directory " + directory + ".");
+		}
+		final File file = getFile(key);
+		final File tempFile = File.createTempFile(key, null, directory); //write to a temporary file in the same directory so that it can be renamed
+		boolean isWritten = false;
+		try {
+			final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				dataOutputStream.writeInt(MAGIC_NUMBER);
+				dataOutputStream.writeInt(FORMAT_VERSION);
+				document.readLock(); //make sure the document doesn't change while we write it
+				try {
+					writeElement(dataOutputStream, document, document.getDefaultRootElement()); //the root element spec encloses all the documents, as when the document was created
+				} catch(final BadLocationException badLocationException) { //we should never get a bad location exception
+					throw (AssertionError)new AssertionError(badLocationException.getMessage()).initCause(badLocationException);
+				} finally {
+					document.readUnlock();
+				}
+				dataOutputStream.writeByte(END_OF_DOCUMENT_RECORD);
+			} finally {
+				dataOutputStream.close();
+			}
+			if(file.exists() && !file.delete()) { //some platforms won't rename over an existing file
+				throw new IOException("Unable to replace cached document " + file + ".");
+			}
+			if(!tempFile.renameTo(file)) {
+				throw new IOException("Unable to store cached document " + file + ".");
+			}
+			isWritten = true;
+		} finally {
+			if(!isWritten) { //if we didn't finish, don't leave the temporary file around
+				tempFile.delete();
+			}
+		}
+	}
+
+	/** Removes all cached documents. */
+	public void clear() {
+		final File[] files = getDirectory().listFiles();
+		if(files != null) { //if the directory exists
+			for(final File file : files) {
+				if(file.getName().endsWith('.' + FILENAME_EXTENSION) && !file.delete()) {
+					Log.warn("Unable to delete cached document", file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes an element and its descendants.
+	 * @param dataOutputStream The stream to which to write.
+	 * @param document The document containing the element.
+	 * @param element The element to write.
+	 * @throws IOException if there is an error writing the element, or if an attribute value cannot be cached.
+	 * @throws BadLocationException if the element's content is not within the document.
+	 */
+	private static void writeElement(final DataOutputStream dataOutputStream, final Document document, final Element element) throws IOException,
+			BadLocationException {
+		if(element.isLeaf()) { //leaves become content
+			dataOutputStream.writeByte(CONTENT_RECORD);
+			writeAttributeSet(dataOutputStream, element.getAttributes());
+			writeString(dataOutputStream, document.getText(element.getStartOffset(), element.getEndOffset() - element.getStartOffset()));
+		} else { //branches enclose their children
+			dataOutputStream.writeByte(START_RECORD);
+			writeAttributeSet(dataOutputStream, element.getAttributes());
+			for(int childElementIndex = 0, childElementCount = element.getElementCount(); childElementIndex < childElementCount; ++childElementIndex) {
+				writeElement(dataOutputStream, document, element.getElement(childElementIndex));
+			}
+			dataOutputStream.writeByte(END_RECORD);
+		}
+	}
+
+	/**
+	 * Writes the attributes defined in the given attribute set, not including its resolving parent or its CSS style.
+	 * @param dataOutputStream The stream to which to write.
+	 * @param attributeSet The attribute set to write.
+	 * @throws IOException if there is an error writing the attributes, or if an attribute value cannot be cached.
+	 */
+	private static void writeAttributeSet(final DataOutputStream dataOutputStream, final AttributeSet attributeSet) throws IOException {
+		final List<Object> attributeNames = new ArrayList<Object>(attributeSet.getAttributeCount());
+		final Enumeration<?> attributeNameEnumeration = attributeSet.getAttributeNames();
+		while(attributeNameEnumeration.hasMoreElements()) {
+			final Object attributeName = attributeNameEnumeration.nextElement();
+			if(attributeName != AttributeSet.ResolveAttribute && !XMLCSSStyles.XML_CSS_STYLE_ATTRIBUTE_NAME.equals(attributeName)) { //the resolving parent is recreated by the document, and styles are applied again
+				attributeNames.add(attributeName);
+			}
+		}
+		dataOutputStream.writeInt(attributeNames.size());
+		for(final Object attributeName : attributeNames) {
+			writeValue(dataOutputStream, attributeName);
+			writeValue(dataOutputStream, attributeSet.getAttribute(attributeName));
+		}
+	}
+
+	/**
+	 * Reads an attribute set.
+	 * @param dataInputStream The stream from which to read.
+	 * @return The attribute set read.
+	 * @throws IOException if there is an error reading the attributes.
+	 */
+	private static AttributeSet readAttributeSet(final DataInputStream dataInputStream) throws IOException {
+		final int attributeCount = dataInputStream.readInt();
+		final MutableAttributeSet attributeSet = new SimpleAttributeSet();
+		for(int i = 0; i < attributeCount; ++i) {
+			Object attributeName = readValue(dataInputStream);
+			final Object attributeValue = readValue(dataInputStream);
+			if(attributeValue instanceof XMLAttribute) { //use the canonical name for XML attributes
+				final XMLAttribute xmlAttribute = (XMLAttribute)attributeValue;
+				attributeName = XMLStyles.getSwingXMLAttributeName(xmlAttribute.getNamespaceURI(), XML.getLocalName(xmlAttribute.getQName()));
+			}
+			attributeSet.addAttribute(attributeName, attributeValue);
+		}
+		return attributeSet;
+	}
+
+	/**
+	 * Writes an attribute name or value.
+	 * @param dataOutputStream The stream to which to write.
+	 * @param value The value to write.
+	 * @throws IOException if there is an error writing the value, or if values of its type cannot be cached.
+	 */
+	private static void writeValue(final DataOutputStream dataOutputStream, final Object value) throws IOException {
+		if(value instanceof String) {
+			dataOutputStream.writeByte(STRING_VALUE);
+			writeString(dataOutputStream, (String)value);
+		} else if(value instanceof Boolean) {
+			dataOutputStream.writeByte(BOOLEAN_VALUE);
+			dataOutputStream.writeBoolean(((Boolean)value).booleanValue());
+		} else if(value instanceof Integer) {
+			dataOutputStream.writeByte(INTEGER_VALUE);
+			dataOutputStream.writeInt(((Integer)value).intValue());
+		} else if(value instanceof Float) {
+			dataOutputStream.writeByte(FLOAT_VALUE);
+			dataOutputStream.writeFloat(((Float)value).floatValue());
+		} else if(value instanceof URI) {
+			dataOutputStream.writeByte(URI_VALUE);
+			writeString(dataOutputStream, value.toString());
+		} else if(value instanceof ContentType) {
+			dataOutputStream.writeByte(CONTENT_TYPE_VALUE);
+			writeString(dataOutputStream, value.toString());
+		} else if(value instanceof XMLAttribute) {
+			final XMLAttribute xmlAttribute = (XMLAttribute)value;
+			dataOutputStream.writeByte(XML_ATTRIBUTE_VALUE);
+			writeNullableString(dataOutputStream, xmlAttribute.getNamespaceURI());
+			writeString(dataOutputStream, xmlAttribute.getQName());
+			writeString(dataOutputStream, xmlAttribute.getValue());
+		} else if(value instanceof NameValuePair[]) {
+			final NameValuePair<?, ?>[] nameValuePairs = (NameValuePair[])value;
+			dataOutputStream.writeByte(NAME_VALUE_PAIRS_VALUE);
+			dataOutputStream.writeInt(nameValuePairs.length);
+			for(final NameValuePair<?, ?> nameValuePair : nameValuePairs) {
+				final Object name = nameValuePair.getName();
+				final Object pairValue = nameValuePair.getValue();
+				if((name != null && !(name instanceof String)) || (pairValue != null && !(pairValue instanceof String))) { //we only know how to cache string pairs
+					throw new NotSerializableException("Unable to cache name/value pair " + nameValuePair + ".");
+				}
+				writeNullableString(dataOutputStream, (String)name);
+				writeNullableString(dataOutputStream, (String)pairValue);
+			}
+		} else { //see if this is a static key such as those defined in StyleConstants
+			final Object staticAttributeKey = value != null ? StyleContext.getStaticAttributeKey(value) : null;
+			if(staticAttributeKey == null || StyleContext.getStaticAttribute(staticAttributeKey) != value) {
+				throw new NotSerializableException("Unable to cache attribute value of type " + (value != null ? value.getClass().getName() : null) + ".");
+			}
+			dataOutputStream.writeByte(STATIC_VALUE);
+			writeString(dataOutputStream, staticAttributeKey.toString());
+		}
+	}
+
+	/**
+	 * Reads an attribute name or value.
+	 * @param dataInputStream The stream from which to read.
+	 * @return The value read.
+	 * @throws IOException if there is an error reading the value, or if the value is not valid.
+	 */
+	private static Object readValue(final DataInputStream dataInputStream) throws IOException {
+		final byte valueType = dataInputStream.readByte();
+		switch(valueType) {
+			case STRING_VALUE:
+				return readString(dataInputStream);
+			case BOOLEAN_VALUE:
+				return Boolean.valueOf(dataInputStream.readBoolean());
+			case INTEGER_VALUE:
+				return Integer.valueOf(dataInputStream.readInt());
+			case FLOAT_VALUE:
+				return Float.valueOf(dataInputStream.readFloat());
+			case URI_VALUE:
+				try {
+					return URI.create(readString(dataInputStream));
+				} catch(final IllegalArgumentException illegalArgumentException) {
+					throw (IOException)new IOException(illegalArgumentException.getMessage()).initCause(illegalArgumentException);
+				}
+			case CONTENT_TYPE_VALUE:
+				try {
+					return ContentType.create(readString(dataInputStream));
+				} catch(final IllegalArgumentException illegalArgumentException) {
+					throw (IOException)new IOException(illegalArgumentException.getMessage()).initCause(illegalArgumentException);
+				}
+			case XML_ATTRIBUTE_VALUE: {
+				final String namespaceURI = readNullableString(dataInputStream);
+				final String qname = readString(dataInputStream);
+				return new XMLAttribute(namespaceURI, qname, readString(dataInputStream));
+			}
+			case NAME_VALUE_PAIRS_VALUE: {
+				final NameValuePair<?, ?>[] nameValuePairs = new NameValuePair[dataInputStream.readInt()];
+				for(int i = 0; i < nameValuePairs.length; ++i) {
+					final String name = readNullableString(dataInputStream);
+					nameValuePairs[i] = new NameValuePair<String, String>(name, readNullableString(dataInputStream));
+				}
+				return nameValuePairs;
+			}
+			case STATIC_VALUE: {
+				final String staticAttributeKey = readString(dataInputStream);
+				final Object value = StyleContext.getStaticAttribute(staticAttributeKey);
+				if(value == null) {
+					throw new IOException("Unknown static attribute key " + staticAttributeKey + ".");
+				}
+				return value;
+			}
+			default:
+				throw new IOException("Unknown value type " + valueType + ".");
+		}
+	}
+
+	/**
+	 * Writes a string of any length.
+	 * @param dataOutputStream The stream to which to write.
+	 * @param string The string to write.
+	 * @throws IOException if there is an error writing the string.
+	 */
+	private static void writeString(final DataOutputStream dataOutputStream, final String string) throws IOException {
+		final byte[] bytes = string.getBytes(UTF_8);
+		dataOutputStream.writeInt(bytes.length);
+		dataOutputStream.write(bytes);
+	}
+
+	/**
+	 * Reads a string of any length.
+	 * @param dataInputStream The stream from which to read.
+	 * @return The string read.
+	 * @throws IOException if there is an error reading the string.
+	 */
+	private static String readString(final DataInputStream dataInputStream) throws IOException {
+		final byte[] bytes = new byte[dataInputStream.readInt()];
+		dataInputStream.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Writes a string that may be <code>null</code>.
+	 * @param dataOutputStream The stream to which to write.
+	 * @param string The string to write, or <code>null</code>.
+	 * @throws IOException if there is an error writing the string.
+	 */
+	private static void writeNullableString(final DataOutputStream dataOutputStream, final String string) throws IOException {
+		dataOutputStream.writeBoolean(string != null);
+		if(string != null) {
+			writeString(dataOutputStream, string);
+		}
+	}
+
+	/**
+	 * Reads a string that may be <code>null</code>.
+	 * @param dataInputStream The stream from which to read.
+	 * @return The string read, or <code>null</code>.
+	 * @throws IOException if there is an error reading the string.
+	 */
+	private static String readNullableString(final DataInputStream dataInputStream) throws IOException {
+		return dataInputStream.readBoolean() ? readString(dataInputStream) : null;
+	}
+
+}
@@ -20,11 +20,21 @@
 import java.net.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.swing.*;
 import javax.swing.text.*;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import static java.util.Objects.*;
 
@@ -41,6 +51,8 @@
 import com.globalmentor.rdf.*;
 import com.globalmentor.swing.*;
 import com.globalmentor.swing.text.BasicStyledEditorKit;
+import com.globalmentor.swing.text.CompactContent;
+import com.globalmentor.swing.text.MappedContent;
 //TODO fix import com.globalmentor.swing.text.rdf.maqro.MAQROXMLElementKit;
 import com.globalmentor.swing.text.xml.css.*;
 import com.globalmentor.w3c.spec.CSS;
@@ -159,6 +171,164 @@ protected XMLCSSStylesheetApplier getXMLStylesheetApplier() {
 		return xmlStylesheetApplier;
 	}
 
+	/** The shared executor for creating the element specs of separate documents concurrently, or <code>null</code> if it has not yet been created. */
+	private static ExecutorService elementSpecExecutor = null;
+
+	/**
+	 * Returns the shared executor for creating the element specs of separate documents concurrently. The executor uses a bounded number of daemon threads, one
+	 * for each available processor, and is created the first time it is needed.
+	 * @return The executor for creating element specs.
+	 */
+	protected static synchronized ExecutorService getElementSpecExecutor() {
+		if(elementSpecExecutor == null) { //if we haven't yet created the executor
+			final AtomicInteger threadCount = new AtomicInteger(0); //keep track of the threads we create so that we can name them
+			elementSpecExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, XMLEditorKit.class.getSimpleName() + "-elementSpecs-" + threadCount.incrementAndGet());
+					thread.setDaemon(true); //don't keep the application from exiting
+					return thread;
+				}
+			});
+		}
+		return elementSpecExecutor;
+	}
+
+	/** Whether the element specs of separate documents are created concurrently. */
+	private boolean parallelElementSpecs = true;
+
+	/** @return Whether the element specs of separate documents are created concurrently. */
+	public boolean isParallelElementSpecs() {
+		return parallelElementSpecs;
+	}
+
+	/**
+	 * Sets whether the element specs of separate documents should be created concurrently. When several documents are set at once, each document's element specs
+	 * are created on a separate thread and then combined in order. Concurrent creation may be turned off for deterministic debugging, or if a registered XML
+	 * element kit is not thread-safe.
+	 * @param parallelElementSpecs <code>true</code> if element specs of separate documents should be created concurrently, or <code>false</code> if they should
+	 *          be created one after the other on the calling thread.
+	 * @see #createElementSpecs(ContentData[], XMLDocument)
+	 */
+	public void setParallelElementSpecs(final boolean parallelElementSpecs) {
+		this.parallelElementSpecs = parallelElementSpecs;
+	}
+
+	/** The on-disk cache of finished documents, or <code>null</code> if documents should not be cached. */
+	private XMLDocumentCache documentCache = null;
+
+	/** @return The on-disk cache of finished documents, or <code>null</code> if documents are not cached. */
+	public XMLDocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	/**
+	 * Sets the on-disk cache of finished documents. When a cache is set, a document read from a stream with the same content, base URI, and media type as a
+	 * cached document is recreated directly from the cache without parsing its XML; stylesheets are still applied to the recreated document.
+	 * @param documentCache The cache of finished documents, or <code>null</code> if documents should not be cached.
+	 */
+	public void setDocumentCache(final XMLDocumentCache documentCache) {
+		this.documentCache = documentCache;
+	}
+
+	/** The minimum number of element specs added to the document in each batch, or zero if the document should be created all at once. */
+	private int progressiveBatchSize = 0;
+
+	/** @return The minimum number of element specs added to the document in each batch, or zero if the document is created all at once. */
+	public int getProgressiveBatchSize() {
+		return progressiveBatchSize;
+	}
+
+	/**
+	 * Sets whether documents should be populated progressively in batches, allowing the beginning of a document to be displayed and styled before the rest of the
+	 * document has been added. A {@link XMLDocument#CREATE_TASK} progress event is fired by the document after each batch.
+	 * @param progressiveBatchSize The minimum number of element specs to add to the document in each batch, or zero if the document should be created all at
+	 *          once.
+	 * @throws IllegalArgumentException if the given batch size is negative.
+	 * @see XMLDocument#createIncrementally(javax.swing.text.DefaultStyledDocument.ElementSpec[], int)
+	 */
+	public void setProgressiveBatchSize(final int progressiveBatchSize) {
+		if(progressiveBatchSize < 0) {
+			throw new IllegalArgumentException("Invalid batch size " + progressiveBatchSize);
+		}
+		this.progressiveBatchSize = progressiveBatchSize;
+	}
+
+	/** Whether documents created by this editor kit store their text in compact content rather than in a gap buffer. */
+	private boolean compactContent = false;
+
+	/** @return Whether documents created by this editor kit store their text in compact content rather than in a gap buffer. */
+	public boolean isCompactContent() {
+		return compactContent;
+	}
+
+	/**
+	 * Sets whether documents created by this editor kit should store their text in compact content, which uses less memory for large documents that are mostly
+	 * read but is slower to edit.
+	 * @param compactContent <code>true</code> if created documents should use compact content.
+	 * @see CompactContent
+	 * @see #createDefaultDocument()
+	 */
+	public void setCompactContent(final boolean compactContent) {
+		this.compactContent = compactContent;
+	}
+
+	/** Whether documents created by this editor kit store their text in a memory-mapped temporary file, allowing the documents only to be read. */
+	private boolean mappedContent = false;
+
+	/** @return Whether documents created by this editor kit store their text in a memory-mapped temporary file, allowing the documents only to be read. */
+	public boolean isMappedContent() {
+		return mappedContent;
+	}
+
+	/**
+	 * Sets whether documents created by this editor kit should store their text outside the heap in a memory-mapped temporary file. Such documents may be created
+	 * from XML but not otherwise edited. This setting takes precedence over compact content.
+	 * @param mappedContent <code>true</code> if created documents should use memory-mapped content.
+	 * @see MappedContent
+	 * @see #createDefaultDocument()
+	 */
+	public void setMappedContent(final boolean mappedContent) {
+		this.mappedContent = mappedContent;
+	}
+
+	/** Whether the stylesheet selectors of separate XML documents are matched concurrently. */
+	private boolean parallelStyles = false;
+
+	/** @return Whether the stylesheet selectors of separate XML documents are matched concurrently. */
+	public boolean isParallelStyles() {
+		return parallelStyles;
+	}
+
+	/**
+	 * Sets whether the stylesheet selectors of separate XML documents should be matched concurrently when styles are applied. This setting is passed to each
+	 * document when its XML is set.
+	 * @param parallelStyles <code>true</code> if the stylesheet selectors of separate XML documents should be matched concurrently.
+	 * @see XMLDocument#setParallelStyles(boolean)
+	 */
+	public void setParallelStyles(final boolean parallelStyles) {
+		this.parallelStyles = parallelStyles;
+	}
+
+	/** Whether XML is read by creating element specs directly from a streaming pull parser rather than by first building a DOM tree. */
+	private boolean streamingLoad = false;
+
+	/** @return Whether XML is read by creating element specs directly from a streaming pull parser rather than by first building a DOM tree. */
+	public boolean isStreamingLoad() {
+		return streamingLoad;
+	}
+
+	/**
+	 * Sets whether XML should be read by creating element specs directly from a streaming pull parser. Streaming never builds a DOM tree of the source document,
+	 * so that the source tree, the element specs, and the Swing element tree don't all have to be held in memory at once. XML element kits that do not
+	 * implement {@link XMLStreamElementKit} still receive a DOM tree, but only of the elements in their namespace.
+	 * @param streamingLoad <code>true</code> if XML should be read using a streaming parser, or <code>false</code> if a DOM tree should be built first.
+	 */
+	public void setStreamingLoad(final boolean streamingLoad) {
+		this.streamingLoad = streamingLoad;
+	}
+
 	/**
 	 * Constructor which defaults to a content type of <code>text/xml</code>.
 	 * @param uriInputStreamable The source of input streams for resources.
@@ -214,6 +384,16 @@ public XMLLinkController getLinkController() {
 	 * @return The model.
 	 */
 	public XMLDocument createDefaultDocument() {
+		if(isMappedContent()) { //if documents should use memory-mapped content
+			try {
+				return new XMLDocument(new MappedContent(), getURIInputStreamable()); //create an XML document with memory-mapped content, passing along our source of input streams
+			} catch(final IOException ioException) { //if we couldn't create the temporary file, fall back to storing the text on the heap
+				Log.warn("Unable to create memory-mapped document content.", ioException);
+			}
+		}
+		if(isCompactContent()) { //if documents should use compact content
+			return new XMLDocument(new CompactContent(), getURIInputStreamable()); //create an XML document with compact content, passing along our source of input streams
+		}
 		return new XMLDocument(getURIInputStreamable()); //create an XML document, passing along our source of input streams
 	}
 
@@ -304,8 +484,59 @@ public void read(final Reader reader, final Document document, final int pos) th
 	 * @throws BadLocationException Thrown if pos represents an invalid location within the document.
 	 */
 	public void read(InputStream inputStream, Document document, int pos) throws IOException, BadLocationException {
-		if(document instanceof XMLDocument) { //if this is a Swing XML document
-			XMLDocument swingXMLDocument = (XMLDocument)document; //cast the document to an XML document
+		final XMLDocumentCache documentCache = getDocumentCache(); //see if we should cache finished documents
+		if(document instanceof XMLDocument && documentCache != null) { //if we should try to use a cached document
+			final XMLDocument swingXMLDocument = (XMLDocument)document; //cast the document to an XML document
+			final byte[] bytes = InputStreams.getBytes(inputStream); //read the source so that we can identify it
+			final String key = documentCache.getKey(bytes, swingXMLDocument.getBaseURI(), getMediaType());
+			DefaultStyledDocument.ElementSpec[] elementSpecs = null;
+			try {
+				elementSpecs = documentCache.read(key); //see if the finished document is cached
+			} catch(final IOException ioException) { //if the cached document can't be read, just load the document normally
+				Log.warn("Unable to read cached document.", ioException);
+			}
+			if(elementSpecs != null) { //if the document was cached, create it without parsing the XML
+				Log.trace("Creating document from cache.");
+				swingXMLDocument.create(elementSpecs);
+				finishXML(swingXMLDocument, false); //styles aren't cached, so that changed stylesheets are honored
+			} else { //if the document isn't cached, load it and cache the result
+				readXML(new ByteArrayInputStream(bytes), swingXMLDocument);
+				try {
+					documentCache.write(key, swingXMLDocument);
+				} catch(final IOException ioException) { //failing to cache the document isn't fatal
+					Log.warn("Unable to cache document.", ioException);
+				}
+			}
+		} else if(document instanceof XMLDocument) { //if this is a Swing XML document
+			readXML(inputStream, (XMLDocument)document); //read the XML into the document
+		} else
+			//if this is not an XML document we're reading into
+			super.read(inputStream, document, pos); //let the parent class do the reading
+	}
+
+	/**
+	 * Reads XML from the given stream into a Swing XML document, either by parsing it into a DOM tree or by streaming it, and applies styles.
+	 * @param inputStream The stream from which to read.
+	 * @param swingXMLDocument The Swing document into which the XML will be set.
+	 * @throws IOException Thrown if there is an error reading or parsing the XML.
+	 * @see #isStreamingLoad()
+	 */
+	protected void readXML(final InputStream inputStream, final XMLDocument swingXMLDocument) throws IOException {
+		if(isStreamingLoad()) { //if we should stream XML into a Swing XML document
+			final URI baseURI = swingXMLDocument.getBaseURI(); //get the base URI from the document
+			final XMLStreamReader xmlStreamReader = createXMLStreamReader(inputStream, baseURI); //create a pull parser for the XML
+			try {
+				setXML(new ContentData[] { new ContentData<XMLStreamReader>(xmlStreamReader, baseURI, getMediaType()) }, swingXMLDocument); //set the XML data directly from the stream
+			} catch(final UncheckedIOException uncheckedIOException) { //if there was a parsing error while creating the element specs
+				throw uncheckedIOException.getCause(); //report the original I/O error
+			} finally {
+				try {
+					xmlStreamReader.close(); //release the parser; this does not close the underlying input stream
+				} catch(final XMLStreamException xmlStreamException) {
+					Log.warn(xmlStreamException); //there's nothing more we can do at this point
+				}
+			}
+		} else { //if we should parse the XML into a DOM tree
 			final URI baseURI = swingXMLDocument.getBaseURI(); //get the base URI from the document
 			final org.w3c.dom.Document xmlDocument = XML.parse(inputStream, baseURI, true);
 			/*TODO del
@@ -328,9 +559,40 @@ public void read(InputStream inputStream, Document document, int pos) throws IOE
 					  swingXMLDocument.setRDF(rdf); //set the RDF in our document
 			*/
 			setXML(xmlDocument, baseURI, getMediaType(), swingXMLDocument); //TODO fix
-		} else
-			//if this is not an XML document we're reading into
-			super.read(inputStream, document, pos); //let the parent class do the reading
+		}
+	}
+
+	/**
+	 * Creates a namespace-aware pull parser for reading XML from the given stream. Adjacent text is coalesced, just as a DOM tree would be normalized, and
+	 * external entities such as DTDs are retrieved using this editor kit's source of input streams.
+	 * @param inputStream The stream from which XML will be read.
+	 * @param baseURI The base URI of the XML, or <code>null</code> if the base URI is not known.
+	 * @return A new XML stream reader for reading the XML.
+	 * @throws IOException if there is an error creating the XML stream reader.
+	 */
+	protected XMLStreamReader createXMLStreamReader(final InputStream inputStream, final URI baseURI) throws IOException {
+		final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance(); //create a new factory for pull parsers
+		xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE); //combine adjacent text, as normalizing a DOM tree would
+		xmlInputFactory.setXMLResolver(new XMLResolver() { //load external entities using our source of input streams
+
+			@Override
+			public Object resolveEntity(final String publicID, final String systemID, final String entityBaseURI, final String namespace) throws XMLStreamException {
+				try {
+					final URI systemURI = entityBaseURI != null ? URIs.resolve(URI.create(entityBaseURI), systemID) : URI.create(systemID); //resolve the system ID against the base URI if we can
+					return getURIInputStreamable().getInputStream(systemURI); //get an input stream to the entity
+				} catch(final IllegalArgumentException illegalArgumentException) { //if the system ID was not a valid URI
+					throw new XMLStreamException(illegalArgumentException);
+				} catch(final IOException ioException) { //if we couldn't retrieve the entity
+					throw new XMLStreamException(ioException);
+				}
+			}
+		});
+		try {
+			return baseURI != null ? xmlInputFactory.createXMLStreamReader(baseURI.toString(), inputStream) : xmlInputFactory.createXMLStreamReader(inputStream);
+		} catch(final XMLStreamException xmlStreamException) {
+			throw (IOException)new IOException(xmlStreamException.getMessage()).initCause(xmlStreamException);
+		}
 	}
 
 	/**
@@ -465,10 +727,27 @@ public void setXML(final ContentData<?>[] contentDataArray, final XMLDocument sw
 			//create a list of element specs for creating the document and store them here
 			final DefaultStyledDocument.ElementSpec[] elementSpecList = createElementSpecs(contentDataArray, swingXMLDocument);
 			stylesheetApplier.clearStyles(); //clear the styles; we're done with the XML document so we don't need the mappings anymore
-			swingXMLDocument.create(elementSpecList); //create the document from the element specs
+			swingXMLDocument.setParallelStyles(isParallelStyles()); //let the document know whether styles of separate documents may be matched concurrently
+			final int progressiveBatchSize = getProgressiveBatchSize();
+			if(progressiveBatchSize > 0) { //if we should populate the document in batches
+				swingXMLDocument.createIncrementally(elementSpecList, progressiveBatchSize); //create the document from the element specs, applying styles as we go
+				finishXML(swingXMLDocument, true);
+			} else {
+				swingXMLDocument.create(elementSpecList); //create the document from the element specs
+				finishXML(swingXMLDocument, false);
+			}
 		}
+	}
 
-		Log.trace("Finished creating document, length: " + swingXMLDocument.getLength());
+	/**
+	 * Finishes setting XML data in a document once the document has been created from its element specs, however it was created. Styles are applied to the
+	 * document unless they were already applied to each batch as the document was created progressively.
+	 * @param swingXMLDocument The Swing document into which the XML was set.
+	 * @param styled Whether styles were already applied while the document was created.
+	 * @see #setXML(ContentData[], XMLDocument)
+	 */
+	protected void finishXML(final XMLDocument swingXMLDocument, final boolean styled) {
+		Log.trace("Finished creating document, length:", swingXMLDocument.getLength());
 
 		//TODO del elementSpecList[elementSpecList.length-1].setDirection(DefaultStyledDocument.ElementSpec.JoinPreviousDirection);	//TODO fix
 
@@ -498,7 +777,9 @@ public void setXML(final ContentData<?>[] contentDataArray, final XMLDocument sw
 		*/
 
 		//TODO testing; put in correct place		swingDocument.applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
-		swingXMLDocument.applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
+		if(!styled) { //a progressively created document has already been styled one batch at a time
+			swingXMLDocument.applyStyles(); //TODO testing; put in the correct place, and make sure this gets called when repaginating, if we need to
+		}
 	}
 
 	/**
@@ -517,40 +798,113 @@ protected DefaultStyledDocument.ElementSpec[] createElementSpecs(org.w3c.dom.Doc
 	*/
 
 	/**
-	 * Creates element spec objects from a list of XML document trees.
+	 * Creates element spec objects from a list of XML document trees. If there are several documents and parallel element spec creation is enabled, the element
+	 * specs for each document are created concurrently and then combined in order.
 	 * @param contentDataArray the array of data objects to insert into the document.
 	 * @param swingXMLDocument The Swing document into which the XML will be set.
 	 * @return An array of element specs defining the XML documents.
+	 * @see #isParallelElementSpecs()
 	 */
 	protected DefaultStyledDocument.ElementSpec[] createElementSpecs(final ContentData<?>[] contentDataArray, final XMLDocument swingXMLDocument) {
-		final List<DefaultStyledDocument.ElementSpec> elementSpecList = new ArrayList<DefaultStyledDocument.ElementSpec>(); //create an array to hold our element specs
+		final List<List<DefaultStyledDocument.ElementSpec>> contentElementSpecLists; //get the element specs for each content data
+		if(isParallelElementSpecs() && contentDataArray.length > 1) { //if we should create element specs for several documents concurrently
+			contentElementSpecLists = createElementSpecListsConcurrently(contentDataArray, swingXMLDocument);
+		} else { //if we should create the element specs in sequence
+			contentElementSpecLists = new ArrayList<List<DefaultStyledDocument.ElementSpec>>(contentDataArray.length);
+			for(final ContentData<?> contentData : contentDataArray) { //look at each content data
+				contentElementSpecLists.add(createElementSpecList(contentData, swingXMLDocument)); //create element specs for this content data
+			}
+		}
+		int elementSpecCount = 2; //find out how many element specs there will be, including the enclosing element
+		for(final List<DefaultStyledDocument.ElementSpec> contentElementSpecList : contentElementSpecLists) {
+			elementSpecCount += contentElementSpecList.size() + 3; //allow for a page break before each document
+		}
+		final List<DefaultStyledDocument.ElementSpec> elementSpecList = new ArrayList<DefaultStyledDocument.ElementSpec>(elementSpecCount); //create an array to hold our element specs
 		elementSpecList.add(new DefaultStyledDocument.ElementSpec(null, DefaultStyledDocument.ElementSpec.StartTagType)); //create the beginning of a Swing element to enclose all elements
-		for(int i = 0; i < contentDataArray.length; ++i) { //look at each content data
+		for(int i = 0; i < contentElementSpecLists.size(); ++i) { //look at each content data's element specs
 			if(i > 0) { //if this is not the first data to insert
 				//TODO check to see if we should actually do this, first (from the CSS attributes)
 				//TODO del System.out.println("Adding page break element.");	//TODO del
 				appendElementSpecListPageBreak(elementSpecList); //append a page break
 			}
-			final ContentData<?> contentData = contentDataArray[i]; //get a reference to this content data
-			final MutableAttributeSet contentDataAttributeSet = appendElementSpecList(elementSpecList, contentData, swingXMLDocument); //append element specs for this content data
-			//add the document attributes to the base attribute set 
-			final URI baseURI = contentData.getBaseURI(); //get a reference to the base URI
-			final ContentType mediaType = contentData.getContentType(); //get a reference to the media type
-			final RDFResource description = contentData.getDescription(); //get a description of the content
-			if(baseURI != null) { //if there is a base URI
-				XMLStyles.setBaseURI(contentDataAttributeSet, baseURI); //add the base URI as an attribute
-				XMLStyles.setTargetURI(contentDataAttributeSet, baseURI); //because this element is the root of the document, its base URI acts as a linking target as well; store the target URI for quick searching
+			elementSpecList.addAll(contentElementSpecLists.get(i)); //append the element specs for this content data
+		}
+		elementSpecList.add(new DefaultStyledDocument.ElementSpec(null, DefaultStyledDocument.ElementSpec.EndTagType)); //finish the element that encloses all the documents
+		return (DefaultStyledDocument.ElementSpec[])elementSpecList.toArray(new DefaultStyledDocument.ElementSpec[elementSpecList.size()]);
+	}
+
+	/**
+	 * Creates the element specs for each content data concurrently using the shared element spec executor.
+	 * @param contentDataArray the array of data objects to insert into the document.
+	 * @param swingXMLDocument The Swing document into which the XML will be set.
+	 * @return A list of element spec lists, in the same order as the content data.
+	 * @throws IllegalStateException if the current thread was interrupted while waiting for the element specs to be created.
+	 * @see #getElementSpecExecutor()
+	 */
+	protected List<List<DefaultStyledDocument.ElementSpec>> createElementSpecListsConcurrently(final ContentData<?>[] contentDataArray,
+			final XMLDocument swingXMLDocument) {
+		final ExecutorService executor = getElementSpecExecutor(); //get the executor for creating element specs
+		final List<Future<List<DefaultStyledDocument.ElementSpec>>> futures = new ArrayList<Future<List<DefaultStyledDocument.ElementSpec>>>(contentDataArray.length);
+		for(final ContentData<?> contentData : contentDataArray) { //start creating element specs for each content data
+			futures.add(executor.submit(new Callable<List<DefaultStyledDocument.ElementSpec>>() {
+
+				@Override
+				public List<DefaultStyledDocument.ElementSpec> call() {
+					return createElementSpecList(contentData, swingXMLDocument);
+				}
+			}));
+		}
+		final List<List<DefaultStyledDocument.ElementSpec>> contentElementSpecLists = new ArrayList<List<DefaultStyledDocument.ElementSpec>>(futures.size());
+		try {
+			for(final Future<List<DefaultStyledDocument.ElementSpec>> future : futures) { //gather the results in order
+				contentElementSpecLists.add(future.get()); //wait for these element specs to be created
 			}
-			if(mediaType != null) { //if there is a media type
-				XMLStyles.setMediaType(contentDataAttributeSet, mediaType); //add the media type as an attribute
+		} catch(final InterruptedException interruptedException) {
+			Thread.currentThread().interrupt(); //restore the interrupted status
+			throw new IllegalStateException("Interrupted while creating element specs.", interruptedException);
+		} catch(final ExecutionException executionException) { //if there was an error creating element specs, rethrow it in this thread
+			final Throwable cause = executionException.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			} else {
+				throw new IllegalStateException(cause);
 			}
-			if(description != null) { //if there is a description
-				XMLStyles.setDocumentDescription(contentDataAttributeSet, description); //add the description as an attribute
+		} finally {
+			for(final Future<List<DefaultStyledDocument.ElementSpec>> future : futures) { //if we stopped early, don't waste time on the remaining documents
+				future.cancel(true);
 			}
+		}
+		return contentElementSpecLists;
+	}
 
+	/**
+	 * Creates element spec objects for a single content data, including the document information in the content data's root attribute set. This method may be
+	 * called concurrently for separate content data.
+	 * @param contentData The content to be inserted into the document.
+	 * @param swingXMLDocument The Swing document into which the content will be set.
+	 * @return A list of the element specs for the content data.
+	 * @see #appendElementSpecList(List, ContentData, XMLDocument)
+	 */
+	protected List<DefaultStyledDocument.ElementSpec> createElementSpecList(final ContentData<?> contentData, final XMLDocument swingXMLDocument) {
+		final List<DefaultStyledDocument.ElementSpec> elementSpecList = new ArrayList<DefaultStyledDocument.ElementSpec>(); //create an array to hold our element specs
+		final MutableAttributeSet contentDataAttributeSet = appendElementSpecList(elementSpecList, contentData, swingXMLDocument); //append element specs for this content data
+		//add the document attributes to the base attribute set 
+		final URI baseURI = contentData.getBaseURI(); //get a reference to the base URI
+		final ContentType mediaType = contentData.getContentType(); //get a reference to the media type
+		final RDFResource description = contentData.getDescription(); //get a description of the content
+		if(baseURI != null) { //if there is a base URI
+			XMLStyles.setBaseURI(contentDataAttributeSet, baseURI); //add the base URI as an attribute
+			XMLStyles.setTargetURI(contentDataAttributeSet, baseURI); //because this element is the root of the document, its base URI acts as a linking target as well; store the target URI for quick searching
 		}
-		elementSpecList.add(new DefaultStyledDocument.ElementSpec(null, DefaultStyledDocument.ElementSpec.EndTagType)); //finish the element that encloses all the documents
-		return (DefaultStyledDocument.ElementSpec[])elementSpecList.toArray(new DefaultStyledDocument.ElementSpec[elementSpecList.size()]);
+		if(mediaType != null) { //if there is a media type
+			XMLStyles.setMediaType(contentDataAttributeSet, mediaType); //add the media type as an attribute
+		}
+		if(description != null) { //if there is a description
+			XMLStyles.setDocumentDescription(contentDataAttributeSet, description); //add the description as an attribute
+		}
+		return elementSpecList;
 	}
 
 	/**
@@ -566,6 +920,8 @@ protected MutableAttributeSet appendElementSpecList(final List<DefaultStyledDocu
 		final Object contentDataObject = contentData.getObject(); //get the content data object
 		if(contentDataObject instanceof org.w3c.dom.Document) { //if this is XML document content data
 			return appendXMLDocumentElementSpecList(elementSpecList, (ContentData<org.w3c.dom.Document>)contentData, swingXMLDocument); //append XML content
+		} else if(contentDataObject instanceof XMLStreamReader) { //if this is streamed XML content data
+			return appendXMLStreamElementSpecList(elementSpecList, (ContentData<XMLStreamReader>)contentData, swingXMLDocument); //append streamed XML content
 		}
 		/*TODO fix
 				else if(contentDataObject instanceof Activity) {	//if this is a MAQRO activity
@@ -655,6 +1011,64 @@ protected MutableAttributeSet appendXMLDocumentElementSpecList(final List<Defaul
 		return documentAttributeSet; //return the attribute set of the document
 	}
 
+	/** The pattern for retrieving the public ID (group 2) and system ID (group 4) from a document type declaration. */
+	protected static final Pattern DOCTYPE_EXTERNAL_ID_PATTERN = Pattern.compile("(?:PUBLIC\\s+([\"'])(.*?)\\1\\s+|SYSTEM\\s+)([\"'])(.*?)\\3");
+
+	/**
+	 * Appends element spec objects from streamed XML document content data. The XML is read directly from the stream without building a DOM tree of the
+	 * document.
+	 * @param elementSpecList The list of element specs to be inserted into the document.
+	 * @param contentData The streamed XML content to be inserted into the document, positioned at the start of the document.
+	 * @param swingXMLDocument The Swing document into which the content will be set.
+	 * @return The attribute set for the XML document.
+	 * @throws UncheckedIOException if there was an error reading the XML.
+	 * @throws IllegalArgumentException if the XML has no document element.
+	 * @see XMLStreamElementKit
+	 */
+	protected MutableAttributeSet appendXMLStreamElementSpecList(final List<DefaultStyledDocument.ElementSpec> elementSpecList,
+			final ContentData<? extends XMLStreamReader> contentData, final XMLDocument swingXMLDocument) {
+		final XMLStreamReader xmlStreamReader = contentData.getObject(); //get a reference to the XML stream
+		final URI baseURI = contentData.getBaseURI(); //get a reference to the base URI
+		MutableAttributeSet documentAttributeSet = null; //we'll get the attribute set when we reach the document element
+		String docTypePublicID = null; //we'll get the doctype information from the DTD, if any
+		String docTypeSystemID = null;
+		final List<NameValuePair<String, String>> processingInstructionList = new ArrayList<NameValuePair<String, String>>(); //document-level processing instructions
+		try {
+			while(xmlStreamReader.hasNext()) { //look at each top-level event in the document
+				switch(xmlStreamReader.next()) {
+					case XMLStreamConstants.DTD: //if this is the document type declaration
+					{
+						final Matcher externalIDMatcher = DOCTYPE_EXTERNAL_ID_PATTERN.matcher(xmlStreamReader.getText()); //find the external ID of the declaration
+						if(externalIDMatcher.find()) { //if the declaration has an external ID
+							docTypePublicID = externalIDMatcher.group(2); //the public ID will be null if only a system ID was given
+							docTypeSystemID = externalIDMatcher.group(4);
+						}
+					}
+						break;
+					case XMLStreamConstants.PROCESSING_INSTRUCTION: //processing instructions outside the document element
+						processingInstructionList.add(new NameValuePair<String, String>(xmlStreamReader.getPITarget(), xmlStreamReader.getPIData()));
+						break;
+					case XMLStreamConstants.START_ELEMENT: //the document element
+						documentAttributeSet = getDefaultXMLElementKit().appendElementSpecList(elementSpecList, xmlStreamReader, baseURI); //stream this document's root element into our list of elements
+						break;
+				}
+			}
+		} catch(final XMLStreamException xmlStreamException) {
+			throw new UncheckedIOException((IOException)new IOException(xmlStreamException.getMessage()).initCause(xmlStreamException));
+		}
+		if(documentAttributeSet == null) { //if there was no document element
+			throw new IllegalArgumentException("XML document " + baseURI + " has no document element.");
+		}
+		if(docTypePublicID != null) //if the document has a public ID
+			XMLStyles.setXMLDocTypePublicID(documentAttributeSet, docTypePublicID); //store the public ID
+		if(docTypeSystemID != null) //if the document has a system ID
+			XMLStyles.setXMLDocTypeSystemID(documentAttributeSet, docTypeSystemID); //store the system ID
+		if(processingInstructionList.size() > 0) { //if there are processing instructions
+			XMLStyles.setXMLProcessingInstructions(documentAttributeSet, processingInstructionList.toArray(new NameValuePair[processingInstructionList.size()])); //add the processing instructions
+		}
+		return documentAttributeSet; //return the attribute set of the document
+	}
+
 	/**
 	 * Appends information from an XML element tree into a list of element specs. The map of XML element kits is searched to attempt to find an element kit to
 	 * create element specs for the given XML element.
@@ -1103,13 +1517,43 @@ public MutableAttributeSet appendElementSpecList(final List<DefaultStyledDocumen
 	}
 
 	/**
-	 * An element kit that knows how to create element specs based upon XML elements.
+	 * A kit for creating element specs that can also create element specs directly from an XML stream, without a DOM tree. When XML is read using a streaming
+	 * load, element kits that do not implement this interface are given a DOM tree of only the elements in their namespace.
+	 * <p>
+	 * A stream element kit that wishes to have the default processing performed for an element should call
+	 * {@link DefaultXMLElementKit#appendElementSpecListElement(List, XMLStreamReader, URI)} rather than
+	 * {@link DefaultXMLElementKit#appendElementSpecList(List, XMLStreamReader, URI)}, which would delegate back to the stream element kit.
+	 * </p>
+	 * @author Garret Wilson
+	 * @see XMLEditorKit#setStreamingLoad(boolean)
+	 */
+	public interface XMLStreamElementKit extends XMLElementKit {
+
+		/**
+		 * Appends information from a streamed XML element into a list of element specs.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param xmlStreamReader The XML stream, positioned at the start of the element; when this method returns the stream will be positioned at the end of the
+		 *          element.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching.
+		 * @return The attribute set used to represent the element; this attribute set can be manipulated after the method returns.
+		 * @throws XMLStreamException if there is an error reading the XML stream.
+		 */
+		public MutableAttributeSet appendElementSpecList(final List<DefaultStyledDocument.ElementSpec> elementSpecList, final XMLStreamReader xmlStreamReader,
+				final URI baseURI) throws XMLStreamException;
+
+	}
+
+	/**
+	 * An element kit that knows how to create element specs based upon XML elements, either from a DOM tree or directly from an XML stream.
 	 * @author Garret Wilson
 	 */
-	public class DefaultXMLElementKit implements XMLElementKit {
+	public class DefaultXMLElementKit implements XMLStreamElementKit {
 
-		/** The set XML elements we are currently examining; used to prevent infinite recursion when delegating to XML element kits. */
-		private final Set<org.w3c.dom.Element> delegatedXMLElementSet = new IdentityHashSet<org.w3c.dom.Element>();
+		/**
+		 * The set XML elements we are currently examining; used to prevent infinite recursion when delegating to XML element kits. The set is synchronized because
+		 * element specs for several documents may be created concurrently.
+		 */
+		private final Set<org.w3c.dom.Element> delegatedXMLElementSet = Collections.synchronizedSet(new IdentityHashSet<org.w3c.dom.Element>());
 
 		/**
 		 * Appends information from an XML element tree into a list of element specs.
@@ -1174,16 +1618,25 @@ protected void appendElementSpecListContent(final List<DefaultStyledDocument.Ele
 							}
 				*/
 			} else { //if this element has no children, we'll have to add dummy text
-				final char dummyChar; //we'll decide which character to use for the dummy text
-				if(isEmptyElement(attributeSet)) { //if this element should remain empty
-					XMLStyles.setXMLEmptyElement(attributeSet, true); //show that this is an empty element TODO see if this is the best way to do this and make sure this gets set for object added during editing
-					dummyChar = Characters.OBJECT_REPLACEMENT_CHAR; //use the object replacement character as dummy text, because there can never be real text added
-				} else { //if this element might have text at some point
-					dummyChar = '\n'; //use an EOL character TODO make sure this is a block element---this could probably really screw up an inline element with no content
-				}
-				//add a dummy replacment character so that this element will have some text to represent
-				elementSpecList.add(new DefaultStyledDocument.ElementSpec(null, DefaultStyledDocument.ElementSpec.ContentType, new char[] { dummyChar }, 0, 1));
+				appendElementSpecListEmptyContent(elementSpecList, attributeSet); //add dummy content
+			}
+		}
+
+		/**
+		 * Appends dummy content for an element that has no children, so that the element will have some text to represent.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param attributeSet The attribute set of the element.
+		 */
+		protected void appendElementSpecListEmptyContent(final List<DefaultStyledDocument.ElementSpec> elementSpecList, final MutableAttributeSet attributeSet) {
+			final char dummyChar; //we'll decide which character to use for the dummy text
+			if(isEmptyElement(attributeSet)) { //if this element should remain empty
+				XMLStyles.setXMLEmptyElement(attributeSet, true); //show that this is an empty element TODO see if this is the best way to do this and make sure this gets set for object added during editing
+				dummyChar = Characters.OBJECT_REPLACEMENT_CHAR; //use the object replacement character as dummy text, because there can never be real text added
+			} else { //if this element might have text at some point
+				dummyChar = '\n'; //use an EOL character TODO make sure this is a block element---this could probably really screw up an inline element with no content
 			}
+			//add a dummy replacment character so that this element will have some text to represent
+			elementSpecList.add(new DefaultStyledDocument.ElementSpec(null, DefaultStyledDocument.ElementSpec.ContentType, new char[] { dummyChar }, 0, 1));
 		}
 
 		/**
@@ -1293,10 +1746,11 @@ public MutableAttributeSet createAttributeSet(final URI elementNamespaceURI, fin
 		 */
 		public MutableAttributeSet createAttributeSet(final URI elementNamespaceURI, final String elementQName, final CSSStyleDeclaration style) {
 			final SimpleAttributeSet attributeSet = new SimpleAttributeSet(); //create a new attribute for this element
-			XMLStyles.setXMLElementName(attributeSet, elementQName); //store the element's name in the attribute set
+			//intern the names so that the attribute sets of elements with the same name share the strings
+			XMLStyles.setXMLElementName(attributeSet, elementQName.intern()); //store the element's name in the attribute set
 			if(elementNamespaceURI != null) //if the element has a namespace URI specified
-				XMLStyles.setXMLElementNamespaceURI(attributeSet, elementNamespaceURI.toString()); //store the element's namespace URI in the attribute set
-			final String localName = getLocalName(elementQName); //get the element's local name from the qualified name
+				XMLStyles.setXMLElementNamespaceURI(attributeSet, elementNamespaceURI.toString().intern()); //store the element's namespace URI in the attribute set
+			final String localName = getLocalName(elementQName).intern(); //get the element's local name from the qualified name
 			XMLStyles.setXMLElementLocalName(attributeSet, localName); //store the element's local name in the attribute set
 			if(style != null) //if style was given TODO should we instead do this unconditionally?
 				XMLCSSStyles.setXMLCSSStyle(attributeSet, style); //store the CSS style in the attribute set
@@ -1333,14 +1787,7 @@ protected MutableAttributeSet createAttributeSet(final Node xmlNode, final URI b
 						//add this XML attribute to the Swing atribute set as the value of our special XML attribute key
 						XMLStyles.addXMLAttribute(attributeSet, xmlAttribute.getNamespaceURI(), xmlAttribute.getNodeName(), xmlAttribute.getNodeValue());
 					}
-					final String targetID = getTargetID(attributeSet); //get the target ID specified in the attribute set
-					if(targetID != null) { //if this attribute set has a target ID
-						try {
-							final URI targetURI = URIs.resolveRawFragment(baseURI, targetID); //create a full URI from the target ID used as a fragment
-							XMLStyles.setTargetURI(attributeSet, targetURI); //store the target URI for quick searching
-						} catch(IllegalArgumentException illegalArgumentException) {
-						} //ignore any errors and simply don't store the target URL
-					}
+					setTargetURI(attributeSet, baseURI); //store the target URI, if any
 				}
 					break;
 				case Node.TEXT_NODE: //if this is a text node
@@ -1350,6 +1797,262 @@ protected MutableAttributeSet createAttributeSet(final Node xmlNode, final URI b
 			return attributeSet; //return the attribute set we created
 		}
 
+		/**
+		 * Stores the full target URI of an element if the element's XML attributes define a target ID.
+		 * @param attributeSet The attribute set of the element, already containing its XML attributes.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching, or <code>null</code> if there is no base URI or if
+		 *          the base URI is not applicable.
+		 * @see XMLEditorKit#getTargetID(AttributeSet)
+		 */
+		protected void setTargetURI(final MutableAttributeSet attributeSet, final URI baseURI) {
+			final String targetID = getTargetID(attributeSet); //get the target ID specified in the attribute set
+			if(targetID != null) { //if this attribute set has a target ID
+				try {
+					final URI targetURI = URIs.resolveRawFragment(baseURI, targetID); //create a full URI from the target ID used as a fragment
+					XMLStyles.setTargetURI(attributeSet, targetURI); //store the target URI for quick searching
+				} catch(IllegalArgumentException illegalArgumentException) {
+				} //ignore any errors and simply don't store the target URL
+			}
+		}
+
+		//streaming
+
+		/**
+		 * Appends information from a streamed XML element into a list of element specs. If an XML element kit is registered for the element's namespace, creating
+		 * the element specs is delegated to that kit; a kit that cannot process streams is given a DOM tree of the element.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param xmlStreamReader The XML stream, positioned at the start of the element; when this method returns the stream will be positioned at the end of the
+		 *          element.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching.
+		 * @return The attribute set used to represent the element; this attribute set can be manipulated after the method returns.
+		 * @throws XMLStreamException if there is an error reading the XML stream.
+		 */
+		public MutableAttributeSet appendElementSpecList(final List<DefaultStyledDocument.ElementSpec> elementSpecList, final XMLStreamReader xmlStreamReader,
+				final URI baseURI) throws XMLStreamException {
+			final XMLElementKit xmlElementKit = namespaceXMLElementKitMap.get(getNamespaceURI(xmlStreamReader.getNamespaceURI())); //see if there is an XML element kit registered with this namespace
+			if(xmlElementKit != null && xmlElementKit != this) { //if we have another XML element kit registered for this namespace
+				if(xmlElementKit instanceof XMLStreamElementKit) { //if the XML element kit can process the stream itself
+					return ((XMLStreamElementKit)xmlElementKit).appendElementSpecList(elementSpecList, xmlStreamReader, baseURI); //delegate to the installed XML element kit
+				} else { //if the XML element kit only knows about DOM trees
+					final org.w3c.dom.Element xmlElement = createXMLElement(xmlStreamReader); //create a tree of just this element
+					delegatedXMLElementSet.add(xmlElement); //show that we're delegating this XML element, so that if the kit calls back for default processing we won't delegate again
+					try {
+						return xmlElementKit.appendElementSpecList(elementSpecList, xmlElement, baseURI); //give the XML element kit the tree of this element
+					} finally {
+						delegatedXMLElementSet.remove(xmlElement); //always remove the element from the set of delegated XML elements
+					}
+				}
+			}
+			return appendElementSpecListElement(elementSpecList, xmlStreamReader, baseURI); //process the element ourselves
+		}
+
+		/**
+		 * Appends information from a streamed XML element into a list of element specs without delegating to any other XML element kit.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param xmlStreamReader The XML stream, positioned at the start of the element; when this method returns the stream will be positioned at the end of the
+		 *          element.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching.
+		 * @return The attribute set used to represent the element; this attribute set can be manipulated after the method returns.
+		 * @throws XMLStreamException if there is an error reading the XML stream.
+		 */
+		public MutableAttributeSet appendElementSpecListElement(final List<DefaultStyledDocument.ElementSpec> elementSpecList,
+				final XMLStreamReader xmlStreamReader, final URI baseURI) throws XMLStreamException {
+			final MutableAttributeSet attributeSet = createAttributeSet(xmlStreamReader, baseURI); //create and fill an attribute set based upon this element
+			elementSpecList.add(new DefaultStyledDocument.ElementSpec(attributeSet, DefaultStyledDocument.ElementSpec.StartTagType)); //create the beginning of a Swing element to model this XML element
+			appendElementSpecListContent(elementSpecList, xmlStreamReader, attributeSet, baseURI); //append the content of the element
+			elementSpecList.add(new DefaultStyledDocument.ElementSpec(attributeSet, DefaultStyledDocument.ElementSpec.EndTagType)); //finish the element we started at the beginning of this function
+			return attributeSet; //return the attribute set used for the element
+		}
+
+		/**
+		 * Appends the contents of a streamed XML element (not including the element tag) into a list of element specs.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param xmlStreamReader The XML stream, positioned at the start of the element; when this method returns the stream will be positioned at the end of the
+		 *          element.
+		 * @param attributeSet The attribute set of the element.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching.
+		 * @throws XMLStreamException if there is an error reading the XML stream.
+		 */
+		protected void appendElementSpecListContent(final List<DefaultStyledDocument.ElementSpec> elementSpecList, final XMLStreamReader xmlStreamReader,
+				final MutableAttributeSet attributeSet, final URI baseURI) throws XMLStreamException {
+			boolean hasChildren = false; //we'll see if the element has any child nodes
+			int eventType = xmlStreamReader.next(); //move past the start of the element
+			while(eventType != XMLStreamConstants.END_ELEMENT) { //look at each child until we reach the end of the element
+				hasChildren = true; //comments and processing instructions count as children, just as they do in a DOM tree
+				switch(eventType) {
+					case XMLStreamConstants.START_ELEMENT: //if this is a child element
+						appendElementSpecList(elementSpecList, xmlStreamReader, baseURI); //insert this element into our element spec list
+						eventType = xmlStreamReader.next(); //go past the end of the child element
+						break;
+					case XMLStreamConstants.CHARACTERS: //if this is text
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+					{
+						final String text = xmlStreamReader.getText(); //get the (coalesced) text
+						eventType = xmlStreamReader.next(); //look ahead to see if this text is the last child of the element
+						final boolean isBlockEnd = eventType == XMLStreamConstants.END_ELEMENT && !CSS.isDisplayInline(XMLCSSStyles.getXMLCSSStyle(attributeSet)); //see if this text ends a block element
+						appendElementSpecListContent(elementSpecList, getTextAttributeSet(), text, isBlockEnd); //append the content
+					}
+						break;
+					default: //ignore comments and processing instructions TODO fix for inserting unknown nodes into the Swing document
+						eventType = xmlStreamReader.next();
+						break;
+				}
+			}
+			if(!hasChildren) { //if this element has no children, we'll have to add dummy text
+				appendElementSpecListEmptyContent(elementSpecList, attributeSet); //add dummy content
+			}
+		}
+
+		/** The attribute set shared by all streamed text, lazily created. */
+		private AttributeSet textAttributeSet = null;
+
+		/**
+		 * Returns the attribute set shared by all streamed text. The attribute set is only read when element specs are inserted, as the document copies the
+		 * attributes of each element into its own attribute sets, so a single attribute set is used rather than one for each text node.
+		 * @return The attribute set for streamed text, which must not be modified.
+		 */
+		protected synchronized AttributeSet getTextAttributeSet() {
+			if(textAttributeSet == null) { //if we haven't yet created the text attribute set
+				textAttributeSet = createAttributeSet((URI)null, TEXT_NODE_NAME);
+			}
+			return textAttributeSet;
+		}
+
+		/**
+		 * Appends streamed text into a list of element specs.
+		 * @param elementSpecList The list of element specs to be inserted into the document.
+		 * @param attributeSet The attribute set representing the text.
+		 * @param text The text to be inserted.
+		 * @param isBlockEnd Whether the text is the last content of a block element and should therefore be followed by an end-of-line character.
+		 */
+		protected void appendElementSpecListContent(final List<DefaultStyledDocument.ElementSpec> elementSpecList, final AttributeSet attributeSet,
+				final String text, final boolean isBlockEnd) {
+			if(text.length() > 0) { //if there is actually content (don't add empty text)
+				final StringBuilder textStringBuilder = new StringBuilder(text);
+				StringBuilders.collapse(textStringBuilder, Characters.WHITESPACE_CHARACTERS, " "); //collapse whitespace
+				if(isBlockEnd) { //if this text ends a block
+					textStringBuilder.append('\n');
+				}
+				final String content = textStringBuilder.toString(); //convert the string buffer to a string
+				elementSpecList.add(new DefaultStyledDocument.ElementSpec(attributeSet, DefaultStyledDocument.ElementSpec.ContentType, content.toCharArray(), 0,
+						content.length()));
+			}
+		}
+
+		/**
+		 * Creates an attribute set for a streamed XML element.
+		 * <p>
+		 * Because no stylesheets have been applied to a stream, the element is given an empty CSS style; styles are applied to the Swing elements afterwards.
+		 * </p>
+		 * @param xmlStreamReader The XML stream, positioned at the start of an element.
+		 * @param baseURI The base URI of the document, used for generating full target URIs for quick searching, or <code>null</code> if there is no base URI or if
+		 *          the base URI is not applicable.
+		 * @return An attribute set reflecting the XML element.
+		 */
+		protected MutableAttributeSet createAttributeSet(final XMLStreamReader xmlStreamReader, final URI baseURI) {
+			final String namespaceURI = getNamespaceURI(xmlStreamReader.getNamespaceURI()); //get the element namespace URI
+			final MutableAttributeSet attributeSet = createAttributeSet(namespaceURI != null ? URI.create(namespaceURI) : null,
+					getQualifiedName(xmlStreamReader.getPrefix(), xmlStreamReader.getLocalName())); //create a new attribute for this element
+			XMLCSSStyles.setXMLCSSStyle(attributeSet, new XMLCSSStyleDeclaration()); //give every attribute set a default empty CSS style
+			//store the namespace declarations as attributes, as a DOM tree would
+			for(int namespaceIndex = 0; namespaceIndex < xmlStreamReader.getNamespaceCount(); ++namespaceIndex) { //look at each of the namespace declarations
+				XMLStyles.addXMLAttribute(attributeSet, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, getNamespaceDeclarationName(xmlStreamReader.getNamespacePrefix(namespaceIndex)),
+						xmlStreamReader.getNamespaceURI(namespaceIndex));
+			}
+			//store the XML attributes
+			for(int attributeIndex = 0; attributeIndex < xmlStreamReader.getAttributeCount(); ++attributeIndex) { //look at each of the attributes
+				//add this XML attribute to the Swing atribute set as the value of our special XML attribute key
+				XMLStyles.addXMLAttribute(attributeSet, getNamespaceURI(xmlStreamReader.getAttributeNamespace(attributeIndex)),
+						getQualifiedName(xmlStreamReader.getAttributePrefix(attributeIndex), xmlStreamReader.getAttributeLocalName(attributeIndex)),
+						xmlStreamReader.getAttributeValue(attributeIndex));
+			}
+			setTargetURI(attributeSet, baseURI); //store the target URI, if any
+			return attributeSet; //return the attribute set we created
+		}
+
+		/**
+		 * Reads a streamed XML element into a DOM tree, for XML element kits that do not support streaming.
+		 * @param xmlStreamReader The XML stream, positioned at the start of the element; when this method returns the stream will be positioned at the end of the
+		 *          element.
+		 * @return A DOM element, the document element of its own document, containing the XML element tree.
+		 * @throws XMLStreamException if there is an error reading the XML stream.
+		 */
+		protected org.w3c.dom.Element createXMLElement(final XMLStreamReader xmlStreamReader) throws XMLStreamException {
+			final org.w3c.dom.Document xmlDocument = XML.createDocumentBuilder(true).newDocument(); //create a document to hold the element
+			Node parentNode = xmlDocument; //we'll add nodes to the document first
+			int eventType = xmlStreamReader.getEventType(); //start with the start of the element
+			do {
+				switch(eventType) {
+					case XMLStreamConstants.START_ELEMENT:
+					{
+						final org.w3c.dom.Element xmlElement = xmlDocument.createElementNS(getNamespaceURI(xmlStreamReader.getNamespaceURI()),
+								getQualifiedName(xmlStreamReader.getPrefix(), xmlStreamReader.getLocalName())); //create the element
+						for(int namespaceIndex = 0; namespaceIndex < xmlStreamReader.getNamespaceCount(); ++namespaceIndex) { //add each namespace declaration
+							xmlElement.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, getNamespaceDeclarationName(xmlStreamReader.getNamespacePrefix(namespaceIndex)),
+									xmlStreamReader.getNamespaceURI(namespaceIndex));
+						}
+						for(int attributeIndex = 0; attributeIndex < xmlStreamReader.getAttributeCount(); ++attributeIndex) { //add each attribute
+							xmlElement.setAttributeNS(getNamespaceURI(xmlStreamReader.getAttributeNamespace(attributeIndex)),
+									getQualifiedName(xmlStreamReader.getAttributePrefix(attributeIndex), xmlStreamReader.getAttributeLocalName(attributeIndex)),
+									xmlStreamReader.getAttributeValue(attributeIndex));
+						}
+						parentNode.appendChild(xmlElement); //add the element to its parent
+						parentNode = xmlElement; //the element's content will go inside it
+					}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						parentNode = parentNode.getParentNode(); //go back up to the parent node
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.SPACE:
+						parentNode.appendChild(xmlDocument.createTextNode(xmlStreamReader.getText()));
+						break;
+					case XMLStreamConstants.CDATA:
+						parentNode.appendChild(xmlDocument.createCDATASection(xmlStreamReader.getText()));
+						break;
+					case XMLStreamConstants.COMMENT:
+						parentNode.appendChild(xmlDocument.createComment(xmlStreamReader.getText()));
+						break;
+					case XMLStreamConstants.PROCESSING_INSTRUCTION:
+						parentNode.appendChild(xmlDocument.createProcessingInstruction(xmlStreamReader.getPITarget(), xmlStreamReader.getPIData()));
+						break;
+				}
+				if(parentNode != xmlDocument) { //if we haven't reached the end of the element
+					eventType = xmlStreamReader.next(); //go to the next event
+				}
+			} while(parentNode != xmlDocument); //keep reading until we're back at the document level
+			return xmlDocument.getDocumentElement(); //return the element we read
+		}
+
+		/**
+		 * Normalizes a namespace URI reported by an XML stream, some implementations of which report the empty string for no namespace.
+		 * @param namespaceURI The namespace URI reported by the stream.
+		 * @return The namespace URI, or <code>null</code> if there is no namespace.
+		 */
+		protected String getNamespaceURI(final String namespaceURI) {
+			return namespaceURI != null && namespaceURI.length() > 0 ? namespaceURI : null;
+		}
+
+		/**
+		 * Determines the qualified name from a prefix and a local name.
+		 * @param prefix The prefix, or <code>null</code> or the empty string if there is no prefix.
+		 * @param localName The local name.
+		 * @return The local name, preceded by the prefix and a colon if there is a prefix.
+		 */
+		protected String getQualifiedName(final String prefix, final String localName) {
+			return prefix != null && prefix.length() > 0 ? prefix + ':' + localName : localName;
+		}
+
+		/**
+		 * Determines the attribute name used to declare a namespace prefix, such as <code>xmlns:prefix</code>.
+		 * @param prefix The declared prefix, or <code>null</code> or the empty string if the default namespace is being declared.
+		 * @return The qualified name of the namespace declaration attribute.
+		 */
+		protected String getNamespaceDeclarationName(final String prefix) {
+			return prefix != null && prefix.length() > 0 ? getQualifiedName(XMLConstants.XMLNS_ATTRIBUTE, prefix) : XMLConstants.XMLNS_ATTRIBUTE;
+		}
+
 	}
 
 }
@@ -21,8 +21,11 @@
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ImageObserver;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.ref.SoftReference;
 import java.net.URISyntaxException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.swing.text.*;
 import javax.swing.text.html.ImageView;
 
@@ -50,6 +53,9 @@ public abstract class XMLImageView extends XMLObjectView implements ImageObserve
 	/** The reference to the image, which can be reclaimed if memory is running low. */
 	private SoftReference imageReference = null;
 
+	/** The background load of the image, or <code>null</code> if the image is not being loaded. */
+	private Future<Object> imageLoad = null;
+
 	/**
 	 * Whether or not the image has started loading.
 	 * @see #paint
@@ -132,8 +138,9 @@ public void setShowing(final boolean newShowing) {
 	}
 
 	/**
-	 * @return The image to be drawn. Because memory usage may cause the image memory to be reclaimed, this method may reload the image. <code>initialize()</code>
-	 *         must therefore have first been called to appropriately set the image information.
+	 * @return The image to be drawn, or <code>null</code> if the image is still being decoded in the background. Because memory usage may cause the image memory
+	 *         to be reclaimed, this method may start reloading the image, in which case the view will be repainted once the image is ready.
+	 *         <code>initialize()</code> must therefore have first been called to appropriately set the image information.
 	 * @throws URISyntaxException Thrown if the image href does not allow a syntactically correct URI to be constructed.
 	 * @throws IOException Thrown if there is an error getting the image, usually because the image needed to be loaded but could not be.
 	 * @see #freeImage
@@ -145,26 +152,70 @@ protected Image getImage() throws URISyntaxException, IOException {
 		else {
 			//TODO put some sort of assert that the image reference is not equal to null or something; or maybe this isn't needed, since the constructor calls initialize()
 			Image image = imageReference != null ? (Image)imageReference.get() : null; //get the image to which the soft reference refers
+			if(image != null && !XMLDocument.isImageSizeSufficient(image, getImageTargetSize())) { //if the image was decoded for a smaller size than we now need
+				image = null; //decode the image again with more detail
+			}
 			if(image == null) { //if we have not loaded the image yet, or the image memory has been reclaimed //TODO put all this into a separate function
-				Log.trace("loading image"); //TODO del
-				if(imageReference != null) { //if we used to have a reference to an image, but memory was running low and it was reclaimed
-					Log.trace("Image memory reclaimed, reloading."); //TODO del
-					System.gc(); //indicate that garbage collection should occur to attempt to give us more memory TODO testing memory
+				if(imageLoad == null) { //if we haven't started loading the image
+					Log.trace("loading image"); //TODO del
+					if(imageReference != null) { //if we used to have a reference to an image, but memory was running low and it was reclaimed
+						Log.trace("Image memory reclaimed, reloading."); //the document's bounded resource cache decides what to keep, so there's no need to request garbage collection
+					}
+					startedLoading = false; //show that the image hasn't started loading, yet
+					finishedLoading = false; //show that the image hasn't finished loading, either
+					final XMLDocument document = (XMLDocument)getDocument(); //get the document used to load resources TODO make sure this is an XML document
+					//get the href, taking into account that the href is relative to this file's base URL
+					final String href = XMLStyles.getBaseRelativeHRef(getAttributes(), getHRef());
+					//decode the image in the background, and repaint the image from the event dispatch thread when it's ready
+					imageLoad = document.getResourceLater(href, getImageTargetSize(), new Runnable() {
+
+						public void run() {
+							EventQueue.invokeLater(new Runnable() {
+
+								public void run() {
+									repaintImage(); //repaint the image now that it has been decoded
+								}
+							});
+						}
+					});
 				}
-				startedLoading = false; //show that the image hasn't started loading, yet
-				finishedLoading = false; //show that the image hasn't finished loading, either
-				final XMLDocument document = (XMLDocument)getDocument(); //get the document used to load resources TODO make sure this is an XML document
-				//get the href, taking into account that the href is relative to this file's base URL
-				//TODO del System.out.println("image href: "+getHRef());  //TODO del
-				final String href = XMLStyles.getBaseRelativeHRef(getAttributes(), getHRef());
-				//TODO del System.out.println("image base relateive href: "+href);  //TODO del
-				image = (Image)document.getResource(href); //get the image resource TODO check to make sure what is returned is really an image
+				if(!imageLoad.isDone()) { //if the image is still being decoded
+					return null; //a placeholder will be shown until the image is ready
+				}
+				try {
+					image = (Image)imageLoad.get(); //get the decoded image TODO check to make sure what is returned is really an image
+				} catch(final InterruptedException interruptedException) { //the load is done, so we should never be interrupted
+					Thread.currentThread().interrupt(); //restore the interrupted status
+					throw (IOException)new InterruptedIOException("Interrupted while getting image " + getHRef() + ".").initCause(interruptedException);
+				} catch(final ExecutionException executionException) { //if the image couldn't be loaded, keep the failed load so that we won't keep trying to load the image each time we paint
+					final Throwable cause = executionException.getCause();
+					if(cause instanceof IOException) {
+						throw (IOException)cause;
+					} else if(cause instanceof URISyntaxException) {
+						throw (URISyntaxException)cause;
+					}
+					throw (IOException)new IOException(cause.getMessage()).initCause(cause);
+				}
+				imageLoad = null; //we're finished loading the image
 				imageReference = new SoftReference(image); //create a soft reference to the image to store locally
 			}
 			return image; //return the image
 		}
 	}
 
+	/**
+	 * Determines the size at which the image will be displayed, so that an image much larger than will be displayed need not be decoded at full resolution. Images
+	 * are not scaled by the document zoom factor, so this version returns the current size of the view.
+	 * @return The size at which the image will be displayed, or <code>null</code> if the display size is not yet known.
+	 * @see #getCurrentWidth()
+	 * @see #getCurrentHeight()
+	 */
+	protected Dimension getImageTargetSize() {
+		final int width = getCurrentWidth();
+		final int height = getCurrentHeight();
+		return width > 0 && height > 0 ? new Dimension(width, height) : null;
+	}
+
 	/**
 	 * Frees the image, if one has been loaded. This allows the garbage collector to reclaim the memory used by the image, which will cause the image to be
 	 * reloaded the next time <code>getImage()</code> is called.
@@ -175,6 +226,46 @@ protected void freeImage() {
 			imageReference.clear(); //clear the reference to the image
 			imageReference = null; //remove the image reference; this frees more memory, and it would have to have been recreated, anyway
 		}
+		imageLoad = null; //forget about any load in progress; the resource cache will provide the image if it finishes loading
+	}
+
+	/**
+	 * Repaints the area of the container occupied by this view, if the view is showing. This method should be called from the event dispatch thread.
+	 */
+	protected void repaintImage() {
+		if(isShowing()) { //if this view is showing
+			if(getContainer() != null) { //TODO testing
+				final Rectangle bounds = getBounds(); //get our painting bounds
+				if(bounds.width == 0 || bounds.height == 0) { //TODO testing; kludge to compensate for table layout errors
+					bounds.width = getCurrentWidth(); //get the current image width
+					bounds.height = getCurrentHeight(); //get the current image height
+				}
+				Log.trace("Repainting image " + href + " with bounds: ", bounds); //TODO del
+				getContainer().repaint(bounds.x, bounds.y, bounds.width, bounds.height); //repaint only the areas within our bounds
+			}
+		}
+	}
+
+	/**
+	 * Paints a placeholder in place of an image that is still being decoded.
+	 * @param graphics The rendering surface to use.
+	 * @param rectangle The area in which the image will be painted.
+	 */
+	protected void paintPlaceholder(final Graphics graphics, final Rectangle rectangle) {
+		final Graphics2D graphics2D = (Graphics2D)graphics; //cast to the 2D version of graphics
+		final int width = getCurrentWidth(); //get the current image width
+		final int height = getCurrentHeight(); //get the current image height
+		graphics2D.setPaint(Color.lightGray);
+		graphics.drawRect(rectangle.x, rectangle.y, width - 1, height - 1); //outline the area the image will occupy
+		graphics2D.setPaint(Color.black);
+		graphics.setFont(new Font("Arial", Font.PLAIN, 14)); //TODO fix all this; use a constant
+		final String statusString = "Loading image..."; //TODO i18n
+		final Rectangle2D statusBounds = graphics2D.getFont().getStringBounds(statusString, graphics2D.getFontRenderContext()); //get the bounds of the status string
+		final int statusX = rectangle.x + 2; //find out where we would paint the status
+		final int statusY = rectangle.y + 20;
+		if(statusX + statusBounds.getWidth() < rectangle.x + width && statusY < rectangle.y + height) { //if the string we would draw doesn't go outside our image
+			graphics.drawString(statusString, statusX, statusY);
+		}
 	}
 
 	/**
@@ -415,6 +506,8 @@ public void paint(Graphics graphics, Shape allocation) {
 					    if( sel > 0 )
 					        g.setPaintMode();
 				*/
+			} else { //if the image is still being decoded
+				paintPlaceholder(graphics, rectangle); //show that the image is on its way
 			}
 		} catch(URISyntaxException uriSyntaxException) { //if there was an error getting the image TODO probably set some sort of flag so that we won't try to load it again next time
 			Log.error(uriSyntaxException); //report the error
@@ -926,24 +1019,7 @@ public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, in
 							}
 						);
 				*/
-				if(getContainer() != null) { //TODO testing
-					Log.trace("Have container ", getHRef());
-					//TODO del when works					paintingVisible=false;	//for our next repaint force paint() to prove once more that it is still getting called
-					final Rectangle bounds = getBounds(); //get our painting bounds
-					Log.trace(getHRef() + " painting bounds: ", bounds);
-					/*TODO del; gives wrong coordinates
-										bounds.x=x; //TODO testing image repaint
-										bounds.y=y;
-					*/
-					//TODO del Log.trace("Found container, ready to call repaint with bounds: "+bounds);
-					if(bounds.width == 0 || bounds.height == 0) { //TODO testing; kludge to compensate for table layout errors
-						bounds.width = getCurrentWidth(); //get the current image width
-						bounds.height = getCurrentHeight(); //get the current image height
-					}
-					Log.trace("Repainting image " + href + " with bounds: ", bounds); //TODO del
-					//since the image is still visible (and imageUpdate() is still being called), repaint the image -- but only the areas within our bounds
-					getContainer().repaint(bounds.x, bounds.y, bounds.width, bounds.height); //repaint only the areas within our bounds
-				}
+				repaintImage(); //since the image is still visible (and imageUpdate() is still being called), repaint the image -- but only the areas within our bounds
 			}
 		}
 		final boolean isAnimation = (infoflags & FRAMEBITS) != 0; //see if this image has multiple frames
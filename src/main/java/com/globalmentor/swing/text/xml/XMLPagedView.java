@@ -19,12 +19,15 @@
 import java.awt.*;
 import java.awt.font.*;
 import java.awt.geom.*;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.text.*;
 import javax.swing.event.*;
 import javax.swing.SizeRequirements;
+import javax.swing.SwingUtilities;
 
 import com.globalmentor.log.Log;
 import com.globalmentor.swing.Components;
@@ -42,12 +45,18 @@
  * <p>
  * This class, before hiding a page of views, informs each view that implements <code>ViewHidable</code> that it is about to be hidden.
  * </p>
+ * <p>
+ * If background pagination is enabled, pages are laid out in a separate thread under the document read lock and published to the view in batches on the
+ * event dispatch thread, so that pages already laid out may be browsed while pagination continues. A pagination pass is abandoned as soon as a newer layout,
+ * such as for a new page size, is requested.
+ * </p>
  * @see ViewHidable
  * @see FlowView
  */
 public class XMLPagedView extends FlowView {
 
-	protected static final boolean THREADED = false; //TODO fix threading; currently unstable; recheck after fixing ispaginating ? (pagecount-1) bug
+	/** The number of pages laid out in the background before they are published to the view. */
+	protected static final int PAGINATION_BATCH_PAGE_COUNT = 4;
 
 	/** The task of paginating a document. */
 	public static final String PAGINATE_TASK = "PAGINATE";
@@ -116,11 +125,49 @@ public XMLPagedView(Element element) {
 		strategy = new PaginateStrategy(); //install our custom paginate strategy
 
 		setPageInsets((short)25, (short)25, (short)25, (short)25); //set the page insets TODO allow this to be customized
-		if(THREADED) { //if we should thread layout
-			new Thread(layoutRunner, "Layout Thread").start(); //start a thread for layout TODO improve variable access
+	}
+
+	/** Whether pages are laid out in a separate thread and published to the view as they are completed. */
+	private volatile boolean backgroundPagination = false;
+
+	/** @return Whether pages are laid out in a separate thread and published to the view as they are completed. */
+	public boolean isBackgroundPagination() {
+		return backgroundPagination;
+	}
+
+	/**
+	 * Sets whether pages should be laid out in a separate thread and published to the view as they are completed. Changing this setting causes the view to be
+	 * paginated again.
+	 * @param backgroundPagination <code>true</code> if pagination should occur in the background.
+	 */
+	public void setBackgroundPagination(final boolean backgroundPagination) {
+		if(this.backgroundPagination != backgroundPagination) { //if the value is really changing
+			this.backgroundPagination = backgroundPagination;
+			if(!backgroundPagination) { //if we're going back to synchronous pagination
+				abandonPagination(); //stop any pagination in progress
+			}
+			layoutChanged(getFlowAxis()); //paginate again using the new setting
 		}
 	}
 
+	/** The on-disk cache of page break offsets, or <code>null</code> if paginations should not be cached. */
+	private XMLPaginationCache paginationCache = null;
+
+	/** @return The on-disk cache of page break offsets, or <code>null</code> if paginations are not cached. */
+	public XMLPaginationCache getPaginationCache() {
+		return paginationCache;
+	}
+
+	/**
+	 * Sets the on-disk cache of page break offsets, which will be used the next time the view is paginated. When a cache is set, the page break offsets of each
+	 * completed pagination are stored in the cache, and a pagination of the same unchanged document with the same page size, zoom, antialiasing, and installed
+	 * fonts is restored from the cache at once; each restored page is only laid out when it is displayed.
+	 * @param paginationCache The cache of page break offsets, or <code>null</code> if paginations should not be cached.
+	 */
+	public void setPaginationCache(final XMLPaginationCache paginationCache) {
+		this.paginationCache = paginationCache;
+	}
+
 	/*TODO fix
 	A copy of our...
 	private Graphics paintGraphics=null;
@@ -256,8 +303,7 @@ protected int getPageBeginIndex() {
 	protected int getPageEndIndex() {
 		final int firstPageIndex = getPageBeginIndex(); //get the index of the first visible page
 		final int displayPageCount = firstPageIndex == 0 ? 1 : getDisplayPageCount(); //there's only one page in the first set
-		final int pageCount = isPaginating() ? Math.max(getPageCount() - 1, 0) : getPageCount(); //don't count the last page if we are paginating---it is being laid out
-		return Math.min(firstPageIndex + displayPageCount, pageCount); //return the last visible page, making sure we don't go beyond our page count
+		return Math.min(firstPageIndex + displayPageCount, getPageCount()); //return the last visible page, making sure we don't go beyond our page count (pages are only published when completely laid out)
 	}
 
 	/**
@@ -289,8 +335,10 @@ public void goNextPage() {
 		//TODO del System.out.println("XMLPagedView.goNextPage(), pageIndex: "+getPageIndex()+" pageCount: "+getPageCount());	//TODO del
 		final int pageIndex = getPageIndex(); //get the current page index
 		final int nextPageIndex = pageIndex == 0 ? 1 : pageIndex + getDisplayPageCount(); //see what our next page index would be, compensating for the first page set with only one page
-		if(nextPageIndex >= 0 && nextPageIndex < getPageCount()) //if going to the next page would give us a valid index
+		if(nextPageIndex >= 0 && nextPageIndex < getPageCount()) { //if going to the next page would give us a valid index
+			pendingPosition = -1; //the user has moved on from the position being restored by any pagination in progress
 			setPageIndex(nextPageIndex); //set the new page index
+		}
 	}
 
 	/**
@@ -299,12 +347,14 @@ public void goNextPage() {
 	public void goPreviousPage() {
 		final int pageIndex = getPageIndex(); //get the current page index
 		final int previousPageIndex = pageIndex == 1 ? 0 : pageIndex - getDisplayPageCount(); //see what our next page index would be, compensating for the first page set with only one page
-		if(previousPageIndex >= 0 && previousPageIndex < getPageCount()) //if going to the previous page would give us a valid index
+		if(previousPageIndex >= 0 && previousPageIndex < getPageCount()) { //if going to the previous page would give us a valid index
+			pendingPosition = -1; //the user has moved on from the position being restored by any pagination in progress
 			setPageIndex(previousPageIndex); //set the new page index
+		}
 	}
 
 	/** The width of each page. */
-	private float pageWidth;
+	private volatile float pageWidth;
 
 	/** @return The width of each page. */
 	public float getPageWidth() {
@@ -312,7 +362,7 @@ public float getPageWidth() {
 	}
 
 	/** The height of each page. */
-	private float pageHeight;
+	private volatile float pageHeight;
 
 	/** @return The height of each page. */
 	public float getPageHeight() {
@@ -331,27 +381,106 @@ protected void setPageSize(final float width, final float height) {
 		//TODO del when works		getPagePoolView().setSize((int)width-getPageLeftInset()-getPageRightInset(), (int)height-getPageTopInset()-getPageBottomInset());	//set the size of the page pool to be exactly the size of the displayed page; giving insets to the page pool results in incorrect layout
 	}
 
+	/** The start offsets of the pages, the first {@link #pageOffsetCount} of which are up to date. */
+	private int[] pageStartOffsets = new int[0];
+
+	/** The end offsets of the pages, the first {@link #pageOffsetCount} of which are up to date. */
+	private int[] pageEndOffsets = new int[0];
+
+	/** The number of pages, starting with the first page, the offsets of which are up to date. The page offsets are guarded by the pagination lock. */
+	private int pageOffsetCount = 0;
+
+	/**
+	 * Indicates that the offsets of the given page and all following pages are no longer up to date, as when pages are replaced or the document changes.
+	 * @param pageIndex The index of the first page the offsets of which may have changed; a negative index invalidates the offsets of all pages.
+	 */
+	protected void invalidatePageOffsets(final int pageIndex) {
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			if(pageIndex < pageOffsetCount) { //if we have offsets for this page
+				pageOffsetCount = Math.max(pageIndex, 0);
+			}
+		}
+	}
+
+	/** Makes sure the offsets of all pages are up to date, determining the offsets only of those pages not already up to date. */
+	protected void updatePageOffsets() {
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			final int pageCount = getViewCount();
+			if(pageOffsetCount < pageCount) { //if there are pages we don't have offsets for
+				if(pageStartOffsets.length < pageCount) { //if we need more room, keep the offsets we already have
+					final int length = Math.max(pageCount, pageStartOffsets.length * 2);
+					final int[] newPageStartOffsets = new int[length];
+					System.arraycopy(pageStartOffsets, 0, newPageStartOffsets, 0, pageOffsetCount);
+					pageStartOffsets = newPageStartOffsets;
+					final int[] newPageEndOffsets = new int[length];
+					System.arraycopy(pageEndOffsets, 0, newPageEndOffsets, 0, pageOffsetCount);
+					pageEndOffsets = newPageEndOffsets;
+				}
+				for(int i = pageOffsetCount; i < pageCount; ++i) {
+					final View page = getView(i);
+					pageStartOffsets[i] = page.getStartOffset();
+					pageEndOffsets[i] = page.getEndOffset();
+				}
+			}
+			pageOffsetCount = pageCount;
+		}
+	}
+
+	/**
+	 * Searches the page offsets that are up to date for the last page starting at or before the given position. This method must be called while holding the
+	 * pagination lock.
+	 * @param pos The position in the model.
+	 * @return The index of the last page with up-to-date offsets that starts at or before the given position, or -1 if there is no such page.
+	 */
+	private int searchPageOffsets(final int pos) {
+		int low = 0;
+		int high = pageOffsetCount - 1;
+		while(low <= high) { //binary search for the last start offset not after the position
+			final int middle = (low + high) >>> 1;
+			if(pageStartOffsets[middle] <= pos) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high;
+	}
+
 	/**
 	 * Determines the index of the page at the given position
 	 * @param pos The position (&gt;=0) in the model.
 	 * @return The logical index of the page representing the given position, or -1 if there is no page that represents that position.
 	 */
 	public int getPageIndex(final int pos) {
-		return getViewIndexAtPosition(pos); //see which child view is responsible for the requested position
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			updatePageOffsets(); //make sure we know the offsets of all the pages
+			final int pageIndex = searchPageOffsets(pos); //find the page starting at or before the position
+			return pageIndex >= 0 && pos < pageEndOffsets[pageIndex] ? pageIndex : -1; //make sure the page includes the position
+		}
 	}
 
-	//TODO fix this with the correct modelToView() stuff
+	/**
+	 * Determines the starting offset of a page.
+	 * @param pageIndex The index of the page.
+	 * @return The starting offset of the page, or -1 if there is no such page.
+	 */
 	public int getPageStartOffset(final int pageIndex) {
-		//TODO fix			return isLaidOut(pageIndex) ? flowLayoutInfo.getStartOffset(pageIndex) : -1;
-		final View childView = getView(pageIndex); //get the view for the given page
-		return childView != null ? childView.getStartOffset() : -1; //return the start offset of the page, or -1 if there is no such page TODO testing
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			updatePageOffsets(); //make sure we know the offsets of all the pages
+			return pageIndex >= 0 && pageIndex < pageOffsetCount ? pageStartOffsets[pageIndex] : -1;
+		}
 	}
 
-	//TODO fix this with the correct modelToView() stuff
+	/**
+	 * Determines the ending offset of a page.
+	 * @param pageIndex The index of the page.
+	 * @return The ending offset of the page, or -1 if there is no such page.
+	 */
 	public int getPageEndOffset(final int pageIndex) {
-		//TODO fix			return isLaidOut(pageIndex) ? flowLayoutInfo.getEndOffset(pageIndex) : -1;
-		final View childView = getView(pageIndex); //get the view for the given page
-		return childView != null ? childView.getEndOffset() : -1; //return the start offset of the page, or -1 if there is no such page TODO testing
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			updatePageOffsets(); //make sure we know the offsets of all the pages
+			return pageIndex >= 0 && pageIndex < pageOffsetCount ? pageEndOffsets[pageIndex] : -1;
+		}
 	}
 
 	/**
@@ -390,7 +519,15 @@ public synchronized boolean isLaidOut(final int pageIndex) { //(newswing threadl
 	 */
 	public void setParent(final View parent) { //TODO maybe put this in some more primitive parent class
 		super.setParent(parent); //set the parent normally
+		final Document document = getDocument();
+		if(document instanceof BasicStyledDocument) { //find out when the document is loaded; remove any existing listener so that it is never added twice
+			((BasicStyledDocument)document).removeProgressListener(documentProgressListener);
+			if(parent != null) {
+				((BasicStyledDocument)document).addProgressListener(documentProgressListener);
+			}
+		}
 		if(parent == null) { //if this view is being uninstalled
+			abandonPagination(); //don't continue paginating a view that is no longer shown
 			Views.hideView(this); //hide this entire view hierarchy (this is important for component views, for instance)			
 		}
 	}
@@ -408,6 +545,7 @@ public void replace(final int offset, final int length, final View[] views) {
 			final View view = getView(i); //get the view at the given index
 			Views.hideView(view); //tell the view that it is being hidden (this is important for applet views, for instance)
 		}
+		invalidatePageOffsets(offset); //the pages starting at the offset are changing
 		super.replace(offset, length, views); //do the default replacement
 	}
 
@@ -417,6 +555,7 @@ public void repaginate() {
 		final Container container = getContainer(); //see if the flow view has a container (it always should);
 		final Cursor originalCursor = container != null ? Components.setCursor(container, Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR)) : null; //show the wait cursor
 		try {
+			discardContentChanges(); //lay out all the pages again, not just the ones that changed
 			Views.invalidateHierarchy(getPagePoolView()); //invalidate the page pool, which will notify this view that it needs laid out
 		} finally //always put the cursor back to how we found it
 		{
@@ -426,10 +565,188 @@ public void repaginate() {
 		}
 	}
 
+	/**
+	 * Makes every view determine its fonts and font metrics again and schedules a repagination, as when the zoom factor of the document changes. The views are
+	 * notified with a synthetic change event covering the entire content, so that they update their cached properties without the document or its elements
+	 * being changed and without the views being recreated. With background pagination, the page currently shown will be shown again once its content has been
+	 * paginated.
+	 * @see #repaginate()
+	 */
+	public void invalidateFonts() {
+		final Document document = getDocument();
+		if(document instanceof AbstractDocument) { //we can only create change events for abstract documents
+			final int startOffset = getStartOffset();
+			final DocumentEvent changeEvent = ((AbstractDocument)document).new DefaultDocumentEvent(startOffset, getEndOffset() - startOffset, DocumentEvent.EventType.CHANGE);
+			abandonPagination(); //the pooled views are about to change, so any pages being laid out in the background will be stale
+			synchronized(paginationLock) { //wait for any batch of pages being laid out in the background to finish
+				getPagePoolView().changedUpdate(changeEvent, null, getViewFactory()); //let the pooled views know that their fonts have changed (they are reparented to the pool as they are updated)
+			}
+		}
+		repaginate(); //lay out the pages using the new fonts
+	}
+
+	/**
+	 * The index of the first page that must be laid out again because the document changed, or -1 if no change has been recorded since the last layout. The
+	 * recorded changes are guarded by the pagination lock.
+	 */
+	private int changedPageIndex = -1;
+
+	/** The position following all content changed since the last layout, or <code>null</code> if no change has been recorded. */
+	private Position changeEndPosition = null;
+
+	/** The width of the pages when the view was last paginated. */
+	private float paginatedPageWidth = -1;
+
+	/** The height of the pages when the view was last paginated. */
+	private float paginatedPageHeight = -1;
+
+	/**
+	 * Records that content of the document changed, so that the next layout can start with the page before the change rather than with the first page. This
+	 * method must be called before the change is forwarded to the child views.
+	 * @param offset The offset in the document at which content changed.
+	 * @param length The length of the changed content remaining in the document, which is zero if content was removed.
+	 * @see #repaginateChangedPages()
+	 */
+	protected void contentChanged(final int offset, final int length) {
+		synchronized(paginationLock) { //the document may be changed on a thread other than the one showing the pages
+			final int pageIndex = Math.max(searchPageOffsets(offset) - 1, 0); //the previous page may end where the change starts
+			invalidatePageOffsets(pageIndex);
+			changedPageIndex = changedPageIndex >= 0 ? Math.min(changedPageIndex, pageIndex) : pageIndex;
+			final int changeEndOffset = offset + length;
+			if(changeEndPosition == null || changeEndPosition.getOffset() < changeEndOffset) { //if this change extends beyond any earlier changes
+				try {
+					changeEndPosition = getDocument().createPosition(changeEndOffset); //keep track of the end of the change even if more changes are made before layout
+				} catch(final BadLocationException badLocationException) { //the change should always be within the document
+					throw (AssertionError)new AssertionError(badLocationException.getMessage()).initCause(badLocationException);
+				}
+			}
+		}
+	}
+
+	/** Discards any recorded content changes, so that the next layout will lay out all pages. */
+	protected void discardContentChanges() {
+		synchronized(paginationLock) {
+			changedPageIndex = -1;
+			changeEndPosition = null;
+		}
+	}
+
+	/**
+	 * Lays out again only the pages affected by content changes recorded since the last layout. Pages are laid out starting with the page before the first
+	 * change. Once the content following the changes has been reached and a new page ends where an old page begins at the start of an element, the old pages
+	 * from that point on are kept. Pages are only laid out incrementally if all pages were completely laid out at the current page size, and never when
+	 * paginating in the background. The recorded changes are discarded in any case. This method must be called on the event dispatch thread.
+	 * @return <code>true</code> if the changed pages were laid out again, or <code>false</code> if all pages must be laid out.
+	 * @see #contentChanged(int, int)
+	 */
+	protected boolean repaginateChangedPages() {
+		final int changedPageIndex;
+		final Position changeEndPosition;
+		synchronized(paginationLock) { //the changes may have been recorded on a thread other than the one laying out the pages
+			changedPageIndex = this.changedPageIndex;
+			changeEndPosition = this.changeEndPosition;
+			discardContentChanges(); //the changes will be accounted for one way or another
+		}
+		final int oldPageCount = getViewCount();
+		final int endOffset = getEndOffset();
+		if(changedPageIndex < 0 || changedPageIndex >= oldPageCount || isBackgroundPagination() || pagesRestored || getPageWidth() != paginatedPageWidth
+				|| getPageHeight() != paginatedPageHeight || getView(oldPageCount - 1).getEndOffset() != endOffset) { //if we don't have a complete set of pages to update
+			return false;
+		}
+		final PaginateStrategy strategy = getStrategy();
+		final View logicalView = getPagePoolView();
+		final int changeEndOffset = changeEndPosition != null ? changeEndPosition.getOffset() : endOffset;
+		int pos = changedPageIndex > 0 ? getView(changedPageIndex).getStartOffset() : getStartOffset(); //start where the first changed page starts
+		final List<View> pages = new ArrayList<View>();
+		int oldPageIndex = changedPageIndex; //the first old page that could still line up with a new page
+		int reusedPageIndex = -1; //the index of the first old page to keep, if any
+		while(pos < endOffset) {
+			final View page = createRow();
+			page.setParent(this); //give the page a parent so that it can reach the container, even though the page isn't one of our children yet
+			pos = strategy.layoutPage(this, page, changedPageIndex + pages.size(), pos);
+			pages.add(page);
+			if(pos >= changeEndOffset) { //once we've laid out all the changed content, see if the rest of the pages are the same as before
+				while(oldPageIndex < oldPageCount && getView(oldPageIndex).getStartOffset() < pos) { //skip the old pages we've passed
+					++oldPageIndex;
+				}
+				if(oldPageIndex < oldPageCount && isElementPageBreak(getView(oldPageIndex), pos)) { //if the old page starts with the same element as the next new page would
+					reusedPageIndex = oldPageIndex;
+					break;
+				}
+			}
+		}
+		final int replacedPageCount = (reusedPageIndex >= 0 ? reusedPageIndex : oldPageCount) - changedPageIndex;
+		for(int i = changedPageIndex + replacedPageCount - 1; i >= changedPageIndex; --i) { //keep the pooled views still in the replaced pages from being removed along with them
+			final View oldPage = getView(i);
+			for(int j = oldPage.getViewCount() - 1; j >= 0; --j) {
+				final View view = oldPage.getView(j);
+				if(view.getParent() == oldPage) { //if this view wasn't moved to a new page
+					final int logicalViewIndex = logicalView.getViewIndex(view.getStartOffset(), Position.Bias.Forward);
+					if(logicalViewIndex >= 0 && logicalView.getView(logicalViewIndex) == view) { //if this is a pooled view and not a fragment
+						view.setParent(logicalView);
+					}
+				}
+			}
+		}
+		replace(changedPageIndex, replacedPageCount, pages.toArray(new View[pages.size()])); //replace the changed pages
+		updatePageOffsets(); //record where the new pages break
+		final int pageCount = getPageCount();
+		Log.trace("Repaginated", pages.size(), "pages replacing", replacedPageCount, "pages starting at page", changedPageIndex, "of", pageCount);
+		storePagination(); //if the document just finished loading, its pages may now be cached
+		fireMadeProgress(new ProgressEvent(this, PAGINATE_TASK, "Paginated all " + pageCount + " pages.", pageCount, pageCount)); //show that we paginated all the pages TODO i18n
+		firePageEvent(new PageEvent(this, getPageIndex(), pageCount)); //the page count may have changed
+		return true;
+	}
+
+	/**
+	 * Determines whether a page begins at the given position at the start of an element, in which case the page's layout does not depend on any content before
+	 * the position.
+	 * @param page The page to check.
+	 * @param pos The position in the document.
+	 * @return <code>true</code> if the first view of the page starts at the given position at the start of its element.
+	 */
+	private static boolean isElementPageBreak(final View page, final int pos) {
+		if(page.getViewCount() == 0) { //if the page hasn't been laid out, we don't know what it starts with
+			return false;
+		}
+		final View firstView = page.getView(0);
+		final int startOffset = firstView.getStartOffset();
+		return startOffset == pos && firstView.getParent() == page && startOffset == firstView.getElement().getStartOffset();
+	}
+
 	/* ***View methods*** */
 
 	/**
-	 * Gives notification from the document that attributes were changed in a location that this view is responsible for.
+	 * Gives notification that something was inserted into the document in a location that this view is responsible for. This version records the change so that
+	 * only the affected pages will be laid out again.
+	 * @param changes The change information from the associated document.
+	 * @param a The current allocation of the view.
+	 * @param f The factory to use to rebuild if the view has children.
+	 * @see View#insertUpdate
+	 */
+	public void insertUpdate(final DocumentEvent changes, final Shape a, final ViewFactory f) {
+		textChanged();
+		contentChanged(changes.getOffset(), changes.getLength());
+		super.insertUpdate(changes, a, f);
+	}
+
+	/**
+	 * Gives notification that something was removed from the document in a location that this view is responsible for. This version records the change so that
+	 * only the affected pages will be laid out again.
+	 * @param changes The change information from the associated document.
+	 * @param a The current allocation of the view.
+	 * @param f The factory to use to rebuild if the view has children.
+	 * @see View#removeUpdate
+	 */
+	public void removeUpdate(final DocumentEvent changes, final Shape a, final ViewFactory f) {
+		textChanged();
+		contentChanged(changes.getOffset(), 0); //removed content leaves nothing behind
+		super.removeUpdate(changes, a, f);
+	}
+
+	/**
+	 * Gives notification from the document that attributes were changed in a location that this view is responsible for. This version records the change so that
+	 * only the affected pages will be laid out again.
 	 *
 	 * @param changes the change information from the associated document
 	 * @param a the current allocation of the view
@@ -440,6 +757,7 @@ public void repaginate() {
 		// update any property settings stored, and layout should be 
 		// recomputed 
 		//TODO fix setPropertiesFromAttributes();
+		contentChanged(changes.getOffset(), changes.getLength());
 		layoutChanged(X_AXIS);
 		layoutChanged(Y_AXIS);
 		super.changedUpdate(changes, a, f);
@@ -455,83 +773,93 @@ public void repaginate() {
 	 * @see XMLPagedView#getPageIndex()
 	 */
 	public void paint(final Graphics graphics, final Shape allocation) {
-		if(!isPaginating()) {
-
-			setPageIndex(getCanonicalPageIndex(getPageIndex())); //make sure the current page index is a canonical one, so that a page in the middle of the set won't be indicated, for instance
-			//get a rectangle that outlines our allocation
-			final Rectangle allocationRectangle = (allocation instanceof Rectangle) ? (Rectangle)allocation : allocation.getBounds();
-			final int displayPageCount = getDisplayPageCount(); //find out how many pages we should display at a time
-			final int pageBeginIndex = getPageBeginIndex(); //see which page we're showing first
-			final int pageEndIndex = getPageEndIndex(); //see which page we're showing last (actually, this is the page right *after* the page we're showing)
-			final int left = allocationRectangle.x + getLeftInset(); //get the left side of the inside allocation
-			final int top = allocationRectangle.y + getTopInset(); //get the top of the inside allocation
-			tempRectangle.x = left; //find out where to start horizontally
-			tempRectangle.y = top; //find out where to start vertically
-			tempRectangle.width = (int)getPageWidth(); //find out how wide to make each page
-			tempRectangle.height = (int)getPageHeight(); //find out how hight to make each page
-			final Rectangle clipRectangle = graphics.getClipBounds(); //find out the clipping bounds
-			//paint the dividers and page numbers for each page TODO probably put this in a separate function
-			final Color originalColor = graphics.getColor(); //get the original graphics color
-			final Font originalFont = graphics.getFont(); //get the original graphics font
-			graphics.setColor(Color.black); //change to black for the divider
-			graphics.setFont(PAGE_NUMBER_FONT); //set the font for the page number
-			final Graphics2D graphics2D = (Graphics2D)graphics; //cast to the 2D version of graphics
-			final FontRenderContext fontRenderContext = graphics2D.getFontRenderContext(); //get the font rendering context
-			for(int pageIndex = pageBeginIndex; pageIndex < pageEndIndex && isLaidOut(pageIndex); ++pageIndex) { //look at each page (although this may be more pages than we have to paint)
-				tempRectangle.x = left + getOffset(X_AXIS, pageIndex); //calculate the page position and spans based upon our precalculated values
-				tempRectangle.y = top + getOffset(Y_AXIS, pageIndex);
-				tempRectangle.width = getSpan(X_AXIS, pageIndex);
-				tempRectangle.height = getSpan(Y_AXIS, pageIndex);
-				if(pageIndex < pageEndIndex - 1) { //if this isn't the last page, draw the vertical divider between pages
-
-					//TODO fix this so that we draw the divider nicely
-					//TODO shouldn't the first y argument not have "TempRectanglex+"?
-					//TODO fix				g.drawLine(TempRectangle.x+TempRectangle.width, TempRectangle.x+TempRectangle.y, TempRectangle.x+TempRectangle.width, TempRectangle.y+TempRectangle.height);
-					final int outerSpineHalfWidth = (int)Math.round(tempRectangle.width * 0.025); //TODO testing
-					final int innerSpineHalfWidth = (int)Math.round(tempRectangle.width * 0.003); //TODO testing
-
-					paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, outerSpineHalfWidth, Color.lightGray,
-							Color.white); //paint this section of the spine
-					paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, -outerSpineHalfWidth, Color.lightGray,
-							Color.white); //paint this section of the spine
-					paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, innerSpineHalfWidth, Color.darkGray,
-							Color.lightGray); //paint this section of the spine
-					paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, -innerSpineHalfWidth, Color.darkGray,
-							Color.lightGray); //paint this section of the spine
-				}
-				if(isLaidOut(pageIndex)) { //if we actually have a page view for this page, and it has been laid out
-					//TODO maybe put page number painting in each page; maybe not
-					final View pageView = getView(pageIndex); //get a reference to this view
-					final int pageLeftInset = getPageLeftInset(); //get the page's left inset
-					final int pageRightInset = getPageRightInset(); //get the page's right inset
-					final int pageBottomInset = getPageBottomInset(); //get the page's right inset
-					final String pageNumberString = String.valueOf(pageIndex + 1); //create a string with the page number to paint TODO use a getPageNumber() method instead
-					final Rectangle2D pageNumberBounds = graphics2D.getFont().getStringBounds(pageNumberString, fontRenderContext); //get the bounds of the string
-					//TODO del Log.trace("page number left inset: "+getLeftInset()+" right inset: "+getRightInset());  //TODO del
-					int pageNumberX; //we'll determine which side of the page the number goes on
-					if(pageIndex == pageEndIndex - 1) //if we're on the last page
-						pageNumberX = tempRectangle.x + tempRectangle.width - pageRightInset + (int)((float)(pageRightInset - pageNumberBounds.getWidth()) / 2); //TODO fix; comment; use local variable
-					else
-						//if we're not on the last page TODO put code here for the middle of a three-page spread
-						pageNumberX = tempRectangle.x + (int)((float)(pageLeftInset - pageNumberBounds.getWidth()) / 2); //TODO fix; comment; use local variable
-					final int pageNumberY = tempRectangle.y + tempRectangle.height - pageBottomInset + (int)((float)(pageBottomInset - pageNumberBounds.getHeight()) / 2); //TODO fix; comment; use local variable
-					//TODO take into account the size of the font, make it a nicer color, etc.
-					graphics.drawString(pageNumberString, pageNumberX, pageNumberY); //TODO testing; i18n
-				}
+		synchronized(paginationLock) { //don't paint the pooled views while a batch of pages is being laid out in the background
+			paintPages(graphics, allocation);
+		}
+	}
+
+	/**
+	 * Renders the currently selected pages. This method must be called while holding the pagination lock.
+	 * @param graphics The rendering surface to use.
+	 * @param allocation The allocated region to render into.
+	 * @see #paint(Graphics, Shape)
+	 */
+	protected void paintPages(final Graphics graphics, final Shape allocation) {
+		setPageIndex(getCanonicalPageIndex(getPageIndex())); //make sure the current page index is a canonical one, so that a page in the middle of the set won't be indicated, for instance
+		layoutRestoredPages(); //make sure any pages restored from the pagination cache are laid out before they are shown
+		//get a rectangle that outlines our allocation
+		final Rectangle allocationRectangle = (allocation instanceof Rectangle) ? (Rectangle)allocation : allocation.getBounds();
+		final int displayPageCount = getDisplayPageCount(); //find out how many pages we should display at a time
+		final int pageBeginIndex = getPageBeginIndex(); //see which page we're showing first
+		final int pageEndIndex = getPageEndIndex(); //see which page we're showing last (actually, this is the page right *after* the page we're showing)
+		final int left = allocationRectangle.x + getLeftInset(); //get the left side of the inside allocation
+		final int top = allocationRectangle.y + getTopInset(); //get the top of the inside allocation
+		tempRectangle.x = left; //find out where to start horizontally
+		tempRectangle.y = top; //find out where to start vertically
+		tempRectangle.width = (int)getPageWidth(); //find out how wide to make each page
+		tempRectangle.height = (int)getPageHeight(); //find out how hight to make each page
+		final Rectangle clipRectangle = graphics.getClipBounds(); //find out the clipping bounds
+		//paint the dividers and page numbers for each page TODO probably put this in a separate function
+		final Color originalColor = graphics.getColor(); //get the original graphics color
+		final Font originalFont = graphics.getFont(); //get the original graphics font
+		graphics.setColor(Color.black); //change to black for the divider
+		graphics.setFont(PAGE_NUMBER_FONT); //set the font for the page number
+		final Graphics2D graphics2D = (Graphics2D)graphics; //cast to the 2D version of graphics
+		final FontRenderContext fontRenderContext = graphics2D.getFontRenderContext(); //get the font rendering context
+		for(int pageIndex = pageBeginIndex; pageIndex < pageEndIndex && isLaidOut(pageIndex); ++pageIndex) { //look at each page (although this may be more pages than we have to paint)
+			tempRectangle.x = left + getOffset(X_AXIS, pageIndex); //calculate the page position and spans based upon our precalculated values
+			tempRectangle.y = top + getOffset(Y_AXIS, pageIndex);
+			tempRectangle.width = getSpan(X_AXIS, pageIndex);
+			tempRectangle.height = getSpan(Y_AXIS, pageIndex);
+			if(pageIndex < pageEndIndex - 1) { //if this isn't the last page, draw the vertical divider between pages
+
+				//TODO fix this so that we draw the divider nicely
+				//TODO shouldn't the first y argument not have "TempRectanglex+"?
+				//TODO fix				g.drawLine(TempRectangle.x+TempRectangle.width, TempRectangle.x+TempRectangle.y, TempRectangle.x+TempRectangle.width, TempRectangle.y+TempRectangle.height);
+				final int outerSpineHalfWidth = (int)Math.round(tempRectangle.width * 0.025); //TODO testing
+				final int innerSpineHalfWidth = (int)Math.round(tempRectangle.width * 0.003); //TODO testing
+
+				paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, outerSpineHalfWidth, Color.lightGray,
+						Color.white); //paint this section of the spine
+				paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, -outerSpineHalfWidth, Color.lightGray,
+						Color.white); //paint this section of the spine
+				paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, innerSpineHalfWidth, Color.darkGray,
+						Color.lightGray); //paint this section of the spine
+				paintSpineSection(graphics2D, tempRectangle.x + tempRectangle.width, tempRectangle.y, tempRectangle.height, -innerSpineHalfWidth, Color.darkGray,
+						Color.lightGray); //paint this section of the spine
 			}
-			graphics.setColor(originalColor); //revert to the original color
-			graphics.setFont(originalFont); //revert to the original font
-			//paint each page
-			for(int pageIndex = pageBeginIndex; pageIndex < pageEndIndex && isLaidOut(pageIndex); ++pageIndex) { //look at each page to paint (although this may be more pages than we have to paint)		
-				tempRectangle.x = left + getOffset(X_AXIS, pageIndex); //calculate the page position and spans based upon our precalculated values
-				tempRectangle.y = top + getOffset(Y_AXIS, pageIndex);
-				tempRectangle.width = getSpan(X_AXIS, pageIndex);
-				tempRectangle.height = getSpan(Y_AXIS, pageIndex);
-				if(isLaidOut(pageIndex)/*TODO del if we can && pageIndex>=0 && pageIndex<pageCount*/) //if this page has been laid out (this function works for threading and non-threading situations) (newswing threadlayout)
-				{
-					if(tempRectangle.intersects(clipRectangle)) { //if this area needs painted and this is a valid page
-						paintChild(graphics, tempRectangle, pageIndex); //paint this page
-					}
+			if(isLaidOut(pageIndex)) { //if we actually have a page view for this page, and it has been laid out
+				//TODO maybe put page number painting in each page; maybe not
+				final View pageView = getView(pageIndex); //get a reference to this view
+				final int pageLeftInset = getPageLeftInset(); //get the page's left inset
+				final int pageRightInset = getPageRightInset(); //get the page's right inset
+				final int pageBottomInset = getPageBottomInset(); //get the page's right inset
+				final String pageNumberString = String.valueOf(pageIndex + 1); //create a string with the page number to paint TODO use a getPageNumber() method instead
+				final Rectangle2D pageNumberBounds = graphics2D.getFont().getStringBounds(pageNumberString, fontRenderContext); //get the bounds of the string
+				//TODO del Log.trace("page number left inset: "+getLeftInset()+" right inset: "+getRightInset());  //TODO del
+				int pageNumberX; //we'll determine which side of the page the number goes on
+				if(pageIndex == pageEndIndex - 1) //if we're on the last page
+					pageNumberX = tempRectangle.x + tempRectangle.width - pageRightInset + (int)((float)(pageRightInset - pageNumberBounds.getWidth()) / 2); //TODO fix; comment; use local variable
+				else
+					//if we're not on the last page TODO put code here for the middle of a three-page spread
+					pageNumberX = tempRectangle.x + (int)((float)(pageLeftInset - pageNumberBounds.getWidth()) / 2); //TODO fix; comment; use local variable
+				final int pageNumberY = tempRectangle.y + tempRectangle.height - pageBottomInset + (int)((float)(pageBottomInset - pageNumberBounds.getHeight()) / 2); //TODO fix; comment; use local variable
+				//TODO take into account the size of the font, make it a nicer color, etc.
+				graphics.drawString(pageNumberString, pageNumberX, pageNumberY); //TODO testing; i18n
+			}
+		}
+		graphics.setColor(originalColor); //revert to the original color
+		graphics.setFont(originalFont); //revert to the original font
+		//paint each page
+		for(int pageIndex = pageBeginIndex; pageIndex < pageEndIndex && isLaidOut(pageIndex); ++pageIndex) { //look at each page to paint (although this may be more pages than we have to paint)		
+			tempRectangle.x = left + getOffset(X_AXIS, pageIndex); //calculate the page position and spans based upon our precalculated values
+			tempRectangle.y = top + getOffset(Y_AXIS, pageIndex);
+			tempRectangle.width = getSpan(X_AXIS, pageIndex);
+			tempRectangle.height = getSpan(Y_AXIS, pageIndex);
+			if(isLaidOut(pageIndex)/*TODO del if we can && pageIndex>=0 && pageIndex<pageCount*/) //if this page has been laid out (this function works for threading and non-threading situations) (newswing threadlayout)
+			{
+				if(tempRectangle.intersects(clipRectangle)) { //if this area needs painted and this is a valid page
+					paintChild(graphics, tempRectangle, pageIndex); //paint this page
 				}
 			}
 		}
@@ -551,11 +879,15 @@ protected void paintSpineSection(final Graphics2D graphics2D, final int topX, fi
 		graphics2D.setPaint(originalPaint); //set the paint back to its original paint
 	}
 
+	/** Whether pages are currently being laid out in the background. */
+	private volatile boolean paginating = false;
+
 	/**
-	 * @return <code>true</code> if this view supports threading in some form and there the layout process is currently occurring.
+	 * @return <code>true</code> if pages are currently being laid out in the background, in which case not all pages are yet available.
+	 * @see #isBackgroundPagination()
 	 */
 	public boolean isPaginating() {
-		return layoutRunner.isLayingOut(); //return whether the layout runner is currently performing layout
+		return paginating;
 	}
 
 	/* ***FlowView methods*** */
@@ -565,10 +897,7 @@ public boolean isPaginating() {
 	@return The layout span minus this child's vertical insets.
 	*/
 	public int getFlowSpan(int index) {
-		final View childView = getView(index); //get a reference to the requested child view
-		int adjustAmount = 0; //we'll assume we won't have to adjust the span any to account for insets
-		assert childView instanceof Page : "Expected a page child.";
-		final Page page = (Page)childView; //cast the child view to a page
+		int adjustAmount = 0; //we'll assume we won't have to adjust the span any to account for insets (every page has the same insets, so the page need not yet be a child, as when paginating in the background)
 		if(getFlowAxis() == X_AXIS) { //if we're flowing horizontally
 			adjustAmount = getPageLeftInset() + getPageRightInset(); //add the left and right page insets together
 		} else { //if we're flowing vertically
@@ -585,10 +914,7 @@ public int getFlowSpan(int index) {
 	 * @return The starting location along the flow axis.
 	 */
 	public int getFlowStart(int index) {
-		final View childView = getView(index); //get a reference to the requested child
-		int adjustAmount = 0; //we'll assume we won't have to adjust the span any to account for insets
-		assert childView instanceof Page : "Expected a page child.";
-		final Page page = (Page)childView; //cast the child view to a page
+		int adjustAmount = 0; //we'll assume we won't have to adjust the span any to account for insets (every page has the same insets, so the page need not yet be a child, as when paginating in the background)
 		if(getFlowAxis() == X_AXIS) { //if we're flowing horizontally
 			adjustAmount = getPageLeftInset(); //compensate for the left page inset
 		} else { //if we're flowing vertically
@@ -657,27 +983,25 @@ public void setSize(float width, float height)
 		}
 	*/
 
-	/** The dimensions queued for layout, if threaded. */
-	protected Queue<Dimension> layoutDimensionQueue = new ConcurrentLinkedQueue<Dimension>();
+	/** The width most recently given for layout, inside the insets. */
+	private int layoutWidth = 0;
+
+	/** The height most recently given for layout, inside the insets. */
+	private int layoutHeight = 0;
 
 	/**
 	 * Lays out the children. If the span along the flow axis has changed, layout is marked as invalid which which will cause the superclass behavior to
-	 * recalculate the layout along the box axis. The FlowStrategy.layout method will be called to rebuild the flow rows as appropriate. If the height of this
-	 * view changes (determined by the preferred size along the box axis), a preferenceChanged is called. Following all of that, the normal box layout of the
-	 * superclass is performed.
+	 * recalculate the layout along the box axis. The FlowStrategy.layout method will be called to rebuild the flow rows as appropriate; with background
+	 * pagination this only starts a new pagination pass. If the height of this view changes (determined by the preferred size along the box axis), a
+	 * preferenceChanged is called. Following all of that, the normal box layout of the superclass is performed.
 	 *
 	 * @param width the width to lay out against &gt;= 0. This is the width inside of the inset area.
 	 * @param height the height to lay out against &gt;= 0 This is the height inside of the inset area.
 	 */
 	protected void layout(int width, int height) {
-		if(THREADED) { //if we should thread layout
-			layoutDimensionQueue.add(new Dimension(width, height));
-			synchronized(layoutRunner) { //make sure the thread isn't checking the stop flag
-				layoutRunner.notify(); //tell the thread to wake up and check the stop flag if it is sleeping  			
-			}
-		} else { //if layout should be synchronous
-			layoutImmediately(width, height); //do the layout now
-		}
+		layoutWidth = width; //remember the layout size so that the layout can be updated when pages are published
+		layoutHeight = height;
+		layoutImmediately(width, height); //do the layout now
 	}
 
 	/**
@@ -686,7 +1010,6 @@ protected void layout(int width, int height) {
 	 * @param height The layout height (&gt;=0).
 	 */
 	protected void layoutImmediately(final int width, int height) {
-		final int flowAxis = getFlowAxis(); //get the flow axis
 		final int axis = getAxis(); //get our tiling axis
 		final int displayPageCount = getDisplayPageCount(); //see how many pages we're displaying
 		final float pageWidth, pageHeight;
@@ -701,60 +1024,530 @@ protected void layoutImmediately(final int width, int height) {
 		super.layout(width, height); //do the default layout
 	}
 
-	/** The instance of the class that performs layout; in this implementation, in a separate thread. */
-	private final LayoutRunner layoutRunner = new LayoutRunner();
+	/** The generation of pagination passes; a background pass is abandoned when the generation changes. */
+	private final AtomicLong paginationGeneration = new AtomicLong(0);
 
 	/**
-	 * The class that performs layout. This implementation runs this class in a separate thread.
-	 * @author Garret Wilson.
+	 * The lock held while a batch of pages is laid out in the background, and while the page pool or the pages are changed during background pagination. The
+	 * event dispatch thread also holds the lock while painting and mapping between the model and the view, as those operations read the pooled views being laid
+	 * out. The document lock, if any, must always be acquired before this lock.
 	 */
-	protected class LayoutRunner implements Runnable {
+	private final Object paginationLock = new Object();
 
-		/** Whether layout should be stopped. */
-		private boolean stopped = false;
+	/** Whether pages already laid out are being added to the view or restored pages are being filled, in which case the resulting layout changes are not a reason to paginate again. */
+	private boolean publishingPages = false;
 
-		/** Stops the current series of layouts and ends the thread. */
-		public void stop() {
-			stopped = false; //set the stop flag to false
-			synchronized(this) { //make sure the thread isn't checking the stop flag
-				notify(); //tell the thread to wake up and check the stop flag if it is sleeping  			
+	/** The position in the document the page of which should be shown once it has been paginated in the background, or -1 if there is no such position. */
+	private int pendingPosition = -1;
+
+	/** The instance of the class that lays out pages in a separate thread. */
+	private final Paginator paginator = new Paginator();
+
+	/**
+	 * Determines whether a pagination pass is still current.
+	 * @param generation The generation of the pagination pass.
+	 * @return <code>true</code> if no newer pagination has been requested and pagination has not been abandoned.
+	 */
+	protected boolean isCurrentPagination(final long generation) {
+		return generation == paginationGeneration.get();
+	}
+
+	/** Abandons any pagination occurring in the background. Pages already published remain. */
+	protected void abandonPagination() {
+		paginationGeneration.incrementAndGet(); //any pass in progress is now stale
+		paginating = false;
+	}
+
+	/** Whether the text of the document has been edited since it was loaded, in which case its pagination is no longer cached. */
+	private volatile boolean documentChanged = false;
+
+	/** The digest of the text of the document, or <code>null</code> if the digest has not yet been determined. */
+	private volatile byte[] documentDigest = null;
+
+	/** The key in the pagination cache of the current pagination, or <code>null</code> if the current pagination is not cached. */
+	private volatile String paginationKey = null;
+
+	/** The number of times the text of the document has changed, so that a digest of text that has since changed can be ignored. */
+	private final AtomicLong textGeneration = new AtomicLong(0);
+
+	/** Whether the text of the document is being digested in the background. This is only accessed on the event dispatch thread. */
+	private boolean digesting = false;
+
+	/** Listens for the document to finish loading, so that its pagination may then be cached. */
+	private final ProgressListener documentProgressListener = new ProgressListener() {
+
+		public void madeProgress(final ProgressEvent progressEvent) {
+			if(XMLDocument.CREATE_TASK.equals(progressEvent.getTask()) && progressEvent.isFinished()) { //if the document has been created
+				SwingUtilities.invokeLater(new Runnable() { //pages are only laid out on the event dispatch thread
+
+					public void run() {
+						documentLoaded();
+					}
+				});
 			}
 		}
+	};
 
-		/** Whether layout is currently occurring. */
-		private boolean isLayingOut = false;
+	/**
+	 * Records that the text of the document changed. Text changed while the document is being loaded is part of the document as loaded, so any earlier digest
+	 * is discarded and the document is considered unchanged; text changed afterwards means the document no longer matches any cached pagination.
+	 * @see XMLDocument#isLoading()
+	 */
+	protected void textChanged() {
+		textGeneration.incrementAndGet(); //any digest in progress no longer describes the text
+		if(isDocumentLoading()) { //if the document is being created again, it will be digested once it is loaded
+			documentChanged = false;
+			documentDigest = null;
+		} else {
+			documentChanged = true;
+		}
+		paginationKey = null; //the current pages no longer match the text that was digested
+	}
 
-		/** @return Whether layout is currently occurring. */
-		public boolean isLayingOut() {
-			return isLayingOut;
+	/** @return Whether the document is still being loaded, in which case its content is not yet complete. */
+	protected boolean isDocumentLoading() {
+		final Document document = getDocument();
+		return document instanceof XMLDocument && ((XMLDocument)document).isLoading();
+	}
+
+	/**
+	 * Called on the event dispatch thread once the document has finished loading, and again once the text of the loaded document has been digested. The
+	 * pagination key is determined if the document has been digested. If pages are still being laid out in the background, they are replaced by any cached
+	 * pagination; otherwise the pages are cached if they have already been laid out for the entire document, or will be cached when pagination finishes.
+	 * @see #requestDocumentDigest()
+	 */
+	protected void documentLoaded() {
+		if(getParent() == null || isDocumentLoading()) { //if this view has been uninstalled, or the document is being created yet again
+			return;
+		}
+		paginationKey = getPaginationKey(); //now that the document is complete, see if its pagination can be cached
+		if(paginationKey == null) { //if the document hasn't been digested yet, we'll be called again when it has
+			return;
+		}
+		if(paginating && !pagesRestored && getPageWidth() == paginatedPageWidth && getPageHeight() == paginatedPageHeight && restorePagination()) { //if the pages being laid out are cached
+			return;
 		}
+		final int pageCount = getPageCount();
+		final boolean changesPending;
+		synchronized(paginationLock) {
+			changesPending = changedPageIndex >= 0;
+		}
+		if(!paginating && !changesPending && pageCount > 0 && getPageEndOffset(pageCount - 1) == getEndOffset()) { //if all the pages are laid out
+			storePagination();
+		}
+	}
 
-		/** Performs layout on all dimensions in the queue and then sleeps and waits for more to arrive. */
-		public void run() {
-			do {
+	/** Whether the current pages were restored from the pagination cache. */
+	private boolean pagesRestored = false;
+
+	/**
+	 * Determines the key in the pagination cache of a pagination using the current page size and document settings.
+	 * @return The key of the pagination, or <code>null</code> if there is no pagination cache, the document is still being loaded, or the document has been
+	 *         edited since it was loaded.
+	 * @see #getPaginationCache()
+	 */
+	protected String getPaginationKey() {
+		final XMLPaginationCache paginationCache = getPaginationCache();
+		if(paginationCache == null || documentChanged || isDocumentLoading()) { //if paginations aren't cached, or the document isn't what was or will be cached
+			return null;
+		}
+		final Document document = getDocument();
+		byte[] documentDigest = this.documentDigest;
+		if(documentDigest == null) { //the text of the loaded document doesn't change, so only digest it once
+			if(SwingUtilities.isEventDispatchThread()) { //don't freeze the user interface digesting a large document
+				requestDocumentDigest();
+				return null;
+			}
+			final long textGeneration = this.textGeneration.get();
+			documentDigest = XMLPaginationCache.getDocumentDigest(document);
+			if(textGeneration == this.textGeneration.get()) { //only keep the digest if the text didn't change while we were digesting it
+				this.documentDigest = documentDigest;
+			}
+		}
+		final int[] pageInsets = new int[] {getPageTopInset(), getPageLeftInset(), getPageBottomInset(), getPageRightInset()};
+		return paginationCache.getKey(documentDigest, getPageWidth(), getPageHeight(), pageInsets, Documents.getZoom(document, Documents.DEFAULT_ZOOM),
+				Documents.isAntialias(document));
+	}
+
+	/**
+	 * Digests the text of the document in the background, unless it is already being digested. Once the digest is determined, it is recorded on the event
+	 * dispatch thread and {@link #documentLoaded()} is called so that the pagination can be restored from or stored in the cache. This method must be called on
+	 * the event dispatch thread.
+	 */
+	protected void requestDocumentDigest() {
+		if(digesting) { //if the document is already being digested
+			return;
+		}
+		digesting = true;
+		final Document document = getDocument();
+		final long textGeneration = this.textGeneration.get();
+		final Thread thread = new Thread(new Runnable() {
+
+			public void run() {
+				byte[] documentDigest = null;
 				try {
-					final Dimension dimension = layoutDimensionQueue.poll(); //get another dimension from the queue
-					if(dimension != null) { //if there is another dimension ready to lay out
-						isLayingOut = true; //show that layout has started
-						try {
-							Log.trace("ready to lay out");
-							layoutImmediately(dimension.width, dimension.height); //do the layout
-						} finally {
-							isLayingOut = false; //always show that layout has stopped
+					documentDigest = XMLPaginationCache.getDocumentDigest(document);
+				} finally { //always let the event dispatch thread know we're finished, even if there was an error
+					final byte[] digest = documentDigest;
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							digesting = false;
+							if(digest != null && textGeneration == XMLPagedView.this.textGeneration.get() && !documentChanged && !isDocumentLoading()) { //if the text didn't change while it was digested
+								XMLPagedView.this.documentDigest = digest;
+								documentLoaded(); //now the pages can be restored from or stored in the cache
+							}
 						}
+					});
+				}
+			}
+		}, "XMLPagedView-digest");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Restores the current pagination from the pagination cache, if it is cached. Each page is restored without being laid out, and is only laid out when it is
+	 * displayed. Any pagination occurring in the background is abandoned. This method must be called on the event dispatch thread.
+	 * @return <code>true</code> if the pages were restored from the cache, or <code>false</code> if the pagination is not cached.
+	 * @see #layoutRestoredPages()
+	 */
+	protected boolean restorePagination() {
+		final String paginationKey = this.paginationKey;
+		if(paginationKey == null) { //if the pagination isn't cached
+			return false;
+		}
+		int[] pageOffsets = null;
+		try {
+			pageOffsets = getPaginationCache().read(paginationKey); //see if the page break offsets are cached
+		} catch(final IOException ioException) { //if the cached pagination can't be read, just paginate normally
+			Log.warn("Unable to read cached pagination.", ioException);
+		}
+		if(pageOffsets == null) {
+			return false;
+		}
+		if(pageOffsets[0] != getStartOffset() || pageOffsets[pageOffsets.length - 1] != getEndOffset()) { //make sure the pages cover our content
+			Log.debug("Ignoring cached pagination", paginationKey, "with different content range.");
+			return false;
+		}
+		final int pageIndex = getPageIndex();
+		final int pos = pendingPosition >= 0 ? pendingPosition : (pageIndex >= 0 ? getPageStartOffset(pageIndex) : -1); //try to show the same content after restoring
+		abandonPagination(); //we won't need any pages from a pass in progress
+		pendingPosition = -1;
+		final int pageCount = pageOffsets.length - 1;
+		synchronized(paginationLock) { //don't change the page pool while a batch from an abandoned pass is still being laid out
+			//make sure the layout pool has the correct dimensions of the page so that restored pages will be laid out correctly
+			getPagePoolView().setSize((int)getPageWidth() - getPageLeftInset() - getPageRightInset(), (int)getPageHeight() - getPageTopInset() - getPageBottomInset());
+			final View logicalView = getPagePoolView();
+			for(int i = logicalView.getViewCount() - 1; i >= 0; --i) { //keep the pooled views from being removed along with the pages
+				logicalView.getView(i).setParent(logicalView);
+			}
+			final View[] pages = new View[pageCount];
+			for(int i = 0; i < pageCount; ++i) { //create an empty page for each cached page
+				final Page page = (Page)createRow();
+				page.setRestoredOffsets(pageOffsets[i], pageOffsets[i + 1]);
+				pages[i] = page;
+			}
+			replace(0, getViewCount(), pages); //replace the old pages with the restored pages
+		}
+		pagesRestored = true;
+		Log.trace("Restored", pageCount, "pages from pagination cache.");
+		fireMadeProgress(new ProgressEvent(this, PAGINATE_TASK, "Paginated all " + pageCount + " pages.", pageCount, pageCount)); //show that all the pages are available TODO i18n
+		if(pos >= 0) { //if we were showing content, show it again
+			setPageIndex(Math.max(getPageIndex(pos), 0));
+		}
+		firePageEvent(new PageEvent(this, getPageIndex(), getPageCount())); //the page count has changed
+		return true;
+	}
+
+	/**
+	 * Lays out any displayed pages that were restored from the pagination cache but not yet laid out. If a restored page does not end where the cache indicated,
+	 * the cached pagination is removed from the cache and the view is paginated again. This method must be called on the event dispatch thread.
+	 * @see #restorePagination()
+	 */
+	protected void layoutRestoredPages() {
+		final PaginateStrategy strategy = getStrategy();
+		final int pageEndIndex = getPageEndIndex();
+		boolean isPageLaidOut = false;
+		boolean isPaginationStale = false;
+		publishingPages = true; //filling restored pages will invalidate our layout, but shouldn't start another pagination
+		try {
+			for(int pageIndex = Math.max(getPageBeginIndex(), 0); pageIndex < pageEndIndex && !isPaginationStale; ++pageIndex) {
+				final View view = getView(pageIndex);
+				if(view instanceof Page && ((Page)view).isRestored()) { //if this page has not been laid out since being restored
+					final Page page = (Page)view;
+					final int endOffset = page.getEndOffset();
+					isPaginationStale = strategy.layoutPage(this, page, pageIndex, page.getStartOffset()) != endOffset; //fill the page, making sure it breaks where it did before
+					isPageLaidOut = true;
+				}
+			}
+			if(isPageLaidOut) { //if we filled pages, lay out the pages we now have
+				layout(layoutWidth, layoutHeight);
+			}
+		} finally {
+			publishingPages = false;
+		}
+		if(isPaginationStale) { //if the cached pagination was wrong, don't use it again
+			Log.debug("Cached pagination", paginationKey, "does not match layout; repaginating.");
+			final XMLPaginationCache paginationCache = getPaginationCache();
+			if(paginationCache != null && paginationKey != null) {
+				paginationCache.remove(paginationKey);
+			}
+			layoutChanged(getFlowAxis()); //paginate the view normally
+			final Container container = getContainer();
+			if(container != null) {
+				container.repaint();
+			}
+		}
+	}
+
+	/** Stores the page break offsets of the current pagination, if it has been completed, in the pagination cache. */
+	protected void storePagination() {
+		final XMLPaginationCache paginationCache = getPaginationCache();
+		final int pageCount = getPageCount();
+		if(paginationCache == null || paginationKey == null || pageCount == 0) { //if there is nothing to cache
+			return;
+		}
+		final int[] pageOffsets = new int[pageCount + 1];
+		for(int i = 0; i < pageCount; ++i) {
+			pageOffsets[i] = getPageStartOffset(i);
+		}
+		pageOffsets[pageCount] = getPageEndOffset(pageCount - 1);
+		try {
+			paginationCache.write(paginationKey, pageOffsets);
+		} catch(final IOException ioException) { //failing to cache the pagination isn't fatal
+			Log.warn("Unable to cache pagination.", ioException);
+		}
+	}
+
+	/**
+	 * Removes all pages and starts laying out pages in the background using the current page size. Any pagination pass already in progress is abandoned. The page
+	 * currently shown will be shown again once its content has been paginated. This method must be called on the event dispatch thread.
+	 */
+	protected void startBackgroundPagination() {
+		final long generation = paginationGeneration.incrementAndGet(); //abandon any pass in progress
+		final int pageIndex = getPageIndex();
+		if(pageIndex >= 0 && pendingPosition < 0) { //if a page is showing (and we aren't still trying to get back to a page from an earlier pass)
+			pendingPosition = getPageStartOffset(pageIndex); //try to show the same content after pagination
+		}
+		synchronized(paginationLock) { //wait for any batch in progress to finish
+			final View logicalView = getPagePoolView();
+			for(int i = logicalView.getViewCount() - 1; i >= 0; --i) { //keep the pooled views from being removed along with the pages
+				logicalView.getView(i).setParent(logicalView);
+			}
+			removeAll(); //remove the old pages
+		}
+		paginating = true;
+		fireMadeProgress(new ProgressEvent(this, PAGINATE_TASK, "Repaginating pages...", 0, 1)); //show that we are ready to start paginating pages, but we haven't really started, yet TODO i18n
+		firePageEvent(new PageEvent(this, getPageIndex(), getPageCount())); //the page count has changed
+		paginator.paginate(generation, getPageWidth(), getPageHeight()); //start paginating in the background
+	}
+
+	/**
+	 * Lays out all pages in batches, publishing each batch to the view on the event dispatch thread. Each batch is laid out under the document read lock. This
+	 * method is called in the pagination thread, and returns early if the pagination pass is no longer current.
+	 * @param generation The generation of the pagination pass.
+	 * @param pageWidth The width of each page.
+	 * @param pageHeight The height of each page.
+	 */
+	protected void paginate(final long generation, final float pageWidth, final float pageHeight) {
+		final Document document = getDocument();
+		final AbstractDocument abstractDocument = document instanceof AbstractDocument ? (AbstractDocument)document : null;
+		final PaginateStrategy strategy = getStrategy();
+		int pageIndex = 0; //the index of the next page to lay out
+		int pos = -1; //we don't know the first position until we have the lock
+		boolean finished = false;
+		do {
+			final List<View> pages = new ArrayList<View>(PAGINATION_BATCH_PAGE_COUNT);
+			final int endOffset;
+			if(abstractDocument != null) { //the document lock must be acquired before the pagination lock, as the event dispatch thread may hold the write lock
+				abstractDocument.readLock(); //don't allow the document to change while we lay out this batch of pages
+			}
+			try {
+				synchronized(paginationLock) {
+					if(!isCurrentPagination(generation)) { //if a newer pass has been requested, stop laying out pages
+						return;
 					}
-					synchronized(this) { //make sure nothing is added to the queue after we check it but before we go to sleep
-						if(!stopped && layoutDimensionQueue.size() == 0) { //if nothing is left in the queue (and we should keep going)
-							try {
-								wait(); //wait for more dimensions to be added to the queue
-							} catch(final InterruptedException interruptedException) { //if we are interrupted waiting for more dimensions to lay out, don't do anything special
-							}
+					if(pos < 0) { //if this is the first batch, prepare the page pool
+						//make sure the layout pool has the correct dimensions of the page so that it will do unrestrained layout correctly
+						getPagePoolView().setSize((int)pageWidth - getPageLeftInset() - getPageRightInset(), (int)pageHeight - getPageTopInset() - getPageBottomInset());
+						pos = getStartOffset();
+					}
+					endOffset = getEndOffset();
+					while(pages.size() < PAGINATION_BATCH_PAGE_COUNT && pos < endOffset && isCurrentPagination(generation)) {
+						final View page = createRow();
+						page.setParent(this); //give the page a parent so that it can reach the container, even though the page isn't one of our children yet
+						pos = strategy.layoutPage(this, page, pageIndex + pages.size(), pos);
+						pages.add(page);
+					}
+					finished = pos >= endOffset;
+				}
+			} finally {
+				if(abstractDocument != null) {
+					abstractDocument.readUnlock();
+				}
+			}
+			pageIndex += pages.size();
+			final float estimatedPageCount = pos > 0 ? pageIndex * ((float)endOffset / pos) : pageIndex; //estimate the total pages by how far we are along the content
+			publishPages(generation, pages, estimatedPageCount, finished);
+		} while(!finished);
+	}
+
+	/**
+	 * Schedules pages laid out in the background to be added to the view on the event dispatch thread. The pages are discarded if the pagination pass is no
+	 * longer current when they are to be added.
+	 * @param generation The generation of the pagination pass.
+	 * @param pages The pages to add, in order.
+	 * @param estimatedPageCount The estimated total number of pages.
+	 * @param finished Whether these are the last pages of the pagination pass.
+	 */
+	protected void publishPages(final long generation, final List<View> pages, final float estimatedPageCount, final boolean finished) {
+		SwingUtilities.invokeLater(new Runnable() {
+
+			public void run() {
+				if(!isCurrentPagination(generation)) { //if these pages are stale, discard them
+					return;
+				}
+				synchronized(paginationLock) { //don't change our pages while the next batch is being laid out
+					publishingPages = true; //changing our children will invalidate our layout, but shouldn't start another pagination
+					try {
+						replace(getViewCount(), 0, pages.toArray(new View[pages.size()])); //add the new pages
+						layout(layoutWidth, layoutHeight); //lay out the pages we now have
+					} finally {
+						publishingPages = false;
+					}
+				}
+				final int pageCount = getPageCount();
+				if(pendingPosition >= 0 && (finished || getPageEndOffset(pageCount - 1) > pendingPosition)) { //if the content we were showing has been paginated
+					final int pendingPageIndex = getPageIndex(pendingPosition); //find the page with that content
+					pendingPosition = -1;
+					setPageIndex(Math.max(pendingPageIndex, 0));
+				}
+				if(finished) { //if this is the last batch
+					paginating = false;
+					storePagination(); //remember the pages for the next time this document is paginated the same way
+					fireMadeProgress(new ProgressEvent(XMLPagedView.this, PAGINATE_TASK, "Paginated all " + pageCount + " pages.", pageCount, pageCount)); //show that we paginated all the pages TODO i18n
+				} else {
+					fireMadeProgress(new ProgressEvent(XMLPagedView.this, PAGINATE_TASK, "Paginating page " + (pageCount + 1) + " of ~" + Math.round(estimatedPageCount) + "...",
+							pageCount, estimatedPageCount)); //show that we are paginating, and the number of pages we guess there will be TODO i18n
+				}
+				firePageEvent(new PageEvent(XMLPagedView.this, getPageIndex(), pageCount)); //the page count has changed
+				final Container container = getContainer();
+				if(container != null) {
+					container.repaint();
+				}
+			}
+		});
+	}
+
+	/**
+	 * The class that lays out pages in a separate thread. Only the most recently requested pagination is performed; the thread ends when there are no more
+	 * requests.
+	 * @author Garret Wilson.
+	 */
+	protected class Paginator implements Runnable {
+
+		/** The thread performing pagination, or <code>null</code> if no thread is running. */
+		private Thread thread = null;
+
+		/** Whether pagination has been requested and not yet started. */
+		private boolean requested = false;
+
+		/** The generation of the requested pagination pass. */
+		private long generation;
+
+		/** The requested page width. */
+		private float pageWidth;
+
+		/** The requested page height. */
+		private float pageHeight;
+
+		/**
+		 * Requests that pages be laid out in the background, starting a thread if needed. Any earlier request that has not yet started is replaced.
+		 * @param generation The generation of the pagination pass.
+		 * @param pageWidth The width of each page.
+		 * @param pageHeight The height of each page.
+		 */
+		public synchronized void paginate(final long generation, final float pageWidth, final float pageHeight) {
+			this.generation = generation;
+			this.pageWidth = pageWidth;
+			this.pageHeight = pageHeight;
+			requested = true;
+			if(thread == null) { //if there is no thread running, start one
+				startThread();
+			}
+		}
+
+		/** Starts a new thread to perform requested pagination. This method must be called while synchronized on this object. */
+		private void startThread() {
+			thread = new Thread(this, "XMLPagedView-pagination");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Performs each requested pagination, ending when no more pagination has been requested. If the thread ends abnormally, as when an error is thrown, it is
+		 * forgotten so that later requests will start a new thread, and any request already made is given to a new thread.
+		 */
+		public void run() {
+			try {
+				paginateRequests();
+			} finally {
+				synchronized(this) { //the thread is guarded by this object, not by the pagination lock, so that requesting pagination never waits for a batch of pages
+					if(thread == Thread.currentThread()) { //if the thread ended abnormally without forgetting itself
+						thread = null;
+						if(requested) { //if pagination was requested after this thread took its last request, don't leave it waiting
+							startThread();
+						} else { //if the failed pass was the last one requested, show that no more pages are coming
+							final long failedGeneration = generation;
+							SwingUtilities.invokeLater(new Runnable() {
+
+								public void run() {
+									if(isCurrentPagination(failedGeneration)) { //if no other pass has started in the meantime
+										paginating = false;
+										firePageEvent(new PageEvent(XMLPagedView.this, getPageIndex(), getPageCount()));
+									}
+								}
+							});
 						}
 					}
-				} catch(final Exception exception) { //if anything wrong happens in the main thread loop, report it and keep going
-					AbstractSwingApplication.displayApplicationError(getContainer(), exception);
 				}
-			} while(!stopped); //keep going until we are stopped
+			}
+		}
+
+		/** Performs each requested pagination, returning when no more pagination has been requested. */
+		protected void paginateRequests() {
+			while(true) {
+				final long generation;
+				final float pageWidth, pageHeight;
+				synchronized(this) {
+					if(!requested) { //if there is nothing more to do, end the thread
+						thread = null;
+						return;
+					}
+					requested = false;
+					generation = this.generation;
+					pageWidth = this.pageWidth;
+					pageHeight = this.pageHeight;
+				}
+				try {
+					XMLPagedView.this.paginate(generation, pageWidth, pageHeight);
+				} catch(final RuntimeException runtimeException) { //if anything goes wrong, report it and stop this pass
+					Log.error(runtimeException);
+					if(isCurrentPagination(generation)) { //if the failed pass was still current, let the user know
+						SwingUtilities.invokeLater(new Runnable() {
+
+							public void run() {
+								if(isCurrentPagination(generation)) { //if no other pass has started in the meantime
+									paginating = false; //there are no more pages coming
+									firePageEvent(new PageEvent(XMLPagedView.this, getPageIndex(), getPageCount()));
+								}
+								AbstractSwingApplication.displayApplicationError(getContainer(), runtimeException);
+							}
+						});
+					}
+				}
+			}
 		}
 	}
 
@@ -880,7 +1673,22 @@ public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationEx
 	 * @see View#viewToModel
 	 */
 	public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
-		//TODO what if we're in the middle of paginating?
+		synchronized(paginationLock) { //don't examine the pooled views while a batch of pages is being laid out in the background
+			return viewToModelPages(x, y, a, bias);
+		}
+	}
+
+	/**
+	 * Provides a mapping from the view coordinate space to the logical coordinate space of the model among the pages. This method must be called while holding
+	 * the pagination lock.
+	 * @param x The horizontal coordinate of the view location to convert (&gt;=0).
+	 * @param y The vertical coordinate of the view location to convert (&gt;=0).
+	 * @param a The allocated region to render into.
+	 * @param bias The returned bias of the location.
+	 * @return The location within the model that best represents the given point in the view (&gt;=0).
+	 * @see #viewToModel(float, float, Shape, Position.Bias[])
+	 */
+	protected int viewToModelPages(float x, float y, Shape a, Position.Bias[] bias) {
 		//TODO del Log.trace("Inside XMLPagedView.viewToModel() for x: "+x+" y: "+y);
 		if(!isAllocationValid()) { //if our allocation isn't value
 			//TODO del Log.trace("Inside XMLPagedView.viewToModel(), allocation isn't valid; changing size");
@@ -927,6 +1735,41 @@ public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
 		return -1; //if we were unable, for some reason, to find a view, return -1 TODO is this correct?
 	}
 
+	/**
+	 * Provides a mapping from the document model coordinate space to the coordinate space of the view. This version makes sure no batch of pages is being laid
+	 * out in the background while the pooled views are examined.
+	 * @param pos The position to convert (&gt;=0).
+	 * @param a The allocated region to render into.
+	 * @param b The bias toward the previous or next character.
+	 * @return The bounding box of the given position.
+	 * @throws BadLocationException if the given position does not represent a valid location in the associated document.
+	 * @see View#modelToView(int, Shape, Position.Bias)
+	 */
+	public Shape modelToView(final int pos, final Shape a, final Position.Bias b) throws BadLocationException {
+		synchronized(paginationLock) {
+			return super.modelToView(pos, a, b);
+		}
+	}
+
+	/**
+	 * Provides a way to determine the next visually represented model location at which one might place a caret. This version makes sure no batch of pages is
+	 * being laid out in the background while the pooled views are examined.
+	 * @param pos The position to convert (&gt;=0).
+	 * @param b The bias toward the previous or next character.
+	 * @param a The allocated region in which to render.
+	 * @param direction The direction from the current position.
+	 * @param biasRet The returned bias of the next position.
+	 * @return The location within the model that best represents the next location visual position.
+	 * @throws BadLocationException if the given position is not a valid position within the document.
+	 * @see View#getNextVisualPositionFrom(int, Position.Bias, Shape, int, Position.Bias[])
+	 */
+	public int getNextVisualPositionFrom(final int pos, final Position.Bias b, final Shape a, final int direction, final Position.Bias[] biasRet)
+			throws BadLocationException {
+		synchronized(paginationLock) {
+			return super.getNextVisualPositionFrom(pos, b, a, direction, biasRet);
+		}
+	}
+
 	/**
 	 * Determines the desired alignment for this view along an axis. This is implemented to give the alignment to the center of the first row along the y axis,
 	 * and the default along the x axis.
@@ -1032,6 +1875,45 @@ public Page(final Element element) {
 			setInsets(getPageTopInset(), getPageLeftInset(), getPageBottomInset(), getPageRightInset()); //set the page insets from the paged view
 		}
 
+		/** The starting offset of a page restored from the pagination cache, or -1 if the page was not restored. */
+		private int restoredStartOffset = -1;
+
+		/** The ending offset of a page restored from the pagination cache, or -1 if the page was not restored. */
+		private int restoredEndOffset = -1;
+
+		/**
+		 * Indicates that this page was restored from the pagination cache, and will contain the given range of content once it is laid out.
+		 * @param startOffset The starting offset of the page.
+		 * @param endOffset The ending offset of the page.
+		 */
+		public void setRestoredOffsets(final int startOffset, final int endOffset) {
+			restoredStartOffset = startOffset;
+			restoredEndOffset = endOffset;
+		}
+
+		/** @return <code>true</code> if this page was restored from the pagination cache and has not yet been laid out. */
+		public boolean isRestored() {
+			return restoredStartOffset >= 0 && getViewCount() == 0;
+		}
+
+		/**
+		 * Fetches the portion of the model for which this view is responsible. This version returns the restored starting offset if the page has not yet been laid
+		 * out since being restored.
+		 * @return The starting offset into the model (&gt;=0).
+		 */
+		public int getStartOffset() {
+			return isRestored() ? restoredStartOffset : super.getStartOffset();
+		}
+
+		/**
+		 * Fetches the portion of the model for which this view is responsible. This version returns the restored ending offset if the page has not yet been laid
+		 * out since being restored.
+		 * @return The ending offset into the model (&gt;=0).
+		 */
+		public int getEndOffset() {
+			return isRestored() ? restoredEndOffset : super.getEndOffset();
+		}
+
 		/**
 		 * Returns the attributes to use for this container view. Because this view does not directly represent its underlying element, the attributes of the parent
 		 * view is returned, if there is a parent.
@@ -1207,8 +2089,19 @@ public void layout(FlowView fv) {
 		 * @return the position to start the next row
 		 */
 		protected int layoutRow(FlowView fv, int rowIndex, int pos) {
+			return layoutRow(fv, fv.getView(rowIndex), rowIndex, pos);
+		}
 
-			View row = fv.getView(rowIndex);
+		/**
+		 * Creates a row of views that will fit within the layout span of the given row, which need not yet be a child of the flow view.
+		 * @param fv The view holding the flow.
+		 * @param row The row to fill in with views, assumed to be empty on entry.
+		 * @param rowIndex The index the row has or will have in the flow view.
+		 * @param pos The current position in the children of this views element from which to start.
+		 * @return The position to start the next row.
+		 * @see #layoutRow(FlowView, int, int)
+		 */
+		protected int layoutRow(final FlowView fv, final View row, final int rowIndex, int pos) {
 			int x = fv.getFlowStart(rowIndex);
 			int spanLeft = fv.getFlowSpan(rowIndex);
 			int end = fv.getEndOffset();
@@ -1271,7 +2164,7 @@ protected int layoutRow(FlowView fv, int rowIndex, int pos) {
 			}
 			if(spanLeft < 0) {
 				// This row is too long and needs to be adjusted.
-				adjustRow(fv, rowIndex, availableSpan, preX);
+				adjustRow(fv, row, availableSpan, preX);
 			} else if(row.getViewCount() == 0) {
 				// Impossible spec... put in whatever is left.
 				View v = createView(fv, pos, Integer.MAX_VALUE, rowIndex);
@@ -1289,8 +2182,19 @@ protected int layoutRow(FlowView fv, int rowIndex, int pos) {
 		 * @param x the location r starts at.
 		 */
 		protected void adjustRow(FlowView fv, int rowIndex, int desiredSpan, int x) {
+			adjustRow(fv, fv.getView(rowIndex), desiredSpan, x);
+		}
+
+		/**
+		 * Adjusts the given row, which need not yet be a child of the flow view, if possible to fit within the layout span.
+		 * @param fv The view holding the flow.
+		 * @param r The row to adjust to the current layout span.
+		 * @param desiredSpan The current layout span (&gt;=0).
+		 * @param x The location the row starts at.
+		 * @see #adjustRow(FlowView, int, int, int)
+		 */
+		protected void adjustRow(final FlowView fv, final View r, final int desiredSpan, final int x) {
 			final int flowAxis = fv.getFlowAxis();
-			View r = fv.getView(rowIndex);
 			int n = r.getViewCount();
 			int span = 0;
 			int bestWeight = BadBreakWeight;
@@ -1399,6 +2303,23 @@ public class PaginateStrategy extends DebugFlowStrategy {
 		 * @param flowView The view to reflow.
 		 */
 		public void layout(final FlowView flowView) {
+			if(publishingPages) { //adding pages already laid out isn't a reason to start over
+				return;
+			}
+			if(repaginateChangedPages()) { //if only the pages affected by document changes needed to be laid out again
+				return;
+			}
+			pagesRestored = false; //all the pages will be replaced
+			paginatedPageWidth = getPageWidth(); //all the pages will be laid out at the current size
+			paginatedPageHeight = getPageHeight();
+			paginationKey = getPaginationKey(); //see if this pagination can be restored from or stored in the cache
+			if(restorePagination()) { //if the pages were restored from the cache, there's nothing to lay out until the pages are displayed
+				return;
+			}
+			if(isBackgroundPagination()) { //if pages should be laid out in the background
+				startBackgroundPagination();
+				return;
+			}
 			final Container container = flowView.getContainer(); //see if the flow view has a container (it always should)
 			final Cursor originalCursor = container != null ? Components.setCursor(container, Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR)) : null; //show the wait cursor
 			try {
@@ -1407,6 +2328,9 @@ public void layout(final FlowView flowView) {
 				getPagePoolView().setSize((int)getPageWidth() - getPageLeftInset() - getPageRightInset(),
 						(int)getPageHeight() - getPageTopInset() - getPageBottomInset()); //set the size of the page pool to be exactly the size of the displayed page; giving insets to the page pool results in incorrect layout
 				super.layout(flowView); //do the layout normally
+				invalidatePageOffsets(0); //pages were filled after being added, so any offsets determined during layout may be incomplete
+				updatePageOffsets(); //record where the pages break so that later changes can be located without looking at the pages
+				storePagination(); //remember the pages for the next time this document is paginated the same way
 				/*TODO fix end-of-pagination repainting
 								if(container!=null) {	//if we're in a container
 									container.repaint();	//repaint our container TODO check
@@ -1446,6 +2370,27 @@ protected int layoutRow(final FlowView flowView, final int rowIndex, final int p
 			return nextPos; //return the next position for layout
 		}
 
+		/**
+		 * Lays out a page that is not yet a child of the flow view, as when paginating in the background. If nothing fits on the page, something is forced onto
+		 * the page.
+		 * @param flowView The view holding the flow.
+		 * @param page The empty page to fill with views.
+		 * @param pageIndex The index the page will have in the flow view.
+		 * @param pos The position in the document at which the page starts.
+		 * @return The position at which the next page starts.
+		 */
+		protected int layoutPage(final FlowView flowView, final View page, final int pageIndex, final int pos) {
+			int nextPos = layoutRow(flowView, page, pageIndex, pos); //fill the page
+			if(page.getViewCount() == 0) { //if nothing fit, force something onto the page
+				page.append(createView(flowView, pos, Integer.MAX_VALUE, pageIndex));
+				nextPos = page.getEndOffset();
+			}
+			if(nextPos <= pos) {
+				throw new AssertionError("infinite loop in formatting");
+			}
+			return nextPos;
+		}
+
 	}
 
 	/**
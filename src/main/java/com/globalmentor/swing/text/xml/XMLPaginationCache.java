@@ -0,0 +1,281 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml;
+
+import java.awt.GraphicsEnvironment;
+import java.io.*;
+import java.security.*;
+import java.util.Arrays;
+
+import javax.swing.text.*;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+import com.globalmentor.java.Bytes;
+import com.globalmentor.log.Log;
+
+/**
+ * An on-disk cache of the page break offsets of paginated documents, allowing the pages of an unchanged document to be restored without laying out every page.
+ * <p>
+ * Each pagination is keyed to a digest of the text of the document along with everything else that determines where pages break: the page dimensions and
+ * insets, the zoom factor, whether text is antialiased, and the font families installed on the system.
+ * </p>
+ * <p>
+ * The key does not include the styles of the document; if stylesheets change, the cache should be cleared using {@link #clear()}. A paged view that finds that
+ * a restored page does not break where the cache indicated removes the cached pagination using {@link #remove(String)}.
+ * </p>
+ * @author Garret Wilson
+ * @see XMLPagedView#setPaginationCache(XMLPaginationCache)
+ */
+public class XMLPaginationCache {
+
+	/** The number identifying a cached pagination file. */
+	private static final int MAGIC_NUMBER = 0x584D4C50; //"XMLP"
+
+	/** The version of the cache format; changing this value invalidates all cached paginations. */
+	private static final int FORMAT_VERSION = 1;
+
+	/** The extension of cached pagination files. */
+	public static final String FILENAME_EXTENSION = "xmlpages";
+
+	/** The number of bytes of encoded text given to the message digest at a time. */
+	private static final int DIGEST_BUFFER_SIZE = 16 * 1024;
+
+	/** The algorithm used to create document digests and cache keys. */
+	private static final String KEY_DIGEST_ALGORITHM = "SHA-256";
+
+	/** The directory in which cached paginations are stored. */
+	private final File directory;
+
+	/** @return The directory in which cached paginations are stored. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/** The digest of the names of the installed font families, or <code>null</code> if the font families have not yet been determined. */
+	private byte[] fontFamiliesDigest = null;
+
+	/**
+	 * Directory constructor.
+	 * @param directory The directory in which cached paginations are stored; it will be created if needed when a pagination is first cached.
+	 * @throws NullPointerException if the given directory is <code>null</code>.
+	 */
+	public XMLPaginationCache(final File directory) {
+		this.directory = requireNonNull(directory, "Cache directory cannot be null.");
+	}
+
+	/** @return A new message digest for creating digests and keys. */
+	protected static MessageDigest createMessageDigest() {
+		try {
+			return MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+		} catch(final NoSuchAlgorithmException noSuchAlgorithmException) { //all Java platforms are required to support SHA-256
+			throw new AssertionError(noSuchAlgorithmException);
+		}
+	}
+
+	/**
+	 * Determines a digest of the text of a document. The text is read in segments under the document's read lock, so that the text of a large document is not
+	 * copied, and each segment is encoded into a reusable buffer that is digested a buffer at a time. As digesting a large document takes a noticeable amount of
+	 * time, this method should not be called on the event dispatch thread.
+	 * @param document The document the text of which should be digested.
+	 * @return A digest identifying the text of the document.
+	 */
+	public static byte[] getDocumentDigest(final Document document) {
+		final MessageDigest messageDigest = createMessageDigest();
+		document.render(new Runnable() { //don't allow the document to change while we read its text
+
+			public void run() {
+				final Segment segment = new Segment();
+				segment.setPartialReturn(true); //don't make the document copy its text into a single array
+				final byte[] bytes = new byte[DIGEST_BUFFER_SIZE]; //the buffer holds a whole number of characters
+				int byteCount = 0;
+				int offset = 0;
+				int length = document.getLength();
+				try {
+					while(length > 0) { //digest each segment of text
+						document.getText(offset, length, segment);
+						for(int i = segment.offset, end = segment.offset + segment.count; i < end; ++i) { //encode each character as two bytes
+							final char c = segment.array[i];
+							bytes[byteCount++] = (byte)(c >> 8);
+							bytes[byteCount++] = (byte)c;
+							if(byteCount == bytes.length) { //if the buffer is full, digest it
+								messageDigest.update(bytes, 0, byteCount);
+								byteCount = 0;
+							}
+						}
+						offset += segment.count;
+						length -= segment.count;
+					}
+					messageDigest.update(bytes, 0, byteCount); //digest whatever remains in the buffer
+				} catch(final BadLocationException badLocationException) { //we should never get a bad location exception
+					throw (AssertionError)new AssertionError(badLocationException.getMessage()).initCause(badLocationException);
+				}
+			}
+		});
+		return messageDigest.digest();
+	}
+
+	/** @return A digest of the names of the font families installed on the system, determined the first time it is requested. */
+	protected synchronized byte[] getFontFamiliesDigest() {
+		if(fontFamiliesDigest == null) { //if we haven't determined the installed fonts, yet
+			final String[] fontFamilyNames = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+			Arrays.sort(fontFamilyNames); //make sure the order of the names doesn't matter
+			final MessageDigest messageDigest = createMessageDigest();
+			for(final String fontFamilyName : fontFamilyNames) {
+				messageDigest.update((fontFamilyName + "\n").getBytes(UTF_8));
+			}
+			fontFamiliesDigest = messageDigest.digest();
+		}
+		return fontFamiliesDigest;
+	}
+
+	/**
+	 * Determines the key of a pagination.
+	 * @param documentDigest The digest of the text of the paginated document.
+	 * @param pageWidth The width of each page.
+	 * @param pageHeight The height of each page.
+	 * @param pageInsets The top, left, bottom, and right insets of each page.
+	 * @param zoom The zoom factor of the document.
+	 * @param antialias Whether the text of the document is antialiased.
+	 * @return A key identifying the pagination of the document with the given settings on this system.
+	 * @see #getDocumentDigest(Document)
+	 */
+	public String getKey(final byte[] documentDigest, final float pageWidth, final float pageHeight, final int[] pageInsets, final float zoom,
+			final boolean antialias) {
+		final MessageDigest messageDigest = createMessageDigest();
+		messageDigest.update((FORMAT_VERSION + "\n" + pageWidth + "x" + pageHeight + "\n" + Arrays.toString(pageInsets) + "\n" + zoom + "\n" + antialias + "\n")
+				.getBytes(UTF_8)); //identify the page layout settings
+		messageDigest.update(getFontFamiliesDigest());
+		messageDigest.update(documentDigest);
+		return Bytes.toHexString(messageDigest.digest());
+	}
+
+	/**
+	 * Determines the file in which a pagination is cached.
+	 * @param key The key of the pagination.
+	 * @return The file for the cached pagination.
+	 */
+	protected File getFile(final String key) {
+		return new File(getDirectory(), key + '.' + FILENAME_EXTENSION);
+	}
+
+	/**
+	 * Retrieves the page break offsets of a cached pagination.
+	 * @param key The key of the pagination.
+	 * @return The start offset of each page, followed by the end offset of the last page; or <code>null</code> if the pagination is not cached.
+	 * @throws IOException if there is an error reading the cached pagination, or if the cached pagination is corrupt.
+	 */
+	public int[] read(final String key) throws IOException {
+		final File file = getFile(key);
+		if(!file.isFile()) { //if there is no such cached pagination
+			return null;
+		}
+		final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(dataInputStream.readInt() != MAGIC_NUMBER || dataInputStream.readInt() != FORMAT_VERSION) { //if this isn't a cached pagination we know how to read
+				Log.debug("Ignoring cached pagination", file, "with unrecognized format.");
+				return null;
+			}
+			final int pageCount = dataInputStream.readInt();
+			if(pageCount < 1) {
+				throw new IOException("Cached pagination " + file + " has invalid page count " + pageCount + ".");
+			}
+			final int[] pageOffsets = new int[pageCount + 1];
+			for(int i = 0; i < pageOffsets.length; ++i) {
+				pageOffsets[i] = dataInputStream.readInt();
+				if(i > 0 && pageOffsets[i] <= pageOffsets[i - 1]) { //every page must have content
+					throw new IOException("Cached pagination " + file + " has out-of-order page offsets.");
+				}
+			}
+			return pageOffsets;
+		} catch(final EOFException eofException) {
+			throw (IOException)new IOException("Cached pagination " + file + " is incomplete.").initCause(eofException);
+		} finally {
+			dataInputStream.close();
+		}
+	}
+
+	/**
+	 * Stores the page break offsets of a finished pagination in the cache. The pagination is first written to a temporary file, which then replaces any existing
+	 * cached pagination, so that a partially written pagination is never read.
+	 * @param key The key of the pagination.
+	 * @param pageOffsets The start offset of each page, followed by the end offset of the last page.
+	 * @throws IllegalArgumentException if fewer than two offsets are given.
+	 * @throws IOException if there is an error writing the pagination.
+	 */
+	public void write(final String key, final int[] pageOffsets) throws IOException {
+		if(pageOffsets.length < 2) {
+			throw new IllegalArgumentException("A pagination must have at least one page.");
+		}
+		final File directory = getDirectory();
+		if(!directory.isDirectory() && !directory.mkdirs()) { //make sure the cache directory exists
+			throw new IOException("Unable to create pagination cache directory " + directory + ".");
+		}
+		final File file = getFile(key);
+		final File tempFile = File.createTempFile(key, null, directory); //write to a temporary file in the same directory so that it can be renamed
+		boolean isWritten = false;
+		try {
+			final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				dataOutputStream.writeInt(MAGIC_NUMBER);
+				dataOutputStream.writeInt(FORMAT_VERSION);
+				dataOutputStream.writeInt(pageOffsets.length - 1); //write the page count
+				for(final int pageOffset : pageOffsets) {
+					dataOutputStream.writeInt(pageOffset);
+				}
+			} finally {
+				dataOutputStream.close();
+			}
+			if(file.exists() && !file.delete()) { //some platforms won't rename over an existing file
+				throw new IOException("Unable to replace cached pagination " + file + ".");
+			}
+			if(!tempFile.renameTo(file)) {
+				throw new IOException("Unable to store cached pagination " + file + ".");
+			}
+			isWritten = true;
+		} finally {
+			if(!isWritten) { //if we didn't finish, don't leave the temporary file around
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Removes a cached pagination, as when the pagination is found to no longer be correct.
+	 * @param key The key of the pagination.
+	 */
+	public void remove(final String key) {
+		final File file = getFile(key);
+		if(file.exists() && !file.delete()) {
+			Log.warn("Unable to delete cached pagination", file);
+		}
+	}
+
+	/** Removes all cached paginations. */
+	public void clear() {
+		final File[] files = getDirectory().listFiles();
+		if(files != null) { //if the directory exists
+			for(final File file : files) {
+				if(file.getName().endsWith('.' + FILENAME_EXTENSION) && !file.delete()) {
+					Log.warn("Unable to delete cached pagination", file);
+				}
+			}
+		}
+	}
+
+}
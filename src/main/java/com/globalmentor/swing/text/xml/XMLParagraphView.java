@@ -29,6 +29,7 @@
 import com.globalmentor.swing.text.ContainerView;
 import com.globalmentor.swing.text.FragmentViewFactory;
 import com.globalmentor.swing.text.ViewBreakStrategy;
+import com.globalmentor.swing.text.xml.css.XMLCSSPaintStyle;
 import com.globalmentor.swing.text.xml.css.XMLCSSStyles;
 import com.globalmentor.swing.text.xml.css.XMLCSSView;
 import com.globalmentor.swing.text.xml.css.XMLCSSViewPainter;
@@ -159,10 +160,25 @@ public void release()
 		}
 	*/
 
+	/** The resolved paint style, or <code>null</code> if the paint style has not been resolved since the attributes were last examined. */
+	private XMLCSSPaintStyle paintStyle = null;
+
+	/**
+	 * Retrieves the paint style of the view, resolving it from the attributes if needed.
+	 * @return The current paint style of the view.
+	 */
+	protected XMLCSSPaintStyle getPaintStyle() {
+		if(paintStyle == null || !paintStyle.isCurrent(this)) { //if the paint style hasn't been resolved or is stale
+			paintStyle = new XMLCSSPaintStyle(this, getAttributes());
+		}
+		return paintStyle;
+	}
+
 	/**
 	 * Sets the cached properties from the attributes. This overrides the version in <code>ParagraphView</code> to work with CSS attributes.
 	 */
 	protected void setPropertiesFromAttributes() {
+		paintStyle = null; //the paint style will be resolved again when needed
 		final AttributeSet attributeSet = getAttributes(); //get our attributes
 		if(attributeSet != null) { //if we have attributes
 			setBackgroundColor(XMLCSSStyles.getBackgroundColor(attributeSet)); //set the background color from the attributes
@@ -259,7 +275,7 @@ public void paint(final Graphics graphics, final Shape allocation) {
 			//turn on fractional metrics TODO probably do this conditionally, based on some sort of flag
 			//TODO del; moved to XMLCSSViewPainter			graphics2D.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
 			//TODO del; moved to XMLCSSViewPainter		  graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-			XMLCSSViewPainter.paint(graphics, allocation, this, getAttributes()); //paint our CSS-specific parts
+			XMLCSSViewPainter.paint(graphics, allocation, this, getPaintStyle()); //paint our CSS-specific parts
 			super.paint(graphics, allocation); //let the super class paint the rest of the paragraph
 		}
 	}
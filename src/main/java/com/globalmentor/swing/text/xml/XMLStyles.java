@@ -18,6 +18,8 @@
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.Element;
 import javax.swing.text.MutableAttributeSet;
@@ -30,6 +32,7 @@
 import com.globalmentor.net.ContentType;
 import com.globalmentor.rdf.RDFResource;
 import com.globalmentor.swing.text.Styles;
+import com.globalmentor.w3c.spec.XLink;
 import com.globalmentor.w3c.spec.XML;
 
 /**
@@ -41,6 +44,10 @@
  * <p>
  * XML-specific attributes besides the XML attributes themselves are stored keyed to names beginning with '$'.
  * </p>
+ * <p>
+ * The Swing names of XML attributes are interned and canonical for each namespace URI and local name, so that looking up an XML attribute does not create a
+ * new name and attribute keys can be compared by identity.
+ * </p>
  * @author Garret Wilson
  * @see com.globalmentor.swing.text.xml.XMLAttribute
  */
@@ -112,6 +119,27 @@ public class XMLStyles {
 	/** The delimiter used for forming combined namespaceURI+localName names for XML attributes. */
 	protected static final char ATTRIBUTE_NAMESPACE_DELIMITER = '$';
 
+	/**
+	 * The maximum number of canonical Swing XML attribute names kept for a single namespace, or the maximum number of namespaces, after which names are created
+	 * but not cached.
+	 */
+	private static final int MAX_SWING_XML_ATTRIBUTE_NAME_COUNT = 1024;
+
+	/** The canonical Swing names of XML attributes in no namespace, keyed to local names. */
+	private static final ConcurrentMap<String, String> noNamespaceSwingXMLAttributeNameMap = new ConcurrentHashMap<String, String>();
+
+	/** The maps of canonical Swing names of XML attributes keyed to local names, keyed to namespace URIs. */
+	private static final ConcurrentMap<String, ConcurrentMap<String, String>> namespaceSwingXMLAttributeNameMaps = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+	static { //pre-resolve the names of the attributes most often looked up
+		for(final String attributeLocalName : new String[] {"id", "class", "style", "name", "href", "src", "alt", "title", "lang", "type", "data", "width", "height",
+				"classid", "codetype", "value"}) {
+			getSwingXMLAttributeName(null, attributeLocalName);
+		}
+		getSwingXMLAttributeName(XLink.XLINK_NAMESPACE_URI.toString(), XLink.ATTRIBUTE_TYPE);
+		getSwingXMLAttributeName(XLink.XLINK_NAMESPACE_URI.toString(), XLink.ATTRIBUTE_HREF);
+	}
+
 	/**
 	 * Searches up the element hierarchy for an element with the given namespace URI and local name. The given element itself is not checked.
 	 * @param element The element the ancestors of which should be checked.
@@ -193,12 +221,49 @@ public static Object getDefinedAttribute(AttributeSet attributeSet, final String
 	 * plus a delimiter if a namespace is present.
 	 * @param attributeNamespaceURI The namespace URI of the XML attribute.
 	 * @param attributeLocalName The local name of the XML attribute.
-	 * @return A string suitable for a Swing attribute name to represent an XML attribute.
+	 * @return The canonical interned string suitable for a Swing attribute name to represent an XML attribute; the same instance is returned for the same
+	 *         namespace URI and local name.
 	 * @see #ATTRIBUTE_NAMESPACE_DELIMITER
 	 */
 	protected static String getSwingXMLAttributeName(final String attributeNamespaceURI, final String attributeLocalName) {
+		ConcurrentMap<String, String> swingXMLAttributeNameMap; //get the canonical names for the namespace
+		if(attributeNamespaceURI != null) {
+			swingXMLAttributeNameMap = namespaceSwingXMLAttributeNameMaps.get(attributeNamespaceURI);
+			if(swingXMLAttributeNameMap == null) { //if this is the first attribute in this namespace
+				if(namespaceSwingXMLAttributeNameMaps.size() >= MAX_SWING_XML_ATTRIBUTE_NAME_COUNT) { //if there are too many namespaces to keep track of, don't cache the name
+					return createSwingXMLAttributeName(attributeNamespaceURI, attributeLocalName);
+				}
+				swingXMLAttributeNameMap = new ConcurrentHashMap<String, String>();
+				final ConcurrentMap<String, String> existingSwingXMLAttributeNameMap = namespaceSwingXMLAttributeNameMaps.putIfAbsent(attributeNamespaceURI,
+						swingXMLAttributeNameMap);
+				if(existingSwingXMLAttributeNameMap != null) { //if another thread added a map in the meantime, use that one
+					swingXMLAttributeNameMap = existingSwingXMLAttributeNameMap;
+				}
+			}
+		} else { //if there is no namespace
+			swingXMLAttributeNameMap = noNamespaceSwingXMLAttributeNameMap;
+		}
+		final String swingXMLAttributeName = swingXMLAttributeNameMap.get(attributeLocalName); //see if we already have a canonical name
+		if(swingXMLAttributeName != null) {
+			return swingXMLAttributeName;
+		}
+		final String newSwingXMLAttributeName = createSwingXMLAttributeName(attributeNamespaceURI, attributeLocalName);
+		if(swingXMLAttributeNameMap.size() >= MAX_SWING_XML_ATTRIBUTE_NAME_COUNT) { //if there are too many names to keep track of, don't cache the name
+			return newSwingXMLAttributeName;
+		}
+		final String existingSwingXMLAttributeName = swingXMLAttributeNameMap.putIfAbsent(attributeLocalName, newSwingXMLAttributeName);
+		return existingSwingXMLAttributeName != null ? existingSwingXMLAttributeName : newSwingXMLAttributeName; //return whichever name made it into the map
+	}
+
+	/**
+	 * Creates an interned Swing name for an XML attribute namespace and local name, without consulting the canonical names already created.
+	 * @param attributeNamespaceURI The namespace URI of the XML attribute.
+	 * @param attributeLocalName The local name of the XML attribute.
+	 * @return An interned string suitable for a Swing attribute name to represent an XML attribute.
+	 */
+	private static String createSwingXMLAttributeName(final String attributeNamespaceURI, final String attributeLocalName) {
 		//if there is a namespace URI, append it to the local name separated by the delimiter
-		return attributeNamespaceURI != null ? attributeNamespaceURI + ATTRIBUTE_NAMESPACE_DELIMITER + attributeLocalName : attributeLocalName;
+		return (attributeNamespaceURI != null ? attributeNamespaceURI + ATTRIBUTE_NAMESPACE_DELIMITER + attributeLocalName : attributeLocalName).intern();
 	}
 
 	/**
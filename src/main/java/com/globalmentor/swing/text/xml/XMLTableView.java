@@ -23,6 +23,7 @@
 import java.util.*;
 import com.globalmentor.log.Log;
 import com.globalmentor.swing.text.DefaultViewFactory;
+import com.globalmentor.swing.text.xml.css.XMLCSSPaintStyle;
 import com.globalmentor.swing.text.xml.css.XMLCSSStyles;
 import com.globalmentor.swing.text.xml.css.XMLCSSViewPainter;
 
@@ -90,8 +91,23 @@ public void setParent(View parent) {
 	/**
 	 * Update any cached values that come from attributes.
 	 */
+	/** The resolved paint style, or <code>null</code> if the paint style has not been resolved since the attributes were last examined. */
+	private XMLCSSPaintStyle paintStyle = null;
+
+	/**
+	 * Retrieves the paint style of the view, resolving it from the attributes if needed.
+	 * @return The current paint style of the view.
+	 */
+	protected XMLCSSPaintStyle getPaintStyle() {
+		if(paintStyle == null || !paintStyle.isCurrent(this)) { //if the paint style hasn't been resolved or is stale
+			paintStyle = new XMLCSSPaintStyle(this, getAttributes());
+		}
+		return paintStyle;
+	}
+
 	/** Updates our cached CSS property values from the attributes. */
 	protected void setPropertiesFromAttributes() {
+		paintStyle = null; //the paint style will be resolved again when needed
 		//TODO fix
 	}
 
@@ -236,7 +252,7 @@ public void paint(Graphics g, Shape allocation) {
 	 */
 	public void paint(final Graphics graphics, final Shape allocation) {
 		//TODO delLog.trace("Inside XMLBlockView.paint()");
-		XMLCSSViewPainter.paint(graphics, allocation, this, getAttributes()); //paint our CSS-specific parts (newswing)
+		XMLCSSViewPainter.paint(graphics, allocation, this, getPaintStyle()); //paint our CSS-specific parts (newswing)
 		super.paint(graphics, allocation); //do the default painting
 	}
 
@@ -291,6 +307,7 @@ public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
 	 */
 	//TODO comment
 	public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+		setPropertiesFromAttributes(); //update our cached CSS property values
 		super.changedUpdate(e, a, createViewFactory(f));
 	}
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml.css;
+
+import java.awt.Color;
+import javax.swing.text.AttributeSet;
+
+/**
+ * The values of the common CSS properties of an attribute set, computed once from its CSS style declaration and those of its resolving parents. The values of
+ * computed styles are immutable, and are retrieved and cached using {@link XMLCSSStyles#getComputedStyle(AttributeSet)}. A cached computed style remembers the
+ * computed style of its resolving parent from which it was computed, so that it can be recognized as stale once the style of any ancestor has been computed
+ * again.
+ * <p>
+ * Lengths that depend on a font, such as margins specified in <code>ems</code>, are not included.
+ * </p>
+ * @author Garret Wilson
+ * @see XMLCSSStyles#invalidateComputedStyle(AttributeSet)
+ */
+public class XMLCSSComputedStyle {
+
+	/** The computed style of the resolving parent from which this style was computed, or <code>null</code> if the resolving parent's style is not cached. */
+	private final XMLCSSComputedStyle parentComputedStyle;
+
+	/** @return The computed style of the resolving parent from which this style was computed, or <code>null</code> if the resolving parent's style is not cached. */
+	XMLCSSComputedStyle getParentComputedStyle() {
+		return parentComputedStyle;
+	}
+
+	/** The invalidation stamp of the document's computed styles when this computed style was last known to be current. */
+	private volatile long stamp;
+
+	/** @return The invalidation stamp of the document's computed styles when this computed style was last known to be current. */
+	long getStamp() {
+		return stamp;
+	}
+
+	/**
+	 * Records that this computed style is current as of the given invalidation stamp of the document's computed styles.
+	 * @param stamp The current invalidation stamp.
+	 */
+	void setStamp(final long stamp) {
+		this.stamp = stamp;
+	}
+
+	/** The CSS <code>display</code> setting, or <code>null</code> if none is specified. */
+	private final String display;
+
+	/** @return The CSS <code>display</code> setting, or <code>null</code> if none is specified. */
+	public String getDisplay() {
+		return display;
+	}
+
+	/** The names of the font families. */
+	private final String[] fontFamilyNames;
+
+	/** @return The names of the font families, each either a font family name or a generic family such as "serif". */
+	public String[] getFontFamilyNames() {
+		return fontFamilyNames.clone();
+	}
+
+	/** The font size in points. */
+	private final float fontSize;
+
+	/** @return The font size in points. */
+	public float getFontSize() {
+		return fontSize;
+	}
+
+	/** Whether the font is bold. */
+	private final boolean bold;
+
+	/** @return Whether the font is bold. */
+	public boolean isBold() {
+		return bold;
+	}
+
+	/** Whether the font is italic. */
+	private final boolean italic;
+
+	/** @return Whether the font is italic. */
+	public boolean isItalic() {
+		return italic;
+	}
+
+	/** Whether the text is underlined. */
+	private final boolean underline;
+
+	/** @return Whether the text is underlined. */
+	public boolean isUnderline() {
+		return underline;
+	}
+
+	/** The foreground color. */
+	private final Color foreground;
+
+	/** @return The foreground color. */
+	public Color getForeground() {
+		return foreground;
+	}
+
+	/** The background color, or <code>null</code> if the background is transparent. */
+	private final Color backgroundColor;
+
+	/** @return The background color, or <code>null</code> if the background is transparent. */
+	public Color getBackgroundColor() {
+		return backgroundColor;
+	}
+
+	/** The effective background color, inherited if no local background is set. */
+	private final Color effectiveBackgroundColor;
+
+	/** @return The effective background color, inherited if no local background is set. */
+	public Color getEffectiveBackgroundColor() {
+		return effectiveBackgroundColor;
+	}
+
+	/** The line height as a number. */
+	private final float lineHeight;
+
+	/** @return The line height as a number. */
+	public float getLineHeight() {
+		return lineHeight;
+	}
+
+	/** The inherited list style type, or <code>null</code> if none is specified. */
+	private final String listStyleType;
+
+	/** @return The inherited list style type, or <code>null</code> if none is specified. */
+	public String getListStyleType() {
+		return listStyleType;
+	}
+
+	/** The bottom margin. */
+	private final float marginBottom;
+
+	/** @return The bottom margin. */
+	public float getMarginBottom() {
+		return marginBottom;
+	}
+
+	/** The top margin. */
+	private final float marginTop;
+
+	/** @return The top margin. */
+	public float getMarginTop() {
+		return marginTop;
+	}
+
+	/** The CSS <code>page-break-after</code> setting, or <code>null</code> if none is specified. */
+	private final String pageBreakAfter;
+
+	/** @return The CSS <code>page-break-after</code> setting, or <code>null</code> if none is specified. */
+	public String getPageBreakAfter() {
+		return pageBreakAfter;
+	}
+
+	/** The CSS <code>page-break-before</code> setting, or <code>null</code> if none is specified. */
+	private final String pageBreakBefore;
+
+	/** @return The CSS <code>page-break-before</code> setting, or <code>null</code> if none is specified. */
+	public String getPageBreakBefore() {
+		return pageBreakBefore;
+	}
+
+	/** The CSS <code>vertical-align</code> setting. */
+	private final String verticalAlign;
+
+	/** @return The CSS <code>vertical-align</code> setting. */
+	public String getVerticalAlign() {
+		return verticalAlign;
+	}
+
+	/**
+	 * Constructor that computes the style of an attribute set.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @param parentComputedStyle The current computed style of the resolving parent, or <code>null</code> if the resolving parent's style is not cached.
+	 * @param stamp The current invalidation stamp of the document's computed styles.
+	 */
+	XMLCSSComputedStyle(final AttributeSet attributeSet, final XMLCSSComputedStyle parentComputedStyle, final long stamp) {
+		this.parentComputedStyle = parentComputedStyle;
+		this.stamp = stamp;
+		display = XMLCSSStyles.computeDisplay(attributeSet);
+		fontFamilyNames = XMLCSSStyles.computeFontFamilyNames(attributeSet);
+		fontSize = XMLCSSStyles.computeFontSize(attributeSet);
+		bold = XMLCSSStyles.computeBold(attributeSet);
+		italic = XMLCSSStyles.computeItalic(attributeSet);
+		underline = XMLCSSStyles.computeUnderline(attributeSet);
+		foreground = XMLCSSStyles.computeForeground(attributeSet);
+		backgroundColor = XMLCSSStyles.computeBackgroundColor(attributeSet);
+		effectiveBackgroundColor = XMLCSSStyles.computeEffectiveBackgroundColor(attributeSet);
+		lineHeight = XMLCSSStyles.computeLineHeight(attributeSet);
+		listStyleType = XMLCSSStyles.computeListStyleType(attributeSet);
+		marginBottom = XMLCSSStyles.computeMarginBottom(attributeSet);
+		marginTop = XMLCSSStyles.computeMarginTop(attributeSet);
+		pageBreakAfter = XMLCSSStyles.computePageBreakAfter(attributeSet);
+		pageBreakBefore = XMLCSSStyles.computePageBreakBefore(attributeSet);
+		verticalAlign = XMLCSSStyles.computeVerticalAlign(attributeSet);
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml.css;
+
+import static com.globalmentor.w3c.spec.CSS.*;
+
+import java.awt.*;
+import javax.swing.text.*;
+
+import com.globalmentor.swing.text.Documents;
+import com.globalmentor.w3c.spec.CSS;
+
+/**
+ * The properties used by {@link XMLCSSViewPainter} to paint a view, resolved once from the view's attributes and its surroundings so that painting does not
+ * need to look up any attributes. A view should keep its paint style until its attributes change, and should create a new paint style if the paint style is
+ * no longer current for the view.
+ * @author Garret Wilson
+ * @see XMLCSSViewPainter#paint(Graphics, Shape, View, XMLCSSPaintStyle)
+ */
+public class XMLCSSPaintStyle {
+
+	/** The generation of paint styles to which this paint style belongs. */
+	private final long generation;
+
+	/** The attribute set from which the paint style was resolved. */
+	private final AttributeSet attributeSet;
+
+	/** The computed style from which the paint style was resolved. */
+	private final XMLCSSComputedStyle computedStyle;
+
+	/** The parent view at the time the paint style was resolved, or <code>null</code> if the view had no parent. */
+	private final View parentView;
+
+	/** The parent element at the time the paint style was resolved, or <code>null</code> if the element had no parent. */
+	private final Element parentElement;
+
+	/** The number of elements in the parent element at the time the paint style was resolved. */
+	private final int siblingCount;
+
+	/** Whether text should be antialiased. */
+	private final boolean antialias;
+
+	/** @return Whether text should be antialiased. */
+	public boolean isAntialias() {
+		return antialias;
+	}
+
+	/** The foreground color. */
+	private final Color foreground;
+
+	/** @return The foreground color. */
+	public Color getForeground() {
+		return foreground;
+	}
+
+	/** The background color, or <code>null</code> if the background is transparent. */
+	private final Color backgroundColor;
+
+	/** @return The background color, or <code>null</code> if the background is transparent. */
+	public Color getBackgroundColor() {
+		return backgroundColor;
+	}
+
+	/** Whether the view is a list item. */
+	private final boolean listItem;
+
+	/** @return Whether the view is a list item. */
+	public boolean isListItem() {
+		return listItem;
+	}
+
+	/** The font of the list item marker, or <code>null</code> if no marker should be painted. */
+	private final Font markerFont;
+
+	/** @return The font of the list item marker, or <code>null</code> if no marker should be painted. */
+	public Font getMarkerFont() {
+		return markerFont;
+	}
+
+	/** The left margin of the parent view, by which the list item marker is offset to the left. */
+	private final float parentLeftMargin;
+
+	/** @return The left margin of the parent view, by which the list item marker is offset to the left. */
+	public float getParentLeftMargin() {
+		return parentLeftMargin;
+	}
+
+	/** The resolved list style type, or <code>null</code> if no marker should be painted. */
+	private final String listStyleType;
+
+	/** @return The resolved list style type, or <code>null</code> if no marker should be painted. */
+	public String getListStyleType() {
+		return listStyleType;
+	}
+
+	/** The text of the list item marker, or <code>null</code> if the marker is not text. */
+	private final String markerString;
+
+	/** @return The text of the list item marker, or <code>null</code> if the marker is not text. */
+	public String getMarkerString() {
+		return markerString;
+	}
+
+	/**
+	 * Constructor that resolves the paint style of a view.
+	 * @param view The view to be painted.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 */
+	public XMLCSSPaintStyle(final View view, final AttributeSet attributeSet) {
+		generation = XMLCSSViewPainter.getPaintStyleGeneration();
+		parentView = view.getParent();
+		final Element element = view.getElement();
+		parentElement = element != null ? element.getParentElement() : null;
+		siblingCount = parentElement != null ? parentElement.getElementCount() : 0;
+		final Document document = view.getDocument();
+		antialias = Documents.isAntialias(document);
+		this.attributeSet = attributeSet;
+		computedStyle = XMLCSSStyles.getComputedStyle(attributeSet);
+		foreground = computedStyle.getForeground();
+		backgroundColor = computedStyle.getBackgroundColor();
+		listItem = CSS_DISPLAY_LIST_ITEM.equals(computedStyle.getDisplay());
+		Font font = null;
+		float leftMargin = 0;
+		String resolvedListStyleType = null;
+		String marker = null;
+		if(listItem && parentView != null && document instanceof StyledDocument) { //list item markers are only painted for list items with parents in styled documents
+			font = ((StyledDocument)document).getFont(attributeSet); //let the document get the font from the attributes
+			leftMargin = XMLCSSStyles.getMarginLeft(parentView.getAttributes(), font); //get the parent's left margin TODO i18n
+			resolvedListStyleType = XMLCSSViewPainter.resolveListStyleType(view, computedStyle.getListStyleType());
+			if(CSS_LIST_STYLE_TYPE_NONE.equals(resolvedListStyleType)) { //if no marker should be shown
+				font = null;
+				resolvedListStyleType = null;
+			} else if(!CSS_LIST_STYLE_TYPE_DISC.equals(resolvedListStyleType)) { //if the marker isn't a shape, it is text
+				marker = CSS.getMarkerString(resolvedListStyleType, XMLCSSViewPainter.getListItemIndex(element)); //get a string representing the marker for us to render
+			}
+		}
+		markerFont = font;
+		parentLeftMargin = leftMargin;
+		listStyleType = resolvedListStyleType;
+		markerString = marker;
+	}
+
+	/**
+	 * Determines whether this paint style can still be used to paint the given view. A paint style is no longer current if paint styles have been invalidated, if
+	 * the computed style from which it was resolved is no longer current, if the view has a different parent, or if the number of elements surrounding the
+	 * view's element has changed, which could change a list item marker.
+	 * @param view The view for which the paint style was resolved.
+	 * @return <code>true</code> if the paint style is current for the view.
+	 * @see XMLCSSViewPainter#invalidatePaintStyles()
+	 */
+	public boolean isCurrent(final View view) {
+		if(generation != XMLCSSViewPainter.getPaintStyleGeneration() || view.getParent() != parentView || !XMLCSSStyles.isCurrent(attributeSet, computedStyle)) {
+			return false;
+		}
+		return parentElement == null || parentElement.getElementCount() == siblingCount;
+	}
+
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright © 1996-2009 GlobalMentor, Inc. <http://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.swing.text.xml.css;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.w3c.dom.css.*;
+
+import static java.util.Objects.*;
+
+/**
+ * An index of the style rules of a CSS stylesheet, bucketed by the most significant part of the rightmost simple selector of each selector: its ID, its first
+ * class, its element local name, or none of these (the universal bucket). An element need only be tested against the rules in the buckets for its own ID,
+ * classes, and local name, along with the universal rules, rather than against every rule in the stylesheet.
+ * <p>
+ * Only stylesheets consisting entirely of style rules with type, universal, ID, and class selectors joined by descendant and child combinators can be indexed;
+ * {@link #create(CSSStyleSheet)} returns <code>null</code> for any other stylesheet.
+ * </p>
+ * <p>
+ * The time spent testing the candidate rules of each bucket, along with the number of candidates tested and matched, is recorded for profiling. This class is
+ * thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class XMLCSSRuleIndex {
+
+	/** The buckets into which rules are indexed. */
+	public enum Bucket {
+		/** Rules the rightmost simple selector of which specifies an ID. */
+		ID,
+		/** Rules the rightmost simple selector of which specifies a class but no ID. */
+		CLASS,
+		/** Rules the rightmost simple selector of which specifies only an element local name. */
+		LOCAL_NAME,
+		/** Rules the rightmost simple selector of which specifies no ID, class, or element local name. */
+		UNIVERSAL
+	}
+
+	/** The name of the attribute used for ID selectors. */
+	public static final String ID_ATTRIBUTE_NAME = "id";
+
+	/** The name of the attribute used for class selectors. */
+	public static final String CLASS_ATTRIBUTE_NAME = "class";
+
+	/** The selectors with an ID, keyed to the ID. */
+	private final Map<String, List<IndexedSelector>> idSelectorMap = new HashMap<String, List<IndexedSelector>>();
+
+	/** The selectors with a class but no ID, keyed to the first class. */
+	private final Map<String, List<IndexedSelector>> classSelectorMap = new HashMap<String, List<IndexedSelector>>();
+
+	/** The selectors with only an element local name, keyed to the local name. */
+	private final Map<String, List<IndexedSelector>> localNameSelectorMap = new HashMap<String, List<IndexedSelector>>();
+
+	/** The selectors with no ID, class, or element local name. */
+	private final List<IndexedSelector> universalSelectors = new ArrayList<IndexedSelector>();
+
+	/** The number of rules in the stylesheet. */
+	private final int ruleCount;
+
+	/** @return The number of rules in the stylesheet. */
+	public int getRuleCount() {
+		return ruleCount;
+	}
+
+	/** The nanoseconds spent testing candidate rules, indexed by bucket ordinal. */
+	private final AtomicLongArray bucketNanos = new AtomicLongArray(Bucket.values().length);
+
+	/** The number of candidate rules tested, indexed by bucket ordinal. */
+	private final AtomicLongArray bucketTestCounts = new AtomicLongArray(Bucket.values().length);
+
+	/** The number of candidate rules matched, indexed by bucket ordinal. */
+	private final AtomicLongArray bucketMatchCounts = new AtomicLongArray(Bucket.values().length);
+
+	/**
+	 * @param bucket The bucket for which statistics should be returned.
+	 * @return The total number of nanoseconds spent testing the candidate rules of the given bucket.
+	 */
+	public long getBucketNanos(final Bucket bucket) {
+		return bucketNanos.get(bucket.ordinal());
+	}
+
+	/**
+	 * @param bucket The bucket for which statistics should be returned.
+	 * @return The number of candidate rules of the given bucket that have been tested against elements.
+	 */
+	public long getBucketTestCount(final Bucket bucket) {
+		return bucketTestCounts.get(bucket.ordinal());
+	}
+
+	/**
+	 * @param bucket The bucket for which statistics should be returned.
+	 * @return The number of candidate rules of the given bucket that have matched elements.
+	 */
+	public long getBucketMatchCount(final Bucket bucket) {
+		return bucketMatchCounts.get(bucket.ordinal());
+	}
+
+	/**
+	 * Creates an index of the rules of the given stylesheet.
+	 * @param cssStyleSheet The stylesheet to index.
+	 * @return An index of the stylesheet rules, or <code>null</code> if the stylesheet contains rules or selectors that cannot be indexed.
+	 */
+	public static XMLCSSRuleIndex create(final CSSStyleSheet cssStyleSheet) {
+		final XMLCSSRuleIndex ruleIndex = new XMLCSSRuleIndex(cssStyleSheet.getCssRules().getLength());
+		final CSSRuleList cssRuleList = cssStyleSheet.getCssRules();
+		for(int ruleIndexValue = 0; ruleIndexValue < cssRuleList.getLength(); ++ruleIndexValue) {
+			final CSSRule cssRule = cssRuleList.item(ruleIndexValue);
+			if(cssRule.getType() != CSSRule.STYLE_RULE) { //we only index style rules; anything else, such as an import or media rule, needs the full stylesheet applier
+				return null;
+			}
+			final CSSStyleRule cssStyleRule = (CSSStyleRule)cssRule;
+			for(final String selectorText : cssStyleRule.getSelectorText().split(",")) { //index each selector of a selector group separately
+				final Selector selector = Selector.parse(selectorText);
+				if(selector == null) { //if we don't understand this selector, we can't index the stylesheet
+					return null;
+				}
+				ruleIndex.add(new IndexedSelector(ruleIndexValue, cssStyleRule, selector));
+			}
+		}
+		return ruleIndex;
+	}
+
+	/**
+	 * Rule count constructor.
+	 * @param ruleCount The number of rules in the stylesheet.
+	 */
+	protected XMLCSSRuleIndex(final int ruleCount) {
+		this.ruleCount = ruleCount;
+	}
+
+	/**
+	 * Adds a selector to the appropriate bucket.
+	 * @param indexedSelector The selector to add.
+	 */
+	private void add(final IndexedSelector indexedSelector) {
+		final SimpleSelector subject = indexedSelector.getSelector().getSubject();
+		switch(indexedSelector.getBucket()) {
+			case ID:
+				addSelector(idSelectorMap, subject.getID(), indexedSelector);
+				break;
+			case CLASS:
+				addSelector(classSelectorMap, subject.getClasses()[0], indexedSelector);
+				break;
+			case LOCAL_NAME:
+				addSelector(localNameSelectorMap, subject.getLocalName(), indexedSelector);
+				break;
+			default:
+				universalSelectors.add(indexedSelector);
+				break;
+		}
+	}
+
+	/**
+	 * Adds a selector to the list of selectors for a key in a bucket map.
+	 * @param selectorMap The bucket map.
+	 * @param key The key of the list to which the selector should be added.
+	 * @param indexedSelector The selector to add.
+	 */
+	private static void addSelector(final Map<String, List<IndexedSelector>> selectorMap, final String key, final IndexedSelector indexedSelector) {
+		List<IndexedSelector> indexedSelectors = selectorMap.get(key);
+		if(indexedSelectors == null) {
+			indexedSelectors = new ArrayList<IndexedSelector>(2);
+			selectorMap.put(key, indexedSelectors);
+		}
+		indexedSelectors.add(indexedSelector);
+	}
+
+	/**
+	 * Determines the rules that apply to the given element. Only the rules in the buckets for the element's ID, classes, and local name, along with the universal
+	 * rules, are tested.
+	 * @param <E> The type of element.
+	 * @param element The element for which matching rules should be returned.
+	 * @param elementAccessor The object providing access to element information.
+	 * @return The matching rules, in the order they appear in the stylesheet, which is the order in which they would be applied without the index.
+	 */
+	public <E> List<CSSStyleRule> getMatchingRules(final E element, final ElementAccessor<E> elementAccessor) {
+		final List<IndexedSelector> matchingSelectors = new ArrayList<IndexedSelector>();
+		final String id = elementAccessor.getElementAttributeValue(element, ID_ATTRIBUTE_NAME);
+		if(id != null && !idSelectorMap.isEmpty()) {
+			matchSelectors(idSelectorMap.get(id), Bucket.ID, element, elementAccessor, matchingSelectors);
+		}
+		final String classValue = elementAccessor.getElementAttributeValue(element, CLASS_ATTRIBUTE_NAME);
+		if(classValue != null && !classSelectorMap.isEmpty()) {
+			for(final String className : classValue.trim().split("\\s+")) { //check the rules for each of the element's classes
+				matchSelectors(classSelectorMap.get(className), Bucket.CLASS, element, elementAccessor, matchingSelectors);
+			}
+		}
+		final String localName = elementAccessor.getElementLocalName(element);
+		if(localName != null && !localNameSelectorMap.isEmpty()) {
+			matchSelectors(localNameSelectorMap.get(localName), Bucket.LOCAL_NAME, element, elementAccessor, matchingSelectors);
+		}
+		matchSelectors(universalSelectors, Bucket.UNIVERSAL, element, elementAccessor, matchingSelectors);
+		if(matchingSelectors.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Collections.sort(matchingSelectors); //put the rules back into stylesheet order
+		final List<CSSStyleRule> matchingRules = new ArrayList<CSSStyleRule>(matchingSelectors.size());
+		int lastRuleIndex = -1;
+		for(final IndexedSelector matchingSelector : matchingSelectors) {
+			if(matchingSelector.getRuleIndex() != lastRuleIndex) { //several selectors of the same rule may match, but the rule only applies once
+				matchingRules.add(matchingSelector.getRule());
+				lastRuleIndex = matchingSelector.getRuleIndex();
+			}
+		}
+		return matchingRules;
+	}
+
+	/**
+	 * Tests candidate selectors against an element, recording the time spent.
+	 * @param <E> The type of element.
+	 * @param candidateSelectors The selectors to test, or <code>null</code> if there are no candidates.
+	 * @param bucket The bucket from which the candidates come.
+	 * @param element The element to test.
+	 * @param elementAccessor The object providing access to element information.
+	 * @param matchingSelectors The list to which matching selectors will be added.
+	 */
+	private <E> void matchSelectors(final List<IndexedSelector> candidateSelectors, final Bucket bucket, final E element,
+			final ElementAccessor<E> elementAccessor, final List<IndexedSelector> matchingSelectors) {
+		if(candidateSelectors == null || candidateSelectors.isEmpty()) {
+			return;
+		}
+		final long startNanos = System.nanoTime();
+		int matchCount = 0;
+		for(final IndexedSelector candidateSelector : candidateSelectors) {
+			if(candidateSelector.getSelector().matches(element, elementAccessor)) {
+				matchingSelectors.add(candidateSelector);
+				++matchCount;
+			}
+		}
+		final int bucketOrdinal = bucket.ordinal();
+		bucketNanos.addAndGet(bucketOrdinal, System.nanoTime() - startNanos);
+		bucketTestCounts.addAndGet(bucketOrdinal, candidateSelectors.size());
+		bucketMatchCounts.addAndGet(bucketOrdinal, matchCount);
+	}
+
+	/** {@inheritDoc} This implementation returns the per-bucket statistics. */
+	public String toString() {
+		final StringBuilder stringBuilder = new StringBuilder(getClass().getSimpleName()).append(" [").append(ruleCount).append(" rules");
+		for(final Bucket bucket : Bucket.values()) {
+			stringBuilder.append(", ").append(bucket).append(": ").append(getBucketTestCount(bucket)).append(" tested/").append(getBucketMatchCount(bucket))
+					.append(" matched in ").append(getBucketNanos(bucket) / 1000000).append("ms");
+		}
+		return stringBuilder.append(']').toString();
+	}
+
+	/**
+	 * Provides the information about elements needed for matching selectors.
+	 * @param <E> The type of element.
+	 * @author Garret Wilson
+	 */
+	public interface ElementAccessor<E> {
+
+		/**
+		 * Retrieves the local name of the given element.
+		 * @param element The element for which the local name should be returned.
+		 * @return The local name of the given element, or <code>null</code> if the element has no name.
+		 */
+		public String getElementLocalName(final E element);
+
+		/**
+		 * Retrieves the value of one of the element's attributes in no namespace.
+		 * @param element The element owner of the attributes.
+		 * @param attributeLocalName The local name of the attribute to find.
+		 * @return The value of the specified attribute, or <code>null</code> if there is no such attribute.
+		 */
+		public String getElementAttributeValue(final E element, final String attributeLocalName);
+
+		/**
+		 * Retrieves the parent element for the given element.
+		 * @param element The element for which a parent should be found.
+		 * @return The element's parent, or <code>null</code> if no parent could be found.
+		 */
+		public E getParentElement(final E element);
+	}
+
+	/**
+	 * A selector along with the rule it came from and the position of that rule in the stylesheet.
+	 * @author Garret Wilson
+	 */
+	protected static class IndexedSelector implements Comparable<IndexedSelector> {
+
+		/** The position of the rule in the stylesheet. */
+		private final int ruleIndex;
+
+		/** @return The position of the rule in the stylesheet. */
+		public int getRuleIndex() {
+			return ruleIndex;
+		}
+
+		/** The rule to which the selector belongs. */
+		private final CSSStyleRule rule;
+
+		/** @return The rule to which the selector belongs. */
+		public CSSStyleRule getRule() {
+			return rule;
+		}
+
+		/** The parsed selector. */
+		private final Selector selector;
+
+		/** @return The parsed selector. */
+		public Selector getSelector() {
+			return selector;
+		}
+
+		/** @return The bucket in which this selector belongs. */
+		public Bucket getBucket() {
+			final SimpleSelector subject = selector.getSubject();
+			if(subject.getID() != null) {
+				return Bucket.ID;
+			} else if(subject.getClasses().length > 0) {
+				return Bucket.CLASS;
+			} else if(subject.getLocalName() != null) {
+				return Bucket.LOCAL_NAME;
+			} else {
+				return Bucket.UNIVERSAL;
+			}
+		}
+
+		/**
+		 * Constructor.
+		 * @param ruleIndex The position of the rule in the stylesheet.
+		 * @param rule The rule to which the selector belongs.
+		 * @param selector The parsed selector.
+		 */
+		public IndexedSelector(final int ruleIndex, final CSSStyleRule rule, final Selector selector) {
+			this.ruleIndex = ruleIndex;
+			this.rule = requireNonNull(rule);
+			this.selector = requireNonNull(selector);
+		}
+
+		/** {@inheritDoc} This implementation orders selectors by the position of their rules in the stylesheet. */
+		public int compareTo(final IndexedSelector indexedSelector) {
+			return ruleIndex < indexedSelector.ruleIndex ? -1 : (ruleIndex > indexedSelector.ruleIndex ? 1 : 0);
+		}
+	}
+
+	/**
+	 * A selector consisting of a series of simple selectors joined by descendant or child combinators.
+	 * @author Garret Wilson
+	 */
+	protected static class Selector {
+
+		/** The simple selectors, from the subject of the selector on the right to its leftmost ancestor. */
+		private final SimpleSelector[] simpleSelectors;
+
+		/** @return The simple selector that represents the element to which the selector applies. */
+		public SimpleSelector getSubject() {
+			return simpleSelectors[0];
+		}
+
+		/** Whether each simple selector must be a child, rather than simply a descendant, of the simple selector following it in the array. */
+		private final boolean[] childCombinators;
+
+		/**
+		 * Constructor.
+		 * @param simpleSelectors The simple selectors, from the subject of the selector on the right to its leftmost ancestor.
+		 * @param childCombinators Whether each simple selector must be a child, rather than simply a descendant, of the simple selector following it in the array.
+		 */
+		protected Selector(final SimpleSelector[] simpleSelectors, final boolean[] childCombinators) {
+			this.simpleSelectors = simpleSelectors;
+			this.childCombinators = childCombinators;
+		}
+
+		/**
+		 * Parses a single selector.
+		 * @param selectorText The text of the selector, which must not be a selector group.
+		 * @return The parsed selector, or <code>null</code> if the selector uses syntax other than type, universal, ID, and class selectors joined by descendant and
+		 *         child combinators.
+		 */
+		public static Selector parse(final String selectorText) {
+			final List<SimpleSelector> simpleSelectors = new ArrayList<SimpleSelector>();
+			final List<Boolean> childCombinators = new ArrayList<Boolean>();
+			final String text = selectorText.trim();
+			final int length = text.length();
+			int index = 0;
+			while(index < length) {
+				//parse a simple selector
+				String localName = null;
+				String id = null;
+				final List<String> classes = new ArrayList<String>(1);
+				final int simpleSelectorStart = index;
+				if(text.charAt(index) == '*') {
+					++index;
+				} else {
+					final int nameEnd = getIdentifierEnd(text, index);
+					if(nameEnd > index) {
+						localName = text.substring(index, nameEnd);
+						index = nameEnd;
+					}
+				}
+				while(index < length && (text.charAt(index) == '#' || text.charAt(index) == '.')) {
+					final char delimiter = text.charAt(index++);
+					final int identifierEnd = getIdentifierEnd(text, index);
+					if(identifierEnd == index) { //if there is no identifier after the delimiter
+						return null;
+					}
+					final String identifier = text.substring(index, identifierEnd);
+					index = identifierEnd;
+					if(delimiter == '#') {
+						if(id != null && !id.equals(identifier)) { //an element can only have one ID
+							return null;
+						}
+						id = identifier;
+					} else {
+						classes.add(identifier);
+					}
+				}
+				if(index == simpleSelectorStart) { //if there was no simple selector, there is some syntax we don't understand
+					return null;
+				}
+				simpleSelectors.add(new SimpleSelector(localName, id, classes.toArray(new String[classes.size()])));
+				//parse any combinator
+				boolean isWhitespace = false;
+				while(index < length && Character.isWhitespace(text.charAt(index))) {
+					++index;
+					isWhitespace = true;
+				}
+				if(index == length) {
+					break;
+				}
+				if(text.charAt(index) == '>') {
+					++index;
+					while(index < length && Character.isWhitespace(text.charAt(index))) {
+						++index;
+					}
+					childCombinators.add(Boolean.TRUE);
+				} else if(isWhitespace) {
+					childCombinators.add(Boolean.FALSE);
+				} else { //if anything else follows the simple selector, such as a pseudo-class or an attribute selector
+					return null;
+				}
+				if(index == length) { //if the selector ended in a combinator
+					return null;
+				}
+			}
+			if(simpleSelectors.isEmpty()) {
+				return null;
+			}
+			//reverse the simple selectors so that the subject comes first
+			final int simpleSelectorCount = simpleSelectors.size();
+			final SimpleSelector[] simpleSelectorArray = new SimpleSelector[simpleSelectorCount];
+			final boolean[] childCombinatorArray = new boolean[simpleSelectorCount - 1];
+			for(int i = 0; i < simpleSelectorCount; ++i) {
+				simpleSelectorArray[i] = simpleSelectors.get(simpleSelectorCount - 1 - i);
+			}
+			for(int i = 0; i < simpleSelectorCount - 1; ++i) {
+				childCombinatorArray[i] = childCombinators.get(simpleSelectorCount - 2 - i).booleanValue();
+			}
+			return new Selector(simpleSelectorArray, childCombinatorArray);
+		}
+
+		/**
+		 * Determines the end of an identifier.
+		 * @param text The text containing the identifier.
+		 * @param index The index at which the identifier begins.
+		 * @return The index after the last character of the identifier, which will be the given index if there is no identifier.
+		 */
+		private static int getIdentifierEnd(final String text, int index) {
+			final int length = text.length();
+			while(index < length) {
+				final char c = text.charAt(index);
+				if(!(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c > 0x7F)) {
+					break;
+				}
+				++index;
+			}
+			return index;
+		}
+
+		/**
+		 * Determines whether this selector matches the given element.
+		 * @param <E> The type of element.
+		 * @param element The element to test.
+		 * @param elementAccessor The object providing access to element information.
+		 * @return <code>true</code> if the selector applies to the element.
+		 */
+		public <E> boolean matches(final E element, final ElementAccessor<E> elementAccessor) {
+			return simpleSelectors[0].matches(element, elementAccessor) && matchesAncestors(1, element, elementAccessor);
+		}
+
+		/**
+		 * Determines whether the given simple selector and those to its left match the ancestors of an element.
+		 * @param <E> The type of element.
+		 * @param simpleSelectorIndex The index of the simple selector to match against the ancestors.
+		 * @param element The element the ancestors of which should be matched.
+		 * @param elementAccessor The object providing access to element information.
+		 * @return <code>true</code> if the remaining simple selectors match the element's ancestors.
+		 */
+		private <E> boolean matchesAncestors(final int simpleSelectorIndex, final E element, final ElementAccessor<E> elementAccessor) {
+			if(simpleSelectorIndex == simpleSelectors.length) { //if there are no more simple selectors to match
+				return true;
+			}
+			final SimpleSelector simpleSelector = simpleSelectors[simpleSelectorIndex];
+			final boolean isChildCombinator = childCombinators[simpleSelectorIndex - 1];
+			E ancestor = elementAccessor.getParentElement(element);
+			while(ancestor != null) {
+				if(simpleSelector.matches(ancestor, elementAccessor) && matchesAncestors(simpleSelectorIndex + 1, ancestor, elementAccessor)) {
+					return true;
+				}
+				if(isChildCombinator) { //only the parent can match a child combinator
+					break;
+				}
+				ancestor = elementAccessor.getParentElement(ancestor);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A simple selector with an optional element local name, ID, and classes.
+	 * @author Garret Wilson
+	 */
+	protected static class SimpleSelector {
+
+		/** The element local name, or <code>null</code> if any element matches. */
+		private final String localName;
+
+		/** @return The element local name, or <code>null</code> if any element matches. */
+		public String getLocalName() {
+			return localName;
+		}
+
+		/** The ID, or <code>null</code> if no ID is specified. */
+		private final String id;
+
+		/** @return The ID, or <code>null</code> if no ID is specified. */
+		public String getID() {
+			return id;
+		}
+
+		/** The classes the element must have. */
+		private final String[] classes;
+
+		/** @return The classes the element must have. */
+		public String[] getClasses() {
+			return classes;
+		}
+
+		/**
+		 * Constructor.
+		 * @param localName The element local name, or <code>null</code> if any element matches.
+		 * @param id The ID, or <code>null</code> if no ID is specified.
+		 * @param classes The classes the element must have.
+		 */
+		public SimpleSelector(final String localName, final String id, final String[] classes) {
+			this.localName = localName;
+			this.id = id;
+			this.classes = requireNonNull(classes);
+		}
+
+		/**
+		 * Determines whether this simple selector matches the given element.
+		 * @param <E> The type of element.
+		 * @param element The element to test.
+		 * @param elementAccessor The object providing access to element information.
+		 * @return <code>true</code> if the simple selector applies to the element.
+		 */
+		public <E> boolean matches(final E element, final ElementAccessor<E> elementAccessor) {
+			if(localName != null && !localName.equals(elementAccessor.getElementLocalName(element))) {
+				return false;
+			}
+			if(id != null && !id.equals(elementAccessor.getElementAttributeValue(element, ID_ATTRIBUTE_NAME))) {
+				return false;
+			}
+			if(classes.length > 0) {
+				final String classValue = elementAccessor.getElementAttributeValue(element, CLASS_ATTRIBUTE_NAME);
+				if(classValue == null) {
+					return false;
+				}
+				final List<String> elementClasses = Arrays.asList(classValue.trim().split("\\s+"));
+				for(final String className : classes) {
+					if(!elementClasses.contains(className)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+}
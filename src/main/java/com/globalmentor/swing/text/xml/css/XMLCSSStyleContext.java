@@ -18,16 +18,23 @@
 
 import java.awt.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.*;
 import javax.swing.text.StyleContext;
 import javax.swing.text.AttributeSet;
 
 import com.globalmentor.awt.Fonts;
+import com.globalmentor.log.Log;
 
 /**
  * A pool of styles and their associated resources, created to store and retrieve CSS styles attribute sets. Notably, this class overrides the font caching
- * algorithm in {@link StyleContext} to allow for soft references so that the memory allocated to the fonts may be reclaimed if necessary. This class is not
- * currently thread safe.
+ * algorithm in {@link StyleContext} to allow for soft references so that the memory allocated to the fonts may be reclaimed if necessary. Fonts resolved from
+ * CSS attribute sets are additionally cached by their font-related CSS values and zoom factor. Fonts for displaying individual characters are found using a
+ * cache of font families for each Unicode block, with overrides for characters the family of their block cannot display, which is warmed in the background
+ * when the first style context is created. This class is not currently thread safe, although the resolved font cache and the fallback font caches may be
+ * accessed concurrently.
  * @see com.globalmentor.awt.Fonts
  * @author Garret Wilson
  */
@@ -62,8 +69,103 @@ protected String[] getAvailableFontFamilyNames()
 	/** A synchronized map of references to fonts that have been loaded. */
 	//TODO del	protected transient Map fontReferenceMap=new HashMap();
 
+	/** The maximum number of resolved fonts to cache before the cache is cleared. */
+	private static final int MAX_RESOLVED_FONT_COUNT = 4096;
+
+	/** The cache of fonts resolved from CSS styles, keyed to the font-related computed CSS values and zoom factor. */
+	private transient Map<ResolvedFontKey, Font> resolvedFontMap = new ConcurrentHashMap<ResolvedFontKey, Font>();
+
+	/** The number of times a font for an attribute set was found in the resolved font cache. */
+	private transient AtomicLong resolvedFontHitCount = new AtomicLong(0);
+
+	/** @return The number of times a font for an attribute set was found in the resolved font cache. */
+	public long getResolvedFontHitCount() {
+		return resolvedFontHitCount.get();
+	}
+
+	/** The number of times a font for an attribute set was not found in the resolved font cache and had to be resolved. */
+	private transient AtomicLong resolvedFontMissCount = new AtomicLong(0);
+
+	/** @return The number of times a font for an attribute set was not found in the resolved font cache and had to be resolved. */
+	public long getResolvedFontMissCount() {
+		return resolvedFontMissCount.get();
+	}
+
+	/**
+	 * Discards all fonts resolved from CSS styles. This should be called when the zoom factor or stylesheets change, so that fonts no longer in use may be
+	 * reclaimed.
+	 * @see #getFont(AttributeSet, float)
+	 */
+	public void invalidateResolvedFonts() {
+		resolvedFontMap.clear();
+	}
+
+	/** The font family name used in the fallback font caches to indicate that no font family can display a character. */
+	private static final String NO_FONT_FAMILY = "";
+
+	/** The font family able to display the characters of each Unicode block, keyed to Unicode blocks. */
+	private static final Map<Character.UnicodeBlock, String> blockFontFamilyMap = new ConcurrentHashMap<Character.UnicodeBlock, String>();
+
+	/** The font family able to display each character already looked up, keyed to characters; this overrides the font family of the character's block. */
+	private static final Map<Character, String> characterFontFamilyMap = new ConcurrentHashMap<Character, String>();
+
+	/** A font of each family, used for checking which characters the family can display, keyed to font family names. */
+	private static final Map<String, Font> familyProbeFontMap = new ConcurrentHashMap<String, Font>();
+
+	/** The maximum number of fallback fonts to cache before the cache is cleared. */
+	private static final int MAX_FALLBACK_FONT_COUNT = 1024;
+
+	/** The fonts used for displaying individual characters, keyed to font family, style, and size. */
+	private static final Map<FallbackFontKey, Font> fallbackFontMap = new ConcurrentHashMap<FallbackFontKey, Font>();
+
+	/** Representative characters of the Unicode blocks the font families of which are found in the background. */
+	private static final char[] WARM_UP_CHARACTERS = {'\u00E9', //Latin-1 Supplement
+			'\u0101', //Latin Extended-A
+			'\u03B1', //Greek
+			'\u0430', //Cyrillic
+			'\u05D0', //Hebrew
+			'\u0627', //Arabic
+			'\u0915', //Devanagari
+			'\u0995', //Bengali
+			'\u0B95', //Tamil
+			'\u0E01', //Thai
+			'\u2014', //General Punctuation
+			'\u3001', //CJK Symbols and Punctuation
+			'\u3042', //Hiragana
+			'\u30A2', //Katakana
+			'\u4E00', //CJK Unified Ideographs
+			'\uAC00', //Hangul Syllables
+			'\uFF01' //Halfwidth and Fullwidth Forms
+	};
+
+	/** Whether the fallback font caches have started to be warmed. */
+	private static final AtomicBoolean fallbackFontWarmUpStarted = new AtomicBoolean(false);
+
+	/**
+	 * Starts finding the font families for common Unicode blocks in a background thread, so that text in various scripts can be laid out without searching the
+	 * available fonts. This method only has an effect the first time it is called.
+	 */
+	public static void warmUpFallbackFonts() {
+		if(fallbackFontWarmUpStarted.compareAndSet(false, true)) { //if the cache hasn't yet been warmed
+			final Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for(final char c : WARM_UP_CHARACTERS) {
+						getFallbackFontFamily(c);
+					}
+					Log.debug("Found fallback font families for", blockFontFamilyMap.size(), "Unicode blocks.");
+				}
+			}, "XMLCSSStyleContext-fallback-fonts");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY); //don't compete with loading and layout
+			thread.start();
+		}
+	}
+
 	/** Default constructor which queries available fonts. */
 	public XMLCSSStyleContext() {
+		warmUpFallbackFonts(); //make sure fallback fonts are being found
 		/*TODO del; recomment
 				if(sortedAvailableFontFamilyNameArray==null) {	//if the array of font family names has not been created
 					//get the list of available font family names
@@ -86,15 +188,87 @@ public Font getFont(final String family, final int style, final int size) {
 	}
 
 	/**
-	 * Gets a new font for the specified character by searching all available fonts.
+	 * Gets a font for the specified character. The font family is found using the family of the character's Unicode block, or the family already found for the
+	 * character itself, so that the available fonts are only searched the first time a block or a character the block's family cannot display is encountered.
 	 * @param c The character for which a font should be returned.
 	 * @param style The style of the font (such as <code>Font.PLAIN</code>).
 	 * @param size The point size (&gt;=1).
-	 * @return The new font, or <code>null</code> if a font could not be found that matched this character.
-	 * @see Fonts#getFont(char, int, int)
+	 * @return The font, or <code>null</code> if a font could not be found that matched this character.
+	 * @see #getFallbackFontFamily(char)
 	 */
 	public Font getFont(final char c, final int style, final int size) {
-		return Fonts.getFont(c, style, size); //pass the request to the font utilities
+		final String family = getFallbackFontFamily(c); //find a font family that can display the character
+		if(family == NO_FONT_FAMILY) { //if no font can display the character
+			return null;
+		}
+		final FallbackFontKey fallbackFontKey = new FallbackFontKey(family, style, size);
+		Font font = fallbackFontMap.get(fallbackFontKey);
+		if(font == null) { //if we haven't yet created this font
+			if(fallbackFontMap.size() >= MAX_FALLBACK_FONT_COUNT) { //if too many fonts have accumulated, start over
+				fallbackFontMap.clear();
+			}
+			font = getFont(family, style, size);
+			fallbackFontMap.put(fallbackFontKey, font);
+		}
+		return font;
+	}
+
+	/**
+	 * Determines the font family to use for displaying a character. If a family has already been found for the character, it is returned. Otherwise the family
+	 * of the character's Unicode block is used if it can display the character; if not, the available fonts are searched, and the result is cached for the
+	 * character, and for the block if no family had been found for the block. This method may be called from any thread.
+	 * @param c The character to display.
+	 * @return The name of a font family able to display the character, or the empty string if no available font family can display the character.
+	 */
+	protected static String getFallbackFontFamily(final char c) {
+		final Character character = Character.valueOf(c);
+		String family = characterFontFamilyMap.get(character);
+		if(family == null) { //if we haven't yet looked up this character
+			final Character.UnicodeBlock unicodeBlock = Character.UnicodeBlock.of(c);
+			final String blockFamily = unicodeBlock != null ? blockFontFamilyMap.get(unicodeBlock) : null;
+			if(blockFamily != null && canDisplay(blockFamily, c)) { //if the family of the block can display this character
+				family = blockFamily;
+			} else { //if we'll need to search for a family for this character
+				family = findFontFamily(c);
+				if(unicodeBlock != null && blockFamily == null) { //the first family found for a block becomes the block's family
+					blockFontFamilyMap.put(unicodeBlock, family);
+				}
+			}
+			characterFontFamilyMap.put(character, family);
+		}
+		return family;
+	}
+
+	/**
+	 * Searches the available font families for one that can display the given character.
+	 * @param c The character to display.
+	 * @return The name of the first font family able to display the character, or the empty string if no available font family can display the character.
+	 */
+	private static String findFontFamily(final char c) {
+		for(final String family : SORTED_AVAILABLE_FONT_FAMILY_NAMES) {
+			if(canDisplay(family, c)) {
+				return family;
+			}
+		}
+		return NO_FONT_FAMILY;
+	}
+
+	/**
+	 * Determines whether a font family can display a character.
+	 * @param family The name of the font family, or the empty string if there is no font family.
+	 * @param c The character to display.
+	 * @return <code>true</code> if the font family can display the character.
+	 */
+	private static boolean canDisplay(final String family, final char c) {
+		if(family == NO_FONT_FAMILY) {
+			return false;
+		}
+		Font probeFont = familyProbeFontMap.get(family);
+		if(probeFont == null) { //if we haven't yet created a font for checking this family
+			probeFont = new Font(family, Font.PLAIN, 1);
+			familyProbeFontMap.put(family, probeFont);
+		}
+		return probeFont.canDisplay(c);
 	}
 
 	/**
@@ -112,9 +286,11 @@ public Font getFont(final AttributeSet attributeSet) {
 	/**
 	 * Gets the font from an attribute set using CSS names instead of the default Swing names. This is implemented to try and fetch a cached font for the given
 	 * AttributeSet, and if that fails the font features are resolved and the font is fetched from the low-level font cache. Modified from
-	 * javax.swing.text.StyleContext.getFont().
+	 * javax.swing.text.StyleContext.getFont(). Resolved fonts are cached by their font-related CSS values and zoom factor, so that attribute sets with the same
+	 * font values share a font without repeating the font family search.
 	 * @param attributeSet The attribute set from which to retrieve values.
 	 * @param zoomFactor The relative increase or decrease in font size.
+	 * @see #invalidateResolvedFonts()
 	 * @return The constructed font.
 	 * @see StyleContext#getFont
 	 */
@@ -124,8 +300,33 @@ public Font getFont(final AttributeSet attributeSet, final float zoomFactor) {
 			style |= Font.BOLD; //add bold to our font style
 		if(XMLCSSStyles.isItalic(attributeSet)) //if the font attributes specify italics (use XMLCSSStyleConstants so we'll recognize CSS values in the attribute set)
 			style |= Font.ITALIC; //add italics to our font style
-		String family = null; //show that we haven't found a font family
 		final String[] fontFamilyNameArray = XMLCSSStyles.getFontFamilyNames(attributeSet); //get the array of font family names
+		final float fontSize = XMLCSSStyles.getFontSize(attributeSet); //get the font size from the attributes (use XMLCSSStyleConstants so we'll recognize CSS values in the attribute set)
+		final ResolvedFontKey resolvedFontKey = new ResolvedFontKey(fontFamilyNameArray, style, fontSize, zoomFactor);
+		Font font = resolvedFontMap.get(resolvedFontKey); //see if we've already resolved a font for these values
+		if(font != null) {
+			resolvedFontHitCount.incrementAndGet();
+			return font;
+		}
+		resolvedFontMissCount.incrementAndGet();
+		font = resolveFont(fontFamilyNameArray, style, fontSize, zoomFactor);
+		if(resolvedFontMap.size() >= MAX_RESOLVED_FONT_COUNT) { //if the cache has grown too large, start over rather than keeping track of usage
+			resolvedFontMap.clear();
+		}
+		resolvedFontMap.put(resolvedFontKey, font);
+		return font;
+	}
+
+	/**
+	 * Resolves a font from CSS font values, finding the first available font family.
+	 * @param fontFamilyNameArray The names of the font families, each either a font family name or a generic family such as "serif".
+	 * @param style The style of the font (such as <code>Font.PLAIN</code>).
+	 * @param fontSize The font size in points.
+	 * @param zoomFactor The relative increase or decrease in font size.
+	 * @return The resolved font.
+	 */
+	protected Font resolveFont(final String[] fontFamilyNameArray, final int style, final float fontSize, final float zoomFactor) {
+		String family = null; //show that we haven't found a font family
 		for(int i = 0; i < fontFamilyNameArray.length; ++i) { //look at each of the specified fonts
 			final String fontFamilyName = fontFamilyNameArray[i]; //get this font family name
 			//TODO del Log.trace("Looking for font family name: ", fontFamilyName);
@@ -155,7 +356,7 @@ public Font getFont(final AttributeSet attributeSet, final float zoomFactor) {
 			//TODO del			family="Code2000";   //TODO testing
 			//TODO fix			family="Baraha Devanagari Unicode";   //TODO testing
 			family = "Serif"; //use the default TODO use a constant; maybe use a different default
-		float size = XMLCSSStyles.getFontSize(attributeSet); //get the font size from the attributes (use XMLCSSStyleConstants so we'll recognize CSS values in the attribute set)		
+		float size = fontSize; //start with the font size from the attributes
 		/*TODO put this in the style instead
 			//if the attributes specify either superscript or subscript (use XMLCSSStyleConstants so we'll recognize CSS values in the attribute set)
 			if(StyleConstants.isSuperscript(attributeSet) || StyleConstants.isSubscript(attributeSet))	//TODO change to use CSS attributes
@@ -184,6 +385,106 @@ public Color getBackground(final AttributeSet attributeSet) {
 		return XMLCSSStyles.getBackgroundColor(attributeSet); //let the CSS style constants get the background for us TODO resolve inconsistency between getForeground() and getBackgroundColor()
 	}
 
+	/**
+	 * The font-related computed CSS values and zoom factor from which a font is resolved.
+	 * @author Garret Wilson
+	 */
+	private static class ResolvedFontKey {
+
+		/** The names of the font families. */
+		private final String[] fontFamilyNames;
+
+		/** The style of the font. */
+		private final int style;
+
+		/** The font size in points. */
+		private final float fontSize;
+
+		/** The relative increase or decrease in font size. */
+		private final float zoomFactor;
+
+		/** The precalculated hash code. */
+		private final int hashCode;
+
+		/**
+		 * Constructor.
+		 * @param fontFamilyNames The names of the font families.
+		 * @param style The style of the font.
+		 * @param fontSize The font size in points.
+		 * @param zoomFactor The relative increase or decrease in font size.
+		 */
+		public ResolvedFontKey(final String[] fontFamilyNames, final int style, final float fontSize, final float zoomFactor) {
+			this.fontFamilyNames = fontFamilyNames;
+			this.style = style;
+			this.fontSize = fontSize;
+			this.zoomFactor = zoomFactor;
+			hashCode = ((Arrays.hashCode(fontFamilyNames) * 31 + style) * 31 + Float.floatToIntBits(fontSize)) * 31 + Float.floatToIntBits(zoomFactor);
+		}
+
+		/** {@inheritDoc} */
+		public int hashCode() {
+			return hashCode;
+		}
+
+		/** {@inheritDoc} */
+		public boolean equals(final Object object) {
+			if(object == this) {
+				return true;
+			}
+			if(!(object instanceof ResolvedFontKey)) {
+				return false;
+			}
+			final ResolvedFontKey resolvedFontKey = (ResolvedFontKey)object;
+			return style == resolvedFontKey.style && Float.floatToIntBits(fontSize) == Float.floatToIntBits(resolvedFontKey.fontSize)
+					&& Float.floatToIntBits(zoomFactor) == Float.floatToIntBits(resolvedFontKey.zoomFactor) && Arrays.equals(fontFamilyNames, resolvedFontKey.fontFamilyNames);
+		}
+	}
+
+	/**
+	 * The key to a fallback font.
+	 * @author Garret Wilson
+	 */
+	private static class FallbackFontKey {
+
+		/** The font family name. */
+		private final String family;
+
+		/** The style of the font. */
+		private final int style;
+
+		/** The point size. */
+		private final int size;
+
+		/**
+		 * Constructor.
+		 * @param family The font family name.
+		 * @param style The style of the font.
+		 * @param size The point size.
+		 */
+		public FallbackFontKey(final String family, final int style, final int size) {
+			this.family = family;
+			this.style = style;
+			this.size = size;
+		}
+
+		/** {@inheritDoc} */
+		public int hashCode() {
+			return (family.hashCode() * 31 + style) * 31 + size;
+		}
+
+		/** {@inheritDoc} */
+		public boolean equals(final Object object) {
+			if(object == this) {
+				return true;
+			}
+			if(!(object instanceof FallbackFontKey)) {
+				return false;
+			}
+			final FallbackFontKey fallbackFontKey = (FallbackFontKey)object;
+			return style == fallbackFontKey.style && size == fallbackFontKey.size && family.equals(fallbackFontKey.family);
+		}
+	}
+
 	//TODO create the transient fontReferenceMap in a readObject
 
 	/**
@@ -196,6 +497,9 @@ private void readObject(ObjectInputStream objectInputStream) throws ClassNotFoun
 		//TODO del		searchFontKey=new FontKey(null, 0, 0);  //create a new font key for searching
 		//TODO del		fontReferenceMap=new HashMap(); //create a new map of references to fonts
 		objectInputStream.defaultReadObject(); //read the object normally
+		resolvedFontMap = new ConcurrentHashMap<ResolvedFontKey, Font>(); //create a new resolved font cache
+		resolvedFontHitCount = new AtomicLong(0);
+		resolvedFontMissCount = new AtomicLong(0);
 	}
 
 	static {
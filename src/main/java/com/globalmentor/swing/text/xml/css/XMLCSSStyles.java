@@ -17,7 +17,13 @@
 package com.globalmentor.swing.text.xml.css;
 
 import java.awt.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 import javax.swing.text.MutableAttributeSet;
 import org.w3c.dom.css.*;
 
@@ -65,12 +71,119 @@ public static CSSStyleDeclaration getXMLCSSStyle(AttributeSet a) {
 	}
 
 	/**
-	 * Sets the XML CSS style declaration map.
+	 * Sets the XML CSS style declaration map. The computed style of the attribute set, and with it those of any attribute sets it resolves, is invalidated.
 	 * @param a The attribute set
 	 * @param cssStyle The XML CSS style declaration map.
 	 */
 	public static void setXMLCSSStyle(final MutableAttributeSet a, final CSSStyleDeclaration cssStyle) {
 		a.addAttribute(XML_CSS_STYLE_ATTRIBUTE_NAME, cssStyle); //add the attribute to the attribute set
+		invalidateComputedStyle(a); //the computed styles of this attribute set and any it resolves may have changed
+	}
+
+	/** The name of the document property holding the computed styles of the document's elements. */
+	private static final String COMPUTED_STYLES_PROPERTY = "$xmlCSSComputedStyles";
+
+	/**
+	 * Retrieves the computed styles of the elements of a document, optionally creating them if they are not yet present.
+	 * @param document The document the computed styles of which should be returned.
+	 * @param create Whether the computed styles should be created if the document has none.
+	 * @return The computed styles of the document, or <code>null</code> if the document has no computed styles and they should not be created.
+	 */
+	private static ComputedStyles getComputedStyles(final Document document, final boolean create) {
+		ComputedStyles computedStyles = (ComputedStyles)document.getProperty(COMPUTED_STYLES_PROPERTY);
+		if(computedStyles == null && create) { //if the document has no computed styles yet, create them
+			synchronized(ComputedStyles.class) { //make sure only one set of computed styles is created for the document
+				computedStyles = (ComputedStyles)document.getProperty(COMPUTED_STYLES_PROPERTY);
+				if(computedStyles == null) {
+					computedStyles = new ComputedStyles();
+					document.putProperty(COMPUTED_STYLES_PROPERTY, computedStyles);
+				}
+			}
+		}
+		return computedStyles;
+	}
+
+	/**
+	 * Invalidates the computed style of a document element, so that it will be computed again when next requested. The computed styles of the element's
+	 * descendants, which were computed from the element's style, will be recognized as stale and computed again when next requested; the computed styles of
+	 * other elements, and of other documents, remain cached. This method must be called whenever the CSS properties or the resolving parent of an element change,
+	 * while holding the document write lock. Attribute sets that are not document elements have no cached computed style, and are ignored.
+	 * @param attributeSet The attribute set of the element the computed style of which should be invalidated.
+	 */
+	public static void invalidateComputedStyle(final AttributeSet attributeSet) {
+		if(attributeSet instanceof AbstractDocument.AbstractElement) { //only elements have cached computed styles
+			final ComputedStyles computedStyles = getComputedStyles(((Element)attributeSet).getDocument(), false);
+			if(computedStyles != null) { //if the document has cached computed styles
+				computedStyles.computedStyleMap.remove(attributeSet);
+				computedStyles.stamp.incrementAndGet(); //other elements of the document must make sure their parents' styles haven't changed
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the computed style of the given attribute set, containing the values of the common CSS properties. The computed style of a document element is
+	 * computed once and cached with the element's document until it or the computed style of one of its ancestors is invalidated; other attribute sets, which may
+	 * change without notice, have their style computed each time.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The computed style of the attribute set.
+	 * @see #invalidateComputedStyle(AttributeSet)
+	 */
+	public static XMLCSSComputedStyle getComputedStyle(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle : new XMLCSSComputedStyle(attributeSet, null, 0);
+	}
+
+	/**
+	 * Determines whether a computed style previously retrieved for the given attribute set is still current.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @param computedStyle The computed style previously retrieved for the attribute set.
+	 * @return <code>true</code> if the computed style is the current cached computed style of the attribute set, or if the attribute set has no cached computed
+	 *         style.
+	 */
+	static boolean isCurrent(final AttributeSet attributeSet, final XMLCSSComputedStyle computedStyle) {
+		final XMLCSSComputedStyle cachedComputedStyle = getCachedComputedStyle(attributeSet);
+		return cachedComputedStyle == null || cachedComputedStyle == computedStyle;
+	}
+
+	/**
+	 * Retrieves the cached computed style of the given attribute set, computing and caching the style if needed. If any computed style of the document has been
+	 * invalidated since the cached style was last found current, the computed style of the resolving parent is retrieved first, and the cached style is computed
+	 * again if it was computed from a different style of the parent.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The computed style of the attribute set, or <code>null</code> if the attribute set is not a document element and its style cannot be cached.
+	 */
+	private static XMLCSSComputedStyle getCachedComputedStyle(final AttributeSet attributeSet) {
+		if(!(attributeSet instanceof AbstractDocument.AbstractElement)) { //only elements are guaranteed to be compared by identity
+			return null;
+		}
+		final ComputedStyles computedStyles = getComputedStyles(((Element)attributeSet).getDocument(), true);
+		final long stamp = computedStyles.stamp.get();
+		XMLCSSComputedStyle computedStyle = computedStyles.computedStyleMap.get(attributeSet);
+		if(computedStyle != null && computedStyle.getStamp() == stamp) { //if no computed style of the document has been invalidated since this style was found current
+			return computedStyle;
+		}
+		final AttributeSet resolveParent = attributeSet.getResolveParent();
+		final XMLCSSComputedStyle parentComputedStyle = resolveParent != null ? getCachedComputedStyle(resolveParent) : null; //make sure the parent's style is current
+		if(computedStyle == null || computedStyle.getParentComputedStyle() != parentComputedStyle) { //if there is no computed style, or it was computed from a stale parent style
+			computedStyle = new XMLCSSComputedStyle(attributeSet, parentComputedStyle, stamp); //compute the style and cache it
+			computedStyles.computedStyleMap.put(attributeSet, computedStyle);
+		} else { //if the computed style is still current
+			computedStyle.setStamp(stamp);
+		}
+		return computedStyle;
+	}
+
+	/**
+	 * The computed styles of the elements of a single document, stored as a property of the document.
+	 * @author Garret Wilson
+	 */
+	private static class ComputedStyles {
+
+		/** The invalidation stamp, which changes whenever a computed style of the document is invalidated. */
+		final AtomicLong stamp = new AtomicLong(0);
+
+		/** The computed styles of document elements, weakly keyed to the elements, which as attribute sets are only equal to themselves. */
+		final Map<AttributeSet, XMLCSSComputedStyle> computedStyleMap = Collections.synchronizedMap(new WeakHashMap<AttributeSet, XMLCSSComputedStyle>());
 	}
 
 	/**
@@ -212,7 +325,17 @@ protected static float getPixelLength(final AttributeSet attributeSet, final Str
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The display setting or <code>null</code> if none is specified.
 	 */
-	public static String getDisplay(AttributeSet attributeSet) {
+	public static String getDisplay(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getDisplay() : computeDisplay(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getDisplay(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The display setting or <code>null</code> if none is specified.
+	 */
+	static String computeDisplay(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue displayValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_DISPLAY, false); //get the display property for this element, but don't resolve up the attribute set parent hierarchy TODO can we be sure this will be a primitive value?
 		return displayValue != null ? displayValue.getStringValue() : null; //return the value of the display property
 	}
@@ -223,7 +346,17 @@ public static String getDisplay(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set.
 	 * @return An array of names of font families, each either a font family name or a generic family such as "serif".
 	 */
-	public static String[] getFontFamilyNames(AttributeSet attributeSet) {
+	public static String[] getFontFamilyNames(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getFontFamilyNames() : computeFontFamilyNames(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getFontFamilyNames(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set.
+	 * @return An array of names of font families, each either a font family name or a generic family such as "serif".
+	 */
+	static String[] computeFontFamilyNames(final AttributeSet attributeSet) {
 		final CSSValue cssValue = getCSSPropertyCSSValue(attributeSet, CSS_PROP_FONT_FAMILY, true); //get the font family, resolving up the hierarchy
 		if(cssValue != null) { //if we have a font family
 		//TODO del			if(cssValue.getCssValueType()==cssValue.
@@ -245,7 +378,17 @@ public static String[] getFontFamilyNames(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The font size in points or, if no font size is specified, the default point size, which is 12.
 	 */
-	public static float getFontSize(AttributeSet attributeSet) {
+	public static float getFontSize(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getFontSize() : computeFontSize(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getFontSize(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The font size in points or, if no font size is specified, the default point size, which is 12.
+	 */
+	static float computeFontSize(final AttributeSet attributeSet) {
 		final CSSStyleDeclaration cssStyle = getXMLCSSStyle(attributeSet); //get the CSS style
 		//TODO del		final XMLCSSPrimitiveValue fontSizeValue=cssStyle!= null ? (XMLCSSPrimitiveValue)attributeSet.getAttribute(CSS_PROP_FONT_SIZE);	//get the CSS font size value
 		//TODO del System.out.println("Getting font size for attribute set of: "+attributeSet.getAttribute(StyleConstants.NameAttribute));	//TODO del
@@ -330,7 +473,17 @@ public static void setFontSize(MutableAttributeSet a, int s) {
 	 * @param attributeSet The attribute set with CSS attributes.
 	 * @return Whether the bold attribute is set.
 	 */
-	public static boolean isBold(AttributeSet attributeSet) {
+	public static boolean isBold(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.isBold() : computeBold(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #isBold(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set with CSS attributes.
+	 * @return Whether the bold attribute is set.
+	 */
+	static boolean computeBold(final AttributeSet attributeSet) {
 		//TODO del		final XMLCSSPrimitiveValue boldValue=(XMLCSSPrimitiveValue)attributeSet.getAttribute(CSS_PROP_FONT_WEIGHT);	//get the bold value
 		final XMLCSSPrimitiveValue boldValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_FONT_WEIGHT, true); //get the bold value, resolving up the hierarchy if necessary
 		if(boldValue != null) { //if we have a bold value
@@ -358,7 +511,17 @@ public static void setBold(MutableAttributeSet a, boolean b) {
 	 * @param attributeSet The attribute set with CSS attributes.
 	 * @return Whether the italic attribute is set.
 	 */
-	public static boolean isItalic(AttributeSet attributeSet) {
+	public static boolean isItalic(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.isItalic() : computeItalic(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #isItalic(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set with CSS attributes.
+	 * @return Whether the italic attribute is set.
+	 */
+	static boolean computeItalic(final AttributeSet attributeSet) {
 		//TODO del		final XMLCSSPrimitiveValue italicValue=(XMLCSSPrimitiveValue)attributeSet.getAttribute(CSS_PROP_FONT_STYLE);	//get the italic value
 		final XMLCSSPrimitiveValue italicValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_FONT_STYLE, true); //get the italic value, resolving up the hierarchy if necessary
 		if(italicValue != null) { //if we have an italic value
@@ -386,7 +549,17 @@ public static void setItalic(MutableAttributeSet a, boolean b) {
 	 * @param attributeSet The attribute set.
 	 * @return <code>true</code> if <code>text-decoration</code> has the value <code>underline</code> in its list of values, else false.
 	 */
-	public static boolean isUnderline(AttributeSet attributeSet) {
+	public static boolean isUnderline(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.isUnderline() : computeUnderline(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #isUnderline(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set.
+	 * @return <code>true</code> if <code>text-decoration</code> has the value <code>underline</code> in its list of values, else false.
+	 */
+	static boolean computeUnderline(final AttributeSet attributeSet) {
 		/*TODO fix; throws an exception because an XMLCSSPrimitiveValue is returned
 				final XMLCSSValueList textDecorationValueList=(XMLCSSValueList)getCSSPropertyCSSValue(attributeSet, CSS_PROP_TEXT_DECORATION, true);	//get the text decoration value, resolving up the hierarchy if necessary TODO text-decoration shouldn' resolve up the chain exactly like this
 					//TODO what if the value sent back isn't really an XMLCSSValueList? Perhaps we should do an assert
@@ -408,7 +581,17 @@ public static boolean isUnderline(AttributeSet attributeSet) {
 	 * @return The specified CSS color, or <code>Color.black</code> if there is no color specified.
 	 */
 	//TODO why isn't this getColor()? TODO so that StyledDocument can call it TODO but does that matter? this is a static function called directly
-	public static Color getForeground(AttributeSet attributeSet) {
+	public static Color getForeground(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getForeground() : computeForeground(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getForeground(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set.
+	 * @return The specified CSS color, or <code>Color.black</code> if there is no color specified.
+	 */
+	static Color computeForeground(final AttributeSet attributeSet) {
 		final Color color = getColorValue(attributeSet, CSS_PROP_COLOR, true); //get the color value, resolving up the hierarchy if necessary
 		return color != null ? color : Color.black; //default to a black foreground if no color is found
 	}
@@ -430,7 +613,17 @@ public static void setForeground(MutableAttributeSet a, Color fg) {
 	 * @param attributeSet The attribute set.
 	 * @return The CSS background color, or <code>null</code> if the background should be transparent.
 	 */
-	public static Color getBackgroundColor(AttributeSet attributeSet) {
+	public static Color getBackgroundColor(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getBackgroundColor() : computeBackgroundColor(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getBackgroundColor(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set.
+	 * @return The CSS background color, or <code>null</code> if the background should be transparent.
+	 */
+	static Color computeBackgroundColor(final AttributeSet attributeSet) {
 		return getColorValue(attributeSet, CSS_PROP_BACKGROUND_COLOR, false); //get the color value without resolving up the chain, which will return null if there is no background color
 	}
 
@@ -440,7 +633,17 @@ public static Color getBackgroundColor(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set.
 	 * @return The effective CSS background color, or <code>Color.white</code> if there is no color specified anywhere up the hierarchy.
 	 */
-	public static Color getEffectiveBackgroundColor(AttributeSet attributeSet) {
+	public static Color getEffectiveBackgroundColor(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getEffectiveBackgroundColor() : computeEffectiveBackgroundColor(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getEffectiveBackgroundColor(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set.
+	 * @return The effective CSS background color, or <code>Color.white</code> if there is no color specified anywhere up the hierarchy.
+	 */
+	static Color computeEffectiveBackgroundColor(final AttributeSet attributeSet) {
 		final Color backgroundColor = getColorValue(attributeSet, CSS_PROP_BACKGROUND_COLOR, true); //get the background color value, resolving up the hierarchy if necessary
 		return backgroundColor != null ? backgroundColor : Color.white; //default to a white background if no color is found
 	}
@@ -463,7 +666,17 @@ public static void setBackground(MutableAttributeSet a, Color fg) {
 	 * @return The line height as a number or, if line height is not specified, the default amount, which is 1.0.
 	 */
 	//TODO this all needs to be fixed; this is just hacked at the moment
-	public static float getLineHeight(AttributeSet attributeSet) {
+	public static float getLineHeight(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getLineHeight() : computeLineHeight(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getLineHeight(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The line height as a number or, if line height is not specified, the default amount, which is 1.0.
+	 */
+	static float computeLineHeight(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue lineHeightValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_LINE_HEIGHT, true); //get CSS value for this property, resolving up the hierarchy if necessary
 		if(lineHeightValue != null) { //if we have a value
 			if(lineHeightValue.getPrimitiveType() == XMLCSSPrimitiveValue.CSS_NUMBER) //if this is a number (fix all this, because the number doesn't mean a percentage of the normal line flow height, which is how we interpret it now)
@@ -501,7 +714,17 @@ public static void setLineHeight(MutableAttributeSet a, int s) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The left list style type, or <code>null</code> if the property is not specified.
 	 */
-	public static String getListStyleType(AttributeSet attributeSet) {
+	public static String getListStyleType(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getListStyleType() : computeListStyleType(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getListStyleType(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The left list style type, or <code>null</code> if the property is not specified.
+	 */
+	static String computeListStyleType(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue listStyleTypeValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_LIST_STYLE_TYPE, true); //get CSS value for this property, resolving up the hierarchy
 		if(listStyleTypeValue != null) { //if we have a value
 			return listStyleTypeValue.getStringValue(); //return the value as a string
@@ -514,7 +737,17 @@ public static String getListStyleType(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The bottom margin size in pixels or, if the property is not specified, the default amount of 0.
 	 */
-	public static float getMarginBottom(AttributeSet attributeSet) {
+	public static float getMarginBottom(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getMarginBottom() : computeMarginBottom(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getMarginBottom(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The bottom margin size in pixels or, if the property is not specified, the default amount of 0.
+	 */
+	static float computeMarginBottom(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue marginBottomValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_MARGIN_BOTTOM, false); //get CSS value for this property without resolving up the hierarchy
 		if(marginBottomValue != null) { //if we have a value
 			if(marginBottomValue.isAbsoluteLength()) { //if this is an absolute length
@@ -575,7 +808,17 @@ public static float getMarginRight(AttributeSet attributeSet, final Font font) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The top margin size in pixels or, if the property is not specified, the default amount of 0.
 	 */
-	public static float getMarginTop(AttributeSet attributeSet) {
+	public static float getMarginTop(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getMarginTop() : computeMarginTop(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getMarginTop(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The top margin size in pixels or, if the property is not specified, the default amount of 0.
+	 */
+	static float computeMarginTop(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue marginTopValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_MARGIN_TOP, false); //get CSS value for this property without resolving up the hierarchy
 		if(marginTopValue != null) { //if we have a value
 			if(marginTopValue.isAbsoluteLength()) { //if this is an absolute length
@@ -593,7 +836,17 @@ public static float getMarginTop(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The page break after setting or <code>null</code> if none is specified.
 	 */
-	public static String getPageBreakAfter(AttributeSet attributeSet) {
+	public static String getPageBreakAfter(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getPageBreakAfter() : computePageBreakAfter(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getPageBreakAfter(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The page break after setting or <code>null</code> if none is specified.
+	 */
+	static String computePageBreakAfter(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue pageBreakAfterValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_PAGE_BREAK_AFTER, false); //get the property for this element, but don't resolve up the attribute set parent hierarchy TODO can we be sure this will be a primitive value?
 		return pageBreakAfterValue != null ? pageBreakAfterValue.getStringValue() : null; //return the value of the property
 	}
@@ -604,7 +857,17 @@ public static String getPageBreakAfter(AttributeSet attributeSet) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The page break after setting or <code>null</code> if none is specified.
 	 */
-	public static String getPageBreakBefore(AttributeSet attributeSet) {
+	public static String getPageBreakBefore(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getPageBreakBefore() : computePageBreakBefore(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getPageBreakBefore(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The page break after setting or <code>null</code> if none is specified.
+	 */
+	static String computePageBreakBefore(final AttributeSet attributeSet) {
 		final XMLCSSPrimitiveValue pageBreakBeforeValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_PAGE_BREAK_BEFORE, false); //get the property for this element, but don't resolve up the attribute set parent hierarchy TODO can we be sure this will be a primitive value?
 		return pageBreakBeforeValue != null ? pageBreakBeforeValue.getStringValue() : null; //return the value of the property
 	}
@@ -688,7 +951,17 @@ public static void setTextIndent(MutableAttributeSet a, int s) {
 	 * @param attributeSet The attribute set containing CSS properties.
 	 * @return The vertical alignment as an identifier number or, if a value is not specified, the default value "baseline".
 	 */
-	public static String getVerticalAlign(AttributeSet attributeSet) { //TODO fix for lengths and percentages
+	public static String getVerticalAlign(final AttributeSet attributeSet) {
+		final XMLCSSComputedStyle computedStyle = getCachedComputedStyle(attributeSet);
+		return computedStyle != null ? computedStyle.getVerticalAlign() : computeVerticalAlign(attributeSet);
+	}
+
+	/**
+	 * Computes the value returned by {@link #getVerticalAlign(AttributeSet)} directly from the CSS properties, without using the computed style cache.
+	 * @param attributeSet The attribute set containing CSS properties.
+	 * @return The vertical alignment as an identifier number or, if a value is not specified, the default value "baseline".
+	 */
+	static String computeVerticalAlign(final AttributeSet attributeSet) { //TODO fix for lengths and percentages
 		final XMLCSSPrimitiveValue verticalAlignValue = (XMLCSSPrimitiveValue)getCSSPropertyCSSValue(attributeSet, CSS_PROP_VERTICAL_ALIGN, false); //get CSS value for this property without resolving up the hierarchy
 		if(verticalAlignValue != null) { //if we have a value
 			return verticalAlignValue.getStringValue(); //return the value as a string
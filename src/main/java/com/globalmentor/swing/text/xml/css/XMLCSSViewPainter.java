@@ -21,16 +21,16 @@
 import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.font.LineMetrics;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.text.*;
 
-import com.globalmentor.swing.text.Documents;
 import com.globalmentor.swing.text.FragmentView;
 import com.globalmentor.swing.text.Views;
 import com.globalmentor.swing.text.xml.XMLListView;
-import com.globalmentor.w3c.spec.CSS;
 
 /**
- * Class to paint XML CSS views.
+ * Class to paint XML CSS views. Views should resolve an {@link XMLCSSPaintStyle} when their attributes change and paint using that paint style, so that
+ * painting does not look up attributes.
  * @author Garret Wilson
  */
 public class XMLCSSViewPainter {
@@ -43,8 +43,27 @@ public class XMLCSSViewPainter {
 
 	//TODO fix when other circle and square are supported	public static final String[] NESTED_UNORDERED_LIST_STYLE_TYPES=new String[]{CSS_LIST_STYLE_TYPE_DISC, CSS_LIST_STYLE_TYPE_CIRCLE, CSS_LIST_STYLE_TYPE_SQUARE}; 
 
+	/** The current generation of paint styles; paint styles from earlier generations are stale. */
+	private static final AtomicLong paintStyleGeneration = new AtomicLong(0);
+
+	/** @return The current generation of paint styles. */
+	static long getPaintStyleGeneration() {
+		return paintStyleGeneration.get();
+	}
+
 	/**
-	 * Paints an XML view using CSS properties.
+	 * Invalidates all paint styles, so that views will resolve them again before next painting. This method must be called whenever a document property used in
+	 * painting, such as antialiasing, changes. It need not be called when computed styles are invalidated, as a paint style is no longer current once the
+	 * computed style from which it was resolved is stale.
+	 * @see XMLCSSStyles#invalidateComputedStyle(AttributeSet)
+	 */
+	public static void invalidatePaintStyles() {
+		paintStyleGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Paints an XML view using CSS properties. This version resolves the paint style from the attributes each time; views that paint repeatedly should keep a
+	 * paint style and call {@link #paint(Graphics, Shape, View, XMLCSSPaintStyle)} instead.
 	 * @param graphics The rendering surface to use.
 	 * @param allocation The allocated region to render into.
 	 * @param view The view being rendered.
@@ -52,27 +71,33 @@ public class XMLCSSViewPainter {
 	 * @see View#paint
 	 */
 	public static void paint(final Graphics graphics, final Shape allocation, final View view, final AttributeSet attributeSet) {
-		final boolean antialias = Documents.isAntialias(view.getDocument()); //see if the document specifies antialiasing
-		//TODO del when works		final boolean isAntialias=XMLStyleUtilities.isAntialias(attributeSet);	//see if we should turn antialias on or off
+		paint(graphics, allocation, view, new XMLCSSPaintStyle(view, attributeSet));
+	}
+
+	/**
+	 * Paints an XML view using properties already resolved from its CSS attributes.
+	 * @param graphics The rendering surface to use.
+	 * @param allocation The allocated region to render into.
+	 * @param view The view being rendered.
+	 * @param paintStyle The resolved paint style of the view.
+	 * @see View#paint
+	 */
+	public static void paint(final Graphics graphics, final Shape allocation, final View view, final XMLCSSPaintStyle paintStyle) {
 		final Graphics2D graphics2D = (Graphics2D)graphics; //cast to the 2D version of graphics
 		//turn on fractional metrics TODO probably do this conditionally, based on some sort of flag
-		graphics2D.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-		//turn antialiasing on
-		graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
-		//TODO del when works		graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		setRenderingHint(graphics2D, RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		//turn antialiasing on or off as the document specifies
+		setRenderingHint(graphics2D, RenderingHints.KEY_ANTIALIASING, paintStyle.isAntialias() ? RenderingHints.VALUE_ANTIALIAS_ON
+				: RenderingHints.VALUE_ANTIALIAS_OFF);
 		//get the allocation as a rectangle
 		final Rectangle allocRect = (allocation instanceof Rectangle) ? (Rectangle)allocation : allocation.getBounds();
 		final boolean isFragmentView = view instanceof FragmentView; //see if this view is a fragment of a larger, broken view
 		//if this is a view fragment, see if it's the first fragment of the larger view
 		final boolean isFirstFragment = isFragmentView ? ((FragmentView)view).isFirstFragment() : true;
 		//paint the background
-		//TODO del unless gets too slow		final Color backgroundColor=cssView.getBackgroundColor();	//get the background color for the view
-		final Color backgroundColor = XMLCSSStyles.getBackgroundColor(attributeSet); //get the background color from the attributes
-		final Color foregroundColor = XMLCSSStyles.getForeground(attributeSet); //get the foreground color from the attributes
-		graphics.setColor(foregroundColor); //change to the foreground color for drawing TODO do we want to save the old value?
-		//TODO testing; move
+		final Color backgroundColor = paintStyle.getBackgroundColor();
+		graphics.setColor(paintStyle.getForeground()); //change to the foreground color for drawing TODO do we want to save the old value?
 		if(backgroundColor != null) { //if we have a background color
-		//TODO del Log.trace("Background for "+XMLCSSStyleUtilities.getXMLElementName(attributeSet)+": "+backgroundColor); //TODO del
 			final Color originalColor = graphics.getColor(); //get the original graphics color
 			graphics.setColor(backgroundColor); //switch to the background color
 			graphics.fillRect(allocRect.x, allocRect.y, allocRect.width, allocRect.height); //fill the rectangle with the correct color
@@ -80,95 +105,108 @@ public static void paint(final Graphics graphics, final Shape allocation, final
 		}
 		//TODO right now, we paint the marker to the left of the element, which will cause
 		//  it to not be repainted at times; somehow invalidate the region if so
-		final String display = XMLCSSStyles.getDisplay(attributeSet); //get the CSS display property value
-		//if this is a list item, and it's the first fragment (if the list item has been fragmented)
-		if(CSS_DISPLAY_LIST_ITEM.equals(display) && isFirstFragment) {
-
-			//Log.trace("View painter view's class: ", view.getClass().getName());  //TODO del
-			final View parentView = view.getParent(); //get the parent view of this one
-			if(parentView != null) { //list items must have parents to be rendered
-			//Log.trace("View painter parent view's class: ", view.getClass().getName());  //TODO del
-
-				final Document document = view.getDocument(); //get the view's document
-				if(document instanceof StyledDocument) { //if the document is a styled document
-					final StyledDocument styledDocument = (StyledDocument)document; //cast the document to a styled document
-					final Font font = styledDocument.getFont(attributeSet); //let the document get the font from the attributes
-					final AttributeSet parentAttributeSet = parentView.getAttributes(); //get the parent's attributes
-					final float parentLeftMargin = XMLCSSStyles.getMarginLeft(parentAttributeSet, font); //get the parent's left margin TODO i18n
-					final float markerX = allocRect.x - parentLeftMargin; //find out where the marker should be located horizontally
-					View relativeSizeView = view; //we'll get the deepest view we can in order to judge the size of the marker
-					while(relativeSizeView.getViewCount() > 0) { //while there are child views
-						relativeSizeView = relativeSizeView.getView(0); //get the first child view
-					}
-					final float relativeHeight = relativeSizeView.getPreferredSpan(View.Y_AXIS); //find the height of the view we're using as a guide
-					String listStyleType = XMLCSSStyles.getListStyleType(attributeSet); //get the type of list style
-					//TODO fix; this implementation will inherit list styles from other enclosing lists
-					if(listStyleType == null) { //if no list style type is indicated, determine the list style type based upon the enclosing list views
-						Boolean isListOrdered = null; //we'll find out whether the list is ordered
-						int depthIndex = -1; //we'll find out how many lists are nested (indicating nesting with a zero-based index)
-						View logicalParent = Views.getLogicalParent(view); //start with the logical parent (the real parent could be a fragment, in which case we wouldn't know if it was a list or not)
-						while(logicalParent != null) { //while there is still a parent to check
-							if(logicalParent instanceof XMLListView) { //if this parent is a list view
-								final XMLListView listView = (XMLListView)logicalParent; //cast the parent to a list view
-								if(isListOrdered == null) { //if we don't yet know whether the list should be ordered
-									isListOrdered = Boolean.valueOf(listView.isOrdered()); //we'll go with whether the closest enclosing list is ordered
-								}
-								if(isListOrdered.booleanValue() == listView.isOrdered()) { //if this list matches the ordered or unordered status
-									++depthIndex; //show that this list is counted as an enclosing list
-								}
-							}
-							logicalParent = Views.getLogicalParent(logicalParent); //look at the logical parent's logical parent, looking behind fragments to the original views
-						}
-
-						if(depthIndex >= 0) { //if we have at least one enclosing list
-							assert isListOrdered != null : "Found enclosing list but didn't record its ordered condition.";
-							if(isListOrdered.booleanValue()) { //if the list is ordered
-								listStyleType = NESTED_ORDERED_LIST_STYLE_TYPES[depthIndex % NESTED_ORDERED_LIST_STYLE_TYPES.length]; //get the list style type, wrapping around if necessary 
-							} else { //if the list is not ordered
-								listStyleType = NESTED_UNORDERED_LIST_STYLE_TYPES[depthIndex % NESTED_UNORDERED_LIST_STYLE_TYPES.length]; //get the list style type, wrapping around if necessary 
-							}
-						} else { //if we didn't find at least one enclosing list
-							listStyleType = CSS_LIST_STYLE_TYPE_DISC; //default to a disc marker
-						}
+		final String listStyleType = paintStyle.getListStyleType(); //this will only be present for list items with markers
+		//if this is a list item with a marker, and it's the first fragment (if the list item has been fragmented)
+		if(listStyleType != null && isFirstFragment) {
+			final float markerX = allocRect.x - paintStyle.getParentLeftMargin(); //find out where the marker should be located horizontally
+			if(CSS_LIST_STYLE_TYPE_DISC.equals(listStyleType)) { //if the marker should be a disc
+				View relativeSizeView = view; //we'll get the deepest view we can in order to judge the size of the marker
+				while(relativeSizeView.getViewCount() > 0) { //while there are child views
+					relativeSizeView = relativeSizeView.getView(0); //get the first child view
+				}
+				final float relativeHeight = relativeSizeView.getPreferredSpan(View.Y_AXIS); //find the height of the view we're using as a guide
+				final float markerHeight = relativeHeight / 3; //make the marker partially as high as the deepest child TODO make this a constant from somewhere
+				final float markerY = allocRect.y + (relativeHeight - markerHeight) / 2; //center the marker vertically
+				graphics.fillOval(Math.round(markerX), Math.round(markerY), Math.round(markerHeight), Math.round(markerHeight)); //TODO fix; testing; maybe use fractional coordinates with Graphics2D
+			} else { //if we shouldn't render a shape, render the marker text
+				final String markerString = paintStyle.getMarkerString(); //get the string representing the marker for us to render
+				if(markerString != null) { //if we found a valid marker string
+					graphics.setFont(paintStyle.getMarkerFont()); //switch to the same font as the one being used by the list item
+					final FontRenderContext fontRenderContext = graphics2D.getFontRenderContext(); //get the font rendering context
+					//TODO probably make sure that it is antialiased, here
+					final LineMetrics markerLineMetrics = graphics2D.getFont().getLineMetrics(markerString, fontRenderContext); //get the line metrics of the marker string
+					final double markerHeight = markerLineMetrics.getAscent()/*TODO fix markerLineMetrics.getHeight()*/; //find out how high the text is TODO fix; there's something not right here, especially with the multiple-line leading calculation of the text itself
+					final double markerY = allocRect.y + markerHeight; //align the text with the top of the list item
+					//TODO bring back or del						final double markerY=allocRect.y+(relativeHeight-markerHeight)/2+markerHeight;  //center the marker vertically
+					graphics.drawString(markerString, Math.round(markerX), (int)Math.round(markerY)); //TODO testing; i18n
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets a rendering hint only if the graphics does not already have the given value, as changing hints may cause the graphics to invalidate its rendering
+	 * pipeline.
+	 * @param graphics2D The graphics on which to set the hint.
+	 * @param hintKey The key of the rendering hint.
+	 * @param hintValue The value of the rendering hint.
+	 */
+	private static void setRenderingHint(final Graphics2D graphics2D, final RenderingHints.Key hintKey, final Object hintValue) {
+		if(graphics2D.getRenderingHint(hintKey) != hintValue) { //hint values are singletons
+			graphics2D.setRenderingHint(hintKey, hintValue);
+		}
+	}
+
+	/**
+	 * Determines the list style type of a list item. If no list style type is specified, the type is determined by the enclosing list views.
+	 * @param view The list item view.
+	 * @param listStyleType The specified list style type, or <code>null</code> if no list style type is specified.
+	 * @return The list style type to use.
+	 */
+	static String resolveListStyleType(final View view, String listStyleType) {
+		//TODO fix; this implementation will inherit list styles from other enclosing lists
+		if(listStyleType == null) { //if no list style type is indicated, determine the list style type based upon the enclosing list views
+			Boolean isListOrdered = null; //we'll find out whether the list is ordered
+			int depthIndex = -1; //we'll find out how many lists are nested (indicating nesting with a zero-based index)
+			View logicalParent = Views.getLogicalParent(view); //start with the logical parent (the real parent could be a fragment, in which case we wouldn't know if it was a list or not)
+			while(logicalParent != null) { //while there is still a parent to check
+				if(logicalParent instanceof XMLListView) { //if this parent is a list view
+					final XMLListView listView = (XMLListView)logicalParent; //cast the parent to a list view
+					if(isListOrdered == null) { //if we don't yet know whether the list should be ordered
+						isListOrdered = Boolean.valueOf(listView.isOrdered()); //we'll go with whether the closest enclosing list is ordered
 					}
-					if(!CSS_LIST_STYLE_TYPE_NONE.equals(listStyleType)) { //if the list style type does not specify "none"
-						if(CSS_LIST_STYLE_TYPE_DISC.equals(listStyleType)) { //if the marker should be a disc
-							final float markerHeight = relativeHeight / 3; //make the marker partially as high as the deepest child TODO make this a constant from somewhere
-							final float markerY = allocRect.y + (relativeHeight - markerHeight) / 2; //center the marker vertically
-							graphics.fillOval(Math.round(markerX), Math.round(markerY), Math.round(markerHeight), Math.round(markerHeight)); //TODO fix; testing; maybe use fractional coordinates with Graphics2D
-						} else { //if we shouldn't render a shape, find the model index of this list item
-							final Element element = view.getElement(); //get the element the view represents
-							final Element parentElement = element.getParentElement(); //get the parent element of this one
-							final int siblingCount = parentElement.getElementCount(); //find out how many siblings there are, including the element the view represents
-							int listItemIndex = 0; //we'll assign a value here after we discover which index we are
-							for(int i = 0; i < siblingCount; ++i) { //look at each sibling
-								final Element siblingElement = parentElement.getElement(i); //get a reference to this sibling
-								if(siblingElement != element) { //if we still haven't found ourselves
-									final String siblingDisplay = XMLCSSStyles.getDisplay(siblingElement.getAttributes()); //get the CSS display property value of the sibling
-									if(CSS_DISPLAY_LIST_ITEM.equals(siblingDisplay)) //if this is a list item
-										++listItemIndex; //we've found another list item that isn't us
-								} else
-									//if we've found ourselves
-									break; //we now know our list index
-							}
-							//TODO we assume we found ourselves -- is there any instance in which we wouldn't, and how would we know?
-							final String markerString = CSS.getMarkerString(listStyleType, listItemIndex); //get a string representing the marker for us to render
-							if(markerString != null) { //if we found a valid marker string
-								graphics.setFont(font); //switch to the same font as the one being used by the list item
-								final FontRenderContext fontRenderContext = graphics2D.getFontRenderContext(); //get the font rendering context
-								//TODO probably make sure that it is antialiased, here
-								final LineMetrics markerLineMetrics = graphics2D.getFont().getLineMetrics(markerString, fontRenderContext); //get the line metrics of the marker string
-								final double markerHeight = markerLineMetrics.getAscent()/*TODO fix markerLineMetrics.getHeight()*/; //find out how high the text is TODO fix; there's something not right here, especially with the multiple-line leading calculation of the text itself
-								final double markerY = allocRect.y + markerHeight; //align the text with the top of the list item
-								//TODO bring back or del						final double markerY=allocRect.y+(relativeHeight-markerHeight)/2+markerHeight;  //center the marker vertically
-								//TODO set the font here
-								graphics.drawString(markerString, Math.round(markerX), (int)Math.round(markerY)); //TODO testing; i18n
-							}
-						}
+					if(isListOrdered.booleanValue() == listView.isOrdered()) { //if this list matches the ordered or unordered status
+						++depthIndex; //show that this list is counted as an enclosing list
 					}
-				} //TODO fix
+				}
+				logicalParent = Views.getLogicalParent(logicalParent); //look at the logical parent's logical parent, looking behind fragments to the original views
+			}
+
+			if(depthIndex >= 0) { //if we have at least one enclosing list
+				assert isListOrdered != null : "Found enclosing list but didn't record its ordered condition.";
+				if(isListOrdered.booleanValue()) { //if the list is ordered
+					listStyleType = NESTED_ORDERED_LIST_STYLE_TYPES[depthIndex % NESTED_ORDERED_LIST_STYLE_TYPES.length]; //get the list style type, wrapping around if necessary 
+				} else { //if the list is not ordered
+					listStyleType = NESTED_UNORDERED_LIST_STYLE_TYPES[depthIndex % NESTED_UNORDERED_LIST_STYLE_TYPES.length]; //get the list style type, wrapping around if necessary 
+				}
+			} else { //if we didn't find at least one enclosing list
+				listStyleType = CSS_LIST_STYLE_TYPE_DISC; //default to a disc marker
 			}
 		}
+		return listStyleType;
+	}
+
+	/**
+	 * Determines the index of a list item among the list items of its parent element.
+	 * @param element The list item element.
+	 * @return The zero-based index of the list item among its sibling list items.
+	 */
+	static int getListItemIndex(final Element element) {
+		final Element parentElement = element.getParentElement(); //get the parent element of this one
+		final int siblingCount = parentElement.getElementCount(); //find out how many siblings there are, including the element the view represents
+		int listItemIndex = 0; //we'll assign a value here after we discover which index we are
+		for(int i = 0; i < siblingCount; ++i) { //look at each sibling
+			final Element siblingElement = parentElement.getElement(i); //get a reference to this sibling
+			if(siblingElement != element) { //if we still haven't found ourselves
+				final String siblingDisplay = XMLCSSStyles.getDisplay(siblingElement.getAttributes()); //get the CSS display property value of the sibling
+				if(CSS_DISPLAY_LIST_ITEM.equals(siblingDisplay)) //if this is a list item
+					++listItemIndex; //we've found another list item that isn't us
+			} else
+				//if we've found ourselves
+				break; //we now know our list index
+		}
+		//TODO we assume we found ourselves -- is there any instance in which we wouldn't, and how would we know?
+		return listItemIndex;
 	}
 
-}
\ No newline at end of file
+}
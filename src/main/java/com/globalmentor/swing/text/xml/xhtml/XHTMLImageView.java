@@ -91,14 +91,13 @@ protected void initialize(Element element) {
 				width = Integer.parseInt(widthString); //turn the width of the image into an integer
 		} catch(NumberFormatException e) {
 		} //ignore any number format exceptions; the width and/or the height will be left at -1 for us to check
-		if(height == -1 || width == -1) { //if we were unable to find either the width or the height, load the image and get the dimensions directly
+		if(height == -1 || width == -1) { //if we were unable to find either the width or the height, get the dimensions directly from the image
 			try {
-				final Image image = getImage(); //get the image, loading it if needed (in initialize() it will usually have to be loaded)
-				assert image != null : "fImage is null"; //TODO fix
-				Images.loadImage(image); //load the image TODO optimize: perhaps there's a way to just load part of the image, to get the image dimensions
-				height = image.getHeight(this); //get the image's height
-				width = image.getWidth(this); //get the image's width
-				freeImage(); //free the image memory; this should speed up view flowing
+				final XMLDocument document = (XMLDocument)getDocument(); //get the document used to load resources
+				//read the dimensions from the image header without decoding the image, which will be decoded in the background when it is shown
+				final Dimension imageSize = document.getImageSize(XMLStyles.getBaseRelativeHRef(getAttributes(), getHRef()));
+				height = imageSize.height; //get the image's height
+				width = imageSize.width; //get the image's width
 			} catch(URISyntaxException e) { //TODO do something better here
 				Log.error(e);
 			} catch(IOException e) { //TODO do something better here